@@ -21,14 +21,24 @@ import java.lang.reflect.InvocationTargetException;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.text.NumberFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
 import javax.management.MBeanRegistrationException;
 import javax.management.MBeanServer;
 import javax.management.MalformedObjectNameException;
@@ -45,13 +55,22 @@ import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 
 import com.norconex.collector.core.CollectorException;
+import com.norconex.collector.core.crawler.ICrawlerConfig.ExecutionMode;
 import com.norconex.collector.core.crawler.ICrawlerConfig.OrphansStrategy;
 import com.norconex.collector.core.crawler.event.CrawlerEvent;
 import com.norconex.collector.core.crawler.event.CrawlerEventManager;
 import com.norconex.collector.core.data.BaseCrawlData;
 import com.norconex.collector.core.data.CrawlState;
 import com.norconex.collector.core.data.ICrawlData;
+import com.norconex.collector.core.data.store.CrawlDataStage;
+import com.norconex.collector.core.data.store.CrawlDataUnitOfWork;
+import com.norconex.collector.core.data.store.DelegatingCrawlDataStore;
 import com.norconex.collector.core.data.store.ICrawlDataStore;
+import com.norconex.collector.core.data.store.impl.bloom.BloomFilterCrawlDataStore;
+import com.norconex.collector.core.data.store.impl.metered.MeteredCrawlDataStore;
+import com.norconex.collector.core.data.store.impl.metered.OperationMetrics;
+import com.norconex.collector.core.data.store.impl.politeness.PolitenessCrawlDataStore;
+import com.norconex.collector.core.data.store.impl.writebehind.WriteBehindCrawlDataStore;
 import com.norconex.collector.core.doc.CollectorMetadata;
 import com.norconex.collector.core.jmx.Monitoring;
 import com.norconex.collector.core.pipeline.importer.ImporterPipelineContext;
@@ -59,7 +78,6 @@ import com.norconex.collector.core.spoil.ISpoiledReferenceStrategizer;
 import com.norconex.collector.core.spoil.SpoiledReferenceStrategy;
 import com.norconex.collector.core.spoil.impl.GenericSpoiledReferenceStrategizer;
 import com.norconex.committer.core.ICommitter;
-import com.norconex.commons.lang.Sleeper;
 import com.norconex.commons.lang.file.FileUtil;
 import com.norconex.commons.lang.io.CachedStreamFactory;
 import com.norconex.commons.lang.time.DurationUtil;
@@ -94,7 +112,13 @@ public abstract class AbstractCrawler
 
     private static final int DOUBLE_PROGRESS_SCALE = 4;
     private static final int DOUBLE_PERCENT_SCALE = -2;
-    private static final int MINIMUM_DELAY = 1;
+    // Longest an idle crawler thread waits before looking for work again
+    // without being told to
+    private static final long IDLE_WAIT = 100;
+    private static final int QUEUE_BATCH_SIZE = 1000;
+    private static final int LEASE_SIZE = 10;
+    private static final int ORPHAN_BATCH_SIZE = 100;
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
     private static final long STATUS_LOGGING_INTERVAL = 
             TimeUnit.SECONDS.toMillis(5);
     
@@ -106,12 +130,31 @@ public abstract class AbstractCrawler
     private CachedStreamFactory streamFactory;
     
     private boolean stopped;
-    // This processedCount does not take into account alternate references such
+    // Counters do not take into account alternate references such
     // as redirects. It is a cleaner representation for end-users and speed 
     // things a bit bit not having to obtain that value from the database at 
     // every progress change.,
-    private int processedCount;
-    private long lastStatusLoggingTime;
+    private volatile CrawlerCounters counters = new CrawlerCounters(-1, 0);
+    private final WorkCoordinator workCoordinator = new WorkCoordinator();
+    // Number of crawler threads leasing references at once
+    private volatile int crawlerThreadCount;
+    private ExecutorService taskExecutor;
+    // Stages of the STAGED execution mode
+    private final List<ProcessingStage> stages = new ArrayList<>();
+    private ProcessingStage fetchStage;
+    private ProcessingStage importStage;
+    private ProcessingStage commitStage;
+    private ProcessingStage finalizeStage;
+    // References leased from the queue by each crawler thread, not yet
+    // processed. They remain "active" in the crawl data store until
+    // processed, so they get re-queued on resume if the crawler stops.
+    private final ThreadLocal<Deque<ICrawlData>> leasedCrawlDatas = 
+            new ThreadLocal<Deque<ICrawlData>>() {
+        @Override
+        protected Deque<ICrawlData> initialValue() {
+            return new ArrayDeque<>();
+        }
+    };
     
     /**
      * Constructor.
@@ -138,6 +181,7 @@ public abstract class AbstractCrawler
     public void stop(IJobStatus jobStatus, JobSuite suite) {
         fireCrawlerEvent(CrawlerEvent.CRAWLER_STOPPING, null, this);
         stopped = true;
+        workCoordinator.wakeAll();
         LOG.info(getId() + ": Stopping the crawler.");
     }
     
@@ -201,13 +245,22 @@ public abstract class AbstractCrawler
         
         StopWatch stopWatch = new StopWatch();
         stopWatch.start();
-        ICrawlDataStore crawlDataStore = createCrawlDataStore(resume);
+        ICrawlDataStore crawlDataStore = 
+                new WorkSignalingCrawlDataStore(createCrawlDataStore(resume));
         
         this.crawlerEventManager = new CrawlerEventManager(
                 this, getCrawlerConfig().getCrawlerListeners());
-        importer = new Importer(getCrawlerConfig().getImporterConfig());
+        if (getCrawlerConfig().getExecutionMode() == ExecutionMode.STAGED) {
+            createStages();
+            importer = new StagedImporter(
+                    getCrawlerConfig().getImporterConfig(), importStage);
+        } else {
+            importer = new Importer(getCrawlerConfig().getImporterConfig());
+        }
         streamFactory = importer.getStreamFactory();
-        processedCount = crawlDataStore.getProcessedCount();
+        counters = new CrawlerCounters(getCrawlerConfig().getMaxDocuments(),
+                crawlDataStore.getProcessedCount());
+        crawlerThreadCount = getCrawlerConfig().getNumThreads();
         if (Boolean.getBoolean("enableJMX")) {
             registerMonitoringMbean(crawlDataStore);
         }
@@ -224,8 +277,16 @@ public abstract class AbstractCrawler
             } else {
                 fireCrawlerEvent(CrawlerEvent.CRAWLER_STARTED, null, this);
             }
-            lastStatusLoggingTime = System.currentTimeMillis();
-            execute(statusUpdater, suite, crawlDataStore);
+            ProgressReporter progressReporter = 
+                    new ProgressReporter(statusUpdater, crawlDataStore);
+            ScheduledExecutorService progressScheduler = 
+                    startProgressReporting(progressReporter);
+            try {
+                execute(statusUpdater, suite, crawlDataStore);
+            } finally {
+                progressScheduler.shutdownNow();
+                progressReporter.run();
+            }
         } finally {
             stopWatch.stop();
             LOG.info(getId() + ": Crawler executed in "
@@ -234,14 +295,84 @@ public abstract class AbstractCrawler
             try {
                 cleanupExecution(statusUpdater, suite, crawlDataStore);
             } finally {
+                shutdownTaskExecutor();
+                shutdownStages();
                 crawlDataStore.close();
             }
         }
     }
     
+    private synchronized void shutdownTaskExecutor() {
+        if (taskExecutor != null) {
+            taskExecutor.shutdown();
+            taskExecutor = null;
+        }
+    }
+    
+    // Fetching and the other I/O-bound stages get as many threads as 
+    // crawler threads by default, while importing gets one per processor.
+    private void createStages() {
+        int numThreads = getCrawlerConfig().getNumThreads();
+        fetchStage = createStage("fetch", numThreads);
+        importStage = createStage("import", 
+                getCrawlerConfig().getStageImportThreads(), 
+                Runtime.getRuntime().availableProcessors());
+        commitStage = createStage("commit", 
+                getCrawlerConfig().getStageCommitThreads(), numThreads);
+        finalizeStage = createStage("finalize", 
+                getCrawlerConfig().getStageFinalizeThreads(), numThreads);
+    }
+    private ProcessingStage createStage(
+            String name, int threads, int defaultThreads) {
+        return createStage(name, threads > 0 ? threads : defaultThreads);
+    }
+    private ProcessingStage createStage(String name, int threads) {
+        int queueSize = getCrawlerConfig().getStageQueueSize();
+        ProcessingStage stage = new ProcessingStage(getId(), name, 
+                threads, queueSize > 0 ? queueSize : threads);
+        stages.add(stage);
+        return stage;
+    }
+
+    private void shutdownStages() {
+        for (ProcessingStage stage : stages) {
+            stage.shutdown();
+        }
+        stages.clear();
+    }
+    
     protected ICrawlDataStore createCrawlDataStore(boolean resume) {
-        return config.getCrawlDataStoreFactory().createCrawlDataStore(
-                config, resume);
+        ICrawlDataStore store = 
+                config.getCrawlDataStoreFactory().createCrawlDataStore(
+                        config, resume);
+        if (config.isCrawlDataStoreMetricsEnabled()) {
+            store = new MeteredCrawlDataStore(store);
+        }
+        if (config.getWriteBehindBufferSize() > 0) {
+            store = new WriteBehindCrawlDataStore(
+                    store, config.getWriteBehindBufferSize());
+        }
+        if (config.getSeenReferencesFilterSize() > 0) {
+            File filterFile = new File(config.getWorkDir(), 
+                    "crawlstore/bloom/" 
+                  + FileUtil.toSafeFileName(config.getId()) + ".bloom");
+            store = new BloomFilterCrawlDataStore(store, filterFile,
+                    config.getSeenReferencesFilterSize(),
+                    config.getSeenReferencesFilterFalsePositiveRate(), 
+                    resume);
+        }
+        if (isHostPolitenessEnabled()) {
+            store = new PolitenessCrawlDataStore(store,
+                    config.getHostMaxConcurrency(), config.getHostDelay(),
+                    Math.max(PolitenessCrawlDataStore.DEFAULT_BUFFER_SIZE,
+                            config.getNumThreads() * LEASE_SIZE));
+        }
+        return store;
+    }
+
+    private boolean isHostPolitenessEnabled() {
+        return config.getHostMaxConcurrency() > 0
+                || config.getHostDelay() > 0;
     }
     
     protected abstract void prepareExecution(
@@ -274,7 +405,10 @@ public abstract class AbstractCrawler
             committer.commit();
         }
 
-        LOG.info(getId() + ": " + processedCount + " reference(s) processed.");
+        LOG.info(getId() + ": " + counters.getProcessedCount()
+                + " reference(s) processed.");
+        LOG.info(getId() + ": References processed per crawl state: "
+                + counters.getStateCounts());
 
         LOG.debug(getId() + ": Removing empty directories");
         FileUtil.deleteEmptyDirs(getCrawlerDownloadDir());
@@ -312,12 +446,21 @@ public abstract class AbstractCrawler
     }
     
     protected boolean isMaxDocuments() {
-        return getCrawlerConfig().getMaxDocuments() > -1 
-                && processedCount >= getCrawlerConfig().getMaxDocuments();
+        return counters.isMaxDocumentsReached();
+    }
+
+    /**
+     * Gets the counts of references processed by this crawler so far.
+     * They can be read at any time, without locking.
+     * @return crawler counters
+     * @since 1.9.2
+     */
+    public CrawlerCounters getCrawlerCounters() {
+        return counters;
     }
 
     protected void reprocessCacheOrphans(
-            ICrawlDataStore crawlDataStore, 
+            final ICrawlDataStore crawlDataStore, 
             JobStatusUpdater statusUpdater, JobSuite suite) {
         if (isMaxDocuments()) {
             LOG.info(getId() + ": Max documents reached. "
@@ -326,14 +469,16 @@ public abstract class AbstractCrawler
         }
         LOG.info(getId() + ": Reprocessing any cached/orphan references...");
         
-        long count = 0;
-        Iterator<ICrawlData> it = crawlDataStore.getCacheIterator();
-        if (it != null) {
-            while (it.hasNext()) {
-                ICrawlData crawlData = it.next();
-                executeQueuePipeline(crawlData, crawlDataStore);
-                count++;
+        long count = forEachCachedBatch(crawlDataStore, ORPHAN_BATCH_SIZE,
+                new CachedBatchHandler() {
+            @Override
+            public void handle(List<ICrawlData> batch) {
+                for (ICrawlData crawlData : batch) {
+                    executeQueuePipeline(crawlData, crawlDataStore);
+                }
             }
+        });
+        if (count > 0) {
             ImporterPipelineContext contextPrototype = 
                     new ImporterPipelineContext(this, crawlDataStore);
             contextPrototype.setOrphan(true);
@@ -346,16 +491,17 @@ public abstract class AbstractCrawler
     protected abstract void executeQueuePipeline(
             ICrawlData crawlData, ICrawlDataStore crawlDataStore);
     
-    protected void deleteCacheOrphans(ICrawlDataStore crawlDataStore, 
+    protected void deleteCacheOrphans(final ICrawlDataStore crawlDataStore, 
             JobStatusUpdater statusUpdater, JobSuite suite) {
         LOG.info(getId() + ": Deleting orphan references (if any)...");
-        long count = 0;
-        Iterator<ICrawlData> it = crawlDataStore.getCacheIterator();
-        if (it != null && it.hasNext()) {
-            while (it.hasNext()) {
-                crawlDataStore.queue(it.next());
-                count++;
+        long count = forEachCachedBatch(crawlDataStore, QUEUE_BATCH_SIZE,
+                new CachedBatchHandler() {
+            @Override
+            public void handle(List<ICrawlData> batch) {
+                crawlDataStore.queueAll(batch);
             }
+        });
+        if (count > 0) {
             ImporterPipelineContext contextPrototype = 
                     new ImporterPipelineContext(this, crawlDataStore);
             contextPrototype.setDelete(true);
@@ -365,66 +511,475 @@ public abstract class AbstractCrawler
     }
     
     
+    // Cached references are read in batches handed to as many threads
+    // as the crawler has, so they are handled while the cache is read.
+    // Returns how many were handled.
+    private long forEachCachedBatch(ICrawlDataStore crawlDataStore,
+            final int batchSize, final CachedBatchHandler handler) {
+        final Iterator<ICrawlData> it = crawlDataStore.getCacheIterator();
+        if (it == null) {
+            return 0;
+        }
+        final AtomicLong count = new AtomicLong();
+        int numThreads = getCrawlerConfig().getNumThreads();
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        List<Future<?>> futures = new ArrayList<>(numThreads);
+        try {
+            for (int i = 0; i < numThreads; i++) {
+                futures.add(pool.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        List<ICrawlData> batch = new ArrayList<>(batchSize);
+                        do {
+                            batch.clear();
+                            synchronized (it) {
+                                while (batch.size() < batchSize
+                                        && it.hasNext()) {
+                                    batch.add(it.next());
+                                }
+                            }
+                            if (!batch.isEmpty()) {
+                                handler.handle(batch);
+                                count.addAndGet(batch.size());
+                            }
+                        } while (batch.size() == batchSize);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CollectorException(e);
+        } catch (ExecutionException e) {
+            throw new CollectorException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return count.get();
+    }
+    
     protected void processReferences(
             final JobStatusUpdater statusUpdater, 
             final JobSuite suite,
             final ImporterPipelineContext contextPrototype) {
 
+        if (getCrawlerConfig().getExecutionMode() == ExecutionMode.TASKS) {
+            processReferenceTasks(statusUpdater, suite, contextPrototype);
+            return;
+        }
+        if (getCrawlerConfig().getExecutionMode() == ExecutionMode.STAGED) {
+            processReferenceStages(statusUpdater, suite, contextPrototype);
+            return;
+        }
     
         int numThreads = getCrawlerConfig().getNumThreads();
-        final CountDownLatch latch = new CountDownLatch(numThreads);
-        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
-
-        for (int i = 0; i < numThreads; i++) {
-            final int threadIndex = i + 1;
-            LOG.debug(getId() 
-                    + ": Crawler thread #" + threadIndex + " started.");
-            pool.execute(new ProcessReferencesRunnable(
-                    suite, statusUpdater, latch, contextPrototype));
+        CrawlerThreads threads = new CrawlerThreads(
+                suite, statusUpdater, contextPrototype);
+        ScheduledExecutorService tuningScheduler = null;
+        if (getCrawlerConfig().getThreadTuningMaxThreads() > 0) {
+            ThreadCountTuner tuner = new ThreadCountTuner(
+                    getCrawlerConfig().getThreadTuningMinThreads(), 
+                    getCrawlerConfig().getThreadTuningMaxThreads(), 
+                    numThreads);
+            numThreads = tuner.getThreadCount();
+            tuningScheduler = startThreadTuning(threads, 
+                    tuner, contextPrototype.getCrawlDataStore());
         }
 
         try {
-            latch.await();
-            pool.shutdown();
+            threads.setThreadCount(numThreads);
+            threads.await();
         } catch (InterruptedException e) {
              Thread.currentThread().interrupt();
              throw new CollectorException(e);
+        } finally {
+            if (tuningScheduler != null) {
+                tuningScheduler.shutdownNow();
+            }
         }
     }
+
+    private ScheduledExecutorService startThreadTuning(
+            CrawlerThreads threads, ThreadCountTuner tuner, 
+            ICrawlDataStore crawlStore) {
+        ScheduledExecutorService scheduler = 
+                newDaemonScheduler(getId() + "-threadTuning");
+        long interval = Math.max(1, 
+                getCrawlerConfig().getThreadTuningInterval());
+        scheduler.scheduleWithFixedDelay(
+                new ThreadTuning(threads, tuner, crawlStore), 
+                interval, interval, TimeUnit.MILLISECONDS);
+        return scheduler;
+    }
+
+    // Crawler threads only count references processed. Progress is
+    // computed and reported from those counts by a separate thread.
+    private ScheduledExecutorService startProgressReporting(
+            ProgressReporter progressReporter) {
+        ScheduledExecutorService scheduler = 
+                newDaemonScheduler(getId() + "-progress");
+        long interval = Math.max(1, getCrawlerConfig().getProgressInterval());
+        scheduler.scheduleWithFixedDelay(progressReporter, 
+                interval, interval, TimeUnit.MILLISECONDS);
+        return scheduler;
+    }
+
+    private static ScheduledExecutorService newDaemonScheduler(
+            final String threadName) {
+        return Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, threadName);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    // Process CPU load from 0 to 1, or a negative value if unknown.
+    // Read as a JMX attribute since not all JVMs provide it.
+    private static double getProcessCpuLoad() {
+        try {
+            Object load = ManagementFactory.getPlatformMBeanServer()
+                    .getAttribute(new ObjectName(
+                            ManagementFactory.OPERATING_SYSTEM_MXBEAN_NAME),
+                            "ProcessCpuLoad");
+            if (load instanceof Number) {
+                return ((Number) load).doubleValue();
+            }
+        } catch (JMException e) {
+            LOG.debug("Process CPU load is not available.", e);
+        }
+        return -1;
+    }
  
     // return <code>true</code> if more references to process
     protected boolean processNextReference(
             final JobStatusUpdater statusUpdater, 
             final ImporterPipelineContext context) {
-        if (!context.isDelete() && isMaxDocuments()) {
-            LOG.info(getId() + ": Maximum documents reached: " 
-                    + getCrawlerConfig().getMaxDocuments());
+        if (isMaxDocumentsReached(context)) {
             return false;
         }
         ICrawlDataStore crawlStore = context.getCrawlDataStore();
         
-        BaseCrawlData queuedCrawlData = (BaseCrawlData) crawlStore.nextQueued();
+        long signals = workCoordinator.getSignalCount();
+        BaseCrawlData queuedCrawlData = leaseNextReference(
+                crawlStore, context, Math.max(1, crawlerThreadCount));
         context.setCrawlData(queuedCrawlData);
         
+        if (queuedCrawlData != null) {
+            processLeasedReference(context);
+        } else {
+            return !isMaxDocumentsReached(context) 
+                    && awaitWork(crawlStore, signals);
+        }
+        return true;
+    }
+
+    // Already leased references are processed regardless, so they 
+    // do not stay active.
+    private boolean isMaxDocumentsReached(ImporterPipelineContext context) {
+        if (!context.isDelete() && isMaxDocuments() 
+                && leasedCrawlDatas.get().isEmpty()) {
+            LOG.info(getId() + ": Maximum documents reached: " 
+                    + getCrawlerConfig().getMaxDocuments());
+            return true;
+        }
+        return false;
+    }
+
+    // Gets the next reference leased by the current thread, leasing more
+    // from the queue when none are left. "leasers" is how many threads
+    // lease references at once. Each reference leased takes a permit
+    // from the counters, so no more than the maximum number of documents
+    // get processed. References being deleted are processed regardless.
+    private BaseCrawlData leaseNextReference(ICrawlDataStore crawlStore,
+            ImporterPipelineContext context, int leasers) {
+        Deque<ICrawlData> leased = leasedCrawlDatas.get();
+        if (leased.isEmpty()) {
+            int size = getLeaseSize(crawlStore, context, leasers);
+            List<ICrawlData> next;
+            if (context.isDelete()) {
+                next = crawlStore.nextQueued(size);
+                counters.forceReserve(next.size());
+            } else {
+                int permits = counters.reserve(size);
+                if (permits == 0) {
+                    return null;
+                }
+                next = crawlStore.nextQueued(permits);
+                counters.release(permits - next.size());
+            }
+            workCoordinator.leased(next.size());
+            leased.addAll(next);
+        }
+        BaseCrawlData queuedCrawlData = (BaseCrawlData) leased.poll();
         if (LOG.isTraceEnabled()) {
             LOG.trace(getId() + " Processing next reference from Queue: " 
                     + queuedCrawlData);
         }
-        if (queuedCrawlData != null) {
-            StopWatch watch = null;
-            if (LOG.isDebugEnabled()) {
-                watch = new StopWatch();
-                watch.start();
-            }
+        return queuedCrawlData;
+    }
+
+    // References still leased by the current thread are not processed: 
+    // they are no longer in flight and give back their permits.
+    private void releaseLeasedReferences() {
+        int count = leasedCrawlDatas.get().size();
+        workCoordinator.done(count);
+        counters.release(count);
+        leasedCrawlDatas.remove();
+    }
+
+    private void processLeasedReference(ImporterPipelineContext context) {
+        StopWatch watch = null;
+        if (LOG.isDebugEnabled()) {
+            watch = new StopWatch();
+            watch.start();
+        }
+        try {
             processNextQueuedCrawlData(context);
-            setProgress(statusUpdater, crawlStore);
-            if (LOG.isDebugEnabled()) {
-                watch.stop();
-                LOG.debug(getId() + ": " + watch.toString() 
-                        + " to process: " + queuedCrawlData.getReference());
+        } finally {
+            workCoordinator.done(1);
+        }
+        if (LOG.isDebugEnabled()) {
+            watch.stop();
+            LOG.debug(getId() + ": " + watch.toString() + " to process: " 
+                    + context.getCrawlData().getReference());
+        }
+    }
+
+    // A single thread leases references and hands each one to a task,
+    // with at most as many tasks running as there are crawler threads.
+    private void processReferenceTasks(
+            final JobStatusUpdater statusUpdater, 
+            final JobSuite suite,
+            final ImporterPipelineContext contextPrototype) {
+        int maxTasks = getCrawlerConfig().getNumThreads();
+        final Semaphore permits = new Semaphore(maxTasks);
+        ICrawlDataStore crawlStore = contextPrototype.getCrawlDataStore();
+        ExecutorService executor = getTaskExecutor();
+        final String jobId = statusUpdater.getJobId();
+        try {
+            while (!isStopped()) {
+                permits.acquire();
+                final ImporterPipelineContext context = 
+                        new ImporterPipelineContext(contextPrototype);
+                if (isMaxDocumentsReached(context)) {
+                    permits.release();
+                    break;
+                }
+                long signals = workCoordinator.getSignalCount();
+                BaseCrawlData queuedCrawlData = 
+                        leaseNextReference(crawlStore, context, 1);
+                if (queuedCrawlData == null) {
+                    permits.release();
+                    if (isMaxDocumentsReached(context) 
+                            || !awaitWork(crawlStore, signals)) {
+                        break;
+                    }
+                    continue;
+                }
+                context.setCrawlData(queuedCrawlData);
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        JobSuite.setCurrentJobId(jobId);
+                        try {
+                            processLeasedReference(context);
+                        } catch (Exception e) {
+                            LOG.fatal(getId() + ": "
+                                + "An error occured that could compromise "
+                                + "the stability of the crawler. Stopping "
+                                + "excution to avoid further issues...", e);
+                            stop(suite.getJobStatus(suite.getRootJob()), 
+                                    suite);
+                        } finally {
+                            permits.release();
+                        }
+                    }
+                });
             }
-        } else {
-            int activeCount = crawlStore.getActiveCount();
+            // Wait for running tasks to be done
+            permits.acquire(maxTasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CollectorException(e);
+        } finally {
+            releaseLeasedReferences();
+        }
+    }
+
+    // A single thread leases references and hands them over to the 
+    // fetch stage, which waits when stages are full.
+    private void processReferenceStages(
+            JobStatusUpdater statusUpdater, 
+            JobSuite suite,
+            ImporterPipelineContext contextPrototype) {
+        ICrawlDataStore crawlStore = contextPrototype.getCrawlDataStore();
+        try {
+            while (!isStopped()) {
+                ImporterPipelineContext context = 
+                        new ImporterPipelineContext(contextPrototype);
+                if (isMaxDocumentsReached(context)) {
+                    break;
+                }
+                long signals = workCoordinator.getSignalCount();
+                BaseCrawlData queuedCrawlData = 
+                        leaseNextReference(crawlStore, context, 1);
+                if (queuedCrawlData == null) {
+                    if (isMaxDocumentsReached(context) 
+                            || !awaitWork(crawlStore, signals)) {
+                        break;
+                    }
+                    continue;
+                }
+                context.setCrawlData(queuedCrawlData);
+                fetchStage.submit(new StagedWork(
+                        new StagedReference(context, suite)) {
+                    @Override
+                    protected boolean process(StagedReference ref) {
+                        return fetchStaged(ref);
+                    }
+                });
+            }
+            // Stages only hand over to the following ones, so once a
+            // stage is idle, nothing more will reach the next one.
+            fetchStage.awaitIdle();
+            commitStage.awaitIdle();
+            finalizeStage.awaitIdle();
+        } finally {
+            releaseLeasedReferences();
+        }
+    }
+
+    // Fetch stage: runs the importer pipeline, which imports documents 
+    // on the import stage. Returns true if handed over to another stage.
+    private boolean fetchStaged(final StagedReference ref) {
+        ImporterPipelineContext context = ref.context;
+        prepareDocument(context);
+        try {
+            if (context.isDelete()) {
+                deleteReference(context.getCrawlData(), context.getDocument());
+            } else {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(getId() + ": Processing reference: " 
+                            + context.getCrawlData().getReference());
+                }
+                ref.response = executeImporterPipeline(context);
+                if (ref.response == null 
+                        && context.getCrawlData().getState().isNewOrModified()) {
+                    context.getCrawlData().setState(CrawlState.REJECTED);
+                }
+            }
+        } catch (Throwable e) {
+            handleProcessingError(context, e);
+            return false;
+        }
+        if (ref.response == null) {
+            ref.finalizations.add(context);
+            return handOverFinalization(ref);
+        }
+        commitStage.submit(new StagedWork(ref) {
+            @Override
+            protected boolean process(StagedReference ref) {
+                return commitStaged(ref);
+            }
+        });
+        return true;
+    }
+    
+    // Commit stage: commits the imported document and its embedded ones
+    private boolean commitStaged(StagedReference ref) {
+        ImporterPipelineContext context = ref.context;
+        try {
+            commitStagedResponse(ref.response, context.getCrawlDataStore(),
+                    context.getCrawlData(), context.getCachedCrawlData(), 
+                    ref.finalizations);
+        } catch (Throwable e) {
+            if (ref.finalizations.isEmpty()) {
+                handleProcessingError(context, e);
+                return false;
+            }
+            // Only an embedded document error meant to stop the crawler
+            // gets here. Committed documents are finalized first.
+            finalizeStaged(ref);
+            throw e;
+        }
+        return handOverFinalization(ref);
+    }
+    private void commitStagedResponse(
+            ImporterResponse response, 
+            ICrawlDataStore crawlDataStore,
+            BaseCrawlData crawlData,
+            BaseCrawlData cachedCrawlData,
+            List<ImporterPipelineContext> finalizations) {
+        commitImportResponse(
+                response, crawlDataStore, crawlData, cachedCrawlData);
+        finalizations.add(new ImporterPipelineContext(this, crawlDataStore, 
+                crawlData, cachedCrawlData, response.getDocument()));
+        for (ImporterResponse child : response.getNestedResponses()) {
+            // Embedded documents count as processed, whatever the maximum
+            counters.forceReserve(1);
+            BaseCrawlData embeddedCrawlData = createEmbeddedCrawlData(
+                    child.getReference(), crawlData);
+            BaseCrawlData embeddedCachedCrawlData = 
+                    (BaseCrawlData) crawlDataStore.getCached(
+                            child.getReference());
+            // An embedded document error does not affect the documents
+            // already committed: only that one is finalized as an error.
+            try {
+                commitStagedResponse(child, crawlDataStore, 
+                        embeddedCrawlData, embeddedCachedCrawlData, 
+                        finalizations);
+            } catch (Throwable e) {
+                handleProcessingError(new ImporterPipelineContext(
+                        this, crawlDataStore, embeddedCrawlData, 
+                        embeddedCachedCrawlData, child.getDocument()), e);
+            }
+        }
+    }
+
+    // Finalize stage: marks references as processed
+    private boolean handOverFinalization(StagedReference ref) {
+        finalizeStage.submit(new StagedWork(ref) {
+            @Override
+            protected boolean process(StagedReference ref) {
+                finalizeStaged(ref);
+                return false;
+            }
+        });
+        return true;
+    }
+    private void finalizeStaged(StagedReference ref) {
+        for (ImporterPipelineContext ctx : ref.finalizations) {
+            finalizeDocumentProcessing(ctx.getCrawlData(), 
+                    ctx.getCrawlDataStore(), ctx.getDocument(), 
+                    ctx.getCachedCrawlData());
+        }
+    }
+
+    // Tasks threads are kept for the whole crawler execution, since
+    // references are processed more than once per execution (e.g. orphans)
+    private synchronized ExecutorService getTaskExecutor() {
+        if (taskExecutor == null) {
+            taskExecutor = Executors.newCachedThreadPool();
+        }
+        return taskExecutor;
+    }
+
+    // Waits for other threads to queue references or be done with
+    // theirs, instead of polling the crawl data store. The store is only
+    // checked when no references are in flight in this crawler.
+    // Returns false when there is nothing left to process.
+    private boolean awaitWork(ICrawlDataStore crawlStore, long signals) {
+        try {
+            if (workCoordinator.awaitWork(signals, IDLE_WAIT)) {
+                return true;
+            }
+            long activeCount = crawlStore.getActiveCount();
             boolean queueEmpty = crawlStore.isQueueEmpty();
             if (LOG.isTraceEnabled()) {
                 LOG.trace(getId() 
@@ -435,11 +990,35 @@ public abstract class AbstractCrawler
             if (activeCount == 0 && queueEmpty) {
                 return false;
             }
-            Sleeper.sleepMillis(MINIMUM_DELAY);
+            // References are active or queued outside this crawler's 
+            // threads (e.g. held back by host politeness), so we wait.
+            workCoordinator.awaitSignal(signals, IDLE_WAIT);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CollectorException(e);
         }
-        return true;
     }
     
+    // Leases are kept small enough for all threads to get a share of the
+    // queue and of the permits left for the maximum number of documents.
+    // With host politeness, references are leased one at a time so they
+    // are not held by a thread busy with another host.
+    private int getLeaseSize(ICrawlDataStore crawlStore, 
+            ImporterPipelineContext context, int leasers) {
+        if (isHostPolitenessEnabled()) {
+            return 1;
+        }
+        long size = Math.min(
+                LEASE_SIZE, crawlStore.getQueueSize() / leasers);
+        int maxDocuments = getCrawlerConfig().getMaxDocuments();
+        if (!context.isDelete() && maxDocuments > -1) {
+            size = Math.min(size, 
+                    (maxDocuments - counters.getReservedCount()) / leasers);
+        }
+        return (int) Math.max(1, size);
+    }
+
     private void registerMonitoringMbean(ICrawlDataStore crawlDataStore) {
         try {
             MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
@@ -449,6 +1028,28 @@ public abstract class AbstractCrawler
             ObjectName name = new ObjectName(objName); 
             Monitoring mbean = new Monitoring(crawlDataStore); 
             mbs.registerMBean(mbean, name);
+            BloomFilterCrawlDataStore bloomStore = findCrawlDataStore(
+                    crawlDataStore, BloomFilterCrawlDataStore.class);
+            if (bloomStore != null) {
+                mbs.registerMBean(bloomStore, 
+                        new ObjectName(objName + ",name=seenReferences"));
+            }
+            MeteredCrawlDataStore meteredStore = findCrawlDataStore(
+                    crawlDataStore, MeteredCrawlDataStore.class);
+            if (meteredStore != null) {
+                for (OperationMetrics metrics 
+                        : meteredStore.getOperationMetrics()) {
+                    mbs.registerMBean(metrics, new ObjectName(objName 
+                            + ",name=crawlDataStore,operation=" 
+                            + metrics.getName()));
+                }
+            }
+            mbs.registerMBean(counters, 
+                    new ObjectName(objName + ",name=counters"));
+            for (ProcessingStage stage : stages) {
+                mbs.registerMBean(stage, new ObjectName(objName 
+                        + ",name=stage,stage=" + stage.getName()));
+            }
         } catch (MalformedObjectNameException | 
                  InstanceAlreadyExistsException | 
                  MBeanRegistrationException | 
@@ -457,37 +1058,18 @@ public abstract class AbstractCrawler
         }
     }
     
-    private void setProgress(
-            JobStatusUpdater statusUpdater, ICrawlDataStore db) {
-        int queued = db.getQueueSize();
-        int processed = processedCount;
-        int total = queued + processed;
-        
-        double progress = 0;
-        
-        if (total != 0) {
-            progress = BigDecimal.valueOf(processed)
-                    .divide(BigDecimal.valueOf(total), 
-                            DOUBLE_PROGRESS_SCALE, RoundingMode.DOWN)
-                    .doubleValue();
-        }
-        statusUpdater.setProgress(progress);
-
-        statusUpdater.setNote(
-                NumberFormat.getIntegerInstance().format(processed)
-                + " references processed out of "
-                + NumberFormat.getIntegerInstance().format(total));
-        
-        if (LOG.isInfoEnabled()) {
-            long currentTime = System.currentTimeMillis();
-            if (currentTime - lastStatusLoggingTime > STATUS_LOGGING_INTERVAL) {
-                lastStatusLoggingTime = currentTime;
-                int percent = BigDecimal.valueOf(progress).movePointLeft(
-                        DOUBLE_PERCENT_SCALE).intValue();
-                LOG.info(getId() + ": " + percent + "% completed (" 
-                        + processed + " processed/" + total + " total)");
-            }
+    // Finds a crawl data store of the given type among decorators
+    private <T extends ICrawlDataStore> T findCrawlDataStore(
+            ICrawlDataStore crawlDataStore, Class<T> type) {
+        ICrawlDataStore store = crawlDataStore;
+        while (!type.isInstance(store)
+                && store instanceof DelegatingCrawlDataStore) {
+            store = ((DelegatingCrawlDataStore) store).getDelegate();
+        }
+        if (type.isInstance(store)) {
+            return type.cast(store);
         }
+        return null;
     }
     
     //TODO given latest changes in implementing methods, shall we only consider
@@ -507,22 +1089,9 @@ public abstract class AbstractCrawler
         ICrawlDataStore crawlDataStore = context.getCrawlDataStore();
         
         String reference = crawlData.getReference();
-        ImporterDocument doc = wrapDocument(crawlData, new ImporterDocument(
-                crawlData.getReference(), getStreamFactory().newInputStream()));
-        context.setDocument(doc);
-        
-        //TODO create a composite object that has crawler, crawlData,
-        // cachedCrawlData, ... To reduce the number of arguments passed around.
-        // It could potentially be a base class for pipeline contexts too.
-        BaseCrawlData cachedCrawlData = 
-                (BaseCrawlData) crawlDataStore.getCached(reference);
-        context.setCachedCrawlData(cachedCrawlData);
-        
-        doc.getMetadata().setBoolean(
-                CollectorMetadata.COLLECTOR_IS_CRAWL_NEW, 
-                cachedCrawlData == null);
-
-        initCrawlData(crawlData, cachedCrawlData, doc);
+        prepareDocument(context);
+        ImporterDocument doc = context.getDocument();
+        BaseCrawlData cachedCrawlData = context.getCachedCrawlData();
 
         try {
             if (context.isDelete()) {
@@ -558,29 +1127,63 @@ public abstract class AbstractCrawler
                         crawlData, crawlDataStore, doc, cachedCrawlData);
             }
         } catch (Throwable e) {
-            //TODO do we really want to catch anything other than 
-            // HTTPFetchException?  In case we want special treatment to the 
-            // class?
-            crawlData.setState(CrawlState.ERROR);
-            fireCrawlerEvent(CrawlerEvent.REJECTED_ERROR, crawlData, e);
-            if (LOG.isDebugEnabled()) {
-                LOG.info(getId() + ": Could not process document: " + reference
-                        + " (" + e.getMessage() + ")", e);
-            } else {
-                LOG.info(getId() + ": Could not process document: " + reference
-                        + " (" + e.getMessage() + ")");
-            }
-            finalizeDocumentProcessing(
-                    crawlData, crawlDataStore, doc, cachedCrawlData);
-
-            // Rethrow exception is we want the crawler to stop
-            Class<? extends Exception>[] exceptionClasses = 
-                    config.getStopOnExceptions();
-            if (ArrayUtils.isNotEmpty(exceptionClasses)) {
-                for (Class<? extends Exception> c : exceptionClasses) {
-                    if (c.isAssignableFrom(e.getClass())) {
-                        throw e;
+            handleProcessingError(context, e);
+        }
+    }
+
+    private void prepareDocument(ImporterPipelineContext context) {
+        BaseCrawlData crawlData = context.getCrawlData();
+        String reference = crawlData.getReference();
+        ImporterDocument doc = wrapDocument(crawlData, new ImporterDocument(
+                crawlData.getReference(), getStreamFactory().newInputStream()));
+        context.setDocument(doc);
+        
+        //TODO create a composite object that has crawler, crawlData,
+        // cachedCrawlData, ... To reduce the number of arguments passed around.
+        // It could potentially be a base class for pipeline contexts too.
+        BaseCrawlData cachedCrawlData = (BaseCrawlData) 
+                context.getCrawlDataStore().getCached(reference);
+        context.setCachedCrawlData(cachedCrawlData);
+        
+        doc.getMetadata().setBoolean(
+                CollectorMetadata.COLLECTOR_IS_CRAWL_NEW, 
+                cachedCrawlData == null);
+
+        initCrawlData(crawlData, cachedCrawlData, doc);
+    }
+
+    private void handleProcessingError(
+            ImporterPipelineContext context, Throwable e) {
+        //TODO do we really want to catch anything other than 
+        // HTTPFetchException?  In case we want special treatment to the 
+        // class?
+        BaseCrawlData crawlData = context.getCrawlData();
+        String reference = crawlData.getReference();
+        crawlData.setState(CrawlState.ERROR);
+        fireCrawlerEvent(CrawlerEvent.REJECTED_ERROR, crawlData, e);
+        if (LOG.isDebugEnabled()) {
+            LOG.info(getId() + ": Could not process document: " + reference
+                    + " (" + e.getMessage() + ")", e);
+        } else {
+            LOG.info(getId() + ": Could not process document: " + reference
+                    + " (" + e.getMessage() + ")");
+        }
+        finalizeDocumentProcessing(crawlData, context.getCrawlDataStore(), 
+                context.getDocument(), context.getCachedCrawlData());
+
+        // Rethrow exception is we want the crawler to stop
+        Class<? extends Exception>[] exceptionClasses = 
+                config.getStopOnExceptions();
+        if (ArrayUtils.isNotEmpty(exceptionClasses)) {
+            for (Class<? extends Exception> c : exceptionClasses) {
+                if (c.isAssignableFrom(e.getClass())) {
+                    if (e instanceof RuntimeException) {
+                        throw (RuntimeException) e;
                     }
+                    if (e instanceof Error) {
+                        throw (Error) e;
+                    }
+                    throw new CollectorException(e);
                 }
             }
         }
@@ -593,6 +1196,30 @@ public abstract class AbstractCrawler
             BaseCrawlData cachedCrawlData) {
         
         ImporterDocument doc = response.getDocument();
+        commitImportResponse(
+                response, crawlDataStore, crawlData, cachedCrawlData);
+        finalizeDocumentProcessing(
+                crawlData, crawlDataStore, doc, cachedCrawlData);
+        ImporterResponse[] children = response.getNestedResponses();
+        for (ImporterResponse child : children) {
+            // Embedded documents count as processed, whatever the maximum
+            counters.forceReserve(1);
+            BaseCrawlData embeddedCrawlData = createEmbeddedCrawlData(
+                    child.getReference(), crawlData);
+            BaseCrawlData embeddedCachedCrawlData = 
+                    (BaseCrawlData) crawlDataStore.getCached(
+                            child.getReference());            
+            processImportResponse(child, crawlDataStore, 
+                    embeddedCrawlData, embeddedCachedCrawlData);
+        }
+    }
+
+    private void commitImportResponse(
+            ImporterResponse response, 
+            ICrawlDataStore crawlDataStore,
+            BaseCrawlData crawlData,
+            BaseCrawlData cachedCrawlData) {
+        ImporterDocument doc = response.getDocument();
         if (response.isSuccess()) {
             fireCrawlerEvent(
                     CrawlerEvent.DOCUMENT_IMPORTED, crawlData, response);
@@ -607,18 +1234,6 @@ public abstract class AbstractCrawler
                     + crawlData.getReference() + "\": "
                     + response.getImporterStatus().getDescription());
         }
-        finalizeDocumentProcessing(
-                crawlData, crawlDataStore, doc, cachedCrawlData);
-        ImporterResponse[] children = response.getNestedResponses();
-        for (ImporterResponse child : children) {
-            BaseCrawlData embeddedCrawlData = createEmbeddedCrawlData(
-                    child.getReference(), crawlData);
-            BaseCrawlData embeddedCachedCrawlData = 
-                    (BaseCrawlData) crawlDataStore.getCached(
-                            child.getReference());            
-            processImportResponse(child, crawlDataStore, 
-                    embeddedCrawlData, embeddedCachedCrawlData);
-        }
     }
     
    
@@ -704,10 +1319,13 @@ public abstract class AbstractCrawler
         }
         
         //--- Mark reference as Processed --------------------------------------
+        // The reference and its variations are written in a single batch
         try {
-            processedCount++;
-            store.processed(crawlData);
-            markReferenceVariationsAsProcessed(crawlData, store);
+            counters.processed(crawlData.getState());
+            CrawlDataUnitOfWork work = new CrawlDataUnitOfWork(store);
+            work.processed(crawlData);
+            markReferenceVariationsAsProcessed(crawlData, work);
+            work.commit();
         } catch (Exception e) {
             LOG.error(getId() + ": Could not mark reference as processed: " 
                     + crawlData.getReference()
@@ -794,28 +1412,39 @@ public abstract class AbstractCrawler
                 CrawlerEvent.DOCUMENT_COMMITTED_REMOVE, crawlData, doc);
     }
     
+    private interface CachedBatchHandler {
+        void handle(List<ICrawlData> batch);
+    }
+    
     private final class ProcessReferencesRunnable implements Runnable {
         private final ImporterPipelineContext importerContextPrototype;
         private final JobSuite suite;
         private final JobStatusUpdater statusUpdater;
-        private final CountDownLatch latch;
+        private final CrawlerThreads threads;
 
         private ProcessReferencesRunnable(
                 JobSuite suite, 
                 JobStatusUpdater statusUpdater,
-                CountDownLatch latch,
+                CrawlerThreads threads,
                 ImporterPipelineContext importerContextPrototype) {
             this.suite = suite;
             this.statusUpdater = statusUpdater;
-            this.latch = latch;
+            this.threads = threads;
             this.importerContextPrototype = importerContextPrototype;
         }        
         
         @Override
         public void run() {
             JobSuite.setCurrentJobId(statusUpdater.getJobId());
+            boolean retired = false;
             try {
                 while (!isStopped()) {
+                    // Leased references are processed before retiring
+                    if (leasedCrawlDatas.get().isEmpty() 
+                            && threads.retire()) {
+                        retired = true;
+                        break;
+                    }
                     try {
                         if (!processNextReference(statusUpdater, 
                                 new ImporterPipelineContext(
@@ -833,8 +1462,302 @@ public abstract class AbstractCrawler
             } catch (Exception e) {
                 LOG.error(getId() + ": Problem in thread execution.", e);
             } finally {
-                latch.countDown();
+                releaseLeasedReferences();
+                threads.exited(retired);
+            }
+        }
+    }
+
+    // Crawler threads of the THREADS execution mode. Their number can be
+    // changed while running: threads are added right away, or retire 
+    // once done with the references they leased. No threads are added
+    // once one of them is done because there is nothing left to process
+    // (or the crawler stopped).
+    private final class CrawlerThreads {
+        private final JobSuite suite;
+        private final JobStatusUpdater statusUpdater;
+        private final ImporterPipelineContext contextPrototype;
+        private final ExecutorService pool = Executors.newCachedThreadPool();
+        private final Object lock = new Object();
+        private int threadCount;
+        private int running;
+        private int retiring;
+        private int started;
+        private boolean finished;
+
+        private CrawlerThreads(JobSuite suite, 
+                JobStatusUpdater statusUpdater,
+                ImporterPipelineContext contextPrototype) {
+            this.suite = suite;
+            this.statusUpdater = statusUpdater;
+            this.contextPrototype = contextPrototype;
+        }
+
+        void setThreadCount(int threadCount) {
+            synchronized (lock) {
+                this.threadCount = threadCount;
+                crawlerThreadCount = threadCount;
+                while (!finished && running - retiring < threadCount) {
+                    running++;
+                    started++;
+                    LOG.debug(getId() 
+                            + ": Crawler thread #" + started + " started.");
+                    pool.execute(new ProcessReferencesRunnable(
+                            suite, statusUpdater, this, contextPrototype));
+                }
+            }
+        }
+
+        // Whether the calling thread should stop, to get down to the
+        // desired number of threads
+        boolean retire() {
+            synchronized (lock) {
+                if (running - retiring > threadCount) {
+                    retiring++;
+                    return true;
+                }
+                return false;
+            }
+        }
+
+        void exited(boolean retired) {
+            synchronized (lock) {
+                running--;
+                if (retired) {
+                    retiring--;
+                } else {
+                    finished = true;
+                }
+                lock.notifyAll();
+            }
+        }
+
+        void await() throws InterruptedException {
+            synchronized (lock) {
+                while (running > 0) {
+                    lock.wait();
+                }
+            }
+            pool.shutdown();
+        }
+    }
+
+    // Periodically adjusts the number of crawler threads from 
+    // throughput, CPU load and crawl data store latency (when recorded)
+    private final class ThreadTuning implements Runnable {
+        private final CrawlerThreads threads;
+        private final ThreadCountTuner tuner;
+        private final ICrawlDataStore crawlStore;
+        private final MeteredCrawlDataStore meteredStore;
+        private long lastTime = System.nanoTime();
+        private long lastProcessedCount = counters.getProcessedCount();
+        private long lastStoreCalls;
+        private double lastStoreTime;
+
+        private ThreadTuning(CrawlerThreads threads, 
+                ThreadCountTuner tuner, ICrawlDataStore crawlStore) {
+            this.threads = threads;
+            this.tuner = tuner;
+            this.crawlStore = crawlStore;
+            this.meteredStore = findCrawlDataStore(
+                    crawlStore, MeteredCrawlDataStore.class);
+            getStoreLatency();
+        }
+
+        @Override
+        public void run() {
+            try {
+                tune();
+            } catch (RuntimeException e) {
+                LOG.error(getId() + ": Could not tune crawler threads.", e);
+            }
+        }
+
+        private void tune() {
+            long now = System.nanoTime();
+            long count = counters.getProcessedCount();
+            double seconds = (now - lastTime) / (double) NANOS_PER_SECOND;
+            if (seconds <= 0) {
+                return;
+            }
+            double throughput = (count - lastProcessedCount) / seconds;
+            lastTime = now;
+            lastProcessedCount = count;
+            double cpuLoad = getProcessCpuLoad();
+            double storeLatency = getStoreLatency();
+
+            int previousCount = tuner.getThreadCount();
+            int threadCount = tuner.tune(throughput, cpuLoad, 
+                    storeLatency, crawlStore.isQueueEmpty());
+            if (threadCount == previousCount) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(getId() + ": Keeping " + threadCount 
+                            + " crawler threads (" + tuner.getReason() 
+                            + ").");
+                }
+                return;
+            }
+            LOG.info(getId() + ": Crawler threads adjusted from " 
+                    + previousCount + " to " + threadCount + " (" 
+                    + tuner.getReason() + ").");
+            threads.setThreadCount(threadCount);
+            fireCrawlerEvent(CrawlerEvent.CRAWLER_THREADS_ADJUSTED, null, 
+                    new ThreadCountAdjustment(previousCount, threadCount, 
+                            throughput, cpuLoad, storeLatency, 
+                            tuner.getReason()));
+        }
+
+        // Mean latency of store calls since last time, in milliseconds
+        private double getStoreLatency() {
+            if (meteredStore == null) {
+                return -1;
+            }
+            long calls = 0;
+            double time = 0;
+            for (OperationMetrics metrics 
+                    : meteredStore.getOperationMetrics()) {
+                calls += metrics.getCount();
+                time += metrics.getMeanLatency() * metrics.getCount();
+            }
+            long newCalls = calls - lastStoreCalls;
+            double newTime = time - lastStoreTime;
+            lastStoreCalls = calls;
+            lastStoreTime = time;
+            // Nothing new or metrics were reset
+            if (newCalls <= 0 || newTime < 0) {
+                return -1;
+            }
+            return newTime / newCalls;
+        }
+    }
+    
+    // A reference going through the stages of the STAGED execution mode
+    private static final class StagedReference {
+        private final ImporterPipelineContext context;
+        private final JobSuite suite;
+        private ImporterResponse response;
+        // Documents to finalize: the reference and its embedded ones
+        private final List<ImporterPipelineContext> finalizations = 
+                new ArrayList<>();
+        private StagedReference(
+                ImporterPipelineContext context, JobSuite suite) {
+            this.context = context;
+            this.suite = suite;
+        }
+    }
+
+    // Periodically reports progress to the job status from the counters
+    // and the queue size
+    private final class ProgressReporter implements Runnable {
+        private final JobStatusUpdater statusUpdater;
+        private final ICrawlDataStore crawlStore;
+        private long lastStatusLoggingTime = System.currentTimeMillis();
+
+        private ProgressReporter(
+                JobStatusUpdater statusUpdater, ICrawlDataStore crawlStore) {
+            this.statusUpdater = statusUpdater;
+            this.crawlStore = crawlStore;
+        }
+
+        @Override
+        public void run() {
+            try {
+                report();
+            } catch (RuntimeException e) {
+                LOG.error(getId() + ": Could not report progress.", e);
+            }
+        }
+
+        private void report() {
+            long queued = crawlStore.getQueueSize();
+            long processed = counters.getProcessedCount();
+            long total = queued + processed;
+            
+            double progress = 0;
+            
+            if (total != 0) {
+                progress = BigDecimal.valueOf(processed)
+                        .divide(BigDecimal.valueOf(total), 
+                                DOUBLE_PROGRESS_SCALE, RoundingMode.DOWN)
+                        .doubleValue();
+            }
+            statusUpdater.setProgress(progress);
+
+            statusUpdater.setNote(
+                    NumberFormat.getIntegerInstance().format(processed)
+                    + " references processed out of "
+                    + NumberFormat.getIntegerInstance().format(total));
+            
+            if (LOG.isInfoEnabled()) {
+                long currentTime = System.currentTimeMillis();
+                if (currentTime - lastStatusLoggingTime 
+                        > STATUS_LOGGING_INTERVAL) {
+                    lastStatusLoggingTime = currentTime;
+                    int percent = BigDecimal.valueOf(progress).movePointLeft(
+                            DOUBLE_PERCENT_SCALE).intValue();
+                    LOG.info(getId() + ": " + percent + "% completed (" 
+                            + processed + " processed/" + total + " total)");
+                }
+            }
+        }
+    }
+
+    // Processes a reference on a stage. Unless handed over to another
+    // stage, the crawler is then done with it.
+    private abstract class StagedWork implements Runnable {
+        private final StagedReference ref;
+        private StagedWork(StagedReference ref) {
+            this.ref = ref;
+        }
+        protected abstract boolean process(StagedReference ref);
+        @Override
+        public void run() {
+            boolean handedOver = false;
+            try {
+                handedOver = process(ref);
+            } catch (Exception e) {
+                LOG.fatal(getId() + ": "
+                    + "An error occured that could compromise "
+                    + "the stability of the crawler. Stopping "
+                    + "excution to avoid further issues...", e);
+                stop(ref.suite.getJobStatus(ref.suite.getRootJob()), 
+                        ref.suite);
+            } finally {
+                if (!handedOver) {
+                    workCoordinator.done(1);
+                }
+            }
+        }
+    }
+
+    // Tells idle crawler threads when references are queued
+    private final class WorkSignalingCrawlDataStore 
+            extends DelegatingCrawlDataStore {
+        private WorkSignalingCrawlDataStore(ICrawlDataStore delegate) {
+            super(delegate);
+        }
+        @Override
+        public void queue(ICrawlData crawlData) {
+            super.queue(crawlData);
+            workCoordinator.queued(1);
+        }
+        @Override
+        public void queueAll(Iterable<? extends ICrawlData> crawlDatas) {
+            super.queueAll(crawlDatas);
+            int count = 0;
+            for (Iterator<? extends ICrawlData> it = crawlDatas.iterator();
+                    it.hasNext(); it.next()) {
+                count++;
+            }
+            workCoordinator.queued(count);
+        }
+        @Override
+        public CrawlDataStage queueIfAbsent(ICrawlData crawlData) {
+            CrawlDataStage stage = super.queueIfAbsent(crawlData);
+            if (stage == null) {
+                workCoordinator.queued(1);
             }
+            return stage;
         }
     }
     
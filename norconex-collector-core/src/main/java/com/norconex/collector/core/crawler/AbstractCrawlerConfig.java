@@ -22,6 +22,7 @@ import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 import javax.xml.stream.XMLStreamException;
 
@@ -61,16 +62,51 @@ public abstract class AbstractCrawlerConfig implements ICrawlerConfig {
 
     private static final Logger LOG = LogManager.getLogger(
             AbstractCrawlerConfig.class);
+
+    /**
+     * Default "seen references" filter false positive probability.
+     * @since 1.9.2
+     */
+    public static final double 
+            DEFAULT_SEEN_REFERENCES_FILTER_FALSE_POSITIVE_RATE = 0.01;
+    /**
+     * Default interval between crawler thread tunings.
+     * @since 1.9.2
+     */
+    public static final long DEFAULT_THREAD_TUNING_INTERVAL = 
+            TimeUnit.SECONDS.toMillis(10);
+    /**
+     * Default interval between crawler progress reports.
+     * @since 1.9.2
+     */
+    public static final long DEFAULT_PROGRESS_INTERVAL = 
+            TimeUnit.SECONDS.toMillis(1);
     
     private String id;
     private int numThreads = 2;
     private File workDir = new File("./work");
     private int maxDocuments = -1;
     private OrphansStrategy orphansStrategy = OrphansStrategy.PROCESS;
+    private ExecutionMode executionMode = ExecutionMode.THREADS;
     private Class<? extends Exception>[] stopOnExceptions;
     
     private ICrawlDataStoreFactory crawlDataStoreFactory = 
             new MVStoreCrawlDataStoreFactory();
+    private long seenReferencesFilterSize;
+    private double seenReferencesFilterFalsePositiveRate = 
+            DEFAULT_SEEN_REFERENCES_FILTER_FALSE_POSITIVE_RATE;
+    private int hostMaxConcurrency;
+    private long hostDelay;
+    private boolean crawlDataStoreMetricsEnabled;
+    private int writeBehindBufferSize;
+    private int stageQueueSize;
+    private int stageImportThreads;
+    private int stageCommitThreads;
+    private int stageFinalizeThreads;
+    private int threadTuningMinThreads = 1;
+    private int threadTuningMaxThreads;
+    private long threadTuningInterval = DEFAULT_THREAD_TUNING_INTERVAL;
+    private long progressInterval = DEFAULT_PROGRESS_INTERVAL;
 
     private IReferenceFilter[] referenceFilters;
     private IMetadataFilter[] metadataFilters;
@@ -144,6 +180,23 @@ public abstract class AbstractCrawlerConfig implements ICrawlerConfig {
         this.orphansStrategy = orphansStrategy;
     }
 
+    /**
+     * @since 1.9.2
+     */
+    @Override
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+    /**
+     * Sets how crawler threads are used to process references.
+     * A <code>null</code> value is the same as <code>THREADS</code>.
+     * @param executionMode execution mode
+     * @since 1.9.2
+     */
+    public void setExecutionMode(ExecutionMode executionMode) {
+        this.executionMode = executionMode;
+    }
+
     /**
      * @since 1.9.0
      */
@@ -179,6 +232,253 @@ public abstract class AbstractCrawlerConfig implements ICrawlerConfig {
         this.crawlDataStoreFactory = crawlDataStoreFactory;
     }
 
+    /**
+     * @since 1.9.2
+     */
+    @Override
+    public long getSeenReferencesFilterSize() {
+        return seenReferencesFilterSize;
+    }
+    /**
+     * Sets the expected number of references the "seen references" filter
+     * is sized for.  Zero (default) disables the filter.
+     * Exceeding the expected number of references is not an error, but
+     * increases the false positive rate.
+     * @param seenReferencesFilterSize expected number of references
+     * @since 1.9.2
+     */
+    public void setSeenReferencesFilterSize(long seenReferencesFilterSize) {
+        this.seenReferencesFilterSize = seenReferencesFilterSize;
+    }
+
+    /**
+     * @since 1.9.2
+     */
+    @Override
+    public double getSeenReferencesFilterFalsePositiveRate() {
+        return seenReferencesFilterFalsePositiveRate;
+    }
+    /**
+     * Sets the targeted false positive probability of the
+     * "seen references" filter.  A lower rate requires more memory.
+     * @param falsePositiveRate false positive probability
+     *        (between 0 and 1, exclusively)
+     * @since 1.9.2
+     */
+    public void setSeenReferencesFilterFalsePositiveRate(
+            double falsePositiveRate) {
+        this.seenReferencesFilterFalsePositiveRate = falsePositiveRate;
+    }
+
+    /**
+     * @since 1.9.2
+     */
+    @Override
+    public int getHostMaxConcurrency() {
+        return hostMaxConcurrency;
+    }
+    /**
+     * Sets the maximum number of references of the same host processed
+     * at once.  Zero (default) means no limit.
+     * @param hostMaxConcurrency maximum number of references per host
+     * @since 1.9.2
+     */
+    public void setHostMaxConcurrency(int hostMaxConcurrency) {
+        this.hostMaxConcurrency = hostMaxConcurrency;
+    }
+
+    /**
+     * @since 1.9.2
+     */
+    @Override
+    public long getHostDelay() {
+        return hostDelay;
+    }
+    /**
+     * Sets the minimum delay between two references of the same host.
+     * Zero (default) means no delay.
+     * @param hostDelay delay in milliseconds
+     * @since 1.9.2
+     */
+    public void setHostDelay(long hostDelay) {
+        this.hostDelay = hostDelay;
+    }
+
+    /**
+     * @since 1.9.2
+     */
+    @Override
+    public boolean isCrawlDataStoreMetricsEnabled() {
+        return crawlDataStoreMetricsEnabled;
+    }
+    /**
+     * Sets whether to record the number of calls, failed calls and
+     * latencies of each crawl data store operation.
+     * @param enabled <code>true</code> to record crawl data store metrics
+     * @since 1.9.2
+     */
+    public void setCrawlDataStoreMetricsEnabled(boolean enabled) {
+        this.crawlDataStoreMetricsEnabled = enabled;
+    }
+
+    /**
+     * @since 1.9.2
+     */
+    @Override
+    public int getWriteBehindBufferSize() {
+        return writeBehindBufferSize;
+    }
+    /**
+     * Sets the maximum number of processed references waiting to be
+     * written to the crawl data store by a background thread.
+     * Zero (default) disables writing in the background.
+     * @param writeBehindBufferSize maximum number of references
+     * @since 1.9.2
+     */
+    public void setWriteBehindBufferSize(int writeBehindBufferSize) {
+        this.writeBehindBufferSize = writeBehindBufferSize;
+    }
+
+    /**
+     * @since 1.9.2
+     */
+    @Override
+    public int getStageQueueSize() {
+        return stageQueueSize;
+    }
+    /**
+     * Sets the maximum number of references waiting in each stage queue
+     * when using the <code>STAGED</code> execution mode.
+     * Zero (default) means as many as the stage threads.
+     * @param stageQueueSize queue size
+     * @since 1.9.2
+     */
+    public void setStageQueueSize(int stageQueueSize) {
+        this.stageQueueSize = stageQueueSize;
+    }
+
+    /**
+     * @since 1.9.2
+     */
+    @Override
+    public int getStageImportThreads() {
+        return stageImportThreads;
+    }
+    /**
+     * Sets the number of threads importing documents when using the
+     * <code>STAGED</code> execution mode.
+     * Zero (default) means one per processor.
+     * @param stageImportThreads number of threads
+     * @since 1.9.2
+     */
+    public void setStageImportThreads(int stageImportThreads) {
+        this.stageImportThreads = stageImportThreads;
+    }
+
+    /**
+     * @since 1.9.2
+     */
+    @Override
+    public int getStageCommitThreads() {
+        return stageCommitThreads;
+    }
+    /**
+     * Sets the number of threads committing documents when using the
+     * <code>STAGED</code> execution mode.
+     * Zero (default) means as many as crawler threads.
+     * @param stageCommitThreads number of threads
+     * @since 1.9.2
+     */
+    public void setStageCommitThreads(int stageCommitThreads) {
+        this.stageCommitThreads = stageCommitThreads;
+    }
+
+    /**
+     * @since 1.9.2
+     */
+    @Override
+    public int getStageFinalizeThreads() {
+        return stageFinalizeThreads;
+    }
+    /**
+     * Sets the number of threads finalizing document processing when
+     * using the <code>STAGED</code> execution mode.
+     * Zero (default) means as many as crawler threads.
+     * @param stageFinalizeThreads number of threads
+     * @since 1.9.2
+     */
+    public void setStageFinalizeThreads(int stageFinalizeThreads) {
+        this.stageFinalizeThreads = stageFinalizeThreads;
+    }
+
+    /**
+     * @since 1.9.2
+     */
+    @Override
+    public int getThreadTuningMinThreads() {
+        return threadTuningMinThreads;
+    }
+    /**
+     * Sets the minimum number of crawler threads when tuning their number
+     * while crawling. Default is 1.
+     * @param threadTuningMinThreads minimum number of threads
+     * @since 1.9.2
+     */
+    public void setThreadTuningMinThreads(int threadTuningMinThreads) {
+        this.threadTuningMinThreads = threadTuningMinThreads;
+    }
+
+    /**
+     * @since 1.9.2
+     */
+    @Override
+    public int getThreadTuningMaxThreads() {
+        return threadTuningMaxThreads;
+    }
+    /**
+     * Sets the maximum number of crawler threads when tuning their number
+     * while crawling. Zero (default) disables thread tuning.
+     * @param threadTuningMaxThreads maximum number of threads
+     * @since 1.9.2
+     */
+    public void setThreadTuningMaxThreads(int threadTuningMaxThreads) {
+        this.threadTuningMaxThreads = threadTuningMaxThreads;
+    }
+
+    /**
+     * @since 1.9.2
+     */
+    @Override
+    public long getThreadTuningInterval() {
+        return threadTuningInterval;
+    }
+    /**
+     * Sets how often the number of crawler threads is tuned, when
+     * enabled. Default is 10 seconds.
+     * @param threadTuningInterval interval in milliseconds
+     * @since 1.9.2
+     */
+    public void setThreadTuningInterval(long threadTuningInterval) {
+        this.threadTuningInterval = threadTuningInterval;
+    }
+
+    /**
+     * @since 1.9.2
+     */
+    @Override
+    public long getProgressInterval() {
+        return progressInterval;
+    }
+    /**
+     * Sets how often the crawler progress is reported to the job status.
+     * Default is 1 second.
+     * @param progressInterval interval in milliseconds
+     * @since 1.9.2
+     */
+    public void setProgressInterval(long progressInterval) {
+        this.progressInterval = progressInterval;
+    }
+
     @Override
     public ICrawlerEventListener[] getCrawlerListeners() {
         return ArrayUtils.clone(crawlerListeners);
@@ -284,6 +584,51 @@ public abstract class AbstractCrawlerConfig implements ICrawlerConfig {
                 writer.writeElementString(
                         "orphansStrategy", strategy.toString());
             }
+            ExecutionMode mode = getExecutionMode();
+            if (mode != null) {
+                writer.writeElementString("executionMode", mode.toString());
+            }
+
+            writer.writeStartElement("seenReferencesFilter");
+            writer.writeAttributeLong("size", getSeenReferencesFilterSize());
+            writer.writeAttributeDouble("falsePositiveRate", 
+                    getSeenReferencesFilterFalsePositiveRate());
+            writer.writeEndElement();
+
+            writer.writeStartElement("hostPoliteness");
+            writer.writeAttributeInteger(
+                    "maxConcurrency", getHostMaxConcurrency());
+            writer.writeAttributeLong("delay", getHostDelay());
+            writer.writeEndElement();
+
+            writer.writeStartElement("crawlDataStoreMetrics");
+            writer.writeAttributeBoolean(
+                    "enabled", isCrawlDataStoreMetricsEnabled());
+            writer.writeEndElement();
+
+            writer.writeStartElement("writeBehind");
+            writer.writeAttributeInteger(
+                    "bufferSize", getWriteBehindBufferSize());
+            writer.writeEndElement();
+
+            writer.writeStartElement("stagedExecution");
+            writer.writeAttributeInteger("queueSize", getStageQueueSize());
+            writer.writeAttributeInteger(
+                    "importThreads", getStageImportThreads());
+            writer.writeAttributeInteger(
+                    "commitThreads", getStageCommitThreads());
+            writer.writeAttributeInteger(
+                    "finalizeThreads", getStageFinalizeThreads());
+            writer.writeEndElement();
+
+            writer.writeStartElement("threadTuning");
+            writer.writeAttributeInteger(
+                    "minThreads", getThreadTuningMinThreads());
+            writer.writeAttributeInteger(
+                    "maxThreads", getThreadTuningMaxThreads());
+            writer.writeAttributeLong("interval", getThreadTuningInterval());
+            writer.writeEndElement();
+            writer.writeElementLong("progressInterval", getProgressInterval());
             writer.flush();
             
             writeObject(out, "crawlDataStoreFactory", 
@@ -327,6 +672,10 @@ public abstract class AbstractCrawlerConfig implements ICrawlerConfig {
             strategy = OrphansStrategy.valueOf(strategyStr.toUpperCase());
         }
         setOrphansStrategy(strategy);
+        String modeStr = xml.getString("executionMode", null);
+        if (StringUtils.isNotBlank(modeStr)) {
+            setExecutionMode(ExecutionMode.valueOf(modeStr.toUpperCase()));
+        }
         
         // Work directory
         File dir = workDir;
@@ -337,6 +686,51 @@ public abstract class AbstractCrawlerConfig implements ICrawlerConfig {
         setWorkDir(dir);
         setMaxDocuments(xml.getInt("maxDocuments", getMaxDocuments()));
 
+        //--- Seen References Filter -------------------------------------------
+        setSeenReferencesFilterSize(xml.getLong(
+                "seenReferencesFilter[@size]", getSeenReferencesFilterSize()));
+        setSeenReferencesFilterFalsePositiveRate(xml.getDouble(
+                "seenReferencesFilter[@falsePositiveRate]", 
+                getSeenReferencesFilterFalsePositiveRate()));
+
+        //--- Host Politeness --------------------------------------------------
+        setHostMaxConcurrency(xml.getInt(
+                "hostPoliteness[@maxConcurrency]", getHostMaxConcurrency()));
+        setHostDelay(XMLConfigurationUtil.getDuration(
+                xml, "hostPoliteness[@delay]", getHostDelay()));
+
+        //--- Crawl Data Store Metrics -----------------------------------------
+        setCrawlDataStoreMetricsEnabled(xml.getBoolean(
+                "crawlDataStoreMetrics[@enabled]", 
+                isCrawlDataStoreMetricsEnabled()));
+
+        //--- Write Behind -----------------------------------------------------
+        setWriteBehindBufferSize(xml.getInt(
+                "writeBehind[@bufferSize]", getWriteBehindBufferSize()));
+
+        //--- Staged Execution -------------------------------------------------
+        setStageQueueSize(xml.getInt(
+                "stagedExecution[@queueSize]", getStageQueueSize()));
+        setStageImportThreads(xml.getInt(
+                "stagedExecution[@importThreads]", getStageImportThreads()));
+        setStageCommitThreads(xml.getInt(
+                "stagedExecution[@commitThreads]", getStageCommitThreads()));
+        setStageFinalizeThreads(xml.getInt(
+                "stagedExecution[@finalizeThreads]", 
+                getStageFinalizeThreads()));
+
+        //--- Thread Tuning ----------------------------------------------------
+        setThreadTuningMinThreads(xml.getInt(
+                "threadTuning[@minThreads]", getThreadTuningMinThreads()));
+        setThreadTuningMaxThreads(xml.getInt(
+                "threadTuning[@maxThreads]", getThreadTuningMaxThreads()));
+        setThreadTuningInterval(XMLConfigurationUtil.getDuration(
+                xml, "threadTuning[@interval]", getThreadTuningInterval()));
+
+        //--- Progress ---------------------------------------------------------
+        setProgressInterval(XMLConfigurationUtil.getDuration(
+                xml, "progressInterval", getProgressInterval()));
+
         //--- Stop on Exceptions -----------------------------------------------
         Class<? extends Exception>[] stopExceptions =
                 loadStopOnExceptions(xml, "stopOnExceptions.exception");
@@ -539,7 +933,28 @@ public abstract class AbstractCrawlerConfig implements ICrawlerConfig {
                 .append(maxDocuments, castOther.maxDocuments)
                 .append(stopOnExceptions, castOther.stopOnExceptions)
                 .append(orphansStrategy, castOther.orphansStrategy)
+                .append(executionMode, castOther.executionMode)
                 .append(crawlDataStoreFactory, castOther.crawlDataStoreFactory)
+                .append(seenReferencesFilterSize, 
+                        castOther.seenReferencesFilterSize)
+                .append(seenReferencesFilterFalsePositiveRate, 
+                        castOther.seenReferencesFilterFalsePositiveRate)
+                .append(hostMaxConcurrency, castOther.hostMaxConcurrency)
+                .append(hostDelay, castOther.hostDelay)
+                .append(crawlDataStoreMetricsEnabled, 
+                        castOther.crawlDataStoreMetricsEnabled)
+                .append(writeBehindBufferSize, 
+                        castOther.writeBehindBufferSize)
+                .append(stageQueueSize, castOther.stageQueueSize)
+                .append(stageImportThreads, castOther.stageImportThreads)
+                .append(stageCommitThreads, castOther.stageCommitThreads)
+                .append(stageFinalizeThreads, castOther.stageFinalizeThreads)
+                .append(threadTuningMinThreads, 
+                        castOther.threadTuningMinThreads)
+                .append(threadTuningMaxThreads, 
+                        castOther.threadTuningMaxThreads)
+                .append(threadTuningInterval, castOther.threadTuningInterval)
+                .append(progressInterval, castOther.progressInterval)
                 .append(referenceFilters, castOther.referenceFilters)
                 .append(metadataFilters, castOther.metadataFilters)
                 .append(documentFilters, castOther.documentFilters)
@@ -561,7 +976,22 @@ public abstract class AbstractCrawlerConfig implements ICrawlerConfig {
                 .append(maxDocuments)
                 .append(stopOnExceptions)
                 .append(orphansStrategy)
+                .append(executionMode)
                 .append(crawlDataStoreFactory)
+                .append(seenReferencesFilterSize)
+                .append(seenReferencesFilterFalsePositiveRate)
+                .append(hostMaxConcurrency)
+                .append(hostDelay)
+                .append(crawlDataStoreMetricsEnabled)
+                .append(writeBehindBufferSize)
+                .append(stageQueueSize)
+                .append(stageImportThreads)
+                .append(stageCommitThreads)
+                .append(stageFinalizeThreads)
+                .append(threadTuningMinThreads)
+                .append(threadTuningMaxThreads)
+                .append(threadTuningInterval)
+                .append(progressInterval)
                 .append(referenceFilters)
                 .append(metadataFilters)
                 .append(documentFilters)
@@ -582,7 +1012,24 @@ public abstract class AbstractCrawlerConfig implements ICrawlerConfig {
                 .append("maxDocuments", maxDocuments)
                 .append("stopOnExceptions", stopOnExceptions)
                 .append("orphansStrategy", orphansStrategy)
+                .append("executionMode", executionMode)
                 .append("crawlDataStoreFactory", crawlDataStoreFactory)
+                .append("seenReferencesFilterSize", seenReferencesFilterSize)
+                .append("seenReferencesFilterFalsePositiveRate", 
+                        seenReferencesFilterFalsePositiveRate)
+                .append("hostMaxConcurrency", hostMaxConcurrency)
+                .append("hostDelay", hostDelay)
+                .append("crawlDataStoreMetricsEnabled", 
+                        crawlDataStoreMetricsEnabled)
+                .append("writeBehindBufferSize", writeBehindBufferSize)
+                .append("stageQueueSize", stageQueueSize)
+                .append("stageImportThreads", stageImportThreads)
+                .append("stageCommitThreads", stageCommitThreads)
+                .append("stageFinalizeThreads", stageFinalizeThreads)
+                .append("threadTuningMinThreads", threadTuningMinThreads)
+                .append("threadTuningMaxThreads", threadTuningMaxThreads)
+                .append("threadTuningInterval", threadTuningInterval)
+                .append("progressInterval", progressInterval)
                 .append("referenceFilters", referenceFilters)
                 .append("metadataFilters", metadataFilters)
                 .append("documentFilters", documentFilters)
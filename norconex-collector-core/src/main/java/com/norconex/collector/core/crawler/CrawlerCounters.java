@@ -0,0 +1,203 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.crawler;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import com.norconex.collector.core.data.CrawlState;
+
+/**
+ * <p>Counts of references processed by a crawler, in total and for each
+ * crawl state. Crawler threads update them without locking, and they
+ * can be read the same way at any time (e.g., from crawler event 
+ * listeners, or through JMX when enabled).</p>
+ * <p>They also hand out permits for processing references, so the 
+ * maximum number of documents is never exceeded: a reference is taken 
+ * from the queue only after reserving a permit, and a permit not used
+ * is released. Some references do not wait for a permit (e.g., embedded 
+ * documents or references being deleted) but still take one, since they
+ * count as processed.</p>
+ * @author Pascal Essiembre
+ * @since 1.9.2
+ */
+public class CrawlerCounters implements CrawlerCountersMBean {
+
+    private final int maxDocuments;
+    private final long initialProcessedCount;
+    private final StripedCounter processed = new StripedCounter();
+    private final ConcurrentMap<String, StripedCounter> states = 
+            new ConcurrentHashMap<>();
+    private final AtomicLong reserved;
+
+    /**
+     * Creates crawler counters.
+     * @param maxDocuments maximum number of documents (-1 for unlimited)
+     * @param initialProcessedCount number of references already 
+     *        processed (e.g., when resuming)
+     */
+    public CrawlerCounters(int maxDocuments, long initialProcessedCount) {
+        this.maxDocuments = maxDocuments;
+        this.initialProcessedCount = initialProcessedCount;
+        this.reserved = new AtomicLong(initialProcessedCount);
+    }
+
+    public int getMaxDocuments() {
+        return maxDocuments;
+    }
+
+    /**
+     * Counts a processed reference.
+     * @param state the reference crawl state
+     */
+    public void processed(CrawlState state) {
+        processed.increment();
+        if (state != null) {
+            StripedCounter counter = states.get(state.toString());
+            if (counter == null) {
+                counter = new StripedCounter();
+                StripedCounter existing = 
+                        states.putIfAbsent(state.toString(), counter);
+                if (existing != null) {
+                    counter = existing;
+                }
+            }
+            counter.increment();
+        }
+    }
+
+    @Override
+    public long getProcessedCount() {
+        return initialProcessedCount + processed.sum();
+    }
+
+    /**
+     * Gets the number of references processed in this execution with
+     * the given crawl state.
+     * @param state crawl state
+     * @return number of references
+     */
+    public long getCount(CrawlState state) {
+        StripedCounter counter = states.get(state.toString());
+        if (counter == null) {
+            return 0;
+        }
+        return counter.sum();
+    }
+    @Override
+    public long getNewCount() {
+        return getCount(CrawlState.NEW);
+    }
+    @Override
+    public long getModifiedCount() {
+        return getCount(CrawlState.MODIFIED);
+    }
+    @Override
+    public long getUnmodifiedCount() {
+        return getCount(CrawlState.UNMODIFIED);
+    }
+    @Override
+    public long getRejectedCount() {
+        return getCount(CrawlState.REJECTED);
+    }
+    @Override
+    public long getErrorCount() {
+        return getCount(CrawlState.ERROR);
+    }
+    @Override
+    public long getDeletedCount() {
+        return getCount(CrawlState.DELETED);
+    }
+    @Override
+    public Map<String, Long> getStateCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<String, StripedCounter> en : states.entrySet()) {
+            counts.put(en.getKey(), en.getValue().sum());
+        }
+        return counts;
+    }
+
+    @Override
+    public long getReservedCount() {
+        return reserved.get();
+    }
+
+    /**
+     * Reserves up to the given number of permits to process references,
+     * without exceeding the maximum number of documents.
+     * @param count number of permits wanted
+     * @return number of permits obtained, zero when the maximum number
+     *         of documents is reached
+     */
+    public int reserve(int count) {
+        if (maxDocuments < 0) {
+            reserved.addAndGet(count);
+            return count;
+        }
+        while (true) {
+            long current = reserved.get();
+            int granted = (int) Math.min(count, maxDocuments - current);
+            if (granted <= 0) {
+                return 0;
+            }
+            if (reserved.compareAndSet(current, current + granted)) {
+                return granted;
+            }
+        }
+    }
+
+    /**
+     * Takes permits even if it exceeds the maximum number of documents,
+     * for references that have to be processed regardless.
+     * @param count number of permits
+     */
+    public void forceReserve(int count) {
+        reserved.addAndGet(count);
+    }
+
+    /**
+     * Gives back permits for references that will not be processed.
+     * @param count number of permits
+     */
+    public void release(int count) {
+        reserved.addAndGet(-count);
+    }
+
+    /**
+     * Gets whether all permits up to the maximum number of documents 
+     * were handed out.
+     * @return <code>true</code> if the maximum number of documents is
+     *         reached
+     */
+    public boolean isMaxDocumentsReached() {
+        return maxDocuments > -1 && reserved.get() >= maxDocuments;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("processedCount", getProcessedCount())
+                .append("stateCounts", getStateCounts())
+                .append("reservedCount", getReservedCount())
+                .append("maxDocuments", maxDocuments)
+                .toString();
+    }
+}
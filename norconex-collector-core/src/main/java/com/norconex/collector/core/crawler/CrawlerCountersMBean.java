@@ -0,0 +1,54 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.crawler;
+
+import java.util.Map;
+
+/**
+ * JMX monitoring of the references processed by a crawler.
+ * @author Pascal Essiembre
+ * @since 1.9.2
+ */
+public interface CrawlerCountersMBean {
+
+    /**
+     * Gets the number of references processed, including those
+     * processed before resuming.
+     * @return number of references
+     */
+    long getProcessedCount();
+
+    long getNewCount();
+    long getModifiedCount();
+    long getUnmodifiedCount();
+    long getRejectedCount();
+    long getErrorCount();
+    long getDeletedCount();
+
+    /**
+     * Gets the number of references processed in this execution for 
+     * each crawl state.
+     * @return counts per crawl state
+     */
+    Map<String, Long> getStateCounts();
+
+    /**
+     * Gets the number of references processed or being processed, 
+     * which can reach but never exceed the maximum number of documents
+     * for references taken from the queue.
+     * @return number of references
+     */
+    long getReservedCount();
+}
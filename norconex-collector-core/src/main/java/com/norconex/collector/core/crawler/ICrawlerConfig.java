@@ -52,6 +52,32 @@ public interface ICrawlerConfig extends IXMLConfigurable {
          */
         IGNORE
     }
+
+    /**
+     * How crawler threads are used to process references.
+     * @since 1.9.2
+     */
+    enum ExecutionMode {
+        /**
+         * Each crawler thread takes references from the queue and
+         * processes them one after the other.
+         */
+        THREADS,
+        /**
+         * A single thread takes references from the queue and hands
+         * each of them to a task of its own. Tasks run on a pool of
+         * threads kept for the whole crawler execution, with as many
+         * tasks running at once as there are crawler threads.
+         */
+        TASKS,
+        /**
+         * References go through stages, each with its own threads,
+         * handing them over to the next stage through a bounded queue:
+         * fetching (crawler threads), importing (CPU-bound, about one
+         * thread per processor), committing and finalizing.
+         */
+        STAGED
+    }
     
     /**
      * Gets this crawler unique identifier.  Using usual names is
@@ -73,6 +99,15 @@ public interface ICrawlerConfig extends IXMLConfigurable {
      */
     int getNumThreads();
 
+    /**
+     * Gets how crawler threads are used to process references.
+     * Unless stated otherwise by implementing classes, the default
+     * is <code>THREADS</code>.
+     * @return execution mode
+     * @since 1.9.2
+     */
+    ExecutionMode getExecutionMode();
+
     /**
      * Gets the maximum number of documents that can be processed.
      * @return maximum number of documents that can be processed
@@ -125,6 +160,130 @@ public interface ICrawlerConfig extends IXMLConfigurable {
      * @return crawl data store factory.
      */
     ICrawlDataStoreFactory getCrawlDataStoreFactory();
+
+    /**
+     * Gets the expected number of references the "seen references" filter
+     * is sized for. When greater than zero, a Bloom filter is kept in
+     * memory to tell which references were never encountered without
+     * querying the crawl data store.
+     * @return expected number of references, or zero if disabled
+     * @since 1.9.2
+     */
+    long getSeenReferencesFilterSize();
+
+    /**
+     * Gets the targeted false positive probability of the
+     * "seen references" filter, that is, the probability a reference never
+     * encountered is still looked up in the crawl data store.
+     * @return false positive probability (between 0 and 1, exclusively)
+     * @since 1.9.2
+     */
+    double getSeenReferencesFilterFalsePositiveRate();
+
+    /**
+     * Gets the maximum number of references of the same host processed
+     * at once. When greater than zero, or when a host delay is set,
+     * queued references are handed out to crawler threads round-robin
+     * across hosts.
+     * @return maximum number of references per host, or zero for no limit
+     * @since 1.9.2
+     */
+    int getHostMaxConcurrency();
+
+    /**
+     * Gets the minimum delay between two references of the same host.
+     * @return delay in milliseconds, or zero for no delay
+     * @since 1.9.2
+     */
+    long getHostDelay();
+
+    /**
+     * Gets whether to record the number of calls, failed calls and
+     * latencies of each crawl data store operation. Metrics are logged
+     * when the crawler ends and are available through JMX when enabled.
+     * @return <code>true</code> if crawl data store metrics are recorded
+     * @since 1.9.2
+     */
+    boolean isCrawlDataStoreMetricsEnabled();
+
+    /**
+     * Gets the maximum number of references waiting in each stage queue
+     * when using the <code>STAGED</code> execution mode.
+     * @return queue size, or zero for as many as the stage threads
+     * @since 1.9.2
+     */
+    int getStageQueueSize();
+
+    /**
+     * Gets the number of threads importing documents when using the
+     * <code>STAGED</code> execution mode.
+     * @return number of threads, or zero for one per processor
+     * @since 1.9.2
+     */
+    int getStageImportThreads();
+
+    /**
+     * Gets the number of threads committing documents when using the
+     * <code>STAGED</code> execution mode.
+     * @return number of threads, or zero for as many as crawler threads
+     * @since 1.9.2
+     */
+    int getStageCommitThreads();
+
+    /**
+     * Gets the number of threads finalizing document processing (e.g.,
+     * marking references as processed) when using the <code>STAGED</code>
+     * execution mode.
+     * @return number of threads, or zero for as many as crawler threads
+     * @since 1.9.2
+     */
+    int getStageFinalizeThreads();
+
+    /**
+     * Gets the minimum number of crawler threads when tuning their number
+     * while crawling.
+     * @return minimum number of threads
+     * @since 1.9.2
+     */
+    int getThreadTuningMinThreads();
+
+    /**
+     * Gets the maximum number of crawler threads when tuning their number
+     * while crawling. When greater than zero, the number of crawler
+     * threads (with the <code>THREADS</code> execution mode) starts at
+     * {@link #getNumThreads()} and is adjusted periodically, within
+     * minimum and maximum, based on throughput, CPU usage and (when 
+     * recorded) crawl data store latency.
+     * @return maximum number of threads, or zero to not tune threads
+     * @since 1.9.2
+     */
+    int getThreadTuningMaxThreads();
+
+    /**
+     * Gets how often the number of crawler threads is tuned, when
+     * enabled.
+     * @return interval in milliseconds
+     * @since 1.9.2
+     */
+    long getThreadTuningInterval();
+
+    /**
+     * Gets how often the crawler progress is reported to the job status,
+     * from the number of references processed and queued.
+     * @return interval in milliseconds
+     * @since 1.9.2
+     */
+    long getProgressInterval();
+
+    /**
+     * Gets the maximum number of processed references waiting to be
+     * written to the crawl data store. When greater than zero, processed
+     * references are written in bulk by a background thread instead of
+     * by crawler threads.
+     * @return maximum number of references, or zero if disabled
+     * @since 1.9.2
+     */
+    int getWriteBehindBufferSize();
     
     /**
      * Gets crawler event listeners.
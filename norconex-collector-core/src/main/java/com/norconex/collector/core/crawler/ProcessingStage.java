@@ -0,0 +1,223 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.crawler;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import com.norconex.collector.core.CollectorException;
+import com.norconex.jef4.suite.JobSuite;
+
+/**
+ * A processing stage of the <code>STAGED</code> execution mode: a fixed
+ * number of threads taking work from a bounded queue. Handing work over
+ * to a stage with a full queue waits for room, so a slow stage slows
+ * down the ones before it instead of piling up references in memory.
+ * @author Pascal Essiembre
+ */
+final class ProcessingStage implements ProcessingStageMBean {
+
+    private final String name;
+    private final int threadCount;
+    private final int queueCapacity;
+    private final ThreadPoolExecutor executor;
+    // Room for one reference per thread plus the queue
+    private final Semaphore room;
+    private final ThreadLocal<Boolean> stageThread = new ThreadLocal<>();
+    private final AtomicLong busyNanos = new AtomicLong();
+    private final AtomicLong completedCount = new AtomicLong();
+    private final long startNanos = System.nanoTime();
+    private final Object idleLock = new Object();
+    private int pending;
+
+    ProcessingStage(final String crawlerId, final String name, 
+            int threadCount, int queueCapacity) {
+        this.name = name;
+        this.threadCount = threadCount;
+        this.queueCapacity = queueCapacity;
+        this.room = new Semaphore(threadCount + queueCapacity);
+        this.executor = new ThreadPoolExecutor(threadCount, threadCount, 
+                0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), 
+                new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, crawlerId + "-" + name + "-" 
+                        + count.incrementAndGet());
+            }
+        });
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+    @Override
+    public int getThreadCount() {
+        return threadCount;
+    }
+    @Override
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+    @Override
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+    @Override
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+    @Override
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+    @Override
+    public double getUtilization() {
+        long elapsed = System.nanoTime() - startNanos;
+        if (elapsed <= 0) {
+            return 0;
+        }
+        return Math.min(1d, 
+                busyNanos.get() / ((double) elapsed * threadCount));
+    }
+
+    /**
+     * Hands over work to this stage, waiting for room if its queue
+     * is full.
+     * @param work the work to run on one of this stage threads
+     */
+    void submit(final Runnable work) {
+        try {
+            room.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CollectorException(
+                    "Interrupted while waiting for stage: " + name, e);
+        }
+        synchronized (idleLock) {
+            pending++;
+        }
+        final String jobId = JobSuite.getCurrentJobId();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    JobSuite.setCurrentJobId(jobId);
+                    stageThread.set(Boolean.TRUE);
+                    long start = System.nanoTime();
+                    try {
+                        work.run();
+                    } finally {
+                        busyNanos.addAndGet(System.nanoTime() - start);
+                        completedCount.incrementAndGet();
+                        done();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            done();
+            throw e;
+        }
+    }
+
+    /**
+     * Runs work on this stage and waits for its result. Work already
+     * running on this stage threads is run right away.
+     * @param work the work to run on one of this stage threads
+     * @return work result
+     */
+    <T> T call(Callable<T> work) {
+        if (stageThread.get() != null) {
+            try {
+                return work.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CollectorException(e);
+            }
+        }
+        FutureTask<T> task = new FutureTask<>(work);
+        submit(task);
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            task.cancel(true);
+            throw new CollectorException(
+                    "Interrupted while waiting for stage: " + name, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new CollectorException(cause);
+        }
+    }
+
+    /**
+     * Waits until all work handed over to this stage is done.
+     */
+    void awaitIdle() {
+        synchronized (idleLock) {
+            while (pending > 0) {
+                try {
+                    idleLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CollectorException(
+                            "Interrupted while waiting for stage: " + name, e);
+                }
+            }
+        }
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    private void done() {
+        room.release();
+        synchronized (idleLock) {
+            pending--;
+            if (pending == 0) {
+                idleLock.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("name", name)
+                .append("threadCount", threadCount)
+                .append("queueCapacity", queueCapacity)
+                .toString();
+    }
+}
@@ -0,0 +1,61 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.crawler;
+
+/**
+ * JMX monitoring of one processing stage when crawling with the
+ * <code>STAGED</code> execution mode.
+ * @author Pascal Essiembre
+ * @since 1.9.2
+ */
+public interface ProcessingStageMBean {
+
+    String getName();
+
+    int getThreadCount();
+
+    /**
+     * Gets the number of threads currently busy.
+     * @return number of busy threads
+     */
+    int getActiveCount();
+
+    /**
+     * Gets the maximum number of references waiting in this stage queue.
+     * When full, previous stages wait for room before handing over 
+     * references.
+     * @return queue capacity
+     */
+    int getQueueCapacity();
+
+    /**
+     * Gets the number of references waiting in this stage queue.
+     * @return queue depth
+     */
+    int getQueueDepth();
+
+    /**
+     * Gets the number of references this stage is done with.
+     * @return number of references
+     */
+    long getCompletedCount();
+
+    /**
+     * Gets the portion of time this stage threads were busy since
+     * the stage was created, from 0 (always idle) to 1 (always busy).
+     * @return utilization
+     */
+    double getUtilization();
+}
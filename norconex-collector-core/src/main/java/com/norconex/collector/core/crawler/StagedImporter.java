@@ -0,0 +1,54 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.crawler;
+
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+
+import com.norconex.commons.lang.file.ContentType;
+import com.norconex.commons.lang.map.Properties;
+import com.norconex.importer.Importer;
+import com.norconex.importer.ImporterConfig;
+import com.norconex.importer.response.ImporterResponse;
+
+/**
+ * Importer running imports on the import stage of the 
+ * <code>STAGED</code> execution mode, so the number of documents parsed
+ * at once is bound to the import stage threads whatever the number of 
+ * threads fetching them.
+ * @author Pascal Essiembre
+ */
+final class StagedImporter extends Importer {
+
+    private final ProcessingStage stage;
+
+    StagedImporter(ImporterConfig importerConfig, ProcessingStage stage) {
+        super(importerConfig);
+        this.stage = stage;
+    }
+
+    @Override
+    public ImporterResponse importDocument(final InputStream input, 
+            final ContentType contentType, final String contentEncoding, 
+            final Properties metadata, final String reference) {
+        return stage.call(new Callable<ImporterResponse>() {
+            @Override
+            public ImporterResponse call() {
+                return StagedImporter.super.importDocument(input, 
+                        contentType, contentEncoding, metadata, reference);
+            }
+        });
+    }
+}
@@ -0,0 +1,55 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.crawler;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter spread over several cells so threads incrementing it at 
+ * the same time rarely update the same one, which would have them 
+ * retry and fight over the same cache line. Reading it sums all cells:
+ * it is not a snapshot, but never misses increments completed before 
+ * reading started.
+ * @author Pascal Essiembre
+ */
+final class StripedCounter {
+
+    // Cells are this many longs apart to be on separate cache lines
+    private static final int PADDING = 8;
+    private static final int STRIPES = Integer.highestOneBit(
+            Math.max(1, Runtime.getRuntime().availableProcessors()) 
+                    * 2 - 1) << 1;
+
+    private final AtomicLongArray cells = 
+            new AtomicLongArray(STRIPES * PADDING);
+
+    void increment() {
+        add(1);
+    }
+
+    void add(long delta) {
+        long id = Thread.currentThread().getId();
+        int stripe = (int) ((id ^ (id >>> 16)) & (STRIPES - 1));
+        cells.getAndAdd(stripe * PADDING, delta);
+    }
+
+    long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+}
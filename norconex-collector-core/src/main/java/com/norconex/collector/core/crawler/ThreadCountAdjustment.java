@@ -0,0 +1,93 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.crawler;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import com.norconex.collector.core.crawler.event.CrawlerEvent;
+
+/**
+ * A change in the number of crawler threads made while crawling, 
+ * with the measures that lead to it. Subject of 
+ * {@link CrawlerEvent#CRAWLER_THREADS_ADJUSTED} events.
+ * @author Pascal Essiembre
+ * @since 1.9.2
+ */
+public class ThreadCountAdjustment {
+
+    private final int previousThreadCount;
+    private final int threadCount;
+    private final double throughput;
+    private final double cpuLoad;
+    private final double storeLatency;
+    private final String reason;
+
+    public ThreadCountAdjustment(int previousThreadCount, int threadCount,
+            double throughput, double cpuLoad, double storeLatency, 
+            String reason) {
+        this.previousThreadCount = previousThreadCount;
+        this.threadCount = threadCount;
+        this.throughput = throughput;
+        this.cpuLoad = cpuLoad;
+        this.storeLatency = storeLatency;
+        this.reason = reason;
+    }
+
+    public int getPreviousThreadCount() {
+        return previousThreadCount;
+    }
+    public int getThreadCount() {
+        return threadCount;
+    }
+    /**
+     * Gets the number of references processed per second since the 
+     * previous measure.
+     * @return throughput
+     */
+    public double getThroughput() {
+        return throughput;
+    }
+    /**
+     * Gets the process CPU load, from 0 to 1.
+     * @return CPU load, or a negative value if unknown
+     */
+    public double getCpuLoad() {
+        return cpuLoad;
+    }
+    /**
+     * Gets the mean crawl data store latency since the previous measure.
+     * Only known when crawl data store metrics are enabled.
+     * @return latency in milliseconds, or a negative value if unknown
+     */
+    public double getStoreLatency() {
+        return storeLatency;
+    }
+    public String getReason() {
+        return reason;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("previousThreadCount", previousThreadCount)
+                .append("threadCount", threadCount)
+                .append("throughput", throughput)
+                .append("cpuLoad", cpuLoad)
+                .append("storeLatency", storeLatency)
+                .append("reason", reason)
+                .toString();
+    }
+}
@@ -0,0 +1,143 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.crawler;
+
+/**
+ * <p>Decides how many crawler threads to use from periodic samples of
+ * throughput, CPU load and crawl data store latency.</p>
+ * <p>When the CPU is saturated or the store latency degrades to more
+ * than twice its best value, the number of threads is cut by a quarter
+ * (multiplicative decrease). Otherwise, threads are added one at a time
+ * for as long as it improves throughput (hill climbing). A thread added
+ * without improving throughput is removed, and one removed that way
+ * making throughput drop is added back. No threads are added when
+ * no references are waiting.</p>
+ * <p>Not thread-safe.</p>
+ * @author Pascal Essiembre
+ */
+final class ThreadCountTuner {
+
+    static final double CPU_SATURATION = 0.9;
+    // Throughput changes smaller than this ratio are not significant
+    static final double TOLERANCE = 0.05;
+    static final double LATENCY_DEGRADATION = 2;
+    // Latencies below this are too small to tell anything (milliseconds)
+    static final double MIN_LATENCY = 1;
+    private static final double DECREASE_FACTOR = 0.75;
+
+    private final int minThreads;
+    private final int maxThreads;
+    private int threadCount;
+    private int lastChange;
+    // Whether the last change was made to find better throughput
+    private boolean lastClimb;
+    private double lastThroughput = -1;
+    private double bestLatency = -1;
+    private String reason;
+
+    ThreadCountTuner(int minThreads, int maxThreads, int threadCount) {
+        this.minThreads = Math.max(1, minThreads);
+        this.maxThreads = Math.max(this.minThreads, maxThreads);
+        this.threadCount = clamp(threadCount);
+    }
+
+    int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Gets why the number of threads last changed (or not).
+     * @return reason
+     */
+    String getReason() {
+        return reason;
+    }
+
+    /**
+     * Adjusts the number of threads from a new sample.
+     * @param throughput references processed per second since the last
+     *        sample
+     * @param cpuLoad process CPU load from 0 to 1, or a negative value 
+     *        if unknown
+     * @param storeLatency mean crawl data store latency since the last
+     *        sample, in milliseconds, or a negative value if unknown
+     * @param starved whether there are no references waiting to be 
+     *        processed
+     * @return new number of threads
+     */
+    int tune(double throughput, 
+            double cpuLoad, double storeLatency, boolean starved) {
+        int previousCount = threadCount;
+        int change;
+        boolean climb = true;
+        if (cpuLoad >= CPU_SATURATION) {
+            change = decrease();
+            climb = false;
+            reason = "CPU saturated";
+        } else if (isLatencyDegraded(storeLatency)) {
+            change = decrease();
+            climb = false;
+            reason = "crawl data store latency degraded";
+        } else if (lastClimb && lastChange > 0 
+                && !isHigher(throughput, lastThroughput)) {
+            change = -lastChange;
+            reason = "throughput not improved by more threads";
+        } else if (lastClimb && lastChange < 0 
+                && isLower(throughput, lastThroughput)) {
+            change = -lastChange;
+            reason = "throughput dropped with less threads";
+        } else if (starved) {
+            change = 0;
+            reason = "no references waiting";
+        } else if (lastChange < 0) {
+            // Stay with less threads for one round before probing again
+            change = 0;
+            reason = "throughput stable with less threads";
+        } else {
+            change = 1;
+            reason = "probing for better throughput";
+        }
+        threadCount = clamp(threadCount + change);
+        lastChange = threadCount - previousCount;
+        lastClimb = climb;
+        lastThroughput = throughput;
+        if (storeLatency >= 0 
+                && (bestLatency < 0 || storeLatency < bestLatency)) {
+            bestLatency = storeLatency;
+        }
+        return threadCount;
+    }
+
+    private int decrease() {
+        return Math.min(-1, 
+                (int) (threadCount * DECREASE_FACTOR) - threadCount);
+    }
+
+    private boolean isLatencyDegraded(double storeLatency) {
+        return storeLatency >= MIN_LATENCY && bestLatency >= 0
+                && storeLatency > Math.max(MIN_LATENCY, bestLatency) 
+                        * LATENCY_DEGRADATION;
+    }
+    private boolean isHigher(double throughput, double previous) {
+        return throughput > previous * (1 + TOLERANCE);
+    }
+    private boolean isLower(double throughput, double previous) {
+        return throughput < previous * (1 - TOLERANCE);
+    }
+
+    private int clamp(int count) {
+        return Math.max(minThreads, Math.min(maxThreads, count));
+    }
+}
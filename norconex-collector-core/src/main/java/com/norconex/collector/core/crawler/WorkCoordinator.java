@@ -0,0 +1,169 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.crawler;
+
+/**
+ * Lets idle crawler threads wait for work instead of polling the crawl
+ * data store. It counts the references leased by crawler threads and not
+ * processed yet ("in flight"), and the number of times references were
+ * queued ("signals"). An idle thread waits until references are queued,
+ * until one in flight is done (it may have released something, such as
+ * a host slot) or until no references are in flight anymore, in which
+ * case the crawl may be over.
+ * @author Pascal Essiembre
+ */
+final class WorkCoordinator {
+
+    private final Object lock = new Object();
+    private long inFlight;
+    private long signals;
+    private int waiting;
+    // Waiting threads woken up to look for work once
+    private int wakeUps;
+
+    /**
+     * Gets the number of signals so far. To be obtained before looking
+     * for work, so signals sent in the meantime are not missed.
+     */
+    long getSignalCount() {
+        synchronized (lock) {
+            return signals;
+        }
+    }
+
+    long getInFlightCount() {
+        synchronized (lock) {
+            return inFlight;
+        }
+    }
+
+    void leased(int count) {
+        if (count <= 0) {
+            return;
+        }
+        synchronized (lock) {
+            inFlight += count;
+        }
+    }
+
+    /**
+     * Marks references in flight as done. Wakes up one waiting thread,
+     * or all of them if no references are in flight anymore.
+     * Unlike queuing references, this is not a signal: threads about to
+     * wait are not affected.
+     */
+    void done(int count) {
+        if (count <= 0) {
+            return;
+        }
+        synchronized (lock) {
+            inFlight = Math.max(0, inFlight - count);
+            if (inFlight == 0) {
+                lock.notifyAll();
+            } else if (waiting > wakeUps) {
+                wakeUps++;
+                lock.notify();
+            }
+        }
+    }
+
+    /**
+     * Signals references were queued, waking up as many waiting threads.
+     */
+    void queued(int count) {
+        if (count <= 0) {
+            return;
+        }
+        synchronized (lock) {
+            signals++;
+            for (int i = 0; i < Math.min(count, waiting); i++) {
+                lock.notify();
+            }
+        }
+    }
+
+    /**
+     * Wakes up all waiting threads.
+     */
+    void wakeAll() {
+        synchronized (lock) {
+            signals++;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Waits for a signal since the given signal count, as long as
+     * references are in flight.
+     * @param seenSignals signal count before looking for work
+     * @param timeout maximum time to wait, in milliseconds
+     * @return <code>false</code> if no references are in flight and
+     *         there were no signals
+     */
+    boolean awaitWork(long seenSignals, long timeout)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        synchronized (lock) {
+            waiting++;
+            try {
+                long remaining = timeout;
+                while (signals == seenSignals && wakeUps == 0
+                        && inFlight > 0 && remaining > 0) {
+                    lock.wait(remaining);
+                    remaining = deadline - System.currentTimeMillis();
+                }
+                if (wakeUps > 0) {
+                    wakeUps--;
+                }
+                return signals != seenSignals || inFlight > 0;
+            } finally {
+                waiting--;
+                if (waiting == 0) {
+                    wakeUps = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for a signal since the given signal count, whether references
+     * are in flight or not.
+     * @param seenSignals signal count before looking for work
+     * @param timeout maximum time to wait, in milliseconds
+     */
+    void awaitSignal(long seenSignals, long timeout)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        synchronized (lock) {
+            waiting++;
+            try {
+                long remaining = timeout;
+                while (signals == seenSignals && wakeUps == 0
+                        && remaining > 0) {
+                    lock.wait(remaining);
+                    remaining = deadline - System.currentTimeMillis();
+                }
+                if (wakeUps > 0) {
+                    wakeUps--;
+                }
+            } finally {
+                waiting--;
+                if (waiting == 0) {
+                    wakeUps = 0;
+                }
+            }
+        }
+    }
+}
@@ -51,6 +51,14 @@ public class CrawlerEvent {
      * @since 1.8.0
      */
     public static final String CRAWLER_STOPPED = "CRAWLER_STOPPED";
+    /**
+     * The number of crawler threads was changed while crawling. 
+     * The subject is a 
+     * {@link com.norconex.collector.core.crawler.ThreadCountAdjustment}.
+     * @since 1.9.2
+     */
+    public static final String CRAWLER_THREADS_ADJUSTED = 
+            "CRAWLER_THREADS_ADJUSTED";
     
     public static final String REJECTED_FILTER = "REJECTED_FILTER";
     public static final String REJECTED_UNMODIFIED = "REJECTED_UNMODIFIED";
@@ -14,10 +14,8 @@
  */
 package com.norconex.collector.core.data;
 
-import java.lang.reflect.InvocationTargetException;
 import java.util.Date;
 
-import org.apache.commons.beanutils.BeanUtils;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
@@ -150,12 +148,16 @@ public class BaseCrawlData implements ICrawlData {
 
     @Override
     public ICrawlData clone() {
+        // Field copy, much faster than copying bean properties. 
+        // Subclasses with mutable fields should copy them as well.
         try {
-            return (ICrawlData) BeanUtils.cloneBean(this);
-        } catch (IllegalAccessException | InstantiationException
-                | InvocationTargetException | NoSuchMethodException e) {
-            throw new CollectorException(
-                    "Cannot clone HttpDocReference: " + this, e);
+            BaseCrawlData clone = (BaseCrawlData) super.clone();
+            if (crawlDate != null) {
+                clone.crawlDate = new Date(crawlDate.getTime());
+            }
+            return clone;
+        } catch (CloneNotSupportedException e) {
+            throw new CollectorException("Cannot clone crawl data: " + this, e);
         }
     }
 
@@ -0,0 +1,126 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.codec;
+
+import com.norconex.collector.core.data.BaseCrawlData;
+import com.norconex.collector.core.data.store.CrawlDataStoreException;
+
+/**
+ * <p>Base codec for {@link BaseCrawlData} and its subclasses. It writes
+ * the {@link BaseCrawlData} fields preceded by their own version number,
+ * then invokes {@link #encodeFields(BaseCrawlData, CrawlDataOutput)}
+ * for subclasses to write theirs.</p>
+ * <p>Subclasses adding fields should likewise write a version number
+ * of their own first, so they can evolve independently from this class
+ * (see {@link CrawlDataCodecRegistry}).</p>
+ * @author Pascal Essiembre
+ * @param <T> crawl data type
+ * @since 1.9.2
+ */
+public abstract class AbstractCrawlDataCodec<T extends BaseCrawlData>
+        implements ICrawlDataCodec<T> {
+
+    /** Version of the {@link BaseCrawlData} fields format. */
+    public static final int BASE_FIELDS_VERSION = 1;
+
+    private static final int FLAG_ROOT_PARENT_REFERENCE = 1;
+    private static final int FLAG_CRAWL_DATE = 1 << 1;
+
+    private final Class<T> type;
+
+    public AbstractCrawlDataCodec(Class<T> type) {
+        super();
+        this.type = type;
+    }
+
+    @Override
+    public Class<T> getType() {
+        return type;
+    }
+
+    @Override
+    public final void encode(T crawlData, CrawlDataOutput out) {
+        out.writeVarInt(BASE_FIELDS_VERSION);
+        int flags = 0;
+        if (crawlData.isRootParentReference()) {
+            flags |= FLAG_ROOT_PARENT_REFERENCE;
+        }
+        if (crawlData.getCrawlDate() != null) {
+            flags |= FLAG_CRAWL_DATE;
+        }
+        out.writeByte(flags);
+        out.writeString(crawlData.getReference());
+        out.writeString(crawlData.getParentRootReference());
+        out.writeCrawlState(crawlData.getState());
+        out.writeString(crawlData.getMetaChecksum());
+        out.writeString(crawlData.getContentChecksum());
+        out.writeContentType(crawlData.getContentType());
+        if (crawlData.getCrawlDate() != null) {
+            out.writeDate(crawlData.getCrawlDate());
+        }
+        encodeFields(crawlData, out);
+    }
+
+    @Override
+    public final T decode(CrawlDataInput in) {
+        int version = in.readVarInt();
+        if (version > BASE_FIELDS_VERSION) {
+            throw new CrawlDataStoreException("Crawl data was encoded with "
+                    + "a newer format version (" + version + ") than "
+                    + "supported (" + BASE_FIELDS_VERSION + ").");
+        }
+        T crawlData = newCrawlData();
+        int flags = in.readByte();
+        crawlData.setRootParentReference(
+                (flags & FLAG_ROOT_PARENT_REFERENCE) != 0);
+        crawlData.setReference(in.readString());
+        crawlData.setParentRootReference(in.readString());
+        crawlData.setState(in.readCrawlState());
+        crawlData.setMetaChecksum(in.readString());
+        crawlData.setContentChecksum(in.readString());
+        crawlData.setContentType(in.readContentType());
+        if ((flags & FLAG_CRAWL_DATE) != 0) {
+            crawlData.setCrawlDate(in.readDate());
+        }
+        decodeFields(crawlData, in);
+        return crawlData;
+    }
+
+    /**
+     * Creates a new crawl data instance to decode into.
+     * @return crawl data
+     */
+    protected abstract T newCrawlData();
+
+    /**
+     * Writes fields specific to a {@link BaseCrawlData} subclass.
+     * Does nothing by default.
+     * @param crawlData the crawl data to encode
+     * @param out where to write
+     */
+    protected void encodeFields(T crawlData, CrawlDataOutput out) {
+        //NOOP
+    }
+    /**
+     * Reads fields specific to a {@link BaseCrawlData} subclass.
+     * Does nothing by default.
+     * @param crawlData the crawl data to decode into, with its
+     *        {@link BaseCrawlData} fields already set
+     * @param in where to read from
+     */
+    protected void decodeFields(T crawlData, CrawlDataInput in) {
+        //NOOP
+    }
+}
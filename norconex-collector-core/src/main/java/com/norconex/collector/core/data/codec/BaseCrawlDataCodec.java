@@ -0,0 +1,35 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.codec;
+
+import com.norconex.collector.core.data.BaseCrawlData;
+
+/**
+ * Codec for {@link BaseCrawlData} instances. Registered by default
+ * in {@link CrawlDataCodecRegistry}.
+ * @author Pascal Essiembre
+ * @since 1.9.2
+ */
+public class BaseCrawlDataCodec extends AbstractCrawlDataCodec<BaseCrawlData> {
+
+    public BaseCrawlDataCodec() {
+        super(BaseCrawlData.class);
+    }
+
+    @Override
+    protected BaseCrawlData newCrawlData() {
+        return new BaseCrawlData();
+    }
+}
@@ -0,0 +1,199 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.codec;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.SerializationException;
+import org.apache.commons.lang3.SerializationUtils;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import com.norconex.collector.core.data.ICrawlData;
+import com.norconex.collector.core.data.store.CrawlDataStoreException;
+
+/**
+ * <p>Registry of {@link ICrawlDataCodec} used by crawl data stores to
+ * encode {@link ICrawlData} in a compact binary form. Encoded crawl data
+ * is made of a format version byte, the identifier of the codec used,
+ * and what that codec wrote. Crawl data classes without a registered
+ * codec are encoded with Java serialization instead, so any
+ * {@link ICrawlData} can be stored. A {@link BaseCrawlDataCodec} is
+ * registered by default.</p>
+ *
+ * <h3>Schema evolution</h3>
+ * <p>Encoded crawl data can be kept across crawler upgrades, so the
+ * following rules apply when codecs change:</p>
+ * <ul>
+ *   <li>A codec identifier is tied to one crawl data class for good.
+ *       It must never be reused for another class, and
+ *       a removed codec identifier must never be reused.</li>
+ *   <li>Codecs write a version number before their fields. New fields
+ *       are only ever appended, along with a higher version number.
+ *       Decoding data of an older version leaves the new fields
+ *       to their default value.</li>
+ *   <li>Interned crawl states and content types are only ever appended
+ *       to. Any other value is written as a string.</li>
+ *   <li>Data written by a newer version than supported is rejected with
+ *       a {@link CrawlDataStoreException} rather than read incorrectly.
+ *       Downgrading a crawler therefore requires starting a fresh
+ *       crawl store.</li>
+ * </ul>
+ * <p>Identifiers below 100 are reserved for the Norconex Collector Core
+ * and collectors built on it.</p>
+ * @author Pascal Essiembre
+ * @since 1.9.2
+ */
+public class CrawlDataCodecRegistry {
+
+    /** Version of the encoded crawl data envelope. */
+    public static final int FORMAT_VERSION = 1;
+    /** Identifier for crawl data encoded with Java serialization. */
+    public static final int SERIALIZATION_CODEC_ID = 0;
+    /** Identifier of the default {@link BaseCrawlDataCodec}. */
+    public static final int BASE_CODEC_ID = 1;
+
+    private final Map<Integer, ICrawlDataCodec<?>> codecsById =
+            new ConcurrentHashMap<>();
+    private final Map<Class<?>, Integer> idsByType =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Creates a registry with a {@link BaseCrawlDataCodec} registered.
+     */
+    public CrawlDataCodecRegistry() {
+        super();
+        register(BASE_CODEC_ID, new BaseCrawlDataCodec());
+    }
+
+    /**
+     * Registers a codec under the given identifier, replacing any codec
+     * registered under the same identifier or for the same type.
+     * @param id codec identifier, greater than zero
+     * @param codec the codec
+     */
+    public synchronized void register(int id, ICrawlDataCodec<?> codec) {
+        if (id <= SERIALIZATION_CODEC_ID) {
+            throw new IllegalArgumentException(
+                    "Codec identifier must be greater than zero: " + id);
+        }
+        ICrawlDataCodec<?> previous = codecsById.remove(id);
+        if (previous != null) {
+            idsByType.remove(previous.getType());
+        }
+        Integer previousId = idsByType.remove(codec.getType());
+        if (previousId != null) {
+            codecsById.remove(previousId);
+        }
+        codecsById.put(id, codec);
+        idsByType.put(codec.getType(), id);
+    }
+
+    /**
+     * Gets the codec registered for the exact class of the given crawl
+     * data.
+     * @param type crawl data class
+     * @return codec or <code>null</code> if none is registered
+     */
+    public ICrawlDataCodec<?> getCodec(Class<?> type) {
+        Integer id = idsByType.get(type);
+        if (id == null) {
+            return null;
+        }
+        return codecsById.get(id);
+    }
+
+    /**
+     * Encodes the given crawl data.
+     * @param crawlData the crawl data to encode
+     * @return encoded crawl data
+     */
+    public byte[] encode(ICrawlData crawlData) {
+        CrawlDataOutput out = new CrawlDataOutput();
+        encode(crawlData, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes the given crawl data to the given output.
+     * @param crawlData the crawl data to encode
+     * @param out where to write
+     */
+    @SuppressWarnings("unchecked")
+    public void encode(ICrawlData crawlData, CrawlDataOutput out) {
+        out.writeByte(FORMAT_VERSION);
+        Integer id = idsByType.get(crawlData.getClass());
+        ICrawlDataCodec<ICrawlData> codec = null;
+        if (id != null) {
+            codec = (ICrawlDataCodec<ICrawlData>) codecsById.get(id);
+        }
+        if (codec == null) {
+            out.writeVarInt(SERIALIZATION_CODEC_ID);
+            byte[] bytes = SerializationUtils.serialize(crawlData);
+            out.writeVarInt(bytes.length);
+            out.writeBytes(bytes);
+        } else {
+            out.writeVarInt(id);
+            codec.encode(crawlData, out);
+        }
+    }
+
+    /**
+     * Decodes crawl data encoded by this registry.
+     * @param bytes encoded crawl data
+     * @return crawl data
+     */
+    public ICrawlData decode(byte[] bytes) {
+        return decode(new CrawlDataInput(bytes));
+    }
+
+    /**
+     * Decodes crawl data encoded by this registry from the given input.
+     * @param in where to read from
+     * @return crawl data
+     */
+    public ICrawlData decode(CrawlDataInput in) {
+        int format = in.readByte();
+        if (format != FORMAT_VERSION) {
+            throw new CrawlDataStoreException("Unsupported crawl data "
+                    + "format version: " + format + " (expected "
+                    + FORMAT_VERSION + ").");
+        }
+        int id = in.readVarInt();
+        if (id == SERIALIZATION_CODEC_ID) {
+            byte[] bytes = in.readBytes(in.readVarInt());
+            try {
+                return SerializationUtils.deserialize(bytes);
+            } catch (SerializationException e) {
+                throw new CrawlDataStoreException(
+                        "Could not deserialize crawl data.", e);
+            }
+        }
+        ICrawlDataCodec<?> codec = codecsById.get(id);
+        if (codec == null) {
+            throw new CrawlDataStoreException(
+                    "No crawl data codec registered with identifier: " + id);
+        }
+        return codec.decode(in);
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("codecs", codecsById)
+                .toString();
+    }
+}
@@ -0,0 +1,161 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+import com.norconex.collector.core.data.CrawlState;
+import com.norconex.collector.core.data.store.CrawlDataStoreException;
+import com.norconex.commons.lang.file.ContentType;
+
+/**
+ * Reads values written with a {@link CrawlDataOutput} from a byte array.
+ * Reading past the end of the data throws a
+ * {@link CrawlDataStoreException}.
+ * @author Pascal Essiembre
+ * @since 1.9.2
+ */
+public class CrawlDataInput {
+
+    private final byte[] buffer;
+    private final int limit;
+    private int position;
+
+    /**
+     * Creates an input reading all the given bytes.
+     * @param bytes bytes to read
+     */
+    public CrawlDataInput(byte[] bytes) {
+        this(bytes, 0, bytes.length);
+    }
+    /**
+     * Creates an input reading a portion of the given bytes.
+     * @param bytes bytes to read
+     * @param offset where to start reading
+     * @param length how many bytes can be read
+     */
+    public CrawlDataInput(byte[] bytes, int offset, int length) {
+        this.buffer = bytes;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    public int readByte() {
+        ensureAvailable(1);
+        return buffer[position++] & 0xFF;
+    }
+
+    public byte[] readBytes(int length) {
+        ensureAvailable(length);
+        byte[] bytes = new byte[length];
+        System.arraycopy(buffer, position, bytes, 0, length);
+        position += length;
+        return bytes;
+    }
+
+    public boolean readBoolean() {
+        return readByte() != 0;
+    }
+
+    public int readVarInt() {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new CrawlDataStoreException("Malformed variable-length int.");
+    }
+
+    public long readVarLong() {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (value >>> 1) ^ -(value & 1);
+            }
+        }
+        throw new CrawlDataStoreException("Malformed variable-length long.");
+    }
+
+    public String readString() {
+        int length = readVarInt();
+        if (length == 0) {
+            return null;
+        }
+        length--;
+        ensureAvailable(length);
+        String value = new String(
+                buffer, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    public Date readDate() {
+        return new Date(readVarLong());
+    }
+
+    public CrawlState readCrawlState() {
+        int code = readVarInt();
+        if (code == CrawlDataOutput.CODE_NULL) {
+            return null;
+        }
+        if (code == CrawlDataOutput.CODE_STRING) {
+            return CrawlState.valueOf(readString());
+        }
+        return CrawlDataOutput.STATES[
+                checkCode(code, CrawlDataOutput.STATES.length)];
+    }
+
+    public ContentType readContentType() {
+        int code = readVarInt();
+        if (code == CrawlDataOutput.CODE_NULL) {
+            return null;
+        }
+        if (code == CrawlDataOutput.CODE_STRING) {
+            return ContentType.valueOf(readString());
+        }
+        return CrawlDataOutput.CONTENT_TYPES[
+                checkCode(code, CrawlDataOutput.CONTENT_TYPES.length)];
+    }
+
+    /**
+     * Gets the number of bytes left to read.
+     * @return number of bytes
+     */
+    public int available() {
+        return limit - position;
+    }
+
+    private int checkCode(int code, int count) {
+        int index = code - CrawlDataOutput.CODE_OFFSET;
+        if (index < 0 || index >= count) {
+            throw new CrawlDataStoreException(
+                    "Unknown interned value code: " + code);
+        }
+        return index;
+    }
+
+    private void ensureAvailable(int length) {
+        if (length < 0 || length > limit - position) {
+            throw new CrawlDataStoreException(
+                    "Crawl data is truncated or corrupted.");
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.norconex.collector.core.data.CrawlState;
+import com.norconex.commons.lang.file.ContentType;
+
+/**
+ * Growable buffer crawl data codecs write to. Integers are written
+ * as variable-length values (7 bits per byte), so small values take
+ * a single byte. Strings are written as UTF-8. Common crawl states
+ * and content types are written as a one-byte code.
+ * @author Pascal Essiembre
+ * @since 1.9.2
+ */
+public class CrawlDataOutput {
+
+    // Interned values, written as their index + 2 (0 is null, 1 is a
+    // value written as a string). These arrays are part of the
+    // binary format: values can be appended, never removed or reordered.
+    static final CrawlState[] STATES = {
+            CrawlState.NEW,
+            CrawlState.MODIFIED,
+            CrawlState.UNMODIFIED,
+            CrawlState.ERROR,
+            CrawlState.REJECTED,
+            CrawlState.BAD_STATUS,
+            CrawlState.DELETED,
+            CrawlState.NOT_FOUND,
+            CrawlState.PREMATURE
+    };
+    static final ContentType[] CONTENT_TYPES = {
+            ContentType.HTML,
+            ContentType.TEXT,
+            ContentType.PDF,
+            ContentType.XML,
+            ContentType.CSV,
+            ContentType.TSV,
+            ContentType.ZIP,
+            ContentType.JPEG,
+            ContentType.GIF,
+            ContentType.BMP,
+            ContentType.PNG,
+            ContentType.valueOf("application/xhtml+xml"),
+            ContentType.valueOf("application/json"),
+            ContentType.valueOf("application/javascript"),
+            ContentType.valueOf("text/css"),
+            ContentType.valueOf("application/msword"),
+            ContentType.valueOf("application/vnd.openxmlformats-"
+                    + "officedocument.wordprocessingml.document"),
+            ContentType.valueOf("application/octet-stream")
+    };
+    static final int CODE_NULL = 0;
+    static final int CODE_STRING = 1;
+    static final int CODE_OFFSET = 2;
+
+    private static final Map<CrawlState, Integer> STATE_CODES =
+            toCodes(STATES);
+    private static final Map<ContentType, Integer> CONTENT_TYPE_CODES =
+            toCodes(CONTENT_TYPES);
+
+    private byte[] buffer;
+    private int size;
+
+    /**
+     * Creates an output with a default initial capacity.
+     */
+    public CrawlDataOutput() {
+        this(128);
+    }
+    /**
+     * Creates an output with the given initial capacity.
+     * @param capacity initial capacity, in bytes
+     */
+    public CrawlDataOutput(int capacity) {
+        buffer = new byte[Math.max(capacity, 16)];
+    }
+
+    public void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) value;
+    }
+
+    public void writeBytes(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    public void writeBoolean(boolean value) {
+        writeByte(value ? 1 : 0);
+    }
+
+    /**
+     * Writes a non-negative integer in 1 to 5 bytes.
+     * Negative values always take 5 bytes.
+     * @param value the value to write
+     */
+    public void writeVarInt(int value) {
+        ensureCapacity(5);
+        int v = value;
+        while ((v & ~0x7F) != 0) {
+            buffer[size++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buffer[size++] = (byte) v;
+    }
+
+    /**
+     * Writes a long in 1 to 10 bytes. Values close to zero, negative
+     * or positive, take the fewest bytes.
+     * @param value the value to write
+     */
+    public void writeVarLong(long value) {
+        ensureCapacity(10);
+        // zigzag: 0, -1, 1, -2, 2... become 0, 1, 2, 3, 4...
+        long v = (value << 1) ^ (value >> 63);
+        while ((v & ~0x7FL) != 0) {
+            buffer[size++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buffer[size++] = (byte) v;
+    }
+
+    /**
+     * Writes a string, which can be <code>null</code>.
+     * @param value the value to write
+     */
+    public void writeString(String value) {
+        if (value == null) {
+            writeVarInt(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length + 1);
+        writeBytes(bytes);
+    }
+
+    /**
+     * Writes a date as its milliseconds since epoch.
+     * The date cannot be <code>null</code>.
+     * @param value the value to write
+     */
+    public void writeDate(Date value) {
+        writeVarLong(value.getTime());
+    }
+
+    /**
+     * Writes a crawl state, which can be <code>null</code>.
+     * Standard crawl states take a single byte.
+     * @param value the value to write
+     */
+    public void writeCrawlState(CrawlState value) {
+        writeInterned(STATE_CODES, value);
+    }
+
+    /**
+     * Writes a content type, which can be <code>null</code>.
+     * Common content types take a single byte.
+     * @param value the value to write
+     */
+    public void writeContentType(ContentType value) {
+        writeInterned(CONTENT_TYPE_CODES, value);
+    }
+
+    /**
+     * Gets the number of bytes written so far.
+     * @return number of bytes
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets a copy of the bytes written so far.
+     * @return bytes
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    /**
+     * Discards all bytes written so far, so this output can be reused.
+     */
+    public void reset() {
+        size = 0;
+    }
+
+    private <T> void writeInterned(Map<T, Integer> codes, T value) {
+        if (value == null) {
+            writeVarInt(CODE_NULL);
+            return;
+        }
+        Integer code = codes.get(value);
+        if (code != null) {
+            writeVarInt(code);
+        } else {
+            writeVarInt(CODE_STRING);
+            writeString(value.toString());
+        }
+    }
+
+    private void ensureCapacity(int length) {
+        if (size + length > buffer.length) {
+            buffer = Arrays.copyOf(buffer,
+                    Math.max(buffer.length << 1, size + length));
+        }
+    }
+
+    private static <T> Map<T, Integer> toCodes(T[] values) {
+        Map<T, Integer> codes = new HashMap<>();
+        for (int i = 0; i < values.length; i++) {
+            codes.put(values[i], i + CODE_OFFSET);
+        }
+        return codes;
+    }
+}
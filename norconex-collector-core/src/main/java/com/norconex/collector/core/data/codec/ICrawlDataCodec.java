@@ -0,0 +1,50 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.codec;
+
+import com.norconex.collector.core.data.ICrawlData;
+
+/**
+ * Encodes and decodes one type of {@link ICrawlData} to and from
+ * a compact binary form. Codecs are registered with a
+ * {@link CrawlDataCodecRegistry}, which describes how encoded
+ * data must remain readable as codecs evolve.
+ * @author Pascal Essiembre
+ * @param <T> crawl data type
+ * @since 1.9.2
+ */
+public interface ICrawlDataCodec<T extends ICrawlData> {
+
+    /**
+     * Gets the exact crawl data class handled by this codec.
+     * @return crawl data class
+     */
+    Class<T> getType();
+
+    /**
+     * Writes the given crawl data.
+     * @param crawlData the crawl data to encode
+     * @param out where to write
+     */
+    void encode(T crawlData, CrawlDataOutput out);
+
+    /**
+     * Reads crawl data previously written by this codec, or an earlier
+     * version of it.
+     * @param in where to read from
+     * @return crawl data
+     */
+    T decode(CrawlDataInput in);
+}
@@ -1,4 +1,4 @@
-/* Copyright 2014-2017 Norconex Inc.
+/* Copyright 2014-2018 Norconex Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -14,11 +14,104 @@
  */
 package com.norconex.collector.core.data.store;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import com.norconex.collector.core.data.ICrawlData;
+
 /**
- * <p>Abstract crawl data store. Does not implement any method.</p>
+ * <p>Abstract crawl data store. Acts as an adapter providing default
+ * implementations for methods added to {@link ICrawlDataStore} over time,
+ * expressed in terms of the original methods. Implementors are encouraged
+ * to override them with native implementations when their underlying
+ * storage allows it.</p>
  * @author Pascal Essiembre
  */
 public abstract class AbstractCrawlDataStore implements ICrawlDataStore {
     //TODO used to implement isVanished(...).  Shall we delete or keep
     //as an adapter to avoid API change issues with ICrawlStore?
+
+    /**
+     * Checks the reference stage with {@link #getStage(String)} and
+     * queues it with {@link #queue(ICrawlData)} when not found.
+     * Atomicity is guaranteed by synchronizing on this store, which
+     * only holds if other store modifications synchronize on it as well.
+     * @param crawlData the reference to eventually be processed
+     * @return the stage the reference was already at, or <code>null</code>
+     * @since 1.9.2
+     */
+    @Override
+    public synchronized CrawlDataStage queueIfAbsent(ICrawlData crawlData) {
+        CrawlDataStage stage = getStage(crawlData.getReference());
+        if (stage == null) {
+            queue(crawlData);
+        }
+        return stage;
+    }
+
+    /**
+     * Invokes {@link #queue(ICrawlData)} for each reference.
+     * @param crawlDatas the references to eventually be processed
+     * @since 1.9.2
+     */
+    @Override
+    public void queueAll(Iterable<? extends ICrawlData> crawlDatas) {
+        for (ICrawlData crawlData : crawlDatas) {
+            queue(crawlData);
+        }
+    }
+
+    /**
+     * Invokes {@link #processed(ICrawlData)} for each reference.
+     * @param crawlDatas processed references
+     * @since 1.9.2
+     */
+    @Override
+    public void processedAll(Iterable<? extends ICrawlData> crawlDatas) {
+        for (ICrawlData crawlData : crawlDatas) {
+            processed(crawlData);
+        }
+    }
+
+    /**
+     * Invokes {@link #nextQueued()} until <code>max</code> references
+     * are obtained or the queue is empty.
+     * @param max maximum number of references to return
+     * @return next references
+     * @since 1.9.2
+     */
+    @Override
+    public List<ICrawlData> nextQueued(int max) {
+        List<ICrawlData> crawlDatas = new ArrayList<>(max);
+        while (crawlDatas.size() < max) {
+            ICrawlData crawlData = nextQueued();
+            if (crawlData == null) {
+                break;
+            }
+            crawlDatas.add(crawlData);
+        }
+        return crawlDatas;
+    }
+
+    /**
+     * Obtains the reference stage by invoking {@link #isActive(String)},
+     * {@link #isQueued(String)}, and {@link #isProcessed(String)},
+     * in that order.
+     * @param reference the reference
+     * @return the reference stage, or <code>null</code>
+     * @since 1.9.2
+     */
+    @Override
+    public CrawlDataStage getStage(String reference) {
+        if (isActive(reference)) {
+            return CrawlDataStage.ACTIVE;
+        }
+        if (isQueued(reference)) {
+            return CrawlDataStage.QUEUED;
+        }
+        if (isProcessed(reference)) {
+            return CrawlDataStage.PROCESSED;
+        }
+        return null;
+    }
 }
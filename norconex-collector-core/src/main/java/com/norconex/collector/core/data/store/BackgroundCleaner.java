@@ -0,0 +1,97 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.store;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+/**
+ * <p>Runs clean-up tasks of a crawl data store one at a time from a
+ * background daemon thread. This lets a crawl start without waiting
+ * for the data of a previous run to be deleted, which can take a while
+ * for large crawls.</p>
+ * <p>Closing waits for the running task to complete and skips those not
+ * started yet. Crawl data stores are expected to find what was left
+ * to clean when opened again and submit it again.</p>
+ * @author Pascal Essiembre
+ * @since 1.9.2
+ */
+public class BackgroundCleaner {
+
+    private static final Logger LOG =
+            LogManager.getLogger(BackgroundCleaner.class);
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Creates a background cleaner.
+     * @param name name of the cleaner thread
+     */
+    public BackgroundCleaner(final String name) {
+        executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, name);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    /**
+     * Submits a clean-up task. Failures are logged.
+     * @param description what the task cleans, for logging
+     * @param task the clean-up task
+     */
+    public void submit(final String description, final Runnable task) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.currentTimeMillis();
+                try {
+                    task.run();
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Cleaned " + description + " in "
+                                + (System.currentTimeMillis() - start)
+                                + "ms.");
+                    }
+                } catch (RuntimeException e) {
+                    LOG.error("Could not clean " + description + ".", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits for the running task, if any, and skips the others.
+     */
+    public void close() {
+        executor.getQueue().clear();
+        executor.shutdown();
+        try {
+            // Not interrupting tasks, since interrupted I/O can leave
+            // data stores in a bad state
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.store;
+
+/**
+ * The stage a reference is at in the current crawl run, as tracked
+ * by an {@link ICrawlDataStore}. Being cached from a previous run is not
+ * a stage since a cached reference can also be at any of these stages.
+ * @author Pascal Essiembre
+ * @since 1.9.2
+ */
+public enum CrawlDataStage {
+    /** Waiting to be processed. */
+    QUEUED,
+    /** Currently being processed. */
+    ACTIVE,
+    /** Processed during the current run. */
+    PROCESSED;
+}
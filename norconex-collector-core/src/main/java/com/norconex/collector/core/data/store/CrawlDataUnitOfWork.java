@@ -0,0 +1,98 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.store;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.norconex.collector.core.data.ICrawlData;
+
+/**
+ * <p>Groups references marked as processed so they are written to the
+ * underlying crawl data store all at once with
+ * {@link ICrawlDataStore#processedAll(Iterable)} when {@link #commit()}
+ * is invoked. This turns the many writes made when finalizing
+ * the processing of a document (the document itself and its reference
+ * variations, such as redirects) into a single batch, which crawl data
+ * stores write in one transaction when they support it.</p>
+ * <p>Until committed, references marked as processed are reported as such
+ * by this unit of work only. Other method calls are forwarded to the
+ * underlying store as is. A unit of work is meant to be used by a single
+ * thread and discarded once committed.</p>
+ * @author Pascal Essiembre
+ * @since 1.9.2
+ */
+public class CrawlDataUnitOfWork extends DelegatingCrawlDataStore {
+
+    private final Map<String, ICrawlData> processed = new LinkedHashMap<>();
+
+    /**
+     * Creates a unit of work for the given crawl data store.
+     * @param delegate the crawl data store to commit to
+     */
+    public CrawlDataUnitOfWork(ICrawlDataStore delegate) {
+        super(delegate);
+    }
+
+    @Override
+    public void processed(ICrawlData crawlData) {
+        processed.put(crawlData.getReference(), crawlData);
+    }
+    @Override
+    public void processedAll(Iterable<? extends ICrawlData> crawlDatas) {
+        for (ICrawlData crawlData : crawlDatas) {
+            processed(crawlData);
+        }
+    }
+
+    @Override
+    public boolean isProcessed(String reference) {
+        return processed.containsKey(reference)
+                || super.isProcessed(reference);
+    }
+    @Override
+    public boolean isActive(String reference) {
+        return !processed.containsKey(reference)
+                && super.isActive(reference);
+    }
+    @Override
+    public CrawlDataStage getStage(String reference) {
+        if (processed.containsKey(reference)) {
+            return CrawlDataStage.PROCESSED;
+        }
+        return super.getStage(reference);
+    }
+
+    /**
+     * Gets the number of references marked as processed not yet committed.
+     * @return number of uncommitted references
+     */
+    public int getUncommittedCount() {
+        return processed.size();
+    }
+
+    /**
+     * Writes all references marked as processed to the underlying
+     * crawl data store, in a single batch.
+     */
+    public void commit() {
+        if (processed.isEmpty()) {
+            return;
+        }
+        getDelegate().processedAll(new ArrayList<>(processed.values()));
+        processed.clear();
+    }
+}
@@ -0,0 +1,141 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.store;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import com.norconex.collector.core.data.ICrawlData;
+
+/**
+ * <p>Crawl data store forwarding all method calls to another crawl data
+ * store. Meant to be extended by decorators adding behavior to any
+ * {@link ICrawlDataStore} implementation, overriding only the methods
+ * they care about.</p>
+ * @author Pascal Essiembre
+ * @since 1.9.2
+ */
+public class DelegatingCrawlDataStore implements ICrawlDataStore {
+
+    private final ICrawlDataStore delegate;
+
+    /**
+     * Creates a crawl data store delegating to the given one.
+     * @param delegate the crawl data store to delegate to
+     */
+    public DelegatingCrawlDataStore(ICrawlDataStore delegate) {
+        super();
+        if (delegate == null) {
+            throw new IllegalArgumentException(
+                    "Delegate crawl data store cannot be null.");
+        }
+        this.delegate = delegate;
+    }
+
+    /**
+     * Gets the crawl data store method calls are delegated to.
+     * @return crawl data store
+     */
+    public ICrawlDataStore getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void queue(ICrawlData crawlData) {
+        delegate.queue(crawlData);
+    }
+    @Override
+    public void queueAll(Iterable<? extends ICrawlData> crawlDatas) {
+        delegate.queueAll(crawlDatas);
+    }
+    @Override
+    public CrawlDataStage queueIfAbsent(ICrawlData crawlData) {
+        return delegate.queueIfAbsent(crawlData);
+    }
+    @Override
+    public CrawlDataStage getStage(String reference) {
+        return delegate.getStage(reference);
+    }
+    @Override
+    public boolean isQueueEmpty() {
+        return delegate.isQueueEmpty();
+    }
+    @Override
+    public long getQueueSize() {
+        return delegate.getQueueSize();
+    }
+    @Override
+    public boolean isQueued(String reference) {
+        return delegate.isQueued(reference);
+    }
+    @Override
+    public ICrawlData nextQueued() {
+        return delegate.nextQueued();
+    }
+    @Override
+    public List<ICrawlData> nextQueued(int max) {
+        return delegate.nextQueued(max);
+    }
+    @Override
+    public boolean isActive(String reference) {
+        return delegate.isActive(reference);
+    }
+    @Override
+    public long getActiveCount() {
+        return delegate.getActiveCount();
+    }
+    @Override
+    public ICrawlData getCached(String cacheReference) {
+        return delegate.getCached(cacheReference);
+    }
+    @Override
+    public boolean isCacheEmpty() {
+        return delegate.isCacheEmpty();
+    }
+    @Override
+    public void processed(ICrawlData crawlData) {
+        delegate.processed(crawlData);
+    }
+    @Override
+    public void processedAll(Iterable<? extends ICrawlData> crawlDatas) {
+        delegate.processedAll(crawlDatas);
+    }
+    @Override
+    public boolean isProcessed(String reference) {
+        return delegate.isProcessed(reference);
+    }
+    @Override
+    public long getProcessedCount() {
+        return delegate.getProcessedCount();
+    }
+    @Override
+    public Iterator<ICrawlData> getCacheIterator() {
+        return delegate.getCacheIterator();
+    }
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("delegate", delegate)
+                .toString();
+    }
+}
@@ -0,0 +1,37 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.store;
+
+import com.norconex.collector.core.data.ICrawlData;
+
+/**
+ * Ranks queued references to establish in which order they are
+ * processed, by crawl data stores supporting it. References with
+ * a lower rank are taken from the queue first. References of the same
+ * rank are taken in the order they were queued.
+ * @author Pascal Essiembre
+ * @since 1.9.2
+ */
+public interface ICrawlDataRanker {
+
+    /**
+     * Gets the rank of a reference about to be queued. Invoked every
+     * time a reference is queued, so it should be fast and return
+     * the same rank for the same crawl data.
+     * @param crawlData crawl data being queued
+     * @return rank
+     */
+    double getRank(ICrawlData crawlData);
+}
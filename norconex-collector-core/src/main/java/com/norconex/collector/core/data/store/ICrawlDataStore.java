@@ -15,6 +15,7 @@
 package com.norconex.collector.core.data.store;
 
 import java.util.Iterator;
+import java.util.List;
 
 import com.norconex.collector.core.data.ICrawlData;
 
@@ -44,6 +45,38 @@ public interface ICrawlDataStore {
      */
     void queue(ICrawlData crawlData);
 
+    /**
+     * Queues many references for future processing at once. Same as
+     * invoking {@link #queue(ICrawlData)} for each of them, but
+     * implementations are expected to write them in batches.
+     * @param crawlDatas the references to eventually be processed
+     * @since 1.9.2
+     */
+    void queueAll(Iterable<? extends ICrawlData> crawlDatas);
+
+    /**
+     * Queues a reference for future processing only if it is not already
+     * queued, active, or processed, as a single atomic operation.
+     * This is the preferred way to queue newly discovered references
+     * since it saves having to invoke {@link #isActive(String)},
+     * {@link #isQueued(String)} and {@link #isProcessed(String)} first
+     * and is safe to call concurrently for the same reference.
+     * @param crawlData the reference to eventually be processed
+     * @return the stage the reference was already at, or <code>null</code>
+     *         if it was not encountered yet and got queued by this call
+     * @since 1.9.2
+     */
+    CrawlDataStage queueIfAbsent(ICrawlData crawlData);
+
+    /**
+     * Gets the stage the given reference is at in the current crawl run.
+     * @param reference the reference
+     * @return the reference stage, or <code>null</code> if the reference
+     *         was not encountered yet
+     * @since 1.9.2
+     */
+    CrawlDataStage getStage(String reference);
+
     /**
      * Whether there are any references to process in the queue.
      * @return <code>true</code> if the queue is empty
@@ -53,9 +86,10 @@ public interface ICrawlDataStore {
     /**
      * Gets the size of the reference queue (number of 
      * references left to process).
+     * As of 1.9.2, returns a <code>long</code>.
      * @return queue size
      */
-    int getQueueSize();
+    long getQueueSize();
 
     /**
      * Whether the given reference is in the queue or not 
@@ -72,6 +106,19 @@ public interface ICrawlDataStore {
      * @return next reference 
      */
     ICrawlData nextQueued();
+
+    /**
+     * Returns up to <code>max</code> references to be processed from the
+     * queue and marks them all as "active", as a single store operation.
+     * The returned references are effectively removed from the queue.
+     * References leased this way remain active until marked as processed,
+     * so the ones not yet processed when a crawler is stopped are
+     * re-queued on resume like any other active references.
+     * @param max maximum number of references to return
+     * @return next references, or an empty list if the queue is empty
+     * @since 1.9.2
+     */
+    List<ICrawlData> nextQueued(int max);
     
     /**
      * Whether the given reference is currently being processed (i.e. active).
@@ -82,9 +129,10 @@ public interface ICrawlDataStore {
 
     /**
      * Gets the number of active references (currently being processed).
+     * As of 1.9.2, returns a <code>long</code>.
      * @return number of active references.
      */
-    int getActiveCount();
+    long getActiveCount();
     
     /**
      * Gets the cached reference from previous time crawler was run
@@ -108,6 +156,15 @@ public interface ICrawlDataStore {
      */
     void processed(ICrawlData crawlData);
 
+    /**
+     * Marks many references as processed at once. Same as
+     * invoking {@link #processed(ICrawlData)} for each of them, but
+     * implementations are expected to write them in batches.
+     * @param crawlDatas processed references
+     * @since 1.9.2
+     */
+    void processedAll(Iterable<? extends ICrawlData> crawlDatas);
+
     /**
      * Whether the given reference has been processed.
      * @param reference the reference
@@ -117,9 +174,10 @@ public interface ICrawlDataStore {
 
     /**
      * Gets the number of references processed.
+     * As of 1.9.2, returns a <code>long</code>.
      * @return number of references processed.
      */
-    int getProcessedCount();
+    long getProcessedCount();
 
     /**
      * Gets the cache iterator.
@@ -0,0 +1,191 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.store;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.commons.beanutils.PropertyUtils;
+import org.apache.commons.configuration.XMLConfiguration;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import com.norconex.collector.core.data.ICrawlData;
+import com.norconex.commons.lang.config.IXMLConfigurable;
+import com.norconex.commons.lang.config.XMLConfigurationUtil;
+import com.norconex.commons.lang.xml.EnhancedXMLStreamWriter;
+
+/**
+ * <p>
+ * Ranks queued references using a numeric property of their crawl data,
+ * in ascending order by default. References without a value for it
+ * have a rank of zero. For instance, with crawl data having a 
+ * "depth" property (like those of the HTTP Collector):
+ * </p>
+ * <ul>
+ *   <li>Ascending order processes references closest to the start
+ *       references first (breadth-first).</li>
+ *   <li>Descending order processes the deepest references first 
+ *       (depth-first).</li>
+ * </ul>
+ * <p>
+ * Likewise, a collector whose crawl data holds a priority score
+ * can have the highest scores processed first using that property in 
+ * descending order.
+ * </p>
+ * 
+ * <h3>XML configuration usage:</h3>
+ * <pre>
+ *  &lt;queueRanker 
+ *          class="com.norconex.collector.core.data.store.PropertyCrawlDataRanker"&gt;
+ *      &lt;property&gt;(Crawl data numeric property name.)&lt;/property&gt;
+ *      &lt;descending&gt;[false|true]&lt;/descending&gt;
+ *  &lt;/queueRanker&gt;
+ * </pre>
+ * 
+ * <h4>Usage example:</h4>
+ * <p>
+ * The following processes references of lower depth first.
+ * </p>
+ * <pre>
+ *  &lt;queueRanker 
+ *          class="com.norconex.collector.core.data.store.PropertyCrawlDataRanker"&gt;
+ *      &lt;property&gt;depth&lt;/property&gt;
+ *  &lt;/queueRanker&gt;
+ * </pre>
+ * 
+ * @author Pascal Essiembre
+ * @since 1.9.2
+ */
+public class PropertyCrawlDataRanker 
+        implements ICrawlDataRanker, IXMLConfigurable {
+
+    private String property;
+    private boolean descending;
+
+    public PropertyCrawlDataRanker() {
+        super();
+    }
+    /**
+     * Creates a ranker using the given crawl data property, 
+     * in ascending order.
+     * @param property crawl data numeric property name
+     */
+    public PropertyCrawlDataRanker(String property) {
+        this(property, false);
+    }
+    /**
+     * Creates a ranker using the given crawl data property.
+     * @param property crawl data numeric property name
+     * @param descending <code>true</code> to process higher values first
+     */
+    public PropertyCrawlDataRanker(String property, boolean descending) {
+        super();
+        this.property = property;
+        this.descending = descending;
+    }
+
+    public String getProperty() {
+        return property;
+    }
+    public void setProperty(String property) {
+        this.property = property;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+    public void setDescending(boolean descending) {
+        this.descending = descending;
+    }
+
+    @Override
+    public double getRank(ICrawlData crawlData) {
+        Object value;
+        try {
+            value = PropertyUtils.getProperty(crawlData, property);
+        } catch (IllegalAccessException | InvocationTargetException
+                | NoSuchMethodException | IllegalArgumentException e) {
+            throw new CrawlDataStoreException("Cannot get property \""
+                    + property + "\" of crawl data: " + crawlData, e);
+        }
+        if (value == null) {
+            return 0;
+        }
+        if (!(value instanceof Number)) {
+            throw new CrawlDataStoreException("Crawl data property \""
+                    + property + "\" is not a number: " + value);
+        }
+        double rank = ((Number) value).doubleValue();
+        return descending ? -rank : rank;
+    }
+
+    @Override
+    public void loadFromXML(Reader in) throws IOException {
+        XMLConfiguration xml = XMLConfigurationUtil.newXMLConfiguration(in);
+        setProperty(xml.getString("property", getProperty()));
+        setDescending(xml.getBoolean("descending", isDescending()));
+    }
+
+    @Override
+    public void saveToXML(Writer out) throws IOException {
+        try {
+            EnhancedXMLStreamWriter writer = new EnhancedXMLStreamWriter(out);
+            writer.writeStartElement("queueRanker");
+            writer.writeAttribute("class", getClass().getCanonicalName());
+            writer.writeElementString("property", getProperty());
+            writer.writeElementBoolean("descending", isDescending());
+            writer.writeEndElement();
+            writer.flush();
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Cannot save as XML.", e);
+        }
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (!(other instanceof PropertyCrawlDataRanker)) {
+            return false;
+        }
+        PropertyCrawlDataRanker castOther = (PropertyCrawlDataRanker) other;
+        return new EqualsBuilder()
+                .append(property, castOther.property)
+                .append(descending, castOther.descending)
+                .isEquals();
+    }
+
+    @Override
+    public int hashCode() {
+        return new HashCodeBuilder()
+                .append(property)
+                .append(descending)
+                .toHashCode();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("property", property)
+                .append("descending", descending)
+                .toString();
+    }
+}
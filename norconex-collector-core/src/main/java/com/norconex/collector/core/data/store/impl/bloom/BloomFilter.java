@@ -0,0 +1,256 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.store.impl.bloom;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+/**
+ * <p>Thread-safe Bloom filter of string references. A Bloom filter can
+ * tell with certainty a reference was never added to it, but can only
+ * tell a reference was "likely" added, with a probability of being wrong
+ * (false positive) which depends on its size and the number of references
+ * added.</p>
+ * <p>Bits are set with compare-and-swap operations so concurrent additions
+ * never lose each other's bits.  Hashing relies on the "double hashing"
+ * technique, deriving all hash functions from a single 64-bit hash.</p>
+ * @author Pascal Essiembre
+ * @since 1.9.2
+ */
+public class BloomFilter {
+
+    private static final int MAGIC = 0x4E584246; // "NXBF"
+    private static final int VERSION = 1;
+    private static final int MAX_HASHES = 255;
+    private static final long MAX_BITS = (long) Integer.MAX_VALUE * Long.SIZE;
+    private static final double LN2 = Math.log(2);
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final AtomicLongArray bits;
+    private final long bitSize;
+    private final int hashCount;
+    private final AtomicLong addedCount;
+
+    /**
+     * Creates a Bloom filter sized to hold the expected number of
+     * references with the given false positive probability.
+     * @param expectedReferences expected number of references
+     * @param falsePositiveRate false positive probability
+     *        (between 0 and 1, exclusively)
+     */
+    public BloomFilter(long expectedReferences, double falsePositiveRate) {
+        if (expectedReferences <= 0) {
+            throw new IllegalArgumentException(
+                    "Expected references must be greater than zero.");
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException(
+                    "False positive rate must be between 0 and 1.");
+        }
+        long numBits = (long) Math.ceil(-expectedReferences
+                * Math.log(falsePositiveRate) / (LN2 * LN2));
+        numBits = Math.max(Long.SIZE, Math.min(MAX_BITS, numBits));
+        this.bits = new AtomicLongArray(
+                (int) ((numBits + Long.SIZE - 1) / Long.SIZE));
+        this.bitSize = (long) bits.length() * Long.SIZE;
+        this.hashCount = (int) Math.max(1, Math.min(MAX_HASHES, Math.round(
+                (double) bitSize / expectedReferences * LN2)));
+        this.addedCount = new AtomicLong();
+    }
+    private BloomFilter(long[] words, int hashCount, long addedCount) {
+        this.bits = new AtomicLongArray(words);
+        this.bitSize = (long) words.length * Long.SIZE;
+        this.hashCount = hashCount;
+        this.addedCount = new AtomicLong(addedCount);
+    }
+
+    /**
+     * Adds a reference to this filter.
+     * @param reference the reference to add
+     * @return <code>true</code> if the reference was definitely not
+     *         in this filter before this call
+     */
+    public boolean put(String reference) {
+        long hash = hash(reference);
+        long hash1 = mix(hash);
+        long hash2 = mix(hash ^ FNV_OFFSET) | 1;
+        boolean changed = false;
+        for (int i = 0; i < hashCount; i++) {
+            changed |= setBit(index(hash1, hash2, i));
+        }
+        if (changed) {
+            addedCount.incrementAndGet();
+        }
+        return changed;
+    }
+
+    /**
+     * Checks whether a reference might have been added to this filter.
+     * @param reference the reference to check
+     * @return <code>false</code> if the reference was definitely never
+     *         added, <code>true</code> if it likely was
+     */
+    public boolean mightContain(String reference) {
+        long hash = hash(reference);
+        long hash1 = mix(hash);
+        long hash2 = mix(hash ^ FNV_OFFSET) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            if (!getBit(index(hash1, hash2, i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the approximate number of distinct references added to this
+     * filter.  References deemed already present when added
+     * (false positives) are not counted.
+     * @return approximate number of references
+     */
+    public long getApproximateCount() {
+        return addedCount.get();
+    }
+    /**
+     * Gets the number of bits used by this filter.
+     * @return number of bits
+     */
+    public long getBitSize() {
+        return bitSize;
+    }
+    /**
+     * Gets the number of hash functions applied to each reference.
+     * @return number of hash functions
+     */
+    public int getHashCount() {
+        return hashCount;
+    }
+    /**
+     * Gets the probability of a false positive given the number of
+     * references added so far.
+     * @return current false positive probability
+     */
+    public double getCurrentFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(
+                -(double) hashCount * addedCount.get() / bitSize), hashCount);
+    }
+
+    /**
+     * Writes this filter to the given output stream.  The stream is
+     * not closed.
+     * @param out output stream
+     * @throws IOException problem writing filter
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        DataOutputStream dout = new DataOutputStream(out);
+        dout.writeInt(MAGIC);
+        dout.writeInt(VERSION);
+        dout.writeInt(hashCount);
+        dout.writeLong(addedCount.get());
+        dout.writeInt(bits.length());
+        for (int i = 0; i < bits.length(); i++) {
+            dout.writeLong(bits.get(i));
+        }
+        dout.flush();
+    }
+
+    /**
+     * Reads a filter previously written with {@link #writeTo(OutputStream)}.
+     * The stream is not closed.
+     * @param in input stream
+     * @return Bloom filter
+     * @throws IOException problem reading filter or invalid filter format
+     */
+    public static BloomFilter readFrom(InputStream in) throws IOException {
+        DataInputStream din = new DataInputStream(in);
+        if (din.readInt() != MAGIC) {
+            throw new IOException("Not a Bloom filter.");
+        }
+        int version = din.readInt();
+        if (version != VERSION) {
+            throw new IOException(
+                    "Unsupported Bloom filter version: " + version);
+        }
+        int hashCount = din.readInt();
+        long addedCount = din.readLong();
+        int length = din.readInt();
+        if (hashCount < 1 || hashCount > MAX_HASHES || length < 1) {
+            throw new IOException("Corrupted Bloom filter.");
+        }
+        long[] words = new long[length];
+        for (int i = 0; i < length; i++) {
+            words[i] = din.readLong();
+        }
+        return new BloomFilter(words, hashCount, addedCount);
+    }
+
+    private long index(long hash1, long hash2, int i) {
+        return ((hash1 + i * hash2) & Long.MAX_VALUE) % bitSize;
+    }
+    private boolean getBit(long index) {
+        return (bits.get((int) (index >>> 6)) & (1L << index)) != 0;
+    }
+    private boolean setBit(long index) {
+        int word = (int) (index >>> 6);
+        long mask = 1L << index;
+        long oldValue;
+        do {
+            oldValue = bits.get(word);
+            if ((oldValue & mask) != 0) {
+                return false;
+            }
+        } while (!bits.compareAndSet(word, oldValue, oldValue | mask));
+        return true;
+    }
+
+    // 64-bit FNV-1a over UTF-16 chars, avoiding a byte array copy
+    private static long hash(String reference) {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < reference.length(); i++) {
+            char ch = reference.charAt(i);
+            hash = (hash ^ (ch & 0xff)) * FNV_PRIME;
+            hash = (hash ^ (ch >>> 8)) * FNV_PRIME;
+        }
+        return hash;
+    }
+    // MurmurHash3 64-bit finalizer, for better bit dispersion
+    private static long mix(long value) {
+        long k = value;
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("bitSize", bitSize)
+                .append("hashCount", hashCount)
+                .append("approximateCount", addedCount.get())
+                .toString();
+    }
+}
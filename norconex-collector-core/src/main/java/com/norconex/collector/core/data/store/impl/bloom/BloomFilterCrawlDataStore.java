@@ -0,0 +1,307 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.store.impl.bloom;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.norconex.collector.core.data.ICrawlData;
+import com.norconex.collector.core.data.store.CrawlDataStage;
+import com.norconex.collector.core.data.store.CrawlDataStoreException;
+import com.norconex.collector.core.data.store.DelegatingCrawlDataStore;
+import com.norconex.collector.core.data.store.ICrawlDataStore;
+
+/**
+ * <p>Crawl data store decorator keeping an in-memory
+ * {@link BloomFilter} of all references queued or processed in the
+ * current run. Lookups for references the filter knows were never seen
+ * are answered without querying the underlying store, which on link-heavy
+ * sites saves most of the store round trips made when queuing
+ * extracted references.</p>
+ * <p>The filter is saved to a file when this store is closed and loaded
+ * back when resuming. The file is deleted once loaded so a crawler
+ * stopping abnormally never leaves a stale filter behind. When resuming
+ * without a saved filter (e.g. after a crash), references already in the
+ * underlying store cannot be known so the filter is disabled for the run
+ * and all calls are forwarded as is.</p>
+ * @author Pascal Essiembre
+ * @since 1.9.2
+ */
+public class BloomFilterCrawlDataStore extends DelegatingCrawlDataStore
+        implements BloomFilterCrawlDataStoreMBean {
+
+    private static final Logger LOG =
+            LogManager.getLogger(BloomFilterCrawlDataStore.class);
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final File filterFile;
+    private final BloomFilter filter;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong falsePositiveCount = new AtomicLong();
+
+    /**
+     * Creates a Bloom filter crawl data store.
+     * @param delegate the crawl data store to decorate
+     * @param filterFile file where to save the filter on close
+     * @param expectedReferences expected number of references
+     * @param falsePositiveRate targeted false positive probability
+     * @param resume whether the crawl data store is being resumed
+     */
+    public BloomFilterCrawlDataStore(ICrawlDataStore delegate,
+            File filterFile, long expectedReferences,
+            double falsePositiveRate, boolean resume) {
+        super(delegate);
+        this.filterFile = filterFile;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+        BloomFilter savedFilter = null;
+        if (resume) {
+            savedFilter = loadFilter();
+        }
+        FileUtils.deleteQuietly(filterFile);
+        if (savedFilter != null) {
+            filter = savedFilter;
+        } else if (resume && !isDelegateEmpty()) {
+            LOG.warn("No seen references filter could be loaded from "
+                    + filterFile + ". The filter is disabled for this run.");
+            filter = null;
+        } else {
+            filter = new BloomFilter(expectedReferences, falsePositiveRate);
+        }
+        LOG.debug("Seen references filter: " + filter);
+    }
+
+    @Override
+    public void queue(ICrawlData crawlData) {
+        if (filter != null) {
+            filter.put(crawlData.getReference());
+        }
+        super.queue(crawlData);
+    }
+
+    @Override
+    public void queueAll(Iterable<? extends ICrawlData> crawlDatas) {
+        super.queueAll(addingToFilter(crawlDatas));
+    }
+
+    @Override
+    public CrawlDataStage queueIfAbsent(ICrawlData crawlData) {
+        if (filter == null) {
+            return super.queueIfAbsent(crawlData);
+        }
+        String reference = crawlData.getReference();
+        // Same references always share a lock, so only one thread at a
+        // time can find a given reference absent and queue it.
+        synchronized (lockFor(reference)) {
+            if (filter.put(reference)) {
+                hitCount.incrementAndGet();
+                super.queue(crawlData);
+                return null;
+            }
+            missCount.incrementAndGet();
+            CrawlDataStage stage = super.queueIfAbsent(crawlData);
+            if (stage == null) {
+                falsePositiveCount.incrementAndGet();
+            }
+            return stage;
+        }
+    }
+
+    @Override
+    public CrawlDataStage getStage(String reference) {
+        if (isNeverSeen(reference)) {
+            return null;
+        }
+        CrawlDataStage stage = super.getStage(reference);
+        if (stage == null && filter != null) {
+            falsePositiveCount.incrementAndGet();
+        }
+        return stage;
+    }
+
+    @Override
+    public boolean isQueued(String reference) {
+        return !isNeverSeen(reference) && super.isQueued(reference);
+    }
+
+    @Override
+    public boolean isActive(String reference) {
+        return !isNeverSeen(reference) && super.isActive(reference);
+    }
+
+    @Override
+    public void processed(ICrawlData crawlData) {
+        if (filter != null) {
+            filter.put(crawlData.getReference());
+        }
+        super.processed(crawlData);
+    }
+
+    @Override
+    public void processedAll(Iterable<? extends ICrawlData> crawlDatas) {
+        super.processedAll(addingToFilter(crawlDatas));
+    }
+
+    @Override
+    public boolean isProcessed(String reference) {
+        return !isNeverSeen(reference) && super.isProcessed(reference);
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (filter != null) {
+                saveFilter();
+            }
+        } finally {
+            super.close();
+        }
+    }
+
+    @Override
+    public long getHitCount() {
+        return hitCount.get();
+    }
+    @Override
+    public long getMissCount() {
+        return missCount.get();
+    }
+    @Override
+    public long getFalsePositiveCount() {
+        return falsePositiveCount.get();
+    }
+    @Override
+    public long getReferenceCount() {
+        if (filter == null) {
+            return 0;
+        }
+        return filter.getApproximateCount();
+    }
+    @Override
+    public double getFalsePositiveRate() {
+        if (filter == null) {
+            return 1d;
+        }
+        return filter.getCurrentFalsePositiveRate();
+    }
+    @Override
+    public boolean isEnabled() {
+        return filter != null;
+    }
+
+    private boolean isNeverSeen(String reference) {
+        if (filter == null) {
+            return false;
+        }
+        if (filter.mightContain(reference)) {
+            missCount.incrementAndGet();
+            return false;
+        }
+        hitCount.incrementAndGet();
+        return true;
+    }
+
+    // Adds references to the filter as they are iterated, so they are
+    // always added before being written to the underlying store.
+    private Iterable<? extends ICrawlData> addingToFilter(
+            final Iterable<? extends ICrawlData> crawlDatas) {
+        if (filter == null) {
+            return crawlDatas;
+        }
+        return new Iterable<ICrawlData>() {
+            @Override
+            public Iterator<ICrawlData> iterator() {
+                final Iterator<? extends ICrawlData> it = crawlDatas.iterator();
+                return new Iterator<ICrawlData>() {
+                    @Override
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+                    @Override
+                    public ICrawlData next() {
+                        ICrawlData crawlData = it.next();
+                        filter.put(crawlData.getReference());
+                        return crawlData;
+                    }
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    private Object lockFor(String reference) {
+        return locks[(reference.hashCode() & Integer.MAX_VALUE) % LOCK_STRIPES];
+    }
+
+    private boolean isDelegateEmpty() {
+        ICrawlDataStore delegate = getDelegate();
+        return delegate.isQueueEmpty() && delegate.getActiveCount() == 0
+                && delegate.getProcessedCount() == 0;
+    }
+
+    private BloomFilter loadFilter() {
+        if (!filterFile.isFile()) {
+            return null;
+        }
+        try (InputStream is = new BufferedInputStream(
+                new FileInputStream(filterFile))) {
+            BloomFilter bloomFilter = BloomFilter.readFrom(is);
+            LOG.info("Seen references filter loaded from: " + filterFile);
+            return bloomFilter;
+        } catch (IOException e) {
+            LOG.error("Could not load seen references filter from: "
+                    + filterFile, e);
+            return null;
+        }
+    }
+
+    private void saveFilter() {
+        File tempFile = new File(filterFile.getPath() + ".tmp");
+        try {
+            FileUtils.forceMkdir(filterFile.getAbsoluteFile().getParentFile());
+            try (OutputStream os = new BufferedOutputStream(
+                    new FileOutputStream(tempFile))) {
+                filter.writeTo(os);
+            }
+            FileUtils.deleteQuietly(filterFile);
+            FileUtils.moveFile(tempFile, filterFile);
+            LOG.info("Seen references filter saved to: " + filterFile);
+        } catch (IOException e) {
+            FileUtils.deleteQuietly(tempFile);
+            throw new CrawlDataStoreException(
+                    "Could not save seen references filter to: "
+                            + filterFile, e);
+        }
+    }
+}
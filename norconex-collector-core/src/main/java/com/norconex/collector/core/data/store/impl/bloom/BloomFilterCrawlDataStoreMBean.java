@@ -0,0 +1,64 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.store.impl.bloom;
+
+/**
+ * JMX monitoring of a {@link BloomFilterCrawlDataStore}.
+ * @author Pascal Essiembre
+ * @since 1.9.2
+ */
+public interface BloomFilterCrawlDataStoreMBean {
+
+    /**
+     * Gets the number of reference lookups answered by the filter
+     * alone, without querying the underlying crawl data store.
+     * @return lookups saved
+     */
+    long getHitCount();
+
+    /**
+     * Gets the number of reference lookups the filter could not answer
+     * and were forwarded to the underlying crawl data store.
+     * @return lookups forwarded
+     */
+    long getMissCount();
+
+    /**
+     * Gets the number of forwarded lookups for which the underlying crawl
+     * data store did not know the reference.
+     * @return false positives
+     */
+    long getFalsePositiveCount();
+
+    /**
+     * Gets the approximate number of distinct references in the filter.
+     * @return approximate number of references
+     */
+    long getReferenceCount();
+
+    /**
+     * Gets the false positive probability given the number of references
+     * in the filter.
+     * @return current false positive probability
+     */
+    double getFalsePositiveRate();
+
+    /**
+     * Whether the filter is used. It is not when resuming without
+     * a filter saved by the previous run.
+     * @return <code>true</code> if enabled
+     */
+    boolean isEnabled();
+}
@@ -16,19 +16,24 @@ package com.norconex.collector.core.data.store.impl.jdbc;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.io.StringWriter;
 import java.io.Writer;
 
 import javax.xml.stream.XMLStreamException;
 
+import org.apache.commons.configuration.XMLConfiguration;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
 
 import com.norconex.collector.core.crawler.ICrawlerConfig;
+import com.norconex.collector.core.data.codec.CrawlDataCodecRegistry;
+import com.norconex.collector.core.data.store.ICrawlDataRanker;
 import com.norconex.collector.core.data.store.ICrawlDataStore;
 import com.norconex.collector.core.data.store.ICrawlDataStoreFactory;
 import com.norconex.commons.lang.config.IXMLConfigurable;
+import com.norconex.commons.lang.config.XMLConfigurationUtil;
 import com.norconex.commons.lang.file.FileUtil;
 import com.norconex.commons.lang.xml.EnhancedXMLStreamWriter;
 
@@ -36,19 +41,69 @@ import com.norconex.commons.lang.xml.EnhancedXMLStreamWriter;
  * <p>
  * JDBC implementation of {@link ICrawlDataStore} using H2 database.
  * </p>
+ * <p>
+ * As of 1.9.2, crawler threads access the database concurrently.
+ * You can configure the maximum number of database connections
+ * (defaults to the number of crawler threads plus one), how many
+ * prepared statements are cached for each connection, and the maximum 
+ * delay before writes are flushed to disk (defaults to zero, for best
+ * crash recovery).
+ * </p>
  * <h3>XML configuration usage:</h3>
  * <pre>
  *  &lt;crawlDataStoreFactory 
- *          class="com.norconex.collector.core.data.store.impl.jdbc.BasicJDBCCrawlDataStoreFactory"/&gt;
+ *          class="com.norconex.collector.core.data.store.impl.jdbc.BasicJDBCCrawlDataStoreFactory"&gt;
+ *      &lt;maxConnections&gt;
+ *          (Maximum database connections. Default is crawler threads + 1)
+ *      &lt;/maxConnections&gt;
+ *      &lt;maxPreparedStatements&gt;
+ *          (Prepared statements cached per connection. 0 disables caching.
+ *           Default is 50)
+ *      &lt;/maxPreparedStatements&gt;
+ *      &lt;writeDelay&gt;
+ *          (Maximum delay before writes are flushed to disk. Default is 0)
+ *      &lt;/writeDelay&gt;
+ *      &lt;binary&gt;[false|true]&lt;/binary&gt;
+ *      &lt;queueRanker class="(ICrawlDataRanker implementation)"&gt;
+ *          (Ranker configuration options, if any.)
+ *      &lt;/queueRanker&gt;
+ *  &lt;/crawlDataStoreFactory&gt;
  * </pre>
+ * <p>
+ * The <code>writeDelay</code> is in milliseconds or a human-readable
+ * duration (e.g., "1 second").
+ * </p>
+ * <p>
+ * Also as of 1.9.2, setting <code>binary</code> to <code>true</code>
+ * stores crawl data in a compact binary form instead of one column per 
+ * field (see {@link BinaryJDBCSerializer}). Changing this option 
+ * requires starting with a fresh crawl store (i.e., not resuming).
+ * </p>
+ * <p>
+ * Also as of 1.9.2, queued references are processed in the order they
+ * were queued, unless a <code>queueRanker</code> is configured to rank 
+ * them (see {@link ICrawlDataRanker}).
+ * </p>
+ * 
+ * <h3>Upgrading</h3>
+ * <p>
+ * As of 1.9.2, the queue and active tables have extra columns holding
+ * the queue order. They are added automatically when opening a crawl 
+ * store created by an earlier version, which can then be resumed.
+ * References already queued at that time all share the same rank and 
+ * are not processed in any particular order among themselves.
+ * </p>
  * 
  * <h4>Usage example:</h4>
  * <p>
- * The following changes the default to use an H2 database.
+ * The following changes the default to use an H2 database, 
+ * flushing writes to disk at least every half second.
  * </p> 
  * <pre>
  *  &lt;crawlDataStoreFactory 
- *          class="com.norconex.collector.core.data.store.impl.jdbc.BasicJDBCCrawlDataStoreFactory"/&gt;
+ *          class="com.norconex.collector.core.data.store.impl.jdbc.BasicJDBCCrawlDataStoreFactory"&gt;
+ *      &lt;writeDelay&gt;500&lt;/writeDelay&gt;
+ *  &lt;/crawlDataStoreFactory&gt;
  * </pre>
  * @author Pascal Essiembre
  * @since 1.5.0
@@ -56,26 +111,163 @@ import com.norconex.commons.lang.xml.EnhancedXMLStreamWriter;
 public class BasicJDBCCrawlDataStoreFactory 
         implements ICrawlDataStoreFactory, IXMLConfigurable {
 
+    /** @since 1.9.2 */
+    public static final int DEFAULT_MAX_PREPARED_STATEMENTS = 50;
+    /** @since 1.9.2 */
+    public static final long DEFAULT_WRITE_DELAY = 0;
+
+    private int maxConnections;
+    private int maxPreparedStatements = DEFAULT_MAX_PREPARED_STATEMENTS;
+    private long writeDelay = DEFAULT_WRITE_DELAY;
+    private boolean binary;
+    private ICrawlDataRanker queueRanker;
+
     public BasicJDBCCrawlDataStoreFactory() {
         super();
     }
 
     protected IJDBCSerializer createJDBCSerializer() {
+        if (isBinary()) {
+            return new BinaryJDBCSerializer(createCodecRegistry());
+        }
         return new BasicJDBCSerializer();
     }
+
+    /**
+     * Creates the codecs used to store crawl data when
+     * {@link #isBinary()} is <code>true</code>. Collectors with their 
+     * own crawl data class should override this method to register
+     * a codec for it.
+     * @return codec registry
+     * @since 1.9.2
+     */
+    protected CrawlDataCodecRegistry createCodecRegistry() {
+        return new CrawlDataCodecRegistry();
+    }
     
     @Override
     public ICrawlDataStore createCrawlDataStore(
             ICrawlerConfig config, boolean resume) {
         String storeDir = config.getWorkDir().getPath() + "/crawlstore/jdbc/" 
                 + FileUtil.toSafeFileName(config.getId()) + "/";
-        return new JDBCCrawlDataStore(
-                storeDir, resume, createJDBCSerializer());
+        int connections = getMaxConnections();
+        if (connections == 0) {
+            connections = config.getNumThreads() + 1;
+        }
+        return new JDBCCrawlDataStore(storeDir, resume, 
+                createJDBCSerializer(), connections, 
+                getMaxPreparedStatements(), getWriteDelay(), 
+                getQueueRanker());
+    }
+
+    /**
+     * Gets the maximum number of database connections. Zero (default)
+     * uses the crawler number of threads plus one.
+     * @return maximum number of connections
+     * @since 1.9.2
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+    /**
+     * Sets the maximum number of database connections. Zero
+     * uses the crawler number of threads plus one. A negative value 
+     * means no limit.
+     * @param maxConnections maximum number of connections
+     * @since 1.9.2
+     */
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * Gets the maximum number of prepared statements cached for each
+     * database connection.
+     * @return maximum number of cached prepared statements
+     * @since 1.9.2
+     */
+    public int getMaxPreparedStatements() {
+        return maxPreparedStatements;
+    }
+    /**
+     * Sets the maximum number of prepared statements cached for each
+     * database connection. Zero disables caching. A negative value 
+     * means no limit.
+     * @param maxPreparedStatements maximum number of cached 
+     *        prepared statements
+     * @since 1.9.2
+     */
+    public void setMaxPreparedStatements(int maxPreparedStatements) {
+        this.maxPreparedStatements = maxPreparedStatements;
+    }
+
+    /**
+     * Gets the maximum delay in milliseconds before writes are flushed
+     * to disk.
+     * @return write delay
+     * @since 1.9.2
+     */
+    public long getWriteDelay() {
+        return writeDelay;
+    }
+    /**
+     * Sets the maximum delay in milliseconds before writes are flushed
+     * to disk. Higher values are faster, but changes made during 
+     * that delay are lost on a system crash.
+     * @param writeDelay write delay
+     * @since 1.9.2
+     */
+    public void setWriteDelay(long writeDelay) {
+        this.writeDelay = writeDelay;
+    }
+
+    /**
+     * Gets whether crawl data is stored in a compact binary form.
+     * @return <code>true</code> if stored as binary
+     * @since 1.9.2
+     */
+    public boolean isBinary() {
+        return binary;
+    }
+    /**
+     * Sets whether crawl data is stored in a compact binary form.
+     * @param binary <code>true</code> to store as binary
+     * @since 1.9.2
+     */
+    public void setBinary(boolean binary) {
+        this.binary = binary;
+    }
+
+    /**
+     * Gets the ranker establishing in which order queued references
+     * are processed. Default is <code>null</code> (queue order).
+     * @return queue ranker
+     * @since 1.9.2
+     */
+    public ICrawlDataRanker getQueueRanker() {
+        return queueRanker;
+    }
+    /**
+     * Sets the ranker establishing in which order queued references
+     * are processed.
+     * @param queueRanker queue ranker (<code>null</code> for queue order)
+     * @since 1.9.2
+     */
+    public void setQueueRanker(ICrawlDataRanker queueRanker) {
+        this.queueRanker = queueRanker;
     }
 
     @Override
     public void loadFromXML(Reader in) throws IOException {
-        // NOOP
+        XMLConfiguration xml = XMLConfigurationUtil.newXMLConfiguration(in);
+        setMaxConnections(xml.getInt("maxConnections", getMaxConnections()));
+        setMaxPreparedStatements(xml.getInt(
+                "maxPreparedStatements", getMaxPreparedStatements()));
+        setWriteDelay(XMLConfigurationUtil.getDuration(
+                xml, "writeDelay", getWriteDelay()));
+        setBinary(xml.getBoolean("binary", isBinary()));
+        setQueueRanker(XMLConfigurationUtil.newInstance(
+                xml, "queueRanker", getQueueRanker()));
     }
 
     @Override
@@ -84,6 +276,26 @@ public class BasicJDBCCrawlDataStoreFactory
             EnhancedXMLStreamWriter writer = new EnhancedXMLStreamWriter(out);
             writer.writeStartElement("crawlDataStoreFactory");
             writer.writeAttribute("class", getClass().getCanonicalName());
+            writer.writeElementInteger("maxConnections", getMaxConnections());
+            writer.writeElementInteger(
+                    "maxPreparedStatements", getMaxPreparedStatements());
+            writer.writeElementLong("writeDelay", getWriteDelay());
+            writer.writeElementBoolean("binary", isBinary());
+            if (queueRanker instanceof IXMLConfigurable) {
+                StringWriter w = new StringWriter();
+                ((IXMLConfigurable) queueRanker).saveToXML(w);
+                // Closes the start tag before writing directly
+                writer.writeCharacters("");
+                writer.flush();
+                out.write(w.toString());
+                out.flush();
+            } else if (queueRanker != null) {
+                writer.writeStartElement("queueRanker");
+                writer.writeAttribute("class",
+                        queueRanker.getClass().getCanonicalName());
+                writer.writeEndElement();
+            }
+            writer.writeEndElement();
             writer.flush();
             writer.close();
         } catch (XMLStreamException e) {
@@ -100,6 +312,12 @@ public class BasicJDBCCrawlDataStoreFactory
                 (BasicJDBCCrawlDataStoreFactory) other;
         return new EqualsBuilder()
                 .append(getClass(), castOther.getClass())
+                .append(maxConnections, castOther.maxConnections)
+                .append(maxPreparedStatements, 
+                        castOther.maxPreparedStatements)
+                .append(writeDelay, castOther.writeDelay)
+                .append(binary, castOther.binary)
+                .append(queueRanker, castOther.queueRanker)
                 .isEquals();
     }
 
@@ -107,12 +325,22 @@ public class BasicJDBCCrawlDataStoreFactory
     public int hashCode() {
         return new HashCodeBuilder()
                 .append(getClass())
+                .append(maxConnections)
+                .append(maxPreparedStatements)
+                .append(writeDelay)
+                .append(binary)
+                .append(queueRanker)
                 .toHashCode();
     }
 
     @Override
     public String toString() {
         return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("maxConnections", maxConnections)
+                .append("maxPreparedStatements", maxPreparedStatements)
+                .append("writeDelay", writeDelay)
+                .append("binary", binary)
+                .append("queueRanker", queueRanker)
                 .toString();
     }    
 }
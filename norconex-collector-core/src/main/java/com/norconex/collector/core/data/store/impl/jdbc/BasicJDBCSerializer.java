@@ -18,11 +18,13 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Date;
 
+import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 
 import com.norconex.collector.core.data.BaseCrawlData;
 import com.norconex.collector.core.data.CrawlState;
 import com.norconex.collector.core.data.ICrawlData;
+import com.norconex.collector.core.data.store.CrawlDataStage;
 import com.norconex.commons.lang.file.ContentType;
 
 /**
@@ -41,22 +43,64 @@ public class BasicJDBCSerializer implements IJDBCSerializer {
             + "contentChecksum, "
             + "contentType, "
             + "crawlDate ";
+    /** @since 1.9.2 */
+    protected static final String QUEUE_ORDER_FIELDS = "queueRank, queueSeq ";
     
     @Override
     public String[] getCreateTableSQLs(String table) {
-        String sql = "CREATE TABLE " + table + " ("
-                + "reference VARCHAR(32672) NOT NULL, "
+        return getCreateTableSQLs(table, 
+                  "reference VARCHAR(32672) NOT NULL, "
                 + "parentRootReference VARCHAR(32672), "
                 + "isRootParentReference BOOLEAN, "
                 + "state VARCHAR(256), "
                 + "metaChecksum VARCHAR(32672), "
                 + "contentChecksum VARCHAR(32672), "
                 + "contentType VARCHAR(256), "
-                + "crawlDate BIGINT, "
-                + "PRIMARY KEY (reference))";
-        return new String[] { sql };
+                + "crawlDate BIGINT, ");
+    }
+    /**
+     * Gets the SQLs to create a table with the given columns, adding 
+     * queue order columns to the queue and active tables, and an index 
+     * on them to the queue table.
+     * @param table the table to create an SQL for
+     * @param columns comma-separated column definitions, ending with
+     *        a comma
+     * @return SQL
+     * @since 1.9.2
+     */
+    protected String[] getCreateTableSQLs(String table, String columns) {
+        boolean queue = JDBCCrawlDataStore.TABLE_QUEUE.equals(table);
+        StringBuilder sql = new StringBuilder(
+                "CREATE TABLE " + table + " (" + columns);
+        if (queue || JDBCCrawlDataStore.TABLE_ACTIVE.equals(table)) {
+            sql.append("queueRank DOUBLE, queueSeq BIGINT, ");
+        }
+        sql.append("PRIMARY KEY (reference))");
+        if (queue) {
+            // Unnamed, since a renamed table of a previous run keeps 
+            // its index names
+            return new String[] { sql.toString(), "CREATE INDEX ON " 
+                    + table + "(" + QUEUE_ORDER_FIELDS + ")" };
+        }
+        return new String[] { sql.toString() };
     }
 
+    @Override
+    public String[] getUpgradeTableSQLs(String table) {
+        boolean queue = JDBCCrawlDataStore.TABLE_QUEUE.equals(table);
+        if (!queue && !JDBCCrawlDataStore.TABLE_ACTIVE.equals(table)) {
+            return new String[] {};
+        }
+        String rank = "ALTER TABLE " + table 
+                + " ADD COLUMN IF NOT EXISTS queueRank DOUBLE DEFAULT 0";
+        String seq = "ALTER TABLE " + table 
+                + " ADD COLUMN IF NOT EXISTS queueSeq BIGINT DEFAULT 0";
+        if (queue) {
+            return new String[] { rank, seq, "CREATE INDEX ON " 
+                    + table + "(" + QUEUE_ORDER_FIELDS + ")" };
+        }
+        return new String[] { rank, seq };
+    }
     
     @Override
     public String getSelectCrawlDataSQL(String table) {
@@ -100,10 +144,46 @@ public class BasicJDBCSerializer implements IJDBCSerializer {
         };
     }
 
+    @Override
+    public String getInsertQueuedCrawlDataSQL(String table) {
+        return getInsertQueuedCrawlDataSQL(table, ALL_FIELDS, 8);
+    }
+    @Override
+    public Object[] getInsertQueuedCrawlDataValues(String table,
+            ICrawlData crawlData, double rank, long sequence) {
+        return ArrayUtils.addAll(getInsertCrawlDataValues(table, crawlData),
+                rank, sequence);
+    }
+    /**
+     * Gets the SQL to insert crawl data along with its queue order,
+     * for the given table fields.
+     * @param table table name
+     * @param fields comma-separated table fields, other than queue order
+     * @param fieldCount number of fields
+     * @return SQL
+     * @since 1.9.2
+     */
+    protected String getInsertQueuedCrawlDataSQL(
+            String table, String fields, int fieldCount) {
+        StringBuilder sql = new StringBuilder("INSERT INTO " + table + "("
+                + fields + ", " + QUEUE_ORDER_FIELDS + ") values (?,?");
+        for (int i = 0; i < fieldCount; i++) {
+            sql.append(",?");
+        }
+        sql.append(")");
+        return sql.toString();
+    }
+
+    @Override
+    public String getLastQueueSequenceSQL() {
+        return "SELECT MAX(queueSeq) FROM " + JDBCCrawlDataStore.TABLE_QUEUE;
+    }
+
     @Override
     public String getNextQueuedCrawlDataSQL() {
         return "SELECT " + ALL_FIELDS 
-                + "FROM " + JDBCCrawlDataStore.TABLE_QUEUE;
+                + "FROM " + JDBCCrawlDataStore.TABLE_QUEUE
+                + " ORDER BY " + QUEUE_ORDER_FIELDS;
     }
     @Override
     public Object[] getNextQueuedCrawlDataValues() {
@@ -130,6 +210,69 @@ public class BasicJDBCSerializer implements IJDBCSerializer {
         return new Object[] { reference };
     }
 
+    @Override
+    public String getReferenceStageSQL() {
+        return "SELECT '" + CrawlDataStage.ACTIVE + "' FROM "
+                        + JDBCCrawlDataStore.TABLE_ACTIVE
+                        + " WHERE reference = ? "
+                + "UNION ALL SELECT '" + CrawlDataStage.QUEUED + "' FROM "
+                        + JDBCCrawlDataStore.TABLE_QUEUE
+                        + " WHERE reference = ? "
+                + "UNION ALL SELECT '" + CrawlDataStage.PROCESSED + "' FROM "
+                        + JDBCCrawlDataStore.TABLE_PROCESSED_VALID
+                        + " WHERE reference = ? "
+                + "UNION ALL SELECT '" + CrawlDataStage.PROCESSED + "' FROM "
+                        + JDBCCrawlDataStore.TABLE_PROCESSED_INVALID
+                        + " WHERE reference = ?";
+    }
+    @Override
+    public Object[] getReferenceStageValues(String reference) {
+        return new Object[] { reference, reference, reference, reference };
+    }
+
+    @Override
+    public String getQueueIfAbsentSQL() {
+        return getQueueIfAbsentSQL(ALL_FIELDS, 8);
+    }
+    @Override
+    public Object[] getQueueIfAbsentValues(
+            ICrawlData crawlData, double rank, long sequence) {
+        String ref = crawlData.getReference();
+        return ArrayUtils.addAll(getInsertQueuedCrawlDataValues(
+                JDBCCrawlDataStore.TABLE_QUEUE, crawlData, rank, sequence),
+                ref, ref, ref, ref);
+    }
+    /**
+     * Gets the SQL to queue a reference only if absent, for the given
+     * queue table fields.
+     * @param fields comma-separated queue table fields, other than
+     *        queue order
+     * @param fieldCount number of fields
+     * @return SQL
+     * @since 1.9.2
+     */
+    protected String getQueueIfAbsentSQL(String fields, int fieldCount) {
+        StringBuilder sql = new StringBuilder("INSERT INTO "
+                + JDBCCrawlDataStore.TABLE_QUEUE + "(" + fields 
+                + ", " + QUEUE_ORDER_FIELDS + ") SELECT ?,?");
+        for (int i = 0; i < fieldCount; i++) {
+            sql.append(",?");
+        }
+        sql.append(" FROM DUAL WHERE ");
+        String[] tables = { JDBCCrawlDataStore.TABLE_QUEUE,
+                JDBCCrawlDataStore.TABLE_ACTIVE,
+                JDBCCrawlDataStore.TABLE_PROCESSED_VALID,
+                JDBCCrawlDataStore.TABLE_PROCESSED_INVALID };
+        for (int i = 0; i < tables.length; i++) {
+            if (i > 0) {
+                sql.append(" AND ");
+            }
+            sql.append("NOT EXISTS (SELECT 1 FROM " + tables[i]
+                    + " WHERE reference = ?)");
+        }
+        return sql.toString();
+    }
+
     @Override
     public ICrawlData toCrawlData(String table, ResultSet rs)
             throws SQLException {
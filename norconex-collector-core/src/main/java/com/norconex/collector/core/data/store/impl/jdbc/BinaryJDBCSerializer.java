@@ -0,0 +1,112 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.store.impl.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import com.norconex.collector.core.data.ICrawlData;
+import com.norconex.collector.core.data.codec.CrawlDataCodecRegistry;
+
+/**
+ * JDBC serializer storing crawl data as a binary payload encoded with
+ * a {@link CrawlDataCodecRegistry}, next to its reference. This saves
+ * space and conversion time over one column per field, at the cost of
+ * not being able to query individual fields. Tables created with
+ * {@link BasicJDBCSerializer} cannot be read by this serializer
+ * and vice versa.
+ * @author Pascal Essiembre
+ * @since 1.9.2
+ */
+public class BinaryJDBCSerializer extends BasicJDBCSerializer {
+
+    protected static final String BINARY_FIELDS = "reference, data ";
+
+    private final CrawlDataCodecRegistry codecRegistry;
+
+    public BinaryJDBCSerializer() {
+        this(new CrawlDataCodecRegistry());
+    }
+    public BinaryJDBCSerializer(CrawlDataCodecRegistry codecRegistry) {
+        super();
+        this.codecRegistry = codecRegistry;
+    }
+
+    public CrawlDataCodecRegistry getCodecRegistry() {
+        return codecRegistry;
+    }
+
+    @Override
+    public String[] getCreateTableSQLs(String table) {
+        return getCreateTableSQLs(table, 
+                "reference VARCHAR(32672) NOT NULL, data BLOB, ");
+    }
+
+    @Override
+    public String getSelectCrawlDataSQL(String table) {
+        return "SELECT " + BINARY_FIELDS + "FROM " + table;
+    }
+
+    @Override
+    public String getInsertCrawlDataSQL(String table) {
+        return "INSERT INTO " + table + "(" + BINARY_FIELDS
+                + ") values (?,?)";
+    }
+    @Override
+    public Object[] getInsertCrawlDataValues(
+            String table, ICrawlData crawlData) {
+        return new Object[] {
+                crawlData.getReference(),
+                codecRegistry.encode(crawlData)
+        };
+    }
+
+    @Override
+    public String getInsertQueuedCrawlDataSQL(String table) {
+        return getInsertQueuedCrawlDataSQL(table, BINARY_FIELDS, 2);
+    }
+
+    @Override
+    public String getQueueIfAbsentSQL() {
+        return getQueueIfAbsentSQL(BINARY_FIELDS, 2);
+    }
+
+    @Override
+    public String getNextQueuedCrawlDataSQL() {
+        return "SELECT " + BINARY_FIELDS
+                + "FROM " + JDBCCrawlDataStore.TABLE_QUEUE
+                + " ORDER BY " + QUEUE_ORDER_FIELDS;
+    }
+
+    @Override
+    public String getCachedCrawlDataSQL() {
+        return "SELECT " + BINARY_FIELDS
+                + "FROM " + JDBCCrawlDataStore.TABLE_CACHE
+                + " WHERE reference = ? ";
+    }
+
+    @Override
+    public ICrawlData toCrawlData(String table, ResultSet rs)
+            throws SQLException {
+        if (rs == null) {
+            return null;
+        }
+        byte[] data = rs.getBytes("data");
+        if (data == null) {
+            return null;
+        }
+        return codecRegistry.decode(data);
+    }
+}
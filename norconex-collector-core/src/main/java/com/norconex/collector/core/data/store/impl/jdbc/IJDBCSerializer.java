@@ -19,6 +19,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 
 import com.norconex.collector.core.data.ICrawlData;
+import com.norconex.collector.core.data.store.CrawlDataStage;
 
 /**
  * Serializer holding necessary information to insert, load, delete and create
@@ -29,10 +30,23 @@ public interface IJDBCSerializer {
 
     /**
      * Gets the SQLs used to create a data store table.
+     * As of 1.9.2, the queue and active tables must also hold the
+     * rank and sequence number of each reference, establishing in 
+     * which order queued references are processed.
      * @param table the table to create an SQL for
      * @return SQL
      */
     String[] getCreateTableSQLs(String table);
+
+    /**
+     * Gets the SQLs used to upgrade a data store table created by
+     * a version prior to 1.9.2, adding the queue order columns 
+     * (and index, if any) to the queue and active tables. 
+     * @param table the table to upgrade
+     * @return SQLs (empty if the table needs no upgrade)
+     * @since 1.9.2
+     */
+    String[] getUpgradeTableSQLs(String table);
     
     /**
      * Gets the SQL to obtain all {@link ICrawlData} entries in the given 
@@ -74,8 +88,42 @@ public interface IJDBCSerializer {
      */
     Object[] getInsertCrawlDataValues(String table, ICrawlData crawlData);
 
+    /**
+     * Gets the SQL to insert a new {@link ICrawlData} in the queue
+     * or active table, along with its queue rank and sequence number.
+     * @param table table name
+     * @return SQL
+     * @since 1.9.2
+     */
+    String getInsertQueuedCrawlDataSQL(String table);
+    /**
+     * Gets the {@link PreparedStatement} values (if any) necessary to 
+     * execute the SQL obtained with 
+     * {@link #getInsertQueuedCrawlDataSQL(String)}.
+     * The values must be returned in the expected order.
+     * @param table table name
+     * @param crawlData the crawl data to insert
+     * @param rank the queue rank
+     * @param sequence the queue sequence number
+     * @return values
+     * @since 1.9.2
+     */
+    Object[] getInsertQueuedCrawlDataValues(String table, 
+            ICrawlData crawlData, double rank, long sequence);
+
+    /**
+     * Gets the SQL to obtain the highest queue sequence number
+     * in the queue table, as a single value.
+     * @return SQL
+     * @since 1.9.2
+     */
+    String getLastQueueSequenceSQL();
+
     /**
      * Gets the SQL to obtain the next {@link ICrawlData} from the queue table.
+     * As of 1.9.2, rows must be returned by ascending queue rank and
+     * then queue sequence number. References are taken in that order,
+     * skipping those taken by other threads.
      * @return SQL
      */
     String getNextQueuedCrawlDataSQL();
@@ -116,6 +164,48 @@ public interface IJDBCSerializer {
      * @return values
      */
     Object[] getReferenceExistsValues(String table, String reference);
+
+    /**
+     * Gets the SQL to find in a single query which stage table
+     * (queue, active, valid or invalid) holds a reference.  The query must
+     * return a single column holding the {@link CrawlDataStage} name,
+     * or no rows if the reference does not exist in any of these tables.
+     * @return SQL
+     * @since 1.9.2
+     */
+    String getReferenceStageSQL();
+    /**
+     * Gets the {@link PreparedStatement} values (if any) necessary to 
+     * execute the SQL obtained with {@link #getReferenceStageSQL()}.
+     * The values must be returned in the expected order.
+     * @param reference the reference
+     * @return values
+     * @since 1.9.2
+     */
+    Object[] getReferenceStageValues(String reference);
+
+    /**
+     * Gets the SQL to insert a {@link ICrawlData} in the queue table with
+     * a single statement, only if its reference is not already queued,
+     * active or processed. The statement must insert nothing (or fail 
+     * with a primary key violation) if the reference exists in any of 
+     * these tables.
+     * @return SQL
+     * @since 1.9.2
+     */
+    String getQueueIfAbsentSQL();
+    /**
+     * Gets the {@link PreparedStatement} values (if any) necessary to 
+     * execute the SQL obtained with {@link #getQueueIfAbsentSQL()}.
+     * The values must be returned in the expected order.
+     * @param crawlData the crawl data to queue
+     * @param rank the queue rank
+     * @param sequence the queue sequence number
+     * @return values
+     * @since 1.9.2
+     */
+    Object[] getQueueIfAbsentValues(
+            ICrawlData crawlData, double rank, long sequence);
     
     /**
      * Convert a database entry to a {@link ICrawlData} instance.
@@ -16,14 +16,23 @@ package com.norconex.collector.core.data.store.impl.jdbc;
 
 import java.io.File;
 import java.io.IOException;
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-
-import javax.sql.DataSource;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.dbcp2.BasicDataSource;
 import org.apache.commons.dbutils.DbUtils;
@@ -32,13 +41,42 @@ import org.apache.commons.dbutils.ResultSetHandler;
 import org.apache.commons.dbutils.handlers.ArrayListHandler;
 import org.apache.commons.dbutils.handlers.ScalarHandler;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 
 import com.norconex.collector.core.data.ICrawlData;
 import com.norconex.collector.core.data.store.AbstractCrawlDataStore;
+import com.norconex.collector.core.data.store.BackgroundCleaner;
+import com.norconex.collector.core.data.store.CrawlDataStage;
 import com.norconex.collector.core.data.store.CrawlDataStoreException;
+import com.norconex.collector.core.data.store.ICrawlDataRanker;
+import com.norconex.collector.core.data.store.ICrawlDataStore;
 
+/**
+ * <p>
+ * JDBC implementation of {@link ICrawlDataStore} using an H2 database.
+ * </p>
+ * <p>
+ * As of 1.9.2, methods are no longer synchronized. Crawler threads
+ * access the database concurrently through a connection pool.
+ * References are taken from the queue row by row, each thread deleting
+ * queued rows and keeping only those it actually deleted, so the same
+ * reference is never returned to two threads.
+ * </p>
+ * <p>
+ * As of 1.9.2, when not resuming, tables of the previous run are only
+ * renamed before the crawl starts, and dropped in the background.
+ * </p>
+ * <p>
+ * Also as of 1.9.2, queued references are stored with a rank and a 
+ * queuing sequence number, and taken from the queue by ascending rank,
+ * and in the order they were queued for equal ranks. Ranks are obtained
+ * from an optional {@link ICrawlDataRanker}. Without one, references
+ * are processed in the order they were queued.
+ * </p>
+ * @author Pascal Essiembre
+ */
 public class JDBCCrawlDataStore extends AbstractCrawlDataStore {
 
     private static final Logger LOG = 
@@ -51,17 +89,88 @@ public class JDBCCrawlDataStore extends AbstractCrawlDataStore {
     public static final String TABLE_PROCESSED_INVALID = "invalid";
     
     private static final int NUMBER_OF_TABLES = 5;
+    private static final String TRASH_PREFIX = "trash_";
     private static final int H2_ERROR_ALREADY_EXISTS = 23505;
+    private static final int H2_ERROR_CONCURRENT_UPDATE = 90131;
+    private static final int H2_ERROR_LOCK_TIMEOUT = 50200;
+    private static final int BATCH_SIZE = 1000;
+    // How often progress is logged when copying many references
+    private static final int PROGRESS_INTERVAL = 100 * BATCH_SIZE;
+    // How many more queued rows than requested are read when taking
+    // references from the queue, so threads losing rows to others can
+    // take the next ones.
+    private static final int CANDIDATES_FACTOR = 4;
+    // How many times queuing a reference if absent is tried while the
+    // conflicting record is not yet committed by another transaction,
+    // and how long to wait between tries. Each try can already wait for
+    // the database lock timeout, so a few are enough.
+    private static final int QUEUE_IF_ABSENT_RETRIES = 5;
+    private static final long QUEUE_IF_ABSENT_BACKOFF = 20;
 
-    private final DataSource datasource;
+    private final BasicDataSource datasource;
     private final IJDBCSerializer serializer;
     private final String dbDir;
+    private final BackgroundCleaner cleaner;
+    // Number of records in each table, updated with every change so
+    // they do not have to be counted in the database.
+    private final Map<String, AtomicLong> counts = new HashMap<>();
+    private final ICrawlDataRanker ranker;
+    // Orders references of equal rank in the order they were queued
+    private final AtomicLong queueSequence = new AtomicLong();
     
     public JDBCCrawlDataStore(String path, boolean resume,
             IJDBCSerializer serializer) {
+        this(path, resume, serializer, 
+                GenericObjectPoolConfig.DEFAULT_MAX_TOTAL,
+                BasicJDBCCrawlDataStoreFactory.DEFAULT_MAX_PREPARED_STATEMENTS,
+                BasicJDBCCrawlDataStoreFactory.DEFAULT_WRITE_DELAY);
+    }
+
+    /**
+     * Creates a JDBC crawl data store.
+     * @param path store directory
+     * @param resume whether to resume an aborted job
+     * @param serializer JDBC serializer
+     * @param maxConnections maximum number of database connections
+     * @param maxPreparedStatements maximum number of prepared statements
+     *        cached per connection (0 disables caching)
+     * @param writeDelay maximum delay in milliseconds before writes
+     *        are flushed to disk
+     * @since 1.9.2
+     */
+    public JDBCCrawlDataStore(String path, boolean resume,
+            IJDBCSerializer serializer, int maxConnections, 
+            int maxPreparedStatements, long writeDelay) {
+        this(path, resume, serializer, maxConnections, 
+                maxPreparedStatements, writeDelay, null);
+    }
+
+    /**
+     * Creates a JDBC crawl data store.
+     * @param path store directory
+     * @param resume whether to resume an aborted job
+     * @param serializer JDBC serializer
+     * @param maxConnections maximum number of database connections
+     * @param maxPreparedStatements maximum number of prepared statements
+     *        cached per connection (0 disables caching)
+     * @param writeDelay maximum delay in milliseconds before writes
+     *        are flushed to disk
+     * @param ranker ranks queued references (<code>null</code> for
+     *        queue order)
+     * @since 1.9.2
+     */
+    public JDBCCrawlDataStore(String path, boolean resume,
+            IJDBCSerializer serializer, int maxConnections, 
+            int maxPreparedStatements, long writeDelay, 
+            ICrawlDataRanker ranker) {
         super();
         
         this.serializer = serializer;
+        this.ranker = ranker;
+        for (String table : new String[] { TABLE_QUEUE, TABLE_ACTIVE, 
+                TABLE_CACHE, TABLE_PROCESSED_VALID, TABLE_PROCESSED_INVALID }) {
+            counts.put(table, new AtomicLong());
+        }
         String fullPath = new File(path).getAbsolutePath();
         
         LOG.info("Initializing crawl document reference store: " + fullPath);
@@ -73,7 +182,9 @@ public class JDBCCrawlDataStore extends AbstractCrawlDataStore {
                     "Cannot create crawl store directory: " + fullPath, e);
         }
         this.dbDir = fullPath + "/h2/db";
-        this.datasource = createDataSource(dbDir);
+        this.cleaner = new BackgroundCleaner("JDBC cleaner: " + fullPath);
+        this.datasource = createDataSource(
+                dbDir, maxConnections, maxPreparedStatements, writeDelay);
         boolean incrementalRun;
         try {
             incrementalRun = ensureTablesExist();
@@ -81,128 +192,266 @@ public class JDBCCrawlDataStore extends AbstractCrawlDataStore {
             throw new CrawlDataStoreException(
                     "Problem creating crawl store.", e);
         }
+        initCounts();
         if (resume) {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Active count: " + getActiveCount());
                 LOG.debug("Processed count: " + getProcessedCount());
-                LOG.debug("Putting active references back in the queue...");
             }
-            copyCrawlDatasToQueue(TABLE_ACTIVE);
-            LOG.debug("Cleaning active database...");
-            sqlClearTable(TABLE_ACTIVE);
+            requeueActive();
+            queueSequence.set(
+                    sqlQueryLong(serializer.getLastQueueSequenceSQL()));
         } else if (incrementalRun) {
             LOG.info("Caching processed reference from last run (if any)...");
+            // Tables of the previous run are renamed away and dropped
+            // in the background, so the crawl can start right away.
+            long suffix = System.currentTimeMillis();
+            for (String table : new String[] { TABLE_CACHE, TABLE_QUEUE,
+                    TABLE_PROCESSED_INVALID, TABLE_ACTIVE }) {
+                String trashTable = TRASH_PREFIX + table + "_" + suffix;
+                sqlUpdate("ALTER TABLE " + table
+                        + " RENAME TO " + trashTable);
+                dropTableLater(trashTable);
+            }
             LOG.debug("Rename processed table to cache...");
-            sqlUpdate("DROP TABLE " + TABLE_CACHE);
             sqlUpdate("ALTER TABLE " + TABLE_PROCESSED_VALID 
                     + " RENAME TO " + TABLE_CACHE);
-            LOG.debug("Cleaning queue table...");
-            sqlClearTable(TABLE_QUEUE);
-            LOG.debug("Cleaning invalid references table...");
-            sqlClearTable(TABLE_PROCESSED_INVALID);
-            LOG.debug("Cleaning active table...");
-            sqlClearTable(TABLE_ACTIVE);
-            LOG.debug("Re-creating processed table...");
+            LOG.debug("Re-creating other tables...");
+            sqlCreateTable(TABLE_QUEUE);
+            sqlCreateTable(TABLE_ACTIVE);
             sqlCreateTable(TABLE_PROCESSED_VALID);
+            sqlCreateTable(TABLE_PROCESSED_INVALID);
+            initCounts();
         }
         LOG.info("Done initializing crawl document reference store.");
     }
 
+    /**
+     * Gets the ranker establishing in which order queued references
+     * are processed.
+     * @return queue ranker or <code>null</code> (queue order)
+     * @since 1.9.2
+     */
+    public ICrawlDataRanker getRanker() {
+        return ranker;
+    }
+
+    @Override
+    public final void queue(ICrawlData crawlData) {
+        queueAll(Collections.singletonList(crawlData));
+    }
+
+    @Override
+    public final void queueAll(
+            Iterable<? extends ICrawlData> crawlDatas) {
+        try (BatchWriter batch = new BatchWriter()) {
+            for (ICrawlData crawlData : crawlDatas) {
+                batch.insertQueued(TABLE_QUEUE, crawlData,
+                        queueSequence.incrementAndGet());
+                // Active references queued again are no longer active
+                batch.delete(TABLE_ACTIVE, crawlData);
+            }
+            batch.commit();
+        } catch (SQLException e) {
+            throw new CrawlDataStoreException(
+                    "Problem queuing references in batch.", e);
+        }
+    }
+
+    @Override
+    public final CrawlDataStage queueIfAbsent(
+            ICrawlData crawlData) {
+        // Inserted only if absent by a single statement, so it is atomic
+        // in the database, for this store and any other connection. 
+        // Concurrent inserts of the same reference fail on the primary 
+        // key. The stage is read only when nothing was inserted, which
+        // is tried again a few times in case the conflicting record is 
+        // not committed yet, or moved to a stage not visible to either 
+        // statement in the meantime.
+        Object[] values = serializer.getQueueIfAbsentValues(crawlData,
+                getRank(crawlData), queueSequence.incrementAndGet());
+        for (int i = 0; i < QUEUE_IF_ABSENT_RETRIES; i++) {
+            if (i > 0) {
+                try {
+                    Thread.sleep(QUEUE_IF_ABSENT_BACKOFF);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CrawlDataStoreException(
+                            "Interrupted while queuing reference: "
+                                    + crawlData.getReference(), e);
+                }
+            }
+            int inserted = sqlInsertIfAbsent(
+                    serializer.getQueueIfAbsentSQL(), values);
+            if (inserted > 0) {
+                counts.get(TABLE_QUEUE).addAndGet(inserted);
+                return null;
+            }
+            CrawlDataStage stage = getStage(crawlData.getReference());
+            if (stage != null) {
+                return stage;
+            }
+        }
+        throw new CrawlDataStoreException("Could not queue reference "
+                + "nor find its stage after " + QUEUE_IF_ABSENT_RETRIES 
+                + " attempts, another transaction holds it: "
+                + crawlData.getReference());
+    }
+
+    @Override
+    public final CrawlDataStage getStage(String reference) {
+        String sql = serializer.getReferenceStageSQL();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("SQL: " + sql);
+        }
+        try {
+            String stage = new QueryRunner(datasource).query(sql,
+                    new ScalarHandler<String>(),
+                    serializer.getReferenceStageValues(reference));
+            if (stage == null) {
+                return null;
+            }
+            return CrawlDataStage.valueOf(stage);
+        } catch (SQLException e) {
+            throw new CrawlDataStoreException(
+                    "Problem getting reference stage.", e);            
+        }
+    }
+
     @Override
-    public final synchronized void queue(ICrawlData crawlData) {
-        sqlInsertCrawlData(TABLE_QUEUE, crawlData);
+    public final void processed(ICrawlData crawlData) {
+        processedAll(Collections.singletonList(crawlData));
     }
 
     @Override
-    public final synchronized void processed(ICrawlData crawlData) {
-        ICrawlData crawlDataCopy = crawlData.clone();
-        String table;
-        if (crawlDataCopy.getState().isGoodState()) {
-            table = TABLE_PROCESSED_VALID;
-        } else {
-            table = TABLE_PROCESSED_INVALID;
+    public final void processedAll(
+            Iterable<? extends ICrawlData> crawlDatas) {
+        try (BatchWriter batch = new BatchWriter()) {
+            for (ICrawlData crawlData : crawlDatas) {
+                ICrawlData crawlDataCopy = crawlData.clone();
+                if (crawlDataCopy.getState().isGoodState()) {
+                    batch.insert(TABLE_PROCESSED_VALID, crawlDataCopy);
+                } else {
+                    batch.insert(TABLE_PROCESSED_INVALID, crawlDataCopy);
+                }
+                batch.delete(TABLE_ACTIVE, crawlDataCopy);
+                batch.delete(TABLE_CACHE, crawlDataCopy);
+            }
+            batch.commit();
+        } catch (SQLException e) {
+            throw new CrawlDataStoreException(
+                    "Problem marking references as processed in batch.", e);
         }
-        sqlInsertCrawlData(table, crawlDataCopy);
-        sqlDeleteCrawlData(TABLE_ACTIVE, crawlDataCopy);
-        sqlDeleteCrawlData(TABLE_CACHE, crawlDataCopy);
     }
 
     @Override
-    public final synchronized boolean isQueueEmpty() {
-        return getQueueSize()  == 0;
+    public final boolean isQueueEmpty() {
+        return getQueueSize() == 0;
     }
 
     @Override
-    public final synchronized int getQueueSize() {
-        return sqlRecordCount(TABLE_QUEUE);
+    public final long getQueueSize() {
+        return counts.get(TABLE_QUEUE).get();
     }
 
     @Override
-    public final synchronized boolean isQueued(String reference) {
+    public final boolean isQueued(String reference) {
         return sqlReferenceExists(TABLE_QUEUE, reference);
     }
 
     @Override
-    public final synchronized ICrawlData nextQueued() {
-        ICrawlData crawlData = sqlFindCrawlData(TABLE_QUEUE, 
-                serializer.getNextQueuedCrawlDataSQL(),
-                serializer.getNextQueuedCrawlDataValues());
-        if (crawlData != null) {
-            sqlInsertCrawlData(TABLE_ACTIVE, crawlData);
-            sqlDeleteCrawlData(TABLE_QUEUE, crawlData);
+    public final ICrawlData nextQueued() {
+        List<ICrawlData> crawlDatas = nextQueued(1);
+        if (crawlDatas.isEmpty()) {
+            return null;
+        }
+        return crawlDatas.get(0);
+    }
+
+    @Override
+    public final List<ICrawlData> nextQueued(int max) {
+        try (BatchWriter batch = new BatchWriter()) {
+            // Candidates are tried in queue order
+            List<ICrawlData> candidates = batch.find(TABLE_QUEUE,
+                    serializer.getNextQueuedCrawlDataSQL(),
+                    serializer.getNextQueuedCrawlDataValues(), 
+                    max * CANDIDATES_FACTOR);
+            List<ICrawlData> crawlDatas = new ArrayList<>(max);
+            for (ICrawlData crawlData : candidates) {
+                if (crawlDatas.size() == max) {
+                    break;
+                }
+                if (batch.take(TABLE_QUEUE, crawlData)) {
+                    // Active references come first if put back in 
+                    // the queue on resume.
+                    batch.insertQueued(TABLE_ACTIVE, crawlData, 0);
+                    crawlDatas.add(crawlData);
+                }
+            }
+            batch.commit();
+            return crawlDatas;
+        } catch (SQLException e) {
+            throw new CrawlDataStoreException(
+                    "Problem getting next queued references in batch.", e);
         }
-        return crawlData;
     }
 
     @Override
-    public final synchronized boolean isActive(String reference) {
+    public final boolean isActive(String reference) {
         return sqlReferenceExists(TABLE_ACTIVE, reference);
     }
     
     @Override
-    public final synchronized int getActiveCount() {
-        return sqlRecordCount(TABLE_ACTIVE);
+    public final long getActiveCount() {
+        return counts.get(TABLE_ACTIVE).get();
     }
 
     @Override
-    public synchronized ICrawlData getCached(String reference) {
+    public ICrawlData getCached(String reference) {
         return sqlFindCrawlData(TABLE_CACHE, 
                 serializer.getCachedCrawlDataSQL(),
                 serializer.getCachedCrawlDataValues(reference));
     }
 
     @Override
-    public final synchronized boolean isCacheEmpty() {
-        return sqlRecordCount(TABLE_CACHE) == 0;
+    public final boolean isCacheEmpty() {
+        return counts.get(TABLE_CACHE).get() == 0;
     }
     
     @Override
-    public final synchronized boolean isProcessed(String reference) {
+    public final boolean isProcessed(String reference) {
         return sqlReferenceExists(TABLE_PROCESSED_VALID, reference)
                 || sqlReferenceExists(TABLE_PROCESSED_INVALID, reference);
     }
 
     @Override
-    public final synchronized int getProcessedCount() {
-        return sqlRecordCount(TABLE_PROCESSED_VALID)
-                + sqlRecordCount(TABLE_PROCESSED_INVALID);
+    public final long getProcessedCount() {
+        return counts.get(TABLE_PROCESSED_VALID).get()
+                + counts.get(TABLE_PROCESSED_INVALID).get();
     }
 
     @Override
     public Iterator<ICrawlData> getCacheIterator() {
+        Connection conn = null;
+        Statement stmt = null;
+        ResultSet rs = null;
         try {
-            final Connection conn = datasource.getConnection(); 
-            final Statement stmt = conn.createStatement(
-                    ResultSet.TYPE_SCROLL_INSENSITIVE,
+            // Forward-only, so the cache is read as it goes instead of
+            // being loaded entirely first.
+            conn = datasource.getConnection(); 
+            stmt = conn.createStatement(
+                    ResultSet.TYPE_FORWARD_ONLY,
                     ResultSet.CONCUR_READ_ONLY);
-            final ResultSet rs = stmt.executeQuery(
+            stmt.setFetchSize(BATCH_SIZE);
+            rs = stmt.executeQuery(
                     serializer.getSelectCrawlDataSQL(TABLE_CACHE));
-            if (rs == null || !rs.first()) {
+            if (rs == null || !rs.next()) {
+                DbUtils.closeQuietly(conn, stmt, rs);
                 return null;
             }
-            rs.beforeFirst();
             return new CrawlDataIterator(TABLE_CACHE, rs, conn, stmt);
         } catch (SQLException e) {
+            DbUtils.closeQuietly(conn, stmt, rs);
             throw new CrawlDataStoreException(
                     "Problem getting database cache iterator.", e);            
         }
@@ -211,43 +460,112 @@ public class JDBCCrawlDataStore extends AbstractCrawlDataStore {
     
     @Override
     public void close() {
-        // NOOP
+        cleaner.close();
+        try {
+            datasource.close();
+        } catch (SQLException e) {
+            throw new CrawlDataStoreException(
+                    "Could not close crawl store database.", e);
+        }
     }
     
     private boolean sqlReferenceExists(String table, String reference) {
-        return sqlQueryInteger(serializer.getReferenceExistsSQL(table),
+        return sqlQueryLong(serializer.getReferenceExistsSQL(table),
                 serializer.getReferenceExistsValues(table, reference)) > 0;
     }
     
     private void sqlClearTable(String table) {
-        sqlUpdate("DELETE FROM " + table);
+        counts.get(table).addAndGet(-sqlUpdate("DELETE FROM " + table));
     }
     
-    private void sqlDeleteCrawlData(String table, ICrawlData crawlData) {
-        sqlUpdate(serializer.getDeleteCrawlDataSQL(table),
-                serializer.getDeleteCrawlDataValues(table, crawlData));
+    private long sqlRecordCount(String table) {
+        return sqlQueryLong("SELECT count(*) FROM " + table);
     }
-    
-    private int sqlRecordCount(String table) {
-        return sqlQueryInteger("SELECT count(*) FROM " + table);
+
+    private double getRank(ICrawlData crawlData) {
+        return ranker == null ? 0 : ranker.getRank(crawlData);
     }
 
-    private void sqlInsertCrawlData(String table, ICrawlData crawlData) {
-        sqlUpdate(serializer.getInsertCrawlDataSQL(table),
-                serializer.getInsertCrawlDataValues(table, crawlData));
+    private void initCounts() {
+        for (Entry<String, AtomicLong> count : counts.entrySet()) {
+            count.getValue().set(sqlRecordCount(count.getKey()));
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Record counts: " + counts);
+        }
     }
     
-    private void copyCrawlDatasToQueue(final String sourceTable) {
+    // Active references are moved back to the queue with a single
+    // statement when both tables have the same columns, like with
+    // the provided serializers. Otherwise they are copied in batches.
+    private void requeueActive() {
+        long activeCount = getActiveCount();
+        if (activeCount == 0) {
+            return;
+        }
+        LOG.info("Putting " + activeCount
+                + " active references back in the queue...");
+        long start = System.currentTimeMillis();
+        if (!sqlMoveActiveToQueue()) {
+            copyCrawlDatasToQueue(TABLE_ACTIVE, activeCount);
+            LOG.debug("Cleaning active database...");
+            sqlClearTable(TABLE_ACTIVE);
+        }
+        initCounts();
+        LOG.info("Put " + activeCount + " active references back in the "
+                + "queue in " + (System.currentTimeMillis() - start) + "ms.");
+    }
+
+    // Returns false if it could not be done with a single statement
+    private boolean sqlMoveActiveToQueue() {
+        try (Connection conn = datasource.getConnection()) {
+            conn.setAutoCommit(false);
+            try (Statement stmt = conn.createStatement()) {
+                // Queued references also active are replaced
+                stmt.executeUpdate("MERGE INTO " + TABLE_QUEUE
+                        + " SELECT * FROM " + TABLE_ACTIVE);
+                stmt.executeUpdate("DELETE FROM " + TABLE_ACTIVE);
+                conn.commit();
+                return true;
+            } catch (SQLException e) {
+                conn.rollback();
+                LOG.debug("Could not move active references to the queue "
+                        + "with a single statement. Copying them instead.",
+                        e);
+                return false;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new CrawlDataStoreException(
+                    "Problem putting active references back in queue.", e);
+        }
+    }
+
+    private void copyCrawlDatasToQueue(
+            final String sourceTable, final long total) {
         ResultSetHandler<Void> h = new ResultSetHandler<Void>() {
             @Override
             public Void handle(ResultSet rs) throws SQLException {
+                List<ICrawlData> batch = new ArrayList<>(BATCH_SIZE);
+                long copied = 0;
                 while(rs.next()) {
                     ICrawlData crawlData = 
                             serializer.toCrawlData(sourceTable, rs);
                     if (crawlData != null) {
-                        queue(crawlData);
+                        batch.add(crawlData);
+                    }
+                    if (batch.size() == BATCH_SIZE) {
+                        queueAll(batch);
+                        copied += batch.size();
+                        batch.clear();
+                        if (copied % PROGRESS_INTERVAL == 0) {
+                            LOG.info("Queued " + copied + " of " + total
+                                    + " references...");
+                        }
                     }
                 }
+                queueAll(batch);
                 return null;
             }
         };
@@ -282,7 +600,7 @@ public class JDBCCrawlDataStore extends AbstractCrawlDataStore {
       }
     }
     
-    private int sqlQueryInteger(String sql, Object... params) {
+    private long sqlQueryLong(String sql, Object... params) {
         if (LOG.isDebugEnabled()) {
             LOG.debug("SQL: " + sql);
         }
@@ -292,26 +610,24 @@ public class JDBCCrawlDataStore extends AbstractCrawlDataStore {
             if (value == null) {
                 return 0;
             }
-            if (value instanceof Long) {
-                return ((Long) value).intValue();
-            } else {
-                return (int) value;
-            }
+            return ((Number) value).longValue();
         } catch (SQLException e) {
             throw new CrawlDataStoreException(
                     "Problem getting database scalar value.", e);            
         }
     }
-    private void sqlUpdate(String sql, Object... params) {
+    // Returns the number of records updated
+    private int sqlUpdate(String sql, Object... params) {
         if (LOG.isDebugEnabled()) {
             LOG.debug("SQL: " + sql);
         }
         try {
-            new QueryRunner(datasource).update(sql, params);
+            return new QueryRunner(datasource).update(sql, params);
         } catch (SQLException e) {
             if (alreadyExists(e)) {
                 LOG.debug("Already exists in table. SQL Error:" 
                         + e.getMessage());
+                return 0;
             } else {
                 throw new CrawlDataStoreException(
                         "Problem updating database.", e);            
@@ -319,33 +635,97 @@ public class JDBCCrawlDataStore extends AbstractCrawlDataStore {
         }
     }
 
+    // Like sqlUpdate, but a record locked or being inserted by another
+    // transaction is also considered present.
+    private int sqlInsertIfAbsent(String sql, Object... params) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("SQL: " + sql);
+        }
+        try {
+            return new QueryRunner(datasource).update(sql, params);
+        } catch (SQLException e) {
+            if (alreadyExists(e)
+                    || e.getErrorCode() == H2_ERROR_CONCURRENT_UPDATE
+                    || e.getErrorCode() == H2_ERROR_LOCK_TIMEOUT) {
+                LOG.debug("Already present in table. SQL Error:" 
+                        + e.getMessage());
+                return 0;
+            }
+            throw new CrawlDataStoreException(
+                    "Problem updating database.", e);
+        }
+    }
+
     private boolean alreadyExists(SQLException e) {
         return e.getErrorCode() == H2_ERROR_ALREADY_EXISTS;
     }
+
+    // A batch can fail only because some records already exist, 
+    // which is ignored like with single updates.
+    private boolean onlyAlreadyExists(BatchUpdateException e) {
+        SQLException next = e.getNextException();
+        if (next == null) {
+            return false;
+        }
+        while (next != null) {
+            if (!alreadyExists(next)) {
+                return false;
+            }
+            next = next.getNextException();
+        }
+        return true;
+    }
     
-    private DataSource createDataSource(String dbDir) {
+    private BasicDataSource createDataSource(String dbDir, 
+            int maxConnections, int maxPreparedStatements, long writeDelay) {
         BasicDataSource ds = new BasicDataSource();
         ds.setDriverClassName("org.h2.Driver");
-        ds.setUrl("jdbc:h2:" + dbDir + ";WRITE_DELAY=0;AUTOCOMMIT=ON");
+        ds.setUrl("jdbc:h2:" + dbDir 
+                + ";WRITE_DELAY=" + writeDelay + ";AUTOCOMMIT=ON");
         ds.setDefaultAutoCommit(true);
+        // Resuming reads from one connection while writing with another
+        int max = maxConnections;
+        if (max > -1 && max < 2) {
+            max = 2;
+        }
+        ds.setMaxTotal(max);
+        ds.setMaxIdle(max);
+        if (maxPreparedStatements != 0) {
+            ds.setPoolPreparedStatements(true);
+            ds.setMaxOpenPreparedStatements(maxPreparedStatements);
+        }
         return ds;
     }
 
     private boolean ensureTablesExist() throws SQLException {
         ArrayListHandler arrayListHandler = new ArrayListHandler();
         Connection conn = null;
+        int tableCount = 0;
         try {                
             conn = datasource.getConnection();
             List<Object[]> tables = arrayListHandler.handle(
                     conn.getMetaData().getTables(
                             null, null, null, new String[]{"TABLE"}));
-            if (tables.size() == NUMBER_OF_TABLES) {
-                LOG.debug("    Re-using existing tables.");
-                return true;
+            for (Object[] table : tables) {
+                // Tables left from an interrupted clean-up are
+                // dropped again.
+                String name = Objects.toString(table[2], "");
+                if (name.toLowerCase().startsWith(TRASH_PREFIX)) {
+                    dropTableLater(name);
+                } else {
+                    tableCount++;
+                }
             }
         } finally {
             DbUtils.closeQuietly(conn);
         }
+        if (tableCount == NUMBER_OF_TABLES) {
+            LOG.debug("    Re-using existing tables.");
+            if (!hasQueueOrder()) {
+                upgradeTables();
+            }
+            return true;
+        }
         LOG.debug("    Creating new crawl tables...");
         sqlCreateTable(TABLE_QUEUE);
         sqlCreateTable(TABLE_ACTIVE);
@@ -355,6 +735,42 @@ public class JDBCCrawlDataStore extends AbstractCrawlDataStore {
         return false;
     }
 
+    // Whether the queue table has the queue order columns added in 1.9.2
+    private boolean hasQueueOrder() throws SQLException {
+        Connection conn = null;
+        try {                
+            conn = datasource.getConnection();
+            try (ResultSet rs = conn.getMetaData().getColumns(null, null, 
+                    TABLE_QUEUE.toUpperCase(), "QUEUERANK")) {
+                return rs.next();
+            }
+        } finally {
+            DbUtils.closeQuietly(conn);
+        }
+    }
+
+    // Tables created before 1.9.2 do not have queue order columns.
+    // Existing queued references all get the same rank and sequence.
+    private void upgradeTables() {
+        LOG.info("Upgrading crawl store tables created by an earlier "
+                + "version...");
+        for (String table : new String[] { TABLE_QUEUE, TABLE_ACTIVE, 
+                TABLE_CACHE, TABLE_PROCESSED_VALID, TABLE_PROCESSED_INVALID }) {
+            for (String sql : serializer.getUpgradeTableSQLs(table)) {
+                sqlUpdate(sql);
+            }
+        }
+    }
+
+    private void dropTableLater(final String table) {
+        cleaner.submit("table " + table, new Runnable() {
+            @Override
+            public void run() {
+                sqlUpdate("DROP TABLE IF EXISTS " + table);
+            }
+        });
+    }
+
     private void sqlCreateTable(String table) {
         String[] sqls = serializer.getCreateTableSQLs(table);
         for (String sql : sqls) {
@@ -362,11 +778,176 @@ public class JDBCCrawlDataStore extends AbstractCrawlDataStore {
         }
     }
     
+    // Reads and writes crawl data within a single transaction,
+    // writing in batches. Record counts are updated on commit.
+    private final class BatchWriter implements AutoCloseable {
+        private final Connection conn;
+        private final Map<String, BatchStatement> statements =
+                new LinkedHashMap<>();
+        private final Map<String, Long> deltas = new HashMap<>();
+        private int batchCount;
+        private boolean committed;
+
+        private BatchWriter() throws SQLException {
+            conn = datasource.getConnection();
+            conn.setAutoCommit(false);
+        }
+        private List<ICrawlData> find(String table, String sql,
+                Object[] params, int maxRows) throws SQLException {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("SQL: " + sql);
+            }
+            List<ICrawlData> crawlDatas = new ArrayList<>(maxRows);
+            PreparedStatement stmt = conn.prepareStatement(sql);
+            ResultSet rs = null;
+            try {
+                stmt.setMaxRows(maxRows);
+                new QueryRunner().fillStatement(stmt, params);
+                rs = stmt.executeQuery();
+                while (rs.next() && crawlDatas.size() < maxRows) {
+                    crawlDatas.add(serializer.toCrawlData(table, rs));
+                }
+            } finally {
+                DbUtils.closeQuietly(rs);
+                DbUtils.closeQuietly(stmt);
+            }
+            return crawlDatas;
+        }
+        private void insert(String table, ICrawlData crawlData)
+                throws SQLException {
+            add(table, 1, serializer.getInsertCrawlDataSQL(table),
+                    serializer.getInsertCrawlDataValues(table, crawlData));
+        }
+        private void insertQueued(String table, ICrawlData crawlData,
+                long sequence) throws SQLException {
+            add(table, 1, serializer.getInsertQueuedCrawlDataSQL(table),
+                    serializer.getInsertQueuedCrawlDataValues(table, 
+                            crawlData, getRank(crawlData), sequence));
+        }
+        // Deletes a record right away, returning whether it was deleted
+        // by this transaction and not by a concurrent one.
+        private boolean take(String table, ICrawlData crawlData)
+                throws SQLException {
+            String sql = serializer.getDeleteCrawlDataSQL(table);
+            BatchStatement stmt = statement(table, -1, sql);
+            new QueryRunner().fillStatement(stmt.statement,
+                    serializer.getDeleteCrawlDataValues(table, crawlData));
+            try {
+                if (stmt.statement.executeUpdate() == 0) {
+                    return false;
+                }
+            } catch (SQLException e) {
+                if (e.getErrorCode() == H2_ERROR_CONCURRENT_UPDATE
+                        || e.getErrorCode() == H2_ERROR_LOCK_TIMEOUT) {
+                    LOG.debug("Record taken by another transaction: "
+                            + crawlData.getReference());
+                    return false;
+                }
+                throw e;
+            }
+            addDelta(table, -1);
+            return true;
+        }
+        private void delete(String table, ICrawlData crawlData)
+                throws SQLException {
+            add(table, -1, serializer.getDeleteCrawlDataSQL(table),
+                    serializer.getDeleteCrawlDataValues(table, crawlData));
+        }
+        private void add(String table, int sign, String sql, Object[] params)
+                throws SQLException {
+            BatchStatement stmt = statement(table, sign, sql);
+            new QueryRunner().fillStatement(stmt.statement, params);
+            stmt.statement.addBatch();
+            batchCount++;
+            if (batchCount >= BATCH_SIZE) {
+                flush();
+            }
+        }
+        private BatchStatement statement(String table, int sign, String sql)
+                throws SQLException {
+            BatchStatement stmt = statements.get(sql);
+            if (stmt == null) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("SQL batch: " + sql);
+                }
+                stmt = new BatchStatement(
+                        conn.prepareStatement(sql), table, sign);
+                statements.put(sql, stmt);
+            }
+            return stmt;
+        }
+        private void addDelta(String table, long delta) {
+            Long total = deltas.get(table);
+            deltas.put(table, (total == null ? 0 : total) + delta);
+        }
+        private void flush() throws SQLException {
+            for (BatchStatement stmt : statements.values()) {
+                int[] results;
+                try {
+                    results = stmt.statement.executeBatch();
+                } catch (BatchUpdateException e) {
+                    if (!onlyAlreadyExists(e)) {
+                        throw e;
+                    }
+                    LOG.debug("Already exists in table. SQL Error:" 
+                            + e.getMessage());
+                    results = e.getUpdateCounts();
+                }
+                long updated = 0;
+                for (int result : results) {
+                    if (result > 0) {
+                        updated += result;
+                    }
+                }
+                addDelta(stmt.table, stmt.sign * updated);
+            }
+            batchCount = 0;
+        }
+        private void commit() throws SQLException {
+            flush();
+            conn.commit();
+            committed = true;
+            for (Entry<String, Long> delta : deltas.entrySet()) {
+                counts.get(delta.getKey()).addAndGet(delta.getValue());
+            }
+        }
+        @Override
+        public void close() throws SQLException {
+            try {
+                if (!committed) {
+                    conn.rollback();
+                }
+                conn.setAutoCommit(true);
+            } finally {
+                for (BatchStatement stmt : statements.values()) {
+                    DbUtils.closeQuietly(stmt.statement);
+                }
+                DbUtils.closeQuietly(conn);
+            }
+        }
+    }
+
+    private static final class BatchStatement {
+        private final PreparedStatement statement;
+        private final String table;
+        // 1 when adding records, -1 when removing them
+        private final int sign;
+        private BatchStatement(
+                PreparedStatement statement, String table, int sign) {
+            this.statement = statement;
+            this.table = table;
+            this.sign = sign;
+        }
+    }
+
+    // The result set is always positioned on the next row to return,
+    // if any.
     private final class CrawlDataIterator implements Iterator<ICrawlData> {
         private final ResultSet rs;
         private final Connection conn;
         private final Statement stmt;
         private final String tableName;
+        private boolean hasRow = true;
 
         private CrawlDataIterator(
                 String tableName,
@@ -379,32 +960,27 @@ public class JDBCCrawlDataStore extends AbstractCrawlDataStore {
 
         @Override
         public boolean hasNext() {
-            try {
-                if (conn.isClosed()) {
-                    return false;
-                }
-                if (!rs.isLast()) {
-                    return true;
-                } else {
-                    DbUtils.closeQuietly(conn, stmt, rs);
-                    return false;
-                }
-            } catch (SQLException e) {
-                LOG.error("Database problem.", e);
-                return false;
-            }
+            return hasRow;
         }
 
         @Override
         public ICrawlData next() {
+            if (!hasRow) {
+                throw new NoSuchElementException();
+            }
             try {
-                if (rs.next()) {
-                    return serializer.toCrawlData(tableName, rs);
+                ICrawlData crawlData = serializer.toCrawlData(tableName, rs);
+                hasRow = rs.next();
+                if (!hasRow) {
+                    DbUtils.closeQuietly(conn, stmt, rs);
                 }
+                return crawlData;
             } catch (SQLException e) {
-                LOG.error("Database problem.", e);
+                hasRow = false;
+                DbUtils.closeQuietly(conn, stmt, rs);
+                throw new CrawlDataStoreException(
+                        "Problem reading database cache.", e);
             }
-            return null;
         }
 
         @Override
@@ -0,0 +1,99 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.store.impl.log;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 128-bit reference fingerprint (MurmurHash3, x64 variant). The first
+ * half is used to locate references in the index, the second half to
+ * tell apart references whose first half collides.
+ * @author Pascal Essiembre
+ */
+final class Fingerprint {
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    final long high;
+    final long low;
+
+    Fingerprint(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    static Fingerprint of(String reference) {
+        byte[] data = reference.getBytes(StandardCharsets.UTF_8);
+        int length = data.length;
+        int tail = length & ~15;
+        long h1 = 0;
+        long h2 = 0;
+        for (int i = 0; i < tail; i += 16) {
+            h1 ^= mixK1(getLong(data, i));
+            h1 = Long.rotateLeft(h1, 27) + h2;
+            h1 = h1 * 5 + 0x52dce729;
+            h2 ^= mixK2(getLong(data, i + 8));
+            h2 = Long.rotateLeft(h2, 31) + h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+        long k1 = 0;
+        long k2 = 0;
+        for (int i = length - 1; i >= tail + 8; i--) {
+            k2 = (k2 << 8) | (data[i] & 0xFF);
+        }
+        for (int i = Math.min(length, tail + 8) - 1; i >= tail; i--) {
+            k1 = (k1 << 8) | (data[i] & 0xFF);
+        }
+        if (length - tail > 8) {
+            h2 ^= mixK2(k2);
+        }
+        if (length > tail) {
+            h1 ^= mixK1(k1);
+        }
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+        return new Fingerprint(h1, h2);
+    }
+
+    private static long mixK1(long k) {
+        return Long.rotateLeft(k * C1, 31) * C2;
+    }
+    private static long mixK2(long k) {
+        return Long.rotateLeft(k * C2, 33) * C1;
+    }
+    private static long fmix(long k) {
+        long h = k;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+    private static long getLong(byte[] data, int offset) {
+        long value = 0;
+        for (int i = 7; i >= 0; i--) {
+            value = (value << 8) | (data[offset + i] & 0xFF);
+        }
+        return value;
+    }
+}
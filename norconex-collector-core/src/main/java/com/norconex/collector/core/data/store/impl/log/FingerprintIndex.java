@@ -0,0 +1,215 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.store.impl.log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Off-heap open-addressing hash table from reference fingerprints to
+ * the log offset of their latest record. Each slot holds the first half
+ * of a fingerprint and an offset (zero for empty slots). Since only half
+ * the fingerprint is kept, candidate offsets are confirmed with
+ * a {@link Verifier} checking the other half stored in the record.
+ * Slots are spread over several direct buffers so the table can grow
+ * past 2GB. Not thread-safe.
+ * @author Pascal Essiembre
+ */
+final class FingerprintIndex {
+
+    interface Verifier {
+        boolean matches(long offset, long fingerprintLow);
+    }
+
+    private static final int SLOT_SIZE = 16;
+    // 8M slots (128MB) per buffer
+    private static final int CHUNK_BITS = 23;
+    private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+    private static final int MIN_CAPACITY = 1 << 16;
+    private static final double MAX_LOAD = 0.7;
+
+    private final Verifier verifier;
+    private ByteBuffer[] chunks;
+    private long capacity;
+    private long size;
+
+    FingerprintIndex(Verifier verifier) {
+        this.verifier = verifier;
+        allocate(MIN_CAPACITY);
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * Gets the offset stored for a fingerprint.
+     * @return offset or zero if absent
+     */
+    long get(Fingerprint fp) {
+        long slot = fp.high & (capacity - 1);
+        long offset;
+        while ((offset = offsetAt(slot)) != 0) {
+            if (highAt(slot) == fp.high
+                    && verifier.matches(offset, fp.low)) {
+                return offset;
+            }
+            slot = (slot + 1) & (capacity - 1);
+        }
+        return 0;
+    }
+
+    /**
+     * Stores the offset for a fingerprint, replacing any previous one.
+     * @return previous offset or zero if absent
+     */
+    long put(Fingerprint fp, long offset) {
+        long slot = fp.high & (capacity - 1);
+        long previous;
+        while ((previous = offsetAt(slot)) != 0) {
+            if (highAt(slot) == fp.high
+                    && verifier.matches(previous, fp.low)) {
+                setSlot(slot, fp.high, offset);
+                return previous;
+            }
+            slot = (slot + 1) & (capacity - 1);
+        }
+        setSlot(slot, fp.high, offset);
+        size++;
+        if (size > capacity * MAX_LOAD) {
+            resize(capacity << 1);
+        }
+        return 0;
+    }
+
+    /**
+     * Gets the offset stored in a slot, from zero to
+     * {@link #capacity()} exclusively.
+     * @return offset or zero for an empty slot
+     */
+    long offsetAt(long slot) {
+        return chunk(slot).getLong(position(slot) + 8);
+    }
+
+    long capacity() {
+        return capacity;
+    }
+
+    void writeTo(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(16);
+        header.putLong(capacity).putLong(size).flip();
+        writeFully(channel, header);
+        for (ByteBuffer chunk : chunks) {
+            writeFully(channel, chunk.duplicate());
+        }
+    }
+
+    void readFrom(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(16);
+        readFully(channel, header);
+        header.flip();
+        long newCapacity = header.getLong();
+        long newSize = header.getLong();
+        if (Long.bitCount(newCapacity) != 1 || newSize < 0
+                || newSize > newCapacity) {
+            throw new IOException("Invalid index checkpoint.");
+        }
+        free();
+        allocate(newCapacity);
+        for (ByteBuffer chunk : chunks) {
+            readFully(channel, chunk.duplicate());
+        }
+        size = newSize;
+    }
+
+    void clear() {
+        free();
+        allocate(MIN_CAPACITY);
+    }
+
+    void free() {
+        for (ByteBuffer chunk : chunks) {
+            SegmentLog.release(chunk);
+        }
+        chunks = new ByteBuffer[0];
+        capacity = 0;
+        size = 0;
+    }
+
+    private void resize(long newCapacity) {
+        ByteBuffer[] oldChunks = chunks;
+        long oldCapacity = capacity;
+        allocate(newCapacity);
+        for (long i = 0; i < oldCapacity; i++) {
+            ByteBuffer chunk = oldChunks[(int) (i >>> CHUNK_BITS)];
+            int pos = (int) ((i & CHUNK_MASK) * SLOT_SIZE);
+            long offset = chunk.getLong(pos + 8);
+            if (offset != 0) {
+                long high = chunk.getLong(pos);
+                // Fingerprints are unique, no need to verify
+                long slot = high & (newCapacity - 1);
+                while (offsetAt(slot) != 0) {
+                    slot = (slot + 1) & (newCapacity - 1);
+                }
+                setSlot(slot, high, offset);
+            }
+        }
+        for (ByteBuffer chunk : oldChunks) {
+            SegmentLog.release(chunk);
+        }
+    }
+
+    private void allocate(long newCapacity) {
+        int chunkSlots = (int) Math.min(newCapacity, 1L << CHUNK_BITS);
+        int chunkCount = (int) (newCapacity / chunkSlots);
+        chunks = new ByteBuffer[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            chunks[i] = ByteBuffer.allocateDirect(chunkSlots * SLOT_SIZE);
+        }
+        capacity = newCapacity;
+    }
+
+    private long highAt(long slot) {
+        return chunk(slot).getLong(position(slot));
+    }
+    private void setSlot(long slot, long high, long offset) {
+        ByteBuffer chunk = chunk(slot);
+        int pos = position(slot);
+        chunk.putLong(pos, high);
+        chunk.putLong(pos + 8, offset);
+    }
+    private ByteBuffer chunk(long slot) {
+        return chunks[(int) (slot >>> CHUNK_BITS)];
+    }
+    private static int position(long slot) {
+        return (int) ((slot & CHUNK_MASK) * SLOT_SIZE);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+    private static void readFully(FileChannel channel, ByteBuffer buffer)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Index checkpoint is truncated.");
+            }
+        }
+    }
+}
@@ -0,0 +1,544 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.store.impl.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.norconex.collector.core.data.ICrawlData;
+import com.norconex.collector.core.data.codec.CrawlDataCodecRegistry;
+import com.norconex.collector.core.data.store.AbstractCrawlDataStore;
+import com.norconex.collector.core.data.store.BackgroundCleaner;
+import com.norconex.collector.core.data.store.CrawlDataStage;
+import com.norconex.collector.core.data.store.CrawlDataStoreException;
+import com.norconex.collector.core.data.store.ICrawlDataStore;
+
+/**
+ * <p>{@link ICrawlDataStore} implementation appending every reference
+ * stage change to memory-mapped log files, with an off-heap index
+ * of where the latest record of each reference is.
+ * See {@link LogCrawlDataStoreFactory} for details.</p>
+ * <p>Records of the current crawl run are kept in a "current" directory
+ * and those of the previous run in a "cache" directory. When not
+ * resuming, the current directory is renamed to become the cache,
+ * which makes valid processed references the new cache without copying
+ * any of them. The previous cache directory is deleted in
+ * the background.</p>
+ * @author Pascal Essiembre
+ * @since 1.9.2
+ */
+public class LogCrawlDataStore extends AbstractCrawlDataStore {
+
+    private static final Logger LOG =
+            LogManager.getLogger(LogCrawlDataStore.class);
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final String CURRENT_DIR = "current";
+    private static final String CACHE_DIR = "cache";
+    private static final String TRASH_PREFIX = "trash-";
+    // Processed references of the current generation also valid in the
+    // cache one, which are therefore no longer considered cached.
+    private static final int HIDDEN_CACHED_SLOT = 0;
+
+    private final CrawlDataCodecRegistry codecRegistry;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final LogGeneration cache;
+    private final LogGeneration current;
+    private final BackgroundCleaner cleaner;
+    private boolean closed;
+
+    private final LogGeneration.TransitionListener listener =
+            new LogGeneration.TransitionListener() {
+        @Override
+        public void transition(LogGeneration generation,
+                Fingerprint fp, int oldStage, int newStage) {
+            boolean wasProcessed = isProcessedStage(oldStage);
+            boolean processed = isProcessedStage(newStage);
+            if (wasProcessed != processed && isCachedStage(fp)) {
+                generation.addCount(HIDDEN_CACHED_SLOT, processed ? 1 : -1);
+            }
+        }
+    };
+
+    public LogCrawlDataStore(String path, boolean resume) {
+        this(path, resume, DEFAULT_SEGMENT_SIZE, null);
+    }
+
+    /**
+     * Creates a log crawl data store.
+     * @param path directory where to store the data
+     * @param resume whether to resume a previous crawl
+     * @param segmentSize size in bytes of each log file
+     * @param codecRegistry codecs used to write crawl data
+     *        (<code>null</code> uses a default registry)
+     */
+    public LogCrawlDataStore(String path, boolean resume,
+            int segmentSize, CrawlDataCodecRegistry codecRegistry) {
+        this.codecRegistry = codecRegistry != null
+                ? codecRegistry : new CrawlDataCodecRegistry();
+        File currentDir = new File(path, CURRENT_DIR);
+        File cacheDir = new File(path, CACHE_DIR);
+        if (!resume) {
+            rotate(currentDir, cacheDir);
+        }
+        cache = cacheDir.isDirectory()
+                ? new LogGeneration(cacheDir, segmentSize, true, null) : null;
+        try {
+            current = new LogGeneration(
+                    currentDir, segmentSize, false, listener);
+        } catch (RuntimeException e) {
+            if (cache != null) {
+                cache.close();
+            }
+            throw e;
+        }
+        cleaner = new BackgroundCleaner("Log cleaner: " + path);
+        deleteTrashLater(new File(path));
+        if (resume) {
+            requeueActive();
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(path + " Queued count: " + getQueueSize());
+            LOG.debug(path + " Processed count: " + getProcessedCount());
+            LOG.debug(path + " Cache count: " + (cache == null
+                    ? 0 : cache.count(LogGeneration.PROCESSED_VALID)));
+        }
+    }
+
+    @Override
+    public void queue(ICrawlData crawlData) {
+        Fingerprint fp = Fingerprint.of(crawlData.getReference());
+        byte[] payload = codecRegistry.encode(crawlData);
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            current.append(LogGeneration.QUEUED, fp, payload, listener);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void queueAll(Iterable<? extends ICrawlData> crawlDatas) {
+        List<Fingerprint> fps = new ArrayList<>();
+        List<byte[]> payloads = new ArrayList<>();
+        for (ICrawlData crawlData : crawlDatas) {
+            fps.add(Fingerprint.of(crawlData.getReference()));
+            payloads.add(codecRegistry.encode(crawlData));
+        }
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            for (int i = 0; i < fps.size(); i++) {
+                current.append(LogGeneration.QUEUED,
+                        fps.get(i), payloads.get(i), listener);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public CrawlDataStage queueIfAbsent(ICrawlData crawlData) {
+        Fingerprint fp = Fingerprint.of(crawlData.getReference());
+        byte[] payload = codecRegistry.encode(crawlData);
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            int stage = current.getStage(fp);
+            if (stage == 0) {
+                current.append(LogGeneration.QUEUED, fp, payload, listener);
+            }
+            return toCrawlDataStage(stage);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public CrawlDataStage getStage(String reference) {
+        return toCrawlDataStage(getStageValue(reference));
+    }
+
+    @Override
+    public boolean isQueueEmpty() {
+        return getQueueSize() == 0;
+    }
+
+    @Override
+    public long getQueueSize() {
+        return getCount(LogGeneration.QUEUED);
+    }
+
+    @Override
+    public boolean isQueued(String reference) {
+        return getStageValue(reference) == LogGeneration.QUEUED;
+    }
+
+    @Override
+    public ICrawlData nextQueued() {
+        List<ICrawlData> datas = nextQueued(1);
+        return datas.isEmpty() ? null : datas.get(0);
+    }
+
+    @Override
+    public List<ICrawlData> nextQueued(int max) {
+        List<byte[]> payloads = new ArrayList<>(max);
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            // Records before the cursor are all stale or consumed
+            long cursor = current.getCursor();
+            long end = current.end();
+            while (payloads.size() < max
+                    && current.count(LogGeneration.QUEUED) > 0) {
+                long offset = current.next(cursor);
+                if (offset == end) {
+                    break;
+                }
+                cursor = current.after(offset);
+                if (current.stage(offset) != LogGeneration.QUEUED) {
+                    continue;
+                }
+                Fingerprint fp = current.fingerprint(offset);
+                if (current.get(fp) != offset) {
+                    continue;
+                }
+                current.appendPointer(
+                        LogGeneration.ACTIVE, fp, offset, listener);
+                payloads.add(current.data(offset));
+            }
+            current.setCursor(cursor);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        List<ICrawlData> datas = new ArrayList<>(payloads.size());
+        for (byte[] payload : payloads) {
+            datas.add(codecRegistry.decode(payload));
+        }
+        return datas;
+    }
+
+    @Override
+    public boolean isActive(String reference) {
+        return getStageValue(reference) == LogGeneration.ACTIVE;
+    }
+
+    @Override
+    public long getActiveCount() {
+        return getCount(LogGeneration.ACTIVE);
+    }
+
+    @Override
+    public ICrawlData getCached(String cacheReference) {
+        Fingerprint fp = Fingerprint.of(cacheReference);
+        byte[] payload = null;
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            if (cache != null
+                    && !isProcessedStage(current.getStage(fp))) {
+                long offset = cache.get(fp);
+                if (offset != 0 && cache.stage(offset)
+                        == LogGeneration.PROCESSED_VALID) {
+                    payload = cache.data(offset);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return payload == null ? null : codecRegistry.decode(payload);
+    }
+
+    @Override
+    public boolean isCacheEmpty() {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            return cache == null
+                    || cache.count(LogGeneration.PROCESSED_VALID)
+                    - current.count(HIDDEN_CACHED_SLOT) <= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void processed(ICrawlData crawlData) {
+        Fingerprint fp = Fingerprint.of(crawlData.getReference());
+        byte[] payload = codecRegistry.encode(crawlData);
+        int stage = processedStage(crawlData);
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            current.append(stage, fp, payload, listener);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void processedAll(Iterable<? extends ICrawlData> crawlDatas) {
+        List<Fingerprint> fps = new ArrayList<>();
+        List<byte[]> payloads = new ArrayList<>();
+        List<Integer> stages = new ArrayList<>();
+        for (ICrawlData crawlData : crawlDatas) {
+            fps.add(Fingerprint.of(crawlData.getReference()));
+            payloads.add(codecRegistry.encode(crawlData));
+            stages.add(processedStage(crawlData));
+        }
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            for (int i = 0; i < fps.size(); i++) {
+                current.append(stages.get(i),
+                        fps.get(i), payloads.get(i), listener);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isProcessed(String reference) {
+        return isProcessedStage(getStageValue(reference));
+    }
+
+    @Override
+    public long getProcessedCount() {
+        return getCount(LogGeneration.PROCESSED_VALID)
+                + getCount(LogGeneration.PROCESSED_INVALID);
+    }
+
+    /**
+     * Gets an iterator reading the cache log files sequentially.
+     * References processed in the current crawl run after the iterator
+     * was obtained may still be returned.
+     * @return cache iterator
+     */
+    @Override
+    public Iterator<ICrawlData> getCacheIterator() {
+        return new CacheIterator();
+    }
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            cleaner.close();
+            try {
+                current.close();
+            } finally {
+                if (cache != null) {
+                    cache.close();
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void rotate(File currentDir, File cacheDir) {
+        try {
+            if (cacheDir.isDirectory()) {
+                FileUtils.moveDirectory(cacheDir, new File(
+                        cacheDir.getParentFile(),
+                        TRASH_PREFIX + System.currentTimeMillis()));
+            }
+            if (currentDir.isDirectory()) {
+                FileUtils.moveDirectory(currentDir, cacheDir);
+            }
+        } catch (IOException e) {
+            throw new CrawlDataStoreException(
+                    "Cannot move crawl data log to cache: " + currentDir, e);
+        }
+    }
+
+    private void deleteTrashLater(File dir) {
+        File[] trashDirs = dir.listFiles();
+        if (trashDirs == null) {
+            return;
+        }
+        for (final File trashDir : trashDirs) {
+            if (trashDir.getName().startsWith(TRASH_PREFIX)) {
+                cleaner.submit("directory " + trashDir, new Runnable() {
+                    @Override
+                    public void run() {
+                        FileUtils.deleteQuietly(trashDir);
+                    }
+                });
+            }
+        }
+    }
+
+    // Active references from an interrupted run are queued again,
+    // reusing their queued data.
+    private void requeueActive() {
+        long activeCount = current.count(LogGeneration.ACTIVE);
+        if (activeCount == 0) {
+            return;
+        }
+        LOG.info("Putting " + activeCount
+                + " active references back in the queue...");
+        long start = System.currentTimeMillis();
+        // Replacing the offset of an indexed reference never
+        // moves it to another slot
+        for (long slot = 0; slot < current.indexCapacity(); slot++) {
+            long offset = current.indexSlot(slot);
+            if (offset != 0
+                    && current.stage(offset) == LogGeneration.ACTIVE) {
+                current.append(LogGeneration.QUEUED,
+                        current.fingerprint(offset),
+                        current.data(offset), listener);
+            }
+        }
+        LOG.info("Active references put back in the queue in "
+                + (System.currentTimeMillis() - start) + "ms.");
+    }
+
+    private int getStageValue(String reference) {
+        Fingerprint fp = Fingerprint.of(reference);
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            return current.getStage(fp);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private long getCount(int stage) {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            return current.count(stage);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Must be invoked while holding a lock
+    private boolean isCachedStage(Fingerprint fp) {
+        return cache != null
+                && cache.getStage(fp) == LogGeneration.PROCESSED_VALID;
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new CrawlDataStoreException(
+                    "Crawl data store is closed.");
+        }
+    }
+
+    private static int processedStage(ICrawlData crawlData) {
+        return crawlData.getState().isGoodState()
+                ? LogGeneration.PROCESSED_VALID
+                : LogGeneration.PROCESSED_INVALID;
+    }
+
+    private static boolean isProcessedStage(int stage) {
+        return stage == LogGeneration.PROCESSED_VALID
+                || stage == LogGeneration.PROCESSED_INVALID;
+    }
+
+    private static CrawlDataStage toCrawlDataStage(int stage) {
+        switch (stage) {
+        case LogGeneration.QUEUED:
+            return CrawlDataStage.QUEUED;
+        case LogGeneration.ACTIVE:
+            return CrawlDataStage.ACTIVE;
+        case LogGeneration.PROCESSED_VALID:
+        case LogGeneration.PROCESSED_INVALID:
+            return CrawlDataStage.PROCESSED;
+        default:
+            return null;
+        }
+    }
+
+    // Returns the valid records of the cache generation which are the
+    // latest of their reference and not processed again since.
+    private class CacheIterator implements Iterator<ICrawlData> {
+        private long position;
+        private byte[] nextPayload;
+        private boolean done = cache == null;
+        private CacheIterator() {
+            if (!done) {
+                position = cache.first();
+                done = position == 0;
+            }
+        }
+        @Override
+        public boolean hasNext() {
+            if (nextPayload == null && !done) {
+                nextPayload = findNext();
+                done = nextPayload == null;
+            }
+            return nextPayload != null;
+        }
+        @Override
+        public ICrawlData next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            byte[] payload = nextPayload;
+            nextPayload = null;
+            return codecRegistry.decode(payload);
+        }
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+        private byte[] findNext() {
+            lock.readLock().lock();
+            try {
+                ensureOpen();
+                long end = cache.end();
+                while (true) {
+                    long offset = cache.next(position);
+                    if (offset == end) {
+                        return null;
+                    }
+                    position = cache.after(offset);
+                    if (cache.stage(offset)
+                            != LogGeneration.PROCESSED_VALID) {
+                        continue;
+                    }
+                    Fingerprint fp = cache.fingerprint(offset);
+                    if (cache.get(fp) == offset && !isProcessedStage(
+                            current.getStage(fp))) {
+                        return cache.data(offset);
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+}
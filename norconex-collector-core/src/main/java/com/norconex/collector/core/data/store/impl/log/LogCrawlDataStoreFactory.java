@@ -0,0 +1,181 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.store.impl.log;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.commons.configuration.XMLConfiguration;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import com.norconex.collector.core.crawler.ICrawlerConfig;
+import com.norconex.collector.core.data.codec.CrawlDataCodecRegistry;
+import com.norconex.collector.core.data.store.ICrawlDataStore;
+import com.norconex.collector.core.data.store.ICrawlDataStoreFactory;
+import com.norconex.commons.lang.config.IXMLConfigurable;
+import com.norconex.commons.lang.config.XMLConfigurationUtil;
+import com.norconex.commons.lang.file.FileUtil;
+import com.norconex.commons.lang.xml.EnhancedXMLStreamWriter;
+
+/**
+ * <p>
+ * Log crawl data store factory, meant for crawls of tens of millions of
+ * references. Instead of updating records in place, every time
+ * a reference is queued, becomes active or is processed, a record is
+ * appended to memory-mapped log files ("segments") of a fixed size.
+ * An in-memory index, kept outside the Java heap, maps a 128-bit hash
+ * of each reference to its latest record. It uses about 16 bytes per
+ * reference plus free space.
+ * </p>
+ * <p>
+ * When the crawl data store is closed, the index is saved to a
+ * checkpoint file. On the next start, that checkpoint is loaded and only
+ * the records written after it are read again. When there is no usable
+ * checkpoint (e.g., after a crash), the index is rebuilt by reading
+ * all the records.
+ * </p>
+ * <p>
+ * Records are written to memory-mapped files, so they survive
+ * a JVM crash, but are only guaranteed to be written to disk
+ * once the crawl data store is closed. References active at the
+ * time of a crash are always queued again on resume.
+ * </p>
+ * <p>
+ * Since old records are never rewritten, disk usage grows with
+ * the number of stage changes rather than the number of references.
+ * Crawl data is stored in a compact binary form using the codecs
+ * returned by {@link #createCodecRegistry()}.
+ * </p>
+ *
+ * <h3>XML configuration usage:</h3>
+ * <pre>
+ *  &lt;crawlDataStoreFactory
+ *          class="com.norconex.collector.core.data.store.impl.log.LogCrawlDataStoreFactory"&gt;
+ *      &lt;segmentSize&gt;
+ *          (Size in bytes of each log file. Default is 64MB.)
+ *      &lt;/segmentSize&gt;
+ *  &lt;/crawlDataStoreFactory&gt;
+ * </pre>
+ * <p>
+ * A single crawl data record cannot be larger than a segment.
+ * </p>
+ *
+ * <h4>Usage example:</h4>
+ * <p>
+ * The following uses log files of 256MB.
+ * </p>
+ * <pre>
+ *  &lt;crawlDataStoreFactory
+ *          class="com.norconex.collector.core.data.store.impl.log.LogCrawlDataStoreFactory"&gt;
+ *      &lt;segmentSize&gt;268435456&lt;/segmentSize&gt;
+ *  &lt;/crawlDataStoreFactory&gt;
+ * </pre>
+ *
+ * @author Pascal Essiembre
+ * @since 1.9.2
+ */
+public class LogCrawlDataStoreFactory
+        implements ICrawlDataStoreFactory, IXMLConfigurable {
+
+    private int segmentSize = LogCrawlDataStore.DEFAULT_SEGMENT_SIZE;
+
+    @Override
+    public ICrawlDataStore createCrawlDataStore(ICrawlerConfig config,
+            boolean resume) {
+        String storeDir = config.getWorkDir().getPath()
+                + "/crawlstore/log/"
+                + FileUtil.toSafeFileName(config.getId()) + "/";
+        return new LogCrawlDataStore(storeDir, resume,
+                getSegmentSize(), createCodecRegistry());
+    }
+
+    /**
+     * Creates the codecs used to store crawl data. Collectors with their
+     * own crawl data class should override this method to register
+     * a codec for it.
+     * @return codec registry
+     */
+    protected CrawlDataCodecRegistry createCodecRegistry() {
+        return new CrawlDataCodecRegistry();
+    }
+
+    /**
+     * Gets the size in bytes of each log file.
+     * @return segment size
+     */
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+    /**
+     * Sets the size in bytes of each log file. Existing log files
+     * keep the size they were created with.
+     * @param segmentSize segment size
+     */
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    @Override
+    public void loadFromXML(Reader in) throws IOException {
+        XMLConfiguration xml = XMLConfigurationUtil.newXMLConfiguration(in);
+        setSegmentSize(xml.getInt("segmentSize", getSegmentSize()));
+    }
+
+    @Override
+    public void saveToXML(Writer out) throws IOException {
+        try {
+            EnhancedXMLStreamWriter writer = new EnhancedXMLStreamWriter(out);
+            writer.writeStartElement("crawlDataStoreFactory");
+            writer.writeAttribute("class", getClass().getCanonicalName());
+            writer.writeElementInteger("segmentSize", getSegmentSize());
+            writer.writeEndElement();
+            writer.flush();
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Cannot save as XML.", e);
+        }
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (!(other instanceof LogCrawlDataStoreFactory)) {
+            return false;
+        }
+        LogCrawlDataStoreFactory castOther = (LogCrawlDataStoreFactory) other;
+        return new EqualsBuilder()
+                .append(segmentSize, castOther.segmentSize)
+                .isEquals();
+    }
+
+    @Override
+    public int hashCode() {
+        return new HashCodeBuilder()
+                .append(segmentSize)
+                .toHashCode();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("segmentSize", segmentSize)
+                .toString();
+    }
+}
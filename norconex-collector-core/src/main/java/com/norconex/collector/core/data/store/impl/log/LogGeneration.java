@@ -0,0 +1,329 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.store.impl.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.norconex.collector.core.data.store.CrawlDataStoreException;
+
+/**
+ * The records written during one crawl run: a {@link SegmentLog}, the
+ * {@link FingerprintIndex} of the latest record of each reference,
+ * the number of references in each stage, and the position up to which
+ * the queue was consumed. The index is saved to a checkpoint file on
+ * close. When opening, the checkpoint is loaded and only the records
+ * written after it are replayed (all of them without a checkpoint).
+ * Not thread-safe.
+ * @author Pascal Essiembre
+ */
+final class LogGeneration implements FingerprintIndex.Verifier {
+
+    private static final Logger LOG =
+            LogManager.getLogger(LogGeneration.class);
+
+    static final int QUEUED = 1;
+    static final int ACTIVE = 2;
+    static final int PROCESSED_VALID = 3;
+    static final int PROCESSED_INVALID = 4;
+    // Slot zero of the counts is free for the owner to use
+    static final int COUNT_SLOTS = 5;
+
+    private static final String CHECKPOINT_FILE = "index.chk";
+    private static final int CHECKPOINT_MAGIC = 0x4E58434B; // "NXCK"
+    private static final int CHECKPOINT_VERSION = 1;
+
+    interface TransitionListener {
+        /**
+         * Invoked when a reference changes stage.
+         * @param generation generation the reference belongs to
+         * @param fp reference fingerprint
+         * @param oldStage previous stage, zero for new references
+         * @param newStage new stage
+         */
+        void transition(LogGeneration generation,
+                Fingerprint fp, int oldStage, int newStage);
+    }
+
+    private final File dir;
+    private final boolean readOnly;
+    private final SegmentLog log;
+    private final FingerprintIndex index;
+    private final long[] counts = new long[COUNT_SLOTS];
+    private long cursor;
+
+    LogGeneration(File dir, int segmentSize, boolean readOnly,
+            final TransitionListener listener) {
+        this.dir = dir;
+        this.readOnly = readOnly;
+        if (!readOnly) {
+            try {
+                FileUtils.forceMkdir(dir);
+            } catch (IOException e) {
+                throw new CrawlDataStoreException(
+                        "Cannot create crawl data log directory: " + dir, e);
+            }
+        }
+        log = new SegmentLog(dir, segmentSize, readOnly);
+        index = new FingerprintIndex(this);
+        long from = loadCheckpoint();
+        long start = System.currentTimeMillis();
+        log.scan(from, new SegmentLog.RecordVisitor() {
+            @Override
+            public void visit(long offset) {
+                Fingerprint fp = new Fingerprint(
+                        log.fingerprintHigh(offset),
+                        log.fingerprintLow(offset));
+                long previous = index.put(fp, offset);
+                transition(fp, previous == 0 ? 0 : log.stage(previous),
+                        log.stage(offset), listener);
+            }
+        });
+        if (cursor == 0) {
+            cursor = log.first();
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Opened crawl data log " + dir + " with "
+                    + index.size() + " references in "
+                    + (System.currentTimeMillis() - start) + "ms.");
+        }
+    }
+
+    @Override
+    public boolean matches(long offset, long fingerprintLow) {
+        return log.fingerprintLow(offset) == fingerprintLow;
+    }
+
+    /**
+     * Gets the latest record offset of a reference.
+     * @return offset or zero if absent
+     */
+    long get(Fingerprint fp) {
+        return index.get(fp);
+    }
+
+    /**
+     * Gets the stage of a reference.
+     * @return stage or zero if absent
+     */
+    int getStage(Fingerprint fp) {
+        long offset = index.get(fp);
+        return offset == 0 ? 0 : log.stage(offset);
+    }
+
+    int stage(long offset) {
+        return log.stage(offset);
+    }
+
+    long append(int stage, Fingerprint fp, byte[] payload,
+            TransitionListener listener) {
+        return index(fp, log.append(stage, fp, payload), listener);
+    }
+
+    /**
+     * Appends a record pointing to the data of another one.
+     */
+    long appendPointer(int stage, Fingerprint fp, long dataOffset,
+            TransitionListener listener) {
+        return index(fp, log.appendPointer(stage, fp, dataOffset), listener);
+    }
+
+    /**
+     * Gets the crawl data payload of a record, following pointers.
+     */
+    byte[] data(long offset) {
+        if (log.stage(offset) == ACTIVE) {
+            return log.payload(log.pointer(offset));
+        }
+        return log.payload(offset);
+    }
+
+    /**
+     * Gets the offset holding the data of a record, following pointers.
+     */
+    long dataOffset(long offset) {
+        if (log.stage(offset) == ACTIVE) {
+            return log.pointer(offset);
+        }
+        return offset;
+    }
+
+    Fingerprint fingerprint(long offset) {
+        return new Fingerprint(
+                log.fingerprintHigh(offset), log.fingerprintLow(offset));
+    }
+
+    long count(int slot) {
+        return counts[slot];
+    }
+    void addCount(int slot, long delta) {
+        counts[slot] += delta;
+    }
+
+    long first() {
+        return log.first();
+    }
+    long end() {
+        return log.end();
+    }
+    /**
+     * Gets the offset of the record following the given position
+     * or {@link #end()}.
+     */
+    long next(long position) {
+        return log.next(position);
+    }
+    long after(long offset) {
+        return log.after(offset);
+    }
+
+    long getCursor() {
+        return cursor;
+    }
+    void setCursor(long cursor) {
+        this.cursor = cursor;
+    }
+
+    /**
+     * Gets the record offset held by an index slot.
+     * @return offset or zero for an empty slot
+     */
+    long indexSlot(long slot) {
+        return index.offsetAt(slot);
+    }
+    long indexCapacity() {
+        return index.capacity();
+    }
+
+    void close() {
+        try {
+            if (!readOnly) {
+                log.force();
+                saveCheckpoint();
+            }
+        } finally {
+            log.close();
+            index.free();
+        }
+    }
+
+    private long index(
+            Fingerprint fp, long offset, TransitionListener listener) {
+        long previous = index.put(fp, offset);
+        transition(fp, previous == 0 ? 0 : log.stage(previous),
+                log.stage(offset), listener);
+        return offset;
+    }
+
+    private void transition(Fingerprint fp,
+            int oldStage, int newStage, TransitionListener listener) {
+        if (oldStage != 0) {
+            counts[oldStage]--;
+        }
+        counts[newStage]++;
+        if (listener != null) {
+            listener.transition(this, fp, oldStage, newStage);
+        }
+    }
+
+    // Returns the log end position the checkpoint was taken at,
+    // or zero if there is none.
+    private long loadCheckpoint() {
+        File file = new File(dir, CHECKPOINT_FILE);
+        if (!file.isFile()) {
+            return 0;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            ByteBuffer header = ByteBuffer.allocate(
+                    28 + 8 * COUNT_SLOTS);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                continue;
+            }
+            header.flip();
+            if (header.remaining() < header.capacity()
+                    || header.getInt() != CHECKPOINT_MAGIC
+                    || header.getInt() != CHECKPOINT_VERSION) {
+                throw new IOException("Invalid checkpoint header.");
+            }
+            long end = header.getLong();
+            long checkpointCursor = header.getLong();
+            if (!log.contains(end) || !log.contains(checkpointCursor)) {
+                throw new IOException("Checkpoint does not match the log.");
+            }
+            if (header.getInt() != COUNT_SLOTS) {
+                throw new IOException("Invalid checkpoint counts.");
+            }
+            for (int i = 0; i < COUNT_SLOTS; i++) {
+                counts[i] = header.getLong();
+            }
+            index.readFrom(channel);
+            cursor = checkpointCursor;
+            return end;
+        } catch (IOException e) {
+            LOG.warn("Could not load crawl data log checkpoint " + file
+                    + ". Replaying the whole log instead.", e);
+            index.clear();
+            for (int i = 0; i < COUNT_SLOTS; i++) {
+                counts[i] = 0;
+            }
+            cursor = 0;
+            return 0;
+        }
+    }
+
+    private void saveCheckpoint() {
+        File file = new File(dir, CHECKPOINT_FILE);
+        File tempFile = new File(dir, CHECKPOINT_FILE + ".tmp");
+        try {
+            try (RandomAccessFile raf = new RandomAccessFile(tempFile, "rw");
+                    FileChannel channel = raf.getChannel()) {
+                raf.setLength(0);
+                ByteBuffer header = ByteBuffer.allocate(
+                        28 + 8 * COUNT_SLOTS);
+                header.putInt(CHECKPOINT_MAGIC)
+                        .putInt(CHECKPOINT_VERSION)
+                        .putLong(log.end())
+                        .putLong(cursor)
+                        .putInt(COUNT_SLOTS);
+                for (long count : counts) {
+                    header.putLong(count);
+                }
+                header.flip();
+                while (header.hasRemaining()) {
+                    channel.write(header);
+                }
+                index.writeTo(channel);
+                channel.force(true);
+            }
+            Files.move(tempFile.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            FileUtils.deleteQuietly(tempFile);
+            FileUtils.deleteQuietly(file);
+            LOG.error("Could not save crawl data log checkpoint " + file
+                    + ". The log will be replayed when next opened.", e);
+        }
+    }
+}
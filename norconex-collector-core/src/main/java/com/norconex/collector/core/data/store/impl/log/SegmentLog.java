@@ -0,0 +1,316 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.store.impl.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.norconex.collector.core.data.store.CrawlDataStoreException;
+
+/**
+ * <p>Append-only log of records stored in memory-mapped segment files
+ * of a fixed size. A record offset holds its segment number in the
+ * upper 32 bits and its position within that segment in the lower 32
+ * bits. Since segments start with a header, no record has a zero
+ * offset.</p>
+ * <p>A record is made of its length (excluding the length itself),
+ * a stage byte, a 128-bit reference fingerprint and a payload.
+ * The length is written last, so a record interrupted while being
+ * written is never read back. The end of the log is the first
+ * position holding a zero length.</p>
+ * <p>Appending is not thread-safe. Reading can be done concurrently
+ * with other reads.</p>
+ * @author Pascal Essiembre
+ */
+final class SegmentLog {
+
+    private static final Logger LOG = LogManager.getLogger(SegmentLog.class);
+
+    private static final int MAGIC = 0x4E584C47; // "NXLG"
+    private static final int VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    // length + stage + fingerprint
+    static final int RECORD_HEADER_SIZE = 4 + 1 + 16;
+
+    private final File dir;
+    private final int segmentSize;
+    private final boolean readOnly;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private long end;
+
+    SegmentLog(File dir, int segmentSize, boolean readOnly) {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.readOnly = readOnly;
+        try {
+            for (int i = 0; segmentFile(i).isFile(); i++) {
+                segments.add(map(segmentFile(i), false));
+            }
+            if (segments.isEmpty() && !readOnly) {
+                segments.add(map(segmentFile(0), true));
+            }
+        } catch (IOException e) {
+            close();
+            throw new CrawlDataStoreException(
+                    "Could not open crawl data log: " + dir, e);
+        }
+        end = first();
+    }
+
+    /**
+     * Gets the offset of the first record, or the end of an empty log.
+     */
+    long first() {
+        if (segments.isEmpty()) {
+            return 0;
+        }
+        return offset(0, HEADER_SIZE);
+    }
+
+    /**
+     * Gets the offset where the next record will be appended.
+     */
+    long end() {
+        return end;
+    }
+
+    /**
+     * Gets the offset of the record following the given position,
+     * or {@link #end()}.
+     */
+    long next(long position) {
+        int segment = segment(position);
+        int pos = position(position);
+        while (!hasRecord(segment, pos) && segment + 1 < segments.size()) {
+            segment++;
+            pos = HEADER_SIZE;
+        }
+        return offset(segment, pos);
+    }
+
+    /**
+     * Gets whether a position is within this log segments.
+     */
+    boolean contains(long position) {
+        int segment = segment(position);
+        return segment >= 0 && segment < segments.size()
+                && position(position) >= HEADER_SIZE
+                && position(position) <= segments.get(segment).limit();
+    }
+
+    /**
+     * Gets the position right after the given record.
+     */
+    long after(long offset) {
+        return offset + 4 + length(offset);
+    }
+
+    /**
+     * Finds the end of the log starting from the given record offset
+     * (or end of a previous scan), passing each record found to the
+     * visitor.
+     */
+    void scan(long from, RecordVisitor visitor) {
+        long offset = from == 0 ? first() : next(from);
+        while (offset != 0 && hasRecord(segment(offset), position(offset))) {
+            if (visitor != null) {
+                visitor.visit(offset);
+            }
+            offset = next(after(offset));
+        }
+        end = offset;
+    }
+
+    long append(int stage, Fingerprint fp, byte[] payload) {
+        int pos = reserve(payload.length);
+        ByteBuffer buffer = segments.get(segment(end));
+        ByteBuffer dup = buffer.duplicate();
+        dup.position(pos + RECORD_HEADER_SIZE);
+        dup.put(payload);
+        return commit(buffer, pos, stage, fp, payload.length);
+    }
+
+    long appendPointer(int stage, Fingerprint fp, long pointer) {
+        int pos = reserve(8);
+        ByteBuffer buffer = segments.get(segment(end));
+        buffer.putLong(pos + RECORD_HEADER_SIZE, pointer);
+        return commit(buffer, pos, stage, fp, 8);
+    }
+
+    int stage(long offset) {
+        return buffer(offset).get(position(offset) + 4);
+    }
+    long fingerprintHigh(long offset) {
+        return buffer(offset).getLong(position(offset) + 5);
+    }
+    long fingerprintLow(long offset) {
+        return buffer(offset).getLong(position(offset) + 13);
+    }
+    long pointer(long offset) {
+        return buffer(offset).getLong(
+                position(offset) + RECORD_HEADER_SIZE);
+    }
+    byte[] payload(long offset) {
+        ByteBuffer buffer = buffer(offset);
+        int pos = position(offset);
+        byte[] payload = new byte[
+                buffer.getInt(pos) - RECORD_HEADER_SIZE + 4];
+        ByteBuffer dup = buffer.duplicate();
+        dup.position(pos + RECORD_HEADER_SIZE);
+        dup.get(payload);
+        return payload;
+    }
+
+    void force() {
+        if (!readOnly) {
+            for (MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+        }
+    }
+
+    void close() {
+        force();
+        for (MappedByteBuffer segment : segments) {
+            release(segment);
+        }
+        segments.clear();
+    }
+
+    interface RecordVisitor {
+        void visit(long offset);
+    }
+
+    /**
+     * Releases the memory held by a direct or mapped buffer right away
+     * when the JVM allows it, instead of waiting for garbage
+     * collection. Mapped files cannot be deleted on some operating
+     * systems until released. The buffer must no longer be used.
+     */
+    static void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) {
+            return;
+        }
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                Method cleanMethod = cleaner.getClass().getMethod("clean");
+                cleanMethod.setAccessible(true);
+                cleanMethod.invoke(cleaner);
+            }
+        } catch (Exception e) {
+            LOG.trace("Buffer will be released by garbage collection.", e);
+        }
+    }
+
+    private int reserve(int payloadLength) {
+        int length = RECORD_HEADER_SIZE + payloadLength;
+        if (length > segmentSize - HEADER_SIZE) {
+            throw new CrawlDataStoreException("Crawl data record of "
+                    + length + " bytes does not fit in log segments of "
+                    + segmentSize + " bytes.");
+        }
+        int pos = position(end);
+        if (pos + length > segments.get(segment(end)).limit()) {
+            int segment = segments.size();
+            try {
+                segments.add(map(segmentFile(segment), true));
+            } catch (IOException e) {
+                throw new CrawlDataStoreException(
+                        "Could not create crawl data log segment.", e);
+            }
+            end = offset(segment, HEADER_SIZE);
+            pos = HEADER_SIZE;
+        }
+        return pos;
+    }
+
+    private long commit(ByteBuffer buffer,
+            int pos, int stage, Fingerprint fp, int payloadLength) {
+        buffer.put(pos + 4, (byte) stage);
+        buffer.putLong(pos + 5, fp.high);
+        buffer.putLong(pos + 13, fp.low);
+        // Length last: the record exists once its length is written
+        buffer.putInt(pos, RECORD_HEADER_SIZE - 4 + payloadLength);
+        long offset = end;
+        end = after(offset);
+        return offset;
+    }
+
+    private boolean hasRecord(int segment, int pos) {
+        MappedByteBuffer buffer = segments.get(segment);
+        return pos + RECORD_HEADER_SIZE <= buffer.limit()
+                && buffer.getInt(pos) > 0;
+    }
+
+    private int length(long offset) {
+        return buffer(offset).getInt(position(offset));
+    }
+
+    private MappedByteBuffer buffer(long offset) {
+        return segments.get(segment(offset));
+    }
+
+    private File segmentFile(int segment) {
+        return new File(dir, String.format("%08d.seg", segment));
+    }
+
+    private MappedByteBuffer map(File file, boolean create)
+            throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(
+                file, readOnly ? "r" : "rw");
+                FileChannel channel = raf.getChannel()) {
+            // Existing segments keep their size, even if the configured
+            // size changed since they were created.
+            long size = create ? segmentSize : channel.size();
+            MappedByteBuffer buffer = channel.map(readOnly
+                    ? MapMode.READ_ONLY : MapMode.READ_WRITE, 0, size);
+            if (create) {
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+            } else if (buffer.limit() < HEADER_SIZE
+                    || buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a crawl data log segment: " + file);
+            } else if (buffer.getInt(4) > VERSION) {
+                throw new IOException("Crawl data log segment was written "
+                        + "by a newer version: " + file);
+            }
+            return buffer;
+        }
+    }
+
+    private static long offset(int segment, int pos) {
+        return ((long) segment << 32) | pos;
+    }
+    private static int segment(long offset) {
+        return (int) (offset >>> 32);
+    }
+    private static int position(long offset) {
+        return (int) offset;
+    }
+}
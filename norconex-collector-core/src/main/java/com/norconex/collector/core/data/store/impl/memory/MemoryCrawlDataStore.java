@@ -0,0 +1,516 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.store.impl.memory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.norconex.collector.core.data.ICrawlData;
+import com.norconex.collector.core.data.codec.CrawlDataCodecRegistry;
+import com.norconex.collector.core.data.store.AbstractCrawlDataStore;
+import com.norconex.collector.core.data.store.CrawlDataStage;
+import com.norconex.collector.core.data.store.CrawlDataStoreException;
+import com.norconex.collector.core.data.store.ICrawlDataRanker;
+import com.norconex.collector.core.data.store.ICrawlDataStore;
+
+/**
+ * <p>{@link ICrawlDataStore} implementation keeping all crawl data in
+ * memory. Queued references are kept in a lock-free FIFO queue and the
+ * stage of every reference in a concurrent hash map, so crawler threads
+ * never wait on each other. When given an {@link ICrawlDataRanker},
+ * queued references are kept in a priority queue instead, ordered by
+ * rank. See {@link MemoryCrawlDataStoreFactory} for details.</p>
+ * <p>When given a directory, the store content is saved to a snapshot
+ * file when closed, and optionally at a regular interval. That snapshot
+ * is loaded when the store is created again, to resume a crawl
+ * or to obtain the cache of the previous one.</p>
+ * @author Pascal Essiembre
+ * @since 1.9.2
+ */
+public class MemoryCrawlDataStore extends AbstractCrawlDataStore {
+
+    private static final Logger LOG =
+            LogManager.getLogger(MemoryCrawlDataStore.class);
+
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    private static final int SNAPSHOT_MAGIC = 0x4E58534E; // "NXSN"
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private static final int END = 0;
+    private static final int QUEUED = 1;
+    private static final int ACTIVE = 2;
+    private static final int PROCESSED_VALID = 3;
+    private static final int PROCESSED_INVALID = 4;
+    private static final int CACHED = 5;
+
+    private static final int INITIAL_QUEUE_CAPACITY = 1024;
+    // Lower ranks first, then in queuing order
+    private static final Comparator<Entry> QUEUE_ORDER =
+            new Comparator<Entry>() {
+        @Override
+        public int compare(Entry e1, Entry e2) {
+            int result = Double.compare(e1.rank, e2.rank);
+            if (result == 0) {
+                result = Long.compare(e1.sequence, e2.sequence);
+            }
+            return result;
+        }
+    };
+
+    private final File snapshotFile;
+    private final CrawlDataCodecRegistry codecRegistry;
+    private final ScheduledExecutorService snapshotExecutor;
+    private final ICrawlDataRanker ranker;
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final ConcurrentMap<String, Entry> entries =
+            new ConcurrentHashMap<>();
+    // May hold entries no longer current, which are skipped.
+    private final Queue<Entry> queue;
+    private final ConcurrentMap<String, ICrawlData> cached =
+            new ConcurrentHashMap<>();
+    private final AtomicLong[] counts = new AtomicLong[CACHED];
+
+    /**
+     * Creates a memory crawl data store without snapshots.
+     * Nothing is kept once closed.
+     */
+    public MemoryCrawlDataStore() {
+        this(null, false, 0, null);
+    }
+
+    /**
+     * Creates a memory crawl data store saving a snapshot when closed.
+     * @param path directory where to store the snapshot
+     * @param resume whether to resume a previous crawl
+     */
+    public MemoryCrawlDataStore(String path, boolean resume) {
+        this(path, resume, 0, null);
+    }
+
+    /**
+     * Creates a memory crawl data store.
+     * @param path directory where to store the snapshot
+     *        (<code>null</code> to never save any)
+     * @param resume whether to resume a previous crawl
+     * @param snapshotInterval milliseconds between snapshots, in addition
+     *        to the one saved when closed (zero or less to only save one
+     *        when closed)
+     * @param codecRegistry codecs used to write crawl data
+     *        (<code>null</code> uses a default registry)
+     */
+    public MemoryCrawlDataStore(String path, boolean resume,
+            long snapshotInterval, CrawlDataCodecRegistry codecRegistry) {
+        this(path, resume, snapshotInterval, codecRegistry, null);
+    }
+
+    /**
+     * Creates a memory crawl data store.
+     * @param path directory where to store the snapshot
+     *        (<code>null</code> to never save any)
+     * @param resume whether to resume a previous crawl
+     * @param snapshotInterval milliseconds between snapshots, in addition
+     *        to the one saved when closed (zero or less to only save one
+     *        when closed)
+     * @param codecRegistry codecs used to write crawl data
+     *        (<code>null</code> uses a default registry)
+     * @param ranker ranks queued references (<code>null</code> takes
+     *        them in the order they were queued)
+     */
+    public MemoryCrawlDataStore(String path, boolean resume,
+            long snapshotInterval, CrawlDataCodecRegistry codecRegistry,
+            ICrawlDataRanker ranker) {
+        this.codecRegistry = codecRegistry != null
+                ? codecRegistry : new CrawlDataCodecRegistry();
+        this.ranker = ranker;
+        if (ranker == null) {
+            queue = new ConcurrentLinkedQueue<>();
+        } else {
+            queue = new PriorityBlockingQueue<>(
+                    INITIAL_QUEUE_CAPACITY, QUEUE_ORDER);
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new AtomicLong();
+        }
+        if (path == null) {
+            snapshotFile = null;
+            snapshotExecutor = null;
+            return;
+        }
+        try {
+            FileUtils.forceMkdir(new File(path));
+        } catch (IOException e) {
+            throw new CrawlDataStoreException(
+                    "Cannot create crawl data store directory: " + path, e);
+        }
+        snapshotFile = new File(path, SNAPSHOT_FILE);
+        if (snapshotFile.isFile()) {
+            loadSnapshot(resume);
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(path + " Queued count: " + getQueueSize());
+            LOG.debug(path + " Processed count: " + getProcessedCount());
+            LOG.debug(path + " Cache count: " + cached.size());
+        }
+        if (snapshotInterval > 0) {
+            snapshotExecutor = Executors.newSingleThreadScheduledExecutor(
+                    new SnapshotThreadFactory(path));
+            snapshotExecutor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        saveSnapshot();
+                    } catch (CrawlDataStoreException e) {
+                        LOG.error("Could not save crawl data snapshot.", e);
+                    }
+                }
+            }, snapshotInterval, snapshotInterval, TimeUnit.MILLISECONDS);
+        } else {
+            snapshotExecutor = null;
+        }
+    }
+
+    @Override
+    public void queue(ICrawlData crawlData) {
+        Entry entry = queuedEntry(crawlData.clone());
+        put(entry);
+        queue.offer(entry);
+    }
+
+    @Override
+    public CrawlDataStage queueIfAbsent(ICrawlData crawlData) {
+        Entry entry = queuedEntry(crawlData.clone());
+        Entry previous = entries.putIfAbsent(entry.getReference(), entry);
+        if (previous != null) {
+            return toCrawlDataStage(previous.stage);
+        }
+        counts[QUEUED].incrementAndGet();
+        queue.offer(entry);
+        return null;
+    }
+
+    @Override
+    public CrawlDataStage getStage(String reference) {
+        Entry entry = entries.get(reference);
+        return entry == null ? null : toCrawlDataStage(entry.stage);
+    }
+
+    @Override
+    public boolean isQueueEmpty() {
+        return getQueueSize() == 0;
+    }
+
+    @Override
+    public long getQueueSize() {
+        return counts[QUEUED].get();
+    }
+
+    @Override
+    public boolean isQueued(String reference) {
+        return isStage(reference, QUEUED);
+    }
+
+    @Override
+    public ICrawlData nextQueued() {
+        Entry entry;
+        while ((entry = queue.poll()) != null) {
+            Entry active = new Entry(ACTIVE, entry.crawlData);
+            // Fails if queued again or processed since
+            if (entries.replace(entry.getReference(), entry, active)) {
+                changed(entry, active);
+                return entry.crawlData;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean isActive(String reference) {
+        return isStage(reference, ACTIVE);
+    }
+
+    @Override
+    public long getActiveCount() {
+        return counts[ACTIVE].get();
+    }
+
+    @Override
+    public ICrawlData getCached(String cacheReference) {
+        ICrawlData crawlData = cached.get(cacheReference);
+        return crawlData == null ? null : crawlData.clone();
+    }
+
+    @Override
+    public boolean isCacheEmpty() {
+        return cached.isEmpty();
+    }
+
+    @Override
+    public void processed(ICrawlData crawlData) {
+        ICrawlData crawlDataCopy = crawlData.clone();
+        put(new Entry(crawlDataCopy.getState().isGoodState()
+                ? PROCESSED_VALID : PROCESSED_INVALID, crawlDataCopy));
+        cached.remove(crawlDataCopy.getReference());
+    }
+
+    @Override
+    public boolean isProcessed(String reference) {
+        Entry entry = entries.get(reference);
+        return entry != null && isProcessedStage(entry.stage);
+    }
+
+    @Override
+    public long getProcessedCount() {
+        return counts[PROCESSED_VALID].get()
+                + counts[PROCESSED_INVALID].get();
+    }
+
+    @Override
+    public Iterator<ICrawlData> getCacheIterator() {
+        return Collections.unmodifiableCollection(
+                cached.values()).iterator();
+    }
+
+    /**
+     * Saves a snapshot of this store right away. Modifications made
+     * while the snapshot is being saved may or may not be part of it.
+     * Does nothing if this store was created without a directory.
+     */
+    public void snapshot() {
+        if (snapshotFile != null) {
+            saveSnapshot();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (snapshotExecutor != null) {
+            snapshotExecutor.shutdown();
+            try {
+                snapshotExecutor.awaitTermination(
+                        Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        snapshot();
+    }
+
+    private Entry queuedEntry(ICrawlData crawlData) {
+        if (ranker == null) {
+            return new Entry(QUEUED, crawlData);
+        }
+        return new Entry(QUEUED, crawlData, ranker.getRank(crawlData),
+                sequence.getAndIncrement());
+    }
+
+    // Priority queues are not iterated in priority order
+    private Iterable<Entry> queuedInOrder() {
+        if (ranker == null) {
+            return queue;
+        }
+        Entry[] queued = queue.toArray(new Entry[] {});
+        Arrays.sort(queued, QUEUE_ORDER);
+        return Arrays.asList(queued);
+    }
+
+    private void put(Entry entry) {
+        changed(entries.put(entry.getReference(), entry), entry);
+    }
+
+    private void changed(Entry previous, Entry entry) {
+        if (previous != null) {
+            counts[previous.stage].decrementAndGet();
+        }
+        counts[entry.stage].incrementAndGet();
+    }
+
+    private boolean isStage(String reference, int stage) {
+        Entry entry = entries.get(reference);
+        return entry != null && entry.stage == stage;
+    }
+
+    private synchronized void saveSnapshot() {
+        long start = System.currentTimeMillis();
+        File tempFile = new File(
+                snapshotFile.getParentFile(), SNAPSHOT_FILE + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(
+                            new FileOutputStream(tempFile)))) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(SNAPSHOT_VERSION);
+                // Active ones first since they were dequeued first
+                for (Entry entry : entries.values()) {
+                    if (entry.stage != QUEUED) {
+                        writeRecord(out, entry.stage, entry.crawlData);
+                    }
+                }
+                // Queued ones in queue order
+                for (Entry entry : queuedInOrder()) {
+                    if (entries.get(entry.getReference()) == entry) {
+                        writeRecord(out, QUEUED, entry.crawlData);
+                    }
+                }
+                for (ICrawlData crawlData : cached.values()) {
+                    writeRecord(out, CACHED, crawlData);
+                }
+                out.writeByte(END);
+            }
+            Files.move(tempFile.toPath(), snapshotFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            FileUtils.deleteQuietly(tempFile);
+            throw new CrawlDataStoreException(
+                    "Could not save crawl data snapshot: " + snapshotFile, e);
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Saved crawl data snapshot " + snapshotFile + " in "
+                    + (System.currentTimeMillis() - start) + "ms.");
+        }
+    }
+
+    private void writeRecord(DataOutputStream out,
+            int stage, ICrawlData crawlData) throws IOException {
+        byte[] bytes = codecRegistry.encode(crawlData);
+        out.writeByte(stage);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    // When not resuming, only valid processed references are kept,
+    // as the cache.
+    private void loadSnapshot(boolean resume) {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC
+                    || in.readInt() > SNAPSHOT_VERSION) {
+                throw new IOException("Unsupported snapshot format.");
+            }
+            List<Entry> requeued = new ArrayList<>();
+            int stage;
+            while ((stage = in.readByte()) != END) {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                if (!resume) {
+                    if (stage == PROCESSED_VALID) {
+                        ICrawlData crawlData = codecRegistry.decode(bytes);
+                        cached.put(crawlData.getReference(), crawlData);
+                    }
+                } else if (stage == CACHED) {
+                    ICrawlData crawlData = codecRegistry.decode(bytes);
+                    cached.put(crawlData.getReference(), crawlData);
+                } else if (stage == QUEUED || stage == ACTIVE) {
+                    Entry entry = queuedEntry(codecRegistry.decode(bytes));
+                    put(entry);
+                    requeued.add(entry);
+                } else if (stage == PROCESSED_VALID
+                        || stage == PROCESSED_INVALID) {
+                    put(new Entry(stage, codecRegistry.decode(bytes)));
+                } else {
+                    throw new IOException("Invalid snapshot record.");
+                }
+            }
+            queue.addAll(requeued);
+        } catch (EOFException e) {
+            throw new CrawlDataStoreException(
+                    "Crawl data snapshot is truncated: " + snapshotFile, e);
+        } catch (IOException e) {
+            throw new CrawlDataStoreException(
+                    "Could not load crawl data snapshot: " + snapshotFile, e);
+        }
+    }
+
+    private static boolean isProcessedStage(int stage) {
+        return stage == PROCESSED_VALID || stage == PROCESSED_INVALID;
+    }
+
+    private static CrawlDataStage toCrawlDataStage(int stage) {
+        switch (stage) {
+        case QUEUED:
+            return CrawlDataStage.QUEUED;
+        case ACTIVE:
+            return CrawlDataStage.ACTIVE;
+        default:
+            return CrawlDataStage.PROCESSED;
+        }
+    }
+
+    // Immutable so stage changes can be made atomically by
+    // replacing entries.
+    private static final class Entry {
+        private final int stage;
+        private final ICrawlData crawlData;
+        // Only used to order queued entries by rank
+        private final double rank;
+        private final long sequence;
+        private Entry(int stage, ICrawlData crawlData) {
+            this(stage, crawlData, 0, 0);
+        }
+        private Entry(int stage, ICrawlData crawlData,
+                double rank, long sequence) {
+            this.stage = stage;
+            this.crawlData = crawlData;
+            this.rank = rank;
+            this.sequence = sequence;
+        }
+        private String getReference() {
+            return crawlData.getReference();
+        }
+    }
+
+    private static final class SnapshotThreadFactory
+            implements ThreadFactory {
+        private final String path;
+        private SnapshotThreadFactory(String path) {
+            this.path = path;
+        }
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Crawl data snapshot: " + path);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,262 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.store.impl.memory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.commons.configuration.XMLConfiguration;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import com.norconex.collector.core.crawler.ICrawlerConfig;
+import com.norconex.collector.core.data.codec.CrawlDataCodecRegistry;
+import com.norconex.collector.core.data.store.ICrawlDataRanker;
+import com.norconex.collector.core.data.store.ICrawlDataStore;
+import com.norconex.collector.core.data.store.ICrawlDataStoreFactory;
+import com.norconex.commons.lang.config.IXMLConfigurable;
+import com.norconex.commons.lang.config.XMLConfigurationUtil;
+import com.norconex.commons.lang.file.FileUtil;
+import com.norconex.commons.lang.xml.EnhancedXMLStreamWriter;
+
+/**
+ * <p>
+ * Memory crawl data store factory, for crawls small enough for all
+ * their references to fit in memory (a few million), or for testing.
+ * It is the fastest crawl data store since nothing is written to disk
+ * while crawling.
+ * </p>
+ *
+ * <h3>Snapshots</h3>
+ * <p>
+ * By default, the store content is saved to a snapshot file when the
+ * crawler stops, so crawls can be resumed and incremental crawls
+ * can compare documents with those of the previous run.
+ * A <code>snapshotInterval</code> can also be set to save
+ * snapshots regularly while crawling. After a crash, the crawl
+ * then resumes from the last snapshot, and references processed
+ * since are crawled again. Snapshots are saved while crawling
+ * goes on, so a reference processed while a snapshot is being saved
+ * may be saved in its previous stage.
+ * </p>
+ * <p>
+ * Disabling snapshots keeps everything in memory only: every crawl
+ * then starts from scratch, as a full crawl.
+ * </p>
+ * <p>
+ * Crawl data is saved in a compact binary form using the codecs
+ * returned by {@link #createCodecRegistry()}.
+ * </p>
+ *
+ * <h3>Queue order</h3>
+ * <p>
+ * Queued references are processed in the order they were queued,
+ * unless a <code>queueRanker</code> is configured to rank them
+ * (see {@link ICrawlDataRanker}).
+ * </p>
+ *
+ * <h3>XML configuration usage:</h3>
+ * <pre>
+ *  &lt;crawlDataStoreFactory
+ *          class="com.norconex.collector.core.data.store.impl.memory.MemoryCrawlDataStoreFactory"&gt;
+ *      &lt;snapshot&gt;[false|true]&lt;/snapshot&gt;
+ *      &lt;snapshotInterval&gt;
+ *          (Delay between snapshots saved while crawling.
+ *           Default is 0, to only save one when stopping.)
+ *      &lt;/snapshotInterval&gt;
+ *      &lt;queueRanker class="(ICrawlDataRanker implementation)"&gt;
+ *          (Ranker configuration options, if any.)
+ *      &lt;/queueRanker&gt;
+ *  &lt;/crawlDataStoreFactory&gt;
+ * </pre>
+ * <p>
+ * The <code>snapshotInterval</code> is in milliseconds or a
+ * human-readable duration (e.g., "5 minutes").
+ * </p>
+ *
+ * <h4>Usage example:</h4>
+ * <p>
+ * The following also saves a snapshot every 10 minutes while crawling.
+ * </p>
+ * <pre>
+ *  &lt;crawlDataStoreFactory
+ *          class="com.norconex.collector.core.data.store.impl.memory.MemoryCrawlDataStoreFactory"&gt;
+ *      &lt;snapshotInterval&gt;10 minutes&lt;/snapshotInterval&gt;
+ *  &lt;/crawlDataStoreFactory&gt;
+ * </pre>
+ *
+ * @author Pascal Essiembre
+ * @since 1.9.2
+ */
+public class MemoryCrawlDataStoreFactory
+        implements ICrawlDataStoreFactory, IXMLConfigurable {
+
+    private boolean snapshot = true;
+    private long snapshotInterval;
+    private ICrawlDataRanker queueRanker;
+
+    @Override
+    public ICrawlDataStore createCrawlDataStore(ICrawlerConfig config,
+            boolean resume) {
+        if (!isSnapshot()) {
+            return new MemoryCrawlDataStore(null, resume, 0,
+                    createCodecRegistry(), getQueueRanker());
+        }
+        String storeDir = config.getWorkDir().getPath()
+                + "/crawlstore/memory/"
+                + FileUtil.toSafeFileName(config.getId()) + "/";
+        return new MemoryCrawlDataStore(storeDir, resume,
+                getSnapshotInterval(), createCodecRegistry(),
+                getQueueRanker());
+    }
+
+    /**
+     * Creates the codecs used to save crawl data snapshots. Collectors
+     * with their own crawl data class should override this method to
+     * register a codec for it.
+     * @return codec registry
+     */
+    protected CrawlDataCodecRegistry createCodecRegistry() {
+        return new CrawlDataCodecRegistry();
+    }
+
+    /**
+     * Gets whether to save snapshots. Default is <code>true</code>.
+     * @return <code>true</code> if saving snapshots
+     */
+    public boolean isSnapshot() {
+        return snapshot;
+    }
+    /**
+     * Sets whether to save snapshots.
+     * @param snapshot <code>true</code> to save snapshots
+     */
+    public void setSnapshot(boolean snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Gets the delay in milliseconds between snapshots saved
+     * while crawling.
+     * @return snapshot interval
+     */
+    public long getSnapshotInterval() {
+        return snapshotInterval;
+    }
+    /**
+     * Sets the delay in milliseconds between snapshots saved
+     * while crawling. Zero or less only saves one when the crawler stops.
+     * @param snapshotInterval snapshot interval
+     */
+    public void setSnapshotInterval(long snapshotInterval) {
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    /**
+     * Gets the ranker establishing in which order queued references
+     * are processed. Default is <code>null</code> (queue order).
+     * @return queue ranker
+     */
+    public ICrawlDataRanker getQueueRanker() {
+        return queueRanker;
+    }
+    /**
+     * Sets the ranker establishing in which order queued references
+     * are processed.
+     * @param queueRanker queue ranker (<code>null</code> for queue order)
+     */
+    public void setQueueRanker(ICrawlDataRanker queueRanker) {
+        this.queueRanker = queueRanker;
+    }
+
+    @Override
+    public void loadFromXML(Reader in) throws IOException {
+        XMLConfiguration xml = XMLConfigurationUtil.newXMLConfiguration(in);
+        setSnapshot(xml.getBoolean("snapshot", isSnapshot()));
+        setSnapshotInterval(XMLConfigurationUtil.getDuration(
+                xml, "snapshotInterval", getSnapshotInterval()));
+        setQueueRanker(XMLConfigurationUtil.newInstance(
+                xml, "queueRanker", getQueueRanker()));
+    }
+
+    @Override
+    public void saveToXML(Writer out) throws IOException {
+        try {
+            EnhancedXMLStreamWriter writer = new EnhancedXMLStreamWriter(out);
+            writer.writeStartElement("crawlDataStoreFactory");
+            writer.writeAttribute("class", getClass().getCanonicalName());
+            writer.writeElementBoolean("snapshot", isSnapshot());
+            writer.writeElementLong(
+                    "snapshotInterval", getSnapshotInterval());
+            if (queueRanker instanceof IXMLConfigurable) {
+                StringWriter w = new StringWriter();
+                ((IXMLConfigurable) queueRanker).saveToXML(w);
+                // Closes the start tag before writing directly
+                writer.writeCharacters("");
+                writer.flush();
+                out.write(w.toString());
+                out.flush();
+            } else if (queueRanker != null) {
+                writer.writeStartElement("queueRanker");
+                writer.writeAttribute("class",
+                        queueRanker.getClass().getCanonicalName());
+                writer.writeEndElement();
+            }
+            writer.writeEndElement();
+            writer.flush();
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Cannot save as XML.", e);
+        }
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (!(other instanceof MemoryCrawlDataStoreFactory)) {
+            return false;
+        }
+        MemoryCrawlDataStoreFactory castOther =
+                (MemoryCrawlDataStoreFactory) other;
+        return new EqualsBuilder()
+                .append(snapshot, castOther.snapshot)
+                .append(snapshotInterval, castOther.snapshotInterval)
+                .append(queueRanker, castOther.queueRanker)
+                .isEquals();
+    }
+
+    @Override
+    public int hashCode() {
+        return new HashCodeBuilder()
+                .append(snapshot)
+                .append(snapshotInterval)
+                .append(queueRanker)
+                .toHashCode();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("snapshot", snapshot)
+                .append("snapshotInterval", snapshotInterval)
+                .append("queueRanker", queueRanker)
+                .toString();
+    }
+}
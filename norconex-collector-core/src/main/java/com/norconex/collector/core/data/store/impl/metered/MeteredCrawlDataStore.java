@@ -0,0 +1,347 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.store.impl.metered;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.norconex.collector.core.data.ICrawlData;
+import com.norconex.collector.core.data.store.CrawlDataStage;
+import com.norconex.collector.core.data.store.DelegatingCrawlDataStore;
+import com.norconex.collector.core.data.store.ICrawlDataStore;
+
+/**
+ * <p>Crawl data store decorator recording, for each crawl data store
+ * operation, the number of calls, the number of calls that threw an
+ * exception and the distribution of call latencies. This helps tell
+ * whether a slow crawl is caused by the crawl data store or by
+ * something else (importing, committing, etc.).</p>
+ * <p>Metrics are obtained with {@link #getOperationMetrics()}, or through
+ * JMX when enabled (one MBean per operation). Both
+ * <code>nextQueued</code> methods are recorded separately, the one
+ * taking a maximum being named "nextQueuedBatch". A summary is logged
+ * when this store is closed.</p>
+ * @author Pascal Essiembre
+ * @since 1.9.2
+ */
+public class MeteredCrawlDataStore extends DelegatingCrawlDataStore {
+
+    private static final Logger LOG =
+            LogManager.getLogger(MeteredCrawlDataStore.class);
+
+    private final Map<String, OperationMetrics> metrics =
+            new LinkedHashMap<>();
+    private final OperationMetrics queueMetrics = metrics("queue");
+    private final OperationMetrics queueAllMetrics = metrics("queueAll");
+    private final OperationMetrics queueIfAbsentMetrics =
+            metrics("queueIfAbsent");
+    private final OperationMetrics getStageMetrics = metrics("getStage");
+    private final OperationMetrics isQueueEmptyMetrics =
+            metrics("isQueueEmpty");
+    private final OperationMetrics getQueueSizeMetrics =
+            metrics("getQueueSize");
+    private final OperationMetrics isQueuedMetrics = metrics("isQueued");
+    private final OperationMetrics nextQueuedMetrics = metrics("nextQueued");
+    private final OperationMetrics nextQueuedBatchMetrics =
+            metrics("nextQueuedBatch");
+    private final OperationMetrics isActiveMetrics = metrics("isActive");
+    private final OperationMetrics getActiveCountMetrics =
+            metrics("getActiveCount");
+    private final OperationMetrics getCachedMetrics = metrics("getCached");
+    private final OperationMetrics isCacheEmptyMetrics =
+            metrics("isCacheEmpty");
+    private final OperationMetrics processedMetrics = metrics("processed");
+    private final OperationMetrics processedAllMetrics =
+            metrics("processedAll");
+    private final OperationMetrics isProcessedMetrics = metrics("isProcessed");
+    private final OperationMetrics getProcessedCountMetrics =
+            metrics("getProcessedCount");
+    private final OperationMetrics getCacheIteratorMetrics =
+            metrics("getCacheIterator");
+
+    /**
+     * Creates a metered crawl data store.
+     * @param delegate the crawl data store to decorate
+     */
+    public MeteredCrawlDataStore(ICrawlDataStore delegate) {
+        super(delegate);
+    }
+
+    /**
+     * Gets the metrics of all operations.
+     * @return operation metrics
+     */
+    public Collection<OperationMetrics> getOperationMetrics() {
+        return Collections.unmodifiableCollection(metrics.values());
+    }
+    /**
+     * Gets the metrics of an operation.
+     * @param operation operation name (the method name)
+     * @return operation metrics or <code>null</code> if no such operation
+     */
+    public OperationMetrics getOperationMetrics(String operation) {
+        return metrics.get(operation);
+    }
+
+    @Override
+    public void queue(ICrawlData crawlData) {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            super.queue(crawlData);
+            error = false;
+        } finally {
+            queueMetrics.record(start, error);
+        }
+    }
+    @Override
+    public void queueAll(Iterable<? extends ICrawlData> crawlDatas) {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            super.queueAll(crawlDatas);
+            error = false;
+        } finally {
+            queueAllMetrics.record(start, error);
+        }
+    }
+    @Override
+    public CrawlDataStage queueIfAbsent(ICrawlData crawlData) {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            CrawlDataStage result = super.queueIfAbsent(crawlData);
+            error = false;
+            return result;
+        } finally {
+            queueIfAbsentMetrics.record(start, error);
+        }
+    }
+    @Override
+    public CrawlDataStage getStage(String reference) {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            CrawlDataStage result = super.getStage(reference);
+            error = false;
+            return result;
+        } finally {
+            getStageMetrics.record(start, error);
+        }
+    }
+    @Override
+    public boolean isQueueEmpty() {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            boolean result = super.isQueueEmpty();
+            error = false;
+            return result;
+        } finally {
+            isQueueEmptyMetrics.record(start, error);
+        }
+    }
+    @Override
+    public long getQueueSize() {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            long result = super.getQueueSize();
+            error = false;
+            return result;
+        } finally {
+            getQueueSizeMetrics.record(start, error);
+        }
+    }
+    @Override
+    public boolean isQueued(String reference) {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            boolean result = super.isQueued(reference);
+            error = false;
+            return result;
+        } finally {
+            isQueuedMetrics.record(start, error);
+        }
+    }
+    @Override
+    public ICrawlData nextQueued() {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            ICrawlData result = super.nextQueued();
+            error = false;
+            return result;
+        } finally {
+            nextQueuedMetrics.record(start, error);
+        }
+    }
+    @Override
+    public List<ICrawlData> nextQueued(int max) {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            List<ICrawlData> result = super.nextQueued(max);
+            error = false;
+            return result;
+        } finally {
+            nextQueuedBatchMetrics.record(start, error);
+        }
+    }
+    @Override
+    public boolean isActive(String reference) {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            boolean result = super.isActive(reference);
+            error = false;
+            return result;
+        } finally {
+            isActiveMetrics.record(start, error);
+        }
+    }
+    @Override
+    public long getActiveCount() {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            long result = super.getActiveCount();
+            error = false;
+            return result;
+        } finally {
+            getActiveCountMetrics.record(start, error);
+        }
+    }
+    @Override
+    public ICrawlData getCached(String cacheReference) {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            ICrawlData result = super.getCached(cacheReference);
+            error = false;
+            return result;
+        } finally {
+            getCachedMetrics.record(start, error);
+        }
+    }
+    @Override
+    public boolean isCacheEmpty() {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            boolean result = super.isCacheEmpty();
+            error = false;
+            return result;
+        } finally {
+            isCacheEmptyMetrics.record(start, error);
+        }
+    }
+    @Override
+    public void processed(ICrawlData crawlData) {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            super.processed(crawlData);
+            error = false;
+        } finally {
+            processedMetrics.record(start, error);
+        }
+    }
+    @Override
+    public void processedAll(Iterable<? extends ICrawlData> crawlDatas) {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            super.processedAll(crawlDatas);
+            error = false;
+        } finally {
+            processedAllMetrics.record(start, error);
+        }
+    }
+    @Override
+    public boolean isProcessed(String reference) {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            boolean result = super.isProcessed(reference);
+            error = false;
+            return result;
+        } finally {
+            isProcessedMetrics.record(start, error);
+        }
+    }
+    @Override
+    public long getProcessedCount() {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            long result = super.getProcessedCount();
+            error = false;
+            return result;
+        } finally {
+            getProcessedCountMetrics.record(start, error);
+        }
+    }
+    @Override
+    public Iterator<ICrawlData> getCacheIterator() {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            Iterator<ICrawlData> result = super.getCacheIterator();
+            error = false;
+            return result;
+        } finally {
+            getCacheIteratorMetrics.record(start, error);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            super.close();
+        } finally {
+            if (LOG.isInfoEnabled()) {
+                StringBuilder b = new StringBuilder(
+                        "Crawl data store operations (latencies in ms):");
+                for (OperationMetrics m : metrics.values()) {
+                    if (m.getCount() > 0) {
+                        b.append(String.format(
+                                "%n  %s: count=%d errors=%d mean=%.3f "
+                              + "median=%.3f p99=%.3f max=%.3f",
+                                m.getName(), m.getCount(), m.getErrorCount(),
+                                m.getMeanLatency(), m.getMedianLatency(),
+                                m.get99thPercentileLatency(),
+                                m.getMaxLatency()));
+                    }
+                }
+                LOG.info(b.toString());
+            }
+        }
+    }
+
+    private OperationMetrics metrics(String operation) {
+        OperationMetrics m = new OperationMetrics(operation);
+        metrics.put(operation, m);
+        return m;
+    }
+}
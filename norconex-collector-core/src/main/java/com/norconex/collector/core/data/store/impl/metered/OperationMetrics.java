@@ -0,0 +1,121 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.store.impl.metered;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+/**
+ * Number of calls, number of failed calls and latency distribution of
+ * a crawl data store operation. Latencies are recorded with a precision
+ * of one microsecond. Thread-safe and lock-free.
+ * @author Pascal Essiembre
+ * @since 1.9.2
+ */
+public class OperationMetrics implements OperationMetricsMBean {
+
+    private static final double MICROS_PER_MILLI = 1000d;
+
+    private final String name;
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final AtomicLong errorCount = new AtomicLong();
+
+    public OperationMetrics(String name) {
+        super();
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Records a call to this operation.
+     * @param startNanos {@link System#nanoTime()} when the call started
+     * @param error whether the call threw an exception
+     */
+    public void record(long startNanos, boolean error) {
+        histogram.record(TimeUnit.NANOSECONDS.toMicros(
+                System.nanoTime() - startNanos));
+        if (error) {
+            errorCount.incrementAndGet();
+        }
+    }
+
+    @Override
+    public long getCount() {
+        return histogram.getCount();
+    }
+    @Override
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+    @Override
+    public double getMeanLatency() {
+        return histogram.getMean() / MICROS_PER_MILLI;
+    }
+    @Override
+    public double getMaxLatency() {
+        return histogram.getMax() / MICROS_PER_MILLI;
+    }
+    @Override
+    public double getMedianLatency() {
+        return getLatencyPercentile(50);
+    }
+    @Override
+    public double get90thPercentileLatency() {
+        return getLatencyPercentile(90);
+    }
+    @Override
+    public double get99thPercentileLatency() {
+        return getLatencyPercentile(99);
+    }
+    @Override
+    public double get999thPercentileLatency() {
+        return getLatencyPercentile(99.9);
+    }
+
+    /**
+     * Gets the latency below or at which the given percentage of calls
+     * completed.
+     * @param percentile percentage, from 0 to 100
+     * @return latency in milliseconds
+     */
+    public double getLatencyPercentile(double percentile) {
+        return histogram.getValueAtPercentile(percentile) / MICROS_PER_MILLI;
+    }
+
+    @Override
+    public void reset() {
+        histogram.reset();
+        errorCount.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("name", name)
+                .append("count", getCount())
+                .append("errorCount", getErrorCount())
+                .append("meanLatency", getMeanLatency())
+                .append("medianLatency", getMedianLatency())
+                .append("99thPercentileLatency", get99thPercentileLatency())
+                .append("maxLatency", getMaxLatency())
+                .toString();
+    }
+}
@@ -0,0 +1,48 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.store.impl.metered;
+
+/**
+ * JMX monitoring of one {@link MeteredCrawlDataStore} operation.
+ * Latencies are in milliseconds.
+ * @author Pascal Essiembre
+ * @since 1.9.2
+ */
+public interface OperationMetricsMBean {
+
+    /**
+     * Gets the number of calls made, including failed ones.
+     * @return number of calls
+     */
+    long getCount();
+
+    /**
+     * Gets the number of calls that threw an exception.
+     * @return number of failed calls
+     */
+    long getErrorCount();
+
+    double getMeanLatency();
+    double getMaxLatency();
+    double getMedianLatency();
+    double get90thPercentileLatency();
+    double get99thPercentileLatency();
+    double get999thPercentileLatency();
+
+    /**
+     * Resets all counts and latencies.
+     */
+    void reset();
+}
@@ -16,6 +16,7 @@ package com.norconex.collector.core.data.store.impl.mongo;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.io.StringWriter;
 import java.io.Writer;
 
 import javax.xml.stream.XMLStreamException;
@@ -28,6 +29,8 @@ import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
 
 import com.norconex.collector.core.crawler.ICrawlerConfig;
+import com.norconex.collector.core.data.codec.CrawlDataCodecRegistry;
+import com.norconex.collector.core.data.store.ICrawlDataRanker;
 import com.norconex.collector.core.data.store.ICrawlDataStore;
 import com.norconex.collector.core.data.store.ICrawlDataStoreFactory;
 import com.norconex.commons.lang.config.IXMLConfigurable;
@@ -94,6 +97,10 @@ import com.norconex.commons.lang.xml.EnhancedXMLStreamWriter;
  *      &lt;mechanism&gt;(Optional authentication mechanism)&lt;/mechanism&gt;
  *      &lt;sslEnabled&gt;[false|true]&lt;/sslEnabled&gt;
  *      &lt;sslInvalidHostNameAllowed&gt;[false|true]&lt;/sslInvalidHostNameAllowed&gt;
+ *      &lt;binary&gt;[false|true]&lt;/binary&gt;
+ *      &lt;queueRanker class="(ICrawlDataRanker implementation)"&gt;
+ *          (Ranker configuration options, if any.)
+ *      &lt;/queueRanker&gt;
  *
  *      &lt;!-- Use the following if password is encrypted. --&gt;
  *      &lt;passwordKey&gt;(the encryption key or a reference to it)&lt;/passwordKey&gt;
@@ -135,6 +142,19 @@ import com.norconex.commons.lang.xml.EnhancedXMLStreamWriter;
  * As of 1.9.2, you can enable SSL.
  * </p>
  *
+ * <p>
+ * Also as of 1.9.2, setting <code>binary</code> to <code>true</code> 
+ * stores crawl data as a compact binary payload, keeping only the fields
+ * needed to query documents (see {@link BinaryMongoSerializer}).
+ * Documents stored without a payload can still be read.
+ * </p>
+ *
+ * <p>
+ * Also as of 1.9.2, queued references are processed in the order they
+ * were queued, unless a <code>queueRanker</code> is configured to rank 
+ * them (see {@link ICrawlDataRanker}).
+ * </p>
+ *
  * @author Pascal Essiembre
  * @see BaseMongoSerializer
  */
@@ -147,6 +167,8 @@ public abstract class AbstractMongoCrawlDataStoreFactory
             MongoCrawlDataStore.DEFAULT_REFERENCES_COL_NAME;
     private String cachedCollectionName =
             MongoCrawlDataStore.DEFAULT_CACHED_COL_NAME;
+    private boolean binary;
+    private ICrawlDataRanker queueRanker;
 
     @Override
     public ICrawlDataStore createCrawlDataStore(
@@ -155,9 +177,10 @@ public abstract class AbstractMongoCrawlDataStoreFactory
                 config.getId(),
                 resume,
                 getConnectionDetails(),
-                createMongoSerializer(),
+                createSerializer(),
                 getReferencesCollectionName(),
-                getCachedCollectionName());
+                getCachedCollectionName(),
+                getQueueRanker());
     }
 
     public MongoConnectionDetails getConnectionDetails() {
@@ -197,8 +220,65 @@ public abstract class AbstractMongoCrawlDataStoreFactory
         this.cachedCollectionName = cachedCollectionName;
     }
 
+    /**
+     * Gets whether crawl data is stored as a compact binary payload.
+     * @return <code>true</code> if stored as binary
+     * @since 1.9.2
+     */
+    public boolean isBinary() {
+        return binary;
+    }
+    /**
+     * Sets whether crawl data is stored as a compact binary payload.
+     * @param binary <code>true</code> to store as binary
+     * @since 1.9.2
+     */
+    public void setBinary(boolean binary) {
+        this.binary = binary;
+    }
+
+    /**
+     * Gets the ranker establishing in which order queued references
+     * are processed. Default is <code>null</code> (queue order).
+     * @return queue ranker
+     * @since 1.9.2
+     */
+    public ICrawlDataRanker getQueueRanker() {
+        return queueRanker;
+    }
+    /**
+     * Sets the ranker establishing in which order queued references
+     * are processed.
+     * @param queueRanker queue ranker (<code>null</code> for queue order)
+     * @since 1.9.2
+     */
+    public void setQueueRanker(ICrawlDataRanker queueRanker) {
+        this.queueRanker = queueRanker;
+    }
+
     protected abstract IMongoSerializer createMongoSerializer();
 
+    /**
+     * Creates the codecs used to store crawl data when
+     * {@link #isBinary()} is <code>true</code>. Collectors with their 
+     * own crawl data class should override this method to register
+     * a codec for it.
+     * @return codec registry
+     * @since 1.9.2
+     */
+    protected CrawlDataCodecRegistry createCodecRegistry() {
+        return new CrawlDataCodecRegistry();
+    }
+
+    private IMongoSerializer createSerializer() {
+        IMongoSerializer serializer = createMongoSerializer();
+        if (isBinary()) {
+            return new BinaryMongoSerializer(
+                    serializer, createCodecRegistry());
+        }
+        return serializer;
+    }
+
     @Override
     public void loadFromXML(Reader in) throws IOException {
         XMLConfiguration xml = XMLConfigurationUtil.newXMLConfiguration(in);
@@ -234,6 +314,10 @@ public abstract class AbstractMongoCrawlDataStoreFactory
         connDetails.setSslInvalidHostNameAllowed(
                 xml.getBoolean("sslInvalidHostNameAllowed",
                         connDetails.isSslInvalidHostNameAllowed()));
+
+        setBinary(xml.getBoolean("binary", isBinary()));
+        setQueueRanker(XMLConfigurationUtil.newInstance(
+                xml, "queueRanker", getQueueRanker()));
     }
 
     @Override
@@ -270,6 +354,23 @@ public abstract class AbstractMongoCrawlDataStoreFactory
             writer.writeElementBoolean("sslInvalidHostNameAllowed",
                     connDetails.isSslInvalidHostNameAllowed());
 
+            writer.writeElementBoolean("binary", isBinary());
+
+            if (queueRanker instanceof IXMLConfigurable) {
+                StringWriter w = new StringWriter();
+                ((IXMLConfigurable) queueRanker).saveToXML(w);
+                // Closes the start tag before writing directly
+                writer.writeCharacters("");
+                writer.flush();
+                out.write(w.toString());
+                out.flush();
+            } else if (queueRanker != null) {
+                writer.writeStartElement("queueRanker");
+                writer.writeAttribute("class",
+                        queueRanker.getClass().getCanonicalName());
+                writer.writeEndElement();
+            }
+
             writer.flush();
             writer.close();
         } catch (XMLStreamException e) {
@@ -289,6 +390,8 @@ public abstract class AbstractMongoCrawlDataStoreFactory
                 .append(referencesCollectionName,
                         castOther.referencesCollectionName)
                 .append(cachedCollectionName, castOther.cachedCollectionName)
+                .append(binary, castOther.binary)
+                .append(queueRanker, castOther.queueRanker)
                 .isEquals();
     }
     @Override
@@ -297,6 +400,8 @@ public abstract class AbstractMongoCrawlDataStoreFactory
                 .append(connDetails)
                 .append(referencesCollectionName)
                 .append(cachedCollectionName)
+                .append(binary)
+                .append(queueRanker)
                 .toHashCode();
     }
     @Override
@@ -305,6 +410,8 @@ public abstract class AbstractMongoCrawlDataStoreFactory
                 .append("connDetails", connDetails)
                 .append("referencesCollectionName", referencesCollectionName)
                 .append("cachedCollectionName", cachedCollectionName)
+                .append("binary", binary)
+                .append("queueRanker", queueRanker)
                 .toString();
     }
 }
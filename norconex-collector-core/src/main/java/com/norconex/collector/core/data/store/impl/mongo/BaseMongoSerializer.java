@@ -14,16 +14,25 @@
  */
 package com.norconex.collector.core.data.store.impl.mongo;
 
+import static com.mongodb.client.model.Filters.and;
 import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.in;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Objects;
+import java.util.UUID;
 
 import org.apache.commons.lang3.StringUtils;
 import org.bson.Document;
+import org.bson.conversions.Bson;
 
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
 import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
 import com.norconex.collector.core.data.BaseCrawlData;
 import com.norconex.collector.core.data.CrawlState;
 import com.norconex.collector.core.data.ICrawlData;
@@ -99,12 +108,74 @@ public class BaseMongoSerializer implements IMongoSerializer {
         return data;
     }
 
+    /**
+     * Marks the first queued document as active and returns it.
+     * As of 1.9.2, documents are taken by ascending queue rank, and in
+     * queuing order for equal ranks (see {@link #queueOrder()}).
+     * @param collRefs the collection to get the next document from
+     * @return Mongo document
+     */
     @Override
     public Document getNextQueued(MongoCollection<Document> collRefs) {
         Document newDocument = new Document(
                 "$set", new Document(FIELD_STAGE, Stage.ACTIVE.name()));
         return collRefs.findOneAndUpdate(
-                eq(FIELD_STAGE, Stage.QUEUED.name()), newDocument);
+                eq(FIELD_STAGE, Stage.QUEUED.name()), newDocument,
+                new FindOneAndUpdateOptions().sort(queueOrder()));
+    }
+
+    /**
+     * Leases up to <code>max</code> queued documents in three round trips,
+     * regardless of how many documents are obtained: candidate references
+     * are looked up, those still queued are marked as active along with
+     * a unique lease identifier, and the documents holding that lease are
+     * returned. Documents claimed by someone else in between are not
+     * returned. The lease is removed by the crawl data store when
+     * documents change stage again.
+     * Candidates are looked up in queue order, like with
+     * {@link #getNextQueued(MongoCollection)}.
+     * Subclasses overriding {@link #getNextQueued(MongoCollection)} to
+     * change the queue order should override this method as well.
+     * @param collRefs the collection to get the next documents from
+     * @param max maximum number of documents to return
+     * @return Mongo documents
+     * @since 1.9.2
+     */
+    @Override
+    public List<Document> getNextQueued(
+            MongoCollection<Document> collRefs, int max) {
+        List<String> refs = new ArrayList<>(max);
+        for (Document doc : collRefs.find(eq(FIELD_STAGE, Stage.QUEUED.name()))
+                .sort(queueOrder())
+                .projection(Projections.include(FIELD_REFERENCE))
+                .limit(max)) {
+            refs.add(doc.getString(FIELD_REFERENCE));
+        }
+        List<Document> docs = new ArrayList<>(refs.size());
+        if (refs.isEmpty()) {
+            return docs;
+        }
+        String lease = UUID.randomUUID().toString();
+        collRefs.updateMany(
+                and(in(FIELD_REFERENCE, refs),
+                        eq(FIELD_STAGE, Stage.QUEUED.name())),
+                new Document("$set", new Document(
+                        FIELD_STAGE, Stage.ACTIVE.name())
+                                .append(FIELD_LEASE, lease)));
+        return collRefs.find(eq(FIELD_LEASE, lease))
+                .sort(queueOrder()).into(docs);
+    }
+
+    /**
+     * Gets the order in which queued documents are obtained. Default
+     * is by ascending queue rank and then queue sequence, as set by
+     * {@link MongoCrawlDataStore} when queuing documents. The 
+     * (stage, rank, sequence) index supports it.
+     * @return sort criteria
+     * @since 1.9.2
+     */
+    protected Bson queueOrder() {
+        return Sorts.ascending(FIELD_QUEUE_RANK, FIELD_QUEUE_SEQUENCE);
     }
 
     @Override
@@ -117,6 +188,11 @@ public class BaseMongoSerializer implements IMongoSerializer {
         ensureIndex(referenceCollection, false, FIELD_STAGE);
         ensureIndex(referenceCollection, false, 
         		FIELD_STAGE, FIELD_DEPTH);
+        ensureIndex(referenceCollection, false, 
+                FIELD_STAGE, FIELD_QUEUE_RANK, FIELD_QUEUE_SEQUENCE);
+        // Sparse, since only documents being leased have a lease
+        referenceCollection.createIndex(new Document(FIELD_LEASE, 1),
+                new IndexOptions().sparse(true));
     }
 
     protected final void ensureIndex(
@@ -0,0 +1,116 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.store.impl.mongo;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.bson.Document;
+import org.bson.types.Binary;
+
+import com.mongodb.client.MongoCollection;
+import com.norconex.collector.core.data.ICrawlData;
+import com.norconex.collector.core.data.codec.CrawlDataCodecRegistry;
+
+/**
+ * <p>Mongo serializer storing crawl data as a binary payload encoded with
+ * a {@link CrawlDataCodecRegistry}. Documents are first created by
+ * another serializer, from which only the fields needed to query
+ * documents are kept (reference, stage, validity, depth, queue order
+ * and lease, plus any extra ones given). This saves space and 
+ * conversion time.</p>
+ * <p>Documents without a binary payload, such as those written before
+ * this serializer was used, are read with the other serializer.</p>
+ * @author Pascal Essiembre
+ * @since 1.9.2
+ */
+public class BinaryMongoSerializer implements IMongoSerializer {
+
+    public static final String FIELD_PAYLOAD = "payload";
+
+    private static final List<String> QUERY_FIELDS = Arrays.asList(
+            FIELD_REFERENCE, FIELD_REFERENCE_EXCESSIVE, FIELD_STAGE,
+            FIELD_IS_VALID, FIELD_DEPTH, FIELD_QUEUE_RANK,
+            FIELD_QUEUE_SEQUENCE, FIELD_LEASE);
+
+    private final IMongoSerializer serializer;
+    private final CrawlDataCodecRegistry codecRegistry;
+    private final Set<String> keptFields;
+
+    /**
+     * Creates a binary Mongo serializer.
+     * @param serializer serializer creating documents and handling queries
+     * @param codecRegistry codecs used to encode crawl data
+     * @param extraFields fields to keep in documents in addition to those
+     *        needed by the crawl data store
+     */
+    public BinaryMongoSerializer(IMongoSerializer serializer,
+            CrawlDataCodecRegistry codecRegistry, String... extraFields) {
+        super();
+        this.serializer = serializer;
+        this.codecRegistry = codecRegistry;
+        Set<String> fields = new HashSet<>(QUERY_FIELDS);
+        fields.addAll(Arrays.asList(extraFields));
+        this.keptFields = Collections.unmodifiableSet(fields);
+    }
+
+    public IMongoSerializer getSerializer() {
+        return serializer;
+    }
+    public CrawlDataCodecRegistry getCodecRegistry() {
+        return codecRegistry;
+    }
+
+    @Override
+    public Document toDocument(Stage stage, ICrawlData crawlData) {
+        Document doc = serializer.toDocument(stage, crawlData);
+        doc.keySet().retainAll(keptFields);
+        doc.put(FIELD_PAYLOAD, new Binary(codecRegistry.encode(crawlData)));
+        return doc;
+    }
+
+    @Override
+    public ICrawlData fromDocument(Document document) {
+        if (document == null) {
+            return null;
+        }
+        Object payload = document.get(FIELD_PAYLOAD);
+        if (payload instanceof Binary) {
+            return codecRegistry.decode(((Binary) payload).getData());
+        }
+        return serializer.fromDocument(document);
+    }
+
+    @Override
+    public Document getNextQueued(
+            MongoCollection<Document> referenceCollection) {
+        return serializer.getNextQueued(referenceCollection);
+    }
+
+    @Override
+    public List<Document> getNextQueued(
+            MongoCollection<Document> referenceCollection, int max) {
+        return serializer.getNextQueued(referenceCollection, max);
+    }
+
+    @Override
+    public void createIndices(MongoCollection<Document> referenceCollection,
+            MongoCollection<Document> cachedCollection) {
+        serializer.createIndices(referenceCollection, cachedCollection);
+    }
+}
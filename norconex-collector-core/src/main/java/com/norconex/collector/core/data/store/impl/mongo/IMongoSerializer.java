@@ -14,6 +14,8 @@
  */
 package com.norconex.collector.core.data.store.impl.mongo;
 
+import java.util.List;
+
 import org.bson.Document;
 
 import com.mongodb.client.MongoCollection;
@@ -44,6 +46,12 @@ public interface IMongoSerializer {
     String FIELD_CRAWL_DATE = "crawlDate";
     /** @since 1.9.0 */
     String FIELD_REFERENCE_EXCESSIVE = "reference-excess";
+    /** @since 1.9.2 */
+    String FIELD_LEASE = "lease";
+    /** @since 1.9.2 */
+    String FIELD_QUEUE_RANK = "queueRank";
+    /** @since 1.9.2 */
+    String FIELD_QUEUE_SEQUENCE = "queueSeq";
     
     /**
      * Converts a {@link ICrawlData} to a Mongo {@link Document}.
@@ -66,6 +74,18 @@ public interface IMongoSerializer {
      * @return Mongo document
      */
     Document getNextQueued(MongoCollection<Document> referenceCollection);
+
+    /**
+     * Gets up to <code>max</code> next queued DB documents from the given
+     * collection, marking them all as active.
+     * @param referenceCollection the collection to get the next documents
+     *        from
+     * @param max maximum number of documents to return
+     * @return Mongo documents
+     * @since 1.9.2
+     */
+    List<Document> getNextQueued(
+            MongoCollection<Document> referenceCollection, int max);
     
     /**
      * Creates Mongo indices for the given collections.
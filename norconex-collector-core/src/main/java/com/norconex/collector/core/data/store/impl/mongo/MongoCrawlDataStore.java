@@ -16,27 +16,48 @@ package com.norconex.collector.core.data.store.impl.mongo;
 
 import static com.mongodb.client.model.Filters.and;
 import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.in;
+import static com.mongodb.client.model.Filters.ne;
+import static com.mongodb.client.model.Filters.or;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
 import org.bson.Document;
 import org.bson.conversions.Bson;
 
 import com.mongodb.MongoClient;
+import com.mongodb.MongoBulkWriteException;
 import com.mongodb.MongoException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
-import com.mongodb.client.model.CountOptions;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.Sorts;
 import com.mongodb.client.model.UpdateOneModel;
 import com.mongodb.client.model.UpdateOptions;
 import com.mongodb.client.model.WriteModel;
 import com.norconex.collector.core.data.ICrawlData;
 import com.norconex.collector.core.data.store.AbstractCrawlDataStore;
+import com.norconex.collector.core.data.store.BackgroundCleaner;
+import com.norconex.collector.core.data.store.CrawlDataStage;
+import com.norconex.collector.core.data.store.ICrawlDataRanker;
 import com.norconex.collector.core.data.store.ICrawlDataStore;
 import com.norconex.collector.core.data.store.impl.mongo.IMongoSerializer.Stage;
 import com.norconex.commons.lang.StringUtil;
@@ -56,14 +77,35 @@ import com.norconex.commons.lang.StringUtil;
  * new constructors.
  * </p>
  *
+ * <p>
+ * As of 1.9.2, when not resuming, the references collection is renamed
+ * to become the cached one instead of having its valid processed
+ * references copied to it. The other references it holds are ignored
+ * when reading the cache and deleted in the background.
+ * </p>
+ *
+ * <p>
+ * Also as of 1.9.2, queued references are given a rank and a queuing
+ * sequence number, which the serializer sorts on to return lower ranks
+ * first, and equal ranks in the order they were queued. Ranks are 
+ * obtained from an optional {@link ICrawlDataRanker}. Without one, 
+ * references are processed in the order they were queued.
+ * </p>
+ *
  * @author Pascal Essiembre
  */
 public class MongoCrawlDataStore extends AbstractCrawlDataStore {
 
+    private static final Logger LOG =
+            LogManager.getLogger(MongoCrawlDataStore.class);
+
     public static final String DEFAULT_CACHED_COL_NAME = "cached";
     public static final String DEFAULT_REFERENCES_COL_NAME = "references";
 
     private static final int BATCH_UPDATE_SIZE = 1000;
+    private static final int MONGO_ERROR_DUPLICATE_KEY = 11000;
+    private static final BulkWriteOptions UNORDERED =
+            new BulkWriteOptions().ordered(false);
 
     private final MongoClient client;
     private final MongoDatabase database;
@@ -80,6 +122,15 @@ public class MongoCrawlDataStore extends AbstractCrawlDataStore {
     private final MongoCollection<Document> collCached;
     private final MongoCollection<Document> collRefs;
 
+    private final ICrawlDataRanker ranker;
+    // Orders references of equal rank in the order they were queued
+    private final AtomicLong queueSequence = new AtomicLong();
+
+    // Number of references at each stage, updated with every change
+    // so they do not have to be counted in the database.
+    private final Map<Stage, AtomicLong> counts = new EnumMap<>(Stage.class);
+    private final BackgroundCleaner cleaner;
+
     /**
      * Constructor.
      * @param crawlerId crawler id
@@ -106,9 +157,29 @@ public class MongoCrawlDataStore extends AbstractCrawlDataStore {
     public MongoCrawlDataStore(String crawlerId, boolean resume,
             MongoConnectionDetails conn, IMongoSerializer serializer,
             String referencesCollectionName, String cachedCollectionName) {
+        this(crawlerId, resume, conn, serializer, 
+                referencesCollectionName, cachedCollectionName, null);
+    }
+    /**
+     * Constructor.
+     * @param crawlerId crawler id
+     * @param resume whether to resume an aborted job
+     * @param serializer Mongo serializer
+     * @param conn Mongo connection details
+     * @param referencesCollectionName name of Mongo references collection
+     * @param cachedCollectionName name of Mongo cached collection
+     * @param ranker ranks queued references (<code>null</code> for
+     *        queue order)
+     * @since 1.9.2
+     */
+    public MongoCrawlDataStore(String crawlerId, boolean resume,
+            MongoConnectionDetails conn, IMongoSerializer serializer,
+            String referencesCollectionName, String cachedCollectionName,
+            ICrawlDataRanker ranker) {
         this(resume, buildMongoClient(crawlerId, conn),
                 MongoUtil.getSafeDBName(conn.getDatabaseName(), crawlerId),
-                serializer, referencesCollectionName, cachedCollectionName);
+                serializer, referencesCollectionName, cachedCollectionName,
+                ranker);
     }
 
     /**
@@ -135,7 +206,27 @@ public class MongoCrawlDataStore extends AbstractCrawlDataStore {
     public MongoCrawlDataStore(boolean resume, MongoClient client,
             String dbName, IMongoSerializer serializer,
             String referencesCollectionName, String cachedCollectionName) {
+        this(resume, client, dbName, serializer, 
+                referencesCollectionName, cachedCollectionName, null);
+    }
+    /**
+     * Constructor.
+     * @param resume whether to resume an aborted job
+     * @param client Mongo client
+     * @param dbName Mongo database name
+     * @param serializer Mongo serializer
+     * @param referencesCollectionName name of Mongo references collection
+     * @param cachedCollectionName name of Mongo cached collection
+     * @param ranker ranks queued references (<code>null</code> for
+     *        queue order)
+     * @since 1.9.2
+     */
+    public MongoCrawlDataStore(boolean resume, MongoClient client,
+            String dbName, IMongoSerializer serializer,
+            String referencesCollectionName, String cachedCollectionName,
+            ICrawlDataRanker ranker) {
         this.serializer = serializer;
+        this.ranker = ranker;
         this.client = client;
         this.database = client.getDatabase(dbName);
         this.collRefs = database.getCollection(StringUtils.defaultIfBlank(
@@ -145,17 +236,43 @@ public class MongoCrawlDataStore extends AbstractCrawlDataStore {
                         cachedCollectionName, DEFAULT_CACHED_COL_NAME));
         this.referencesCollectionName = referencesCollectionName;
         this.cachedCollectionName = cachedCollectionName;
+        for (Stage stage : Stage.values()) {
+            counts.put(stage, new AtomicLong());
+        }
 
         if (resume) {
-            changeStage(Stage.ACTIVE, Stage.QUEUED);
+            // All at once with a single update
+            long start = System.currentTimeMillis();
+            long requeued = changeStage(Stage.ACTIVE, Stage.QUEUED);
+            if (requeued > 0) {
+                LOG.info("Put " + requeued + " active references back in "
+                        + "the queue in " + (System.currentTimeMillis() - start)
+                        + "ms.");
+            }
+            queueSequence.set(getLastQueueSequence());
         } else {
-            // Delete everything except valid processed urls that are
-            // transfered to cache
-            deleteAllDocuments(collCached);
-            processedToCached();
-            deleteAllDocuments(collRefs);
+            // The references collection becomes the cache by renaming it.
+            // References other than valid processed ones are ignored by
+            // cache queries until deleted in the background.
+            collCached.drop();
+            if (collectionExists(collRefs)) {
+                collRefs.renameCollection(collCached.getNamespace());
+            }
         }
         serializer.createIndices(collRefs, collCached);
+        initCounts();
+        cleaner = new BackgroundCleaner(
+                "Mongo cleaner: " + collCached.getNamespace());
+        cleaner.submit("Mongo cache " + collCached.getNamespace(),
+                new Runnable() {
+            @Override
+            public void run() {
+                collCached.deleteMany(or(
+                        ne(IMongoSerializer.FIELD_STAGE,
+                                Stage.PROCESSED.name()),
+                        ne(IMongoSerializer.FIELD_IS_VALID, true)));
+            }
+        });
     }
 
     /**
@@ -180,24 +297,87 @@ public class MongoCrawlDataStore extends AbstractCrawlDataStore {
         return connDetails.buildMongoClient(crawlerId);
     }
 
+    /**
+     * Gets the ranker establishing in which order queued references
+     * are processed.
+     * @return queue ranker or <code>null</code> (queue order)
+     * @since 1.9.2
+     */
+    public ICrawlDataRanker getRanker() {
+        return ranker;
+    }
+
     @Override
     public void queue(ICrawlData crawlData) {
-        Document document = serializer.toDocument(Stage.QUEUED, crawlData);
+        Document document = toQueuedDocument(crawlData);
 
         // If the document does not exist yet, it will be inserted. If exists,
         // it will be replaced.
-        upsertOne(collRefs, referenceFilter(crawlData.getReference()), document);
+        upsertOne(referenceFilter(crawlData.getReference()),
+                document, Stage.QUEUED);
+    }
+
+    @Override
+    public void queueAll(Iterable<? extends ICrawlData> crawlDatas) {
+        List<Document> list = new ArrayList<>(BATCH_UPDATE_SIZE);
+        for (ICrawlData crawlData : crawlDatas) {
+            list.add(toQueuedDocument(crawlData));
+            if (list.size() == BATCH_UPDATE_SIZE) {
+                upsertBatch(list, Stage.QUEUED);
+                list.clear();
+            }
+        }
+        if (!list.isEmpty()) {
+            upsertBatch(list, Stage.QUEUED);
+        }
+    }
+
+    @Override
+    public CrawlDataStage queueIfAbsent(ICrawlData crawlData) {
+        Document document = toQueuedDocument(crawlData);
+
+        // Only inserts the document if it does not exist yet, returning
+        // the stage it was at if it does.
+        FindOneAndUpdateOptions options = new FindOneAndUpdateOptions()
+                .upsert(true)
+                .returnDocument(ReturnDocument.BEFORE)
+                .projection(Projections.include(IMongoSerializer.FIELD_STAGE));
+        Bson filter = referenceFilter(crawlData.getReference());
+        Document update = new Document("$setOnInsert", document);
+        for (int retry = 0; retry < maxRetries; ++retry) {
+            try {
+                CrawlDataStage stage = toCrawlDataStage(
+                        collRefs.findOneAndUpdate(filter, update, options));
+                if (stage == null) {
+                    counts.get(Stage.QUEUED).incrementAndGet();
+                }
+                return stage;
+            } catch (MongoException e) {
+                // Workaround for https://jira.mongodb.org/browse/SERVER-14322
+                if (retry < maxRetries - 1 && e.getMessage().contains("E11000 ")) {
+                    continue;
+                }
+                throw e;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public CrawlDataStage getStage(String reference) {
+        return toCrawlDataStage(collRefs.find(referenceFilter(reference))
+                .projection(Projections.include(IMongoSerializer.FIELD_STAGE))
+                .first());
     }
 
     @Override
     public boolean isQueueEmpty() {
-        return (int) collRefs.count(eq(IMongoSerializer.FIELD_STAGE, 
-                Stage.QUEUED.name()), new CountOptions().limit(1)) == 0;
+        return getQueueSize() == 0;
     }
 
     @Override
-    public int getQueueSize() {
-        return getReferencesCount(Stage.QUEUED);
+    public long getQueueSize() {
+        return counts.get(Stage.QUEUED).get();
     }
 
     @Override
@@ -207,7 +387,22 @@ public class MongoCrawlDataStore extends AbstractCrawlDataStore {
 
     @Override
     public ICrawlData nextQueued() {
-        return serializer.fromDocument(serializer.getNextQueued(collRefs));
+        Document doc = serializer.getNextQueued(collRefs);
+        if (doc != null) {
+            move(Stage.QUEUED, Stage.ACTIVE, 1);
+        }
+        return serializer.fromDocument(doc);
+    }
+
+    @Override
+    public List<ICrawlData> nextQueued(int max) {
+        List<Document> docs = serializer.getNextQueued(collRefs, max);
+        move(Stage.QUEUED, Stage.ACTIVE, docs.size());
+        List<ICrawlData> crawlDatas = new ArrayList<>(docs.size());
+        for (Document doc : docs) {
+            crawlDatas.add(serializer.fromDocument(doc));
+        }
+        return crawlDatas;
     }
 
     @Override
@@ -216,19 +411,20 @@ public class MongoCrawlDataStore extends AbstractCrawlDataStore {
     }
 
     @Override
-    public int getActiveCount() {
-        return getReferencesCount(Stage.ACTIVE);
+    public long getActiveCount() {
+        return counts.get(Stage.ACTIVE).get();
     }
 
     @Override
     public ICrawlData getCached(String reference) {
-        Document result = collCached.find(referenceFilter(reference)).first();
+        Document result = collCached.find(
+                and(referenceFilter(reference), cachedFilter())).first();
         return serializer.fromDocument(result);
     }
 
     @Override
     public boolean isCacheEmpty() {
-        return collCached.count() == 0;
+        return collCached.find(cachedFilter()).first() == null;
     }
 
     @Override
@@ -237,29 +433,80 @@ public class MongoCrawlDataStore extends AbstractCrawlDataStore {
         // If the document does not exist yet, it will be inserted. If exists,
         // it will be updated.
         Bson filter = referenceFilter(crawlData.getReference());
-        upsertOne(collRefs, filter, document);
+        upsertOne(filter, document, Stage.PROCESSED);
 
         // Remove from cache
         collCached.deleteOne(filter);
     }
 
+    @Override
+    public void processedAll(Iterable<? extends ICrawlData> crawlDatas) {
+        List<Document> list = new ArrayList<>(BATCH_UPDATE_SIZE);
+        List<String> references = new ArrayList<>(BATCH_UPDATE_SIZE);
+        for (ICrawlData crawlData : crawlDatas) {
+            list.add(serializer.toDocument(Stage.PROCESSED, crawlData));
+            references.add(truncateReference(crawlData.getReference()));
+            if (list.size() == BATCH_UPDATE_SIZE) {
+                processedBatch(list, references);
+            }
+        }
+        if (!list.isEmpty()) {
+            processedBatch(list, references);
+        }
+    }
+    private void processedBatch(
+            List<Document> list, List<String> references) {
+        upsertBatch(list, Stage.PROCESSED);
+        // Remove from cache
+        collCached.deleteMany(in(IMongoSerializer.FIELD_REFERENCE, references));
+        list.clear();
+        references.clear();
+    }
+
     @Override
     public boolean isProcessed(String reference) {
         return isStage(reference, Stage.PROCESSED);
     }
 
     @Override
-    public int getProcessedCount() {
-        return getReferencesCount(Stage.PROCESSED);
+    public long getProcessedCount() {
+        return counts.get(Stage.PROCESSED).get();
+    }
+
+    private Document toQueuedDocument(ICrawlData crawlData) {
+        Document document = serializer.toDocument(Stage.QUEUED, crawlData);
+        double rank = ranker == null ? 0 : ranker.getRank(crawlData);
+        document.put(IMongoSerializer.FIELD_QUEUE_RANK, rank);
+        document.put(IMongoSerializer.FIELD_QUEUE_SEQUENCE,
+                queueSequence.incrementAndGet());
+        return document;
+    }
+
+    // Resumed crawls keep numbering references after the last one queued
+    private long getLastQueueSequence() {
+        Document last = collRefs.find()
+                .sort(Sorts.descending(IMongoSerializer.FIELD_QUEUE_SEQUENCE))
+                .projection(Projections.include(
+                        IMongoSerializer.FIELD_QUEUE_SEQUENCE))
+                .first();
+        if (last == null) {
+            return 0;
+        }
+        Object sequence = last.get(IMongoSerializer.FIELD_QUEUE_SEQUENCE);
+        if (sequence instanceof Number) {
+            return ((Number) sequence).longValue();
+        }
+        return 0;
     }
 
-    private void changeStage(
+    // Returns the number of references changed
+    private long changeStage(
             IMongoSerializer.Stage stage, IMongoSerializer.Stage newStage) {
-        Document newDocument = new Document("$set", new Document(
+        Document newDocument = stageUpdate(new Document(
                 IMongoSerializer.FIELD_STAGE, newStage.name()));
         // Batch update
-        collRefs.updateMany(
-                eq(IMongoSerializer.FIELD_STAGE, stage.name()), newDocument);
+        return collRefs.updateMany(eq(IMongoSerializer.FIELD_STAGE,
+                stage.name()), newDocument).getModifiedCount();
     }
 
     protected void deleteReferences(String... stages) {
@@ -267,15 +514,39 @@ public class MongoCrawlDataStore extends AbstractCrawlDataStore {
         List<String> list = Arrays.asList(stages);
         document.put(IMongoSerializer.FIELD_STAGE, new Document("$in", list));
         collRefs.deleteMany(document);
+        initCounts();
     }
 
-    protected int getReferencesCount(IMongoSerializer.Stage stage) {
-        return (int) collRefs.count(
-                eq(IMongoSerializer.FIELD_STAGE, stage.name()));
+    /**
+     * Counts the references at the given stage in the database.
+     * As of 1.9.2, returns a <code>long</code>.
+     * @param stage reference stage
+     * @return number of references
+     */
+    protected long getReferencesCount(IMongoSerializer.Stage stage) {
+        return collRefs.count(eq(IMongoSerializer.FIELD_STAGE, stage.name()));
+    }
+
+    private void initCounts() {
+        for (Stage stage : Stage.values()) {
+            counts.get(stage).set(getReferencesCount(stage));
+        }
+    }
+
+    private void move(Stage fromStage, Stage toStage, long count) {
+        if (count == 0 || fromStage == toStage) {
+            return;
+        }
+        if (fromStage != null) {
+            counts.get(fromStage).addAndGet(-count);
+        }
+        counts.get(toStage).addAndGet(count);
     }
 
     protected boolean isStage(String reference, IMongoSerializer.Stage stage) {
-        Document result = collRefs.find(referenceFilter(reference)).first();
+        Document result = collRefs.find(referenceFilter(reference))
+                .projection(Projections.include(IMongoSerializer.FIELD_STAGE))
+                .first();
         if (result == null
                 || result.get(IMongoSerializer.FIELD_STAGE) == null) {
             return false;
@@ -285,41 +556,52 @@ public class MongoCrawlDataStore extends AbstractCrawlDataStore {
         return stage.equals(currentStage);
     }
 
+    private Stage toStage(Document document) {
+        if (document == null
+                || document.get(IMongoSerializer.FIELD_STAGE) == null) {
+            return null;
+        }
+        return Stage.valueOf(document.getString(IMongoSerializer.FIELD_STAGE));
+    }
+
+    private CrawlDataStage toCrawlDataStage(Document document) {
+        if (document == null
+                || document.get(IMongoSerializer.FIELD_STAGE) == null) {
+            return null;
+        }
+        return CrawlDataStage.valueOf(
+                document.getString(IMongoSerializer.FIELD_STAGE));
+    }
+
     @Override
     public void close() {
+        cleaner.close();
         client.close();
     }
 
-    private void processedToCached() {
-        Bson filter = and(
-                eq(IMongoSerializer.FIELD_STAGE, Stage.PROCESSED.name()),
-                eq(IMongoSerializer.FIELD_IS_VALID, true));
-        MongoCursor<Document> cursor = collRefs.find(filter).iterator();
-
-        // Add them to cache in batch
-        List<WriteModel<Document>> list = new ArrayList<>(BATCH_UPDATE_SIZE);
-        while (cursor.hasNext()) {
-            Document document = cursor.next();
-            String reference = document.getString(IMongoSerializer.FIELD_REFERENCE);
-            list.add(new UpdateOneModel<Document>(
-                    eq(IMongoSerializer.FIELD_REFERENCE, reference),
-                    new Document("$set", document), new UpdateOptions().upsert(true)));
-            if (list.size() == BATCH_UPDATE_SIZE) {
-                bulkWrite(collCached, list);
-                list.clear();
+    private boolean collectionExists(MongoCollection<Document> coll) {
+        String name = coll.getNamespace().getCollectionName();
+        for (String existing : database.listCollectionNames()) {
+            if (existing.equals(name)) {
+                return true;
             }
         }
-        if (!list.isEmpty()) {
-            bulkWrite(collCached, list);
-        }
+        return false;
     }
 
     private static final int maxRetries = 5;
     
-    private void upsertOne(MongoCollection<Document> coll, Bson filter, Document document) {
+    private void upsertOne(Bson filter, Document document, Stage stage) {
+        FindOneAndUpdateOptions options = new FindOneAndUpdateOptions()
+                .upsert(true)
+                .returnDocument(ReturnDocument.BEFORE)
+                .projection(Projections.include(IMongoSerializer.FIELD_STAGE));
         for (int retry = 0; retry < maxRetries; ++retry) {
             try {
-                coll.updateOne(filter, new Document("$set", document), new UpdateOptions().upsert(true));
+                Document before = collRefs.findOneAndUpdate(
+                        filter, stageUpdate(document), options);
+                move(toStage(before), stage, 1);
+                return;
             } catch (MongoException e) {
                 // Workaround for https://jira.mongodb.org/browse/SERVER-14322
                 if (retry < maxRetries - 1 && e.getMessage().contains("E11000 ")) {
@@ -331,9 +613,13 @@ public class MongoCrawlDataStore extends AbstractCrawlDataStore {
     }
     
     private void bulkWrite(MongoCollection<Document> coll, List<WriteModel<Document>> list) {
+        bulkWrite(coll, list, new BulkWriteOptions());
+    }
+    private BulkWriteResult bulkWrite(MongoCollection<Document> coll,
+            List<WriteModel<Document>> list, BulkWriteOptions options) {
         for (int retry = 0; retry < maxRetries; ++retry) {
             try {
-                coll.bulkWrite(list);
+                return coll.bulkWrite(list, options);
             } catch (MongoException e) {
                 // Workaround for https://jira.mongodb.org/browse/SERVER-14322
                 if (retry < maxRetries - 1 && e.getMessage().contains("E11000 ")) {
@@ -342,20 +628,123 @@ public class MongoCrawlDataStore extends AbstractCrawlDataStore {
                 throw e;
             }
         }
+        return null;
+    }
+
+    // Upserts documents at the given stage, keeping stage counts exact.
+    // Documents are grouped by their current stage and only updated if
+    // still at that stage, so write results tell exactly how many
+    // references changed stage, even with concurrent changes. Groups
+    // not entirely written are tried again with their new stages.
+    private void upsertBatch(List<Document> documents, Stage stage) {
+        List<Document> pending = documents;
+        while (!pending.isEmpty()) {
+            List<Document> retry = new ArrayList<>();
+            for (Entry<Stage, List<Document>> group :
+                    groupByStage(pending).entrySet()) {
+                Stage fromStage = group.getKey();
+                List<Document> docs = group.getValue();
+                List<WriteModel<Document>> models = 
+                        new ArrayList<>(docs.size());
+                for (Document doc : docs) {
+                    models.add(stageUpdateModel(fromStage, doc));
+                }
+                BulkWriteResult result;
+                try {
+                    result = collRefs.bulkWrite(models, UNORDERED);
+                } catch (MongoBulkWriteException e) {
+                    // Concurrent inserts of the same references are
+                    // resolved when trying again
+                    if (!onlyDuplicateKeys(e)) {
+                        throw e;
+                    }
+                    result = e.getWriteResult();
+                }
+                long written = fromStage == null 
+                        ? result.getUpserts().size() : result.getMatchedCount();
+                move(fromStage, stage, written);
+                if (written < docs.size()) {
+                    retry.addAll(docs);
+                }
+            }
+            pending = retry;
+        }
+    }
+    // Stages are keyed in reading order, with null for new references.
+    private Map<Stage, List<Document>> groupByStage(List<Document> documents) {
+        List<String> references = new ArrayList<>(documents.size());
+        for (Document doc : documents) {
+            references.add(doc.getString(IMongoSerializer.FIELD_REFERENCE));
+        }
+        Map<String, Stage> stages = new HashMap<>();
+        for (Document doc : collRefs.find(
+                in(IMongoSerializer.FIELD_REFERENCE, references))
+                .projection(Projections.include(
+                        IMongoSerializer.FIELD_REFERENCE,
+                        IMongoSerializer.FIELD_STAGE))) {
+            stages.put(doc.getString(IMongoSerializer.FIELD_REFERENCE),
+                    toStage(doc));
+        }
+        Map<Stage, List<Document>> groups = new LinkedHashMap<>();
+        for (Document doc : documents) {
+            Stage stage = stages.get(
+                    doc.getString(IMongoSerializer.FIELD_REFERENCE));
+            List<Document> group = groups.get(stage);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(stage, group);
+            }
+            group.add(doc);
+        }
+        return groups;
+    }
+    private WriteModel<Document> stageUpdateModel(
+            Stage fromStage, Document document) {
+        Bson filter = eq(IMongoSerializer.FIELD_REFERENCE,
+                document.getString(IMongoSerializer.FIELD_REFERENCE));
+        if (fromStage == null) {
+            return new UpdateOneModel<>(filter,
+                    new Document("$setOnInsert", document),
+                    new UpdateOptions().upsert(true));
+        }
+        return new UpdateOneModel<>(
+                and(filter, eq(IMongoSerializer.FIELD_STAGE, fromStage.name())),
+                stageUpdate(document));
+    }
+    // Leases are only needed while taking references from the queue.
+    // They are removed whenever references change stage afterwards,
+    // so they do not accumulate in the lease index.
+    private Document stageUpdate(Document document) {
+        return new Document("$set", document).append("$unset",
+                new Document(IMongoSerializer.FIELD_LEASE, ""));
+    }
+    private boolean onlyDuplicateKeys(MongoBulkWriteException e) {
+        for (BulkWriteError error : e.getWriteErrors()) {
+            if (error.getCode() != MONGO_ERROR_DUPLICATE_KEY) {
+                return false;
+            }
+        }
+        return true;
     }
     
-    private void deleteAllDocuments(MongoCollection<Document> coll) {
-        coll.deleteMany(new Document());
+    // Only valid processed references are cached
+    private Bson cachedFilter() {
+        return and(eq(IMongoSerializer.FIELD_STAGE, Stage.PROCESSED.name()),
+                eq(IMongoSerializer.FIELD_IS_VALID, true));
     }
 
     private Bson referenceFilter(String reference) {
         return eq(IMongoSerializer.FIELD_REFERENCE,
-                StringUtil.truncateWithHash(reference, 1024, "!"));
+                truncateReference(reference));
+    }
+    private String truncateReference(String reference) {
+        return StringUtil.truncateWithHash(reference, 1024, "!");
     }
 
     @Override
     public Iterator<ICrawlData> getCacheIterator() {
-        final MongoCursor<Document> cursor = collCached.find().iterator();
+        final MongoCursor<Document> cursor =
+                collCached.find(cachedFilter()).iterator();
         return new Iterator<ICrawlData>() {
             @Override
             public boolean hasNext() {
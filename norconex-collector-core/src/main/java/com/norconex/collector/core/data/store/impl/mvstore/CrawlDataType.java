@@ -0,0 +1,118 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.store.impl.mvstore;
+
+import java.nio.ByteBuffer;
+
+import org.h2.mvstore.DataUtils;
+import org.h2.mvstore.WriteBuffer;
+import org.h2.mvstore.type.DataType;
+import org.h2.mvstore.type.ObjectDataType;
+
+import com.norconex.collector.core.data.ICrawlData;
+import com.norconex.collector.core.data.codec.CrawlDataCodecRegistry;
+import com.norconex.collector.core.data.codec.CrawlDataInput;
+import com.norconex.collector.core.data.codec.CrawlDataOutput;
+
+/**
+ * MVStore data type writing {@link ICrawlData} values with a
+ * {@link CrawlDataCodecRegistry}. Values written by earlier versions
+ * with MVStore default data type (Java serialization) are still read,
+ * so existing crawl stores can be resumed.
+ * @author Pascal Essiembre
+ * @since 1.9.2
+ */
+public class CrawlDataType implements DataType {
+
+    // MVStore ObjectDataType tags are all below 128, so this one
+    // tells apart values written by this class.
+    private static final byte TAG_CODEC = (byte) 0xFF;
+    // Rough size of a crawl data object, not counting its strings
+    private static final int BASE_MEMORY = 128;
+
+    private final CrawlDataCodecRegistry codecRegistry;
+    private final ObjectDataType legacyType = new ObjectDataType();
+    private final ThreadLocal<CrawlDataOutput> outputs =
+            new ThreadLocal<CrawlDataOutput>() {
+        @Override
+        protected CrawlDataOutput initialValue() {
+            return new CrawlDataOutput();
+        }
+    };
+
+    public CrawlDataType(CrawlDataCodecRegistry codecRegistry) {
+        super();
+        this.codecRegistry = codecRegistry;
+    }
+
+    public CrawlDataCodecRegistry getCodecRegistry() {
+        return codecRegistry;
+    }
+
+    @Override
+    public int compare(Object a, Object b) {
+        return legacyType.compare(a, b);
+    }
+
+    @Override
+    public int getMemory(Object obj) {
+        // Estimated without encoding, as this is invoked often
+        ICrawlData crawlData = (ICrawlData) obj;
+        return BASE_MEMORY + 2 * (length(crawlData.getReference())
+                + length(crawlData.getParentRootReference())
+                + length(crawlData.getMetaChecksum())
+                + length(crawlData.getContentChecksum()));
+    }
+
+    @Override
+    public void write(WriteBuffer buff, Object obj) {
+        CrawlDataOutput out = outputs.get();
+        out.reset();
+        codecRegistry.encode((ICrawlData) obj, out);
+        byte[] bytes = out.toByteArray();
+        buff.put(TAG_CODEC).putVarInt(bytes.length).put(bytes);
+    }
+
+    @Override
+    public void write(
+            WriteBuffer buff, Object[] obj, int len, boolean key) {
+        for (int i = 0; i < len; i++) {
+            write(buff, obj[i]);
+        }
+    }
+
+    @Override
+    public Object read(ByteBuffer buff) {
+        if (buff.get(buff.position()) != TAG_CODEC) {
+            return legacyType.read(buff);
+        }
+        buff.get();
+        int length = DataUtils.readVarInt(buff);
+        byte[] bytes = new byte[length];
+        buff.get(bytes);
+        return codecRegistry.decode(new CrawlDataInput(bytes));
+    }
+
+    @Override
+    public void read(ByteBuffer buff, Object[] obj, int len, boolean key) {
+        for (int i = 0; i < len; i++) {
+            obj[i] = read(buff);
+        }
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+}
@@ -1,4 +1,4 @@
-/* Copyright 2014-2016 Norconex Inc.
+/* Copyright 2014-2018 Norconex Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,38 +16,152 @@ package com.norconex.collector.core.data.store.impl.mvstore;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
+import org.h2.mvstore.Cursor;
 import org.h2.mvstore.MVMap;
 import org.h2.mvstore.MVStore;
 
 import com.norconex.collector.core.data.ICrawlData;
+import com.norconex.collector.core.data.codec.CrawlDataCodecRegistry;
 import com.norconex.collector.core.data.store.AbstractCrawlDataStore;
+import com.norconex.collector.core.data.store.BackgroundCleaner;
+import com.norconex.collector.core.data.store.CrawlDataStage;
 import com.norconex.collector.core.data.store.CrawlDataStoreException;
+import com.norconex.collector.core.data.store.ICrawlDataRanker;
 import com.norconex.collector.core.data.store.ICrawlDataStore;
 
 /**
- * H2 MVStore {@link ICrawlDataStore} implementation.
+ * <p>H2 MVStore {@link ICrawlDataStore} implementation.
+ * See {@link MVStoreCrawlDataStoreFactory} for a description of
+ * the available commit modes.</p>
+ * <p>As of 1.9.2, when not resuming, the map of valid processed
+ * references is renamed to become the cache instead of having its
+ * entries moved one by one. Maps of the previous run are renamed away
+ * and removed in the background.</p>
+ * <p>As of 1.9.2, queued references are taken in the order they were
+ * queued, or by rank when given an {@link ICrawlDataRanker}, instead of
+ * in alphabetical order. A separate map keyed by rank and queuing order
+ * keeps track of that order.</p>
  * @author Pascal Dimassimo
  */
 public class MVStoreCrawlDataStore extends AbstractCrawlDataStore {
     
     private static final Logger LOG = 
             LogManager.getLogger(MVStoreCrawlDataStore.class);
-    
+
+    /**
+     * When changes are committed to disk.
+     * @since 1.9.2
+     */
+    public enum CommitMode {
+        /** Commit every time a reference becomes active or processed. */
+        OPERATION,
+        /** Commit every N operations or T milliseconds, whichever first. */
+        GROUP,
+        /** Let MVStore commit on its own every T milliseconds. */
+        AUTO
+    }
+
+    private static final String MAP_QUEUED = "queued";
+    private static final String MAP_ACTIVE = "active";
+    private static final String MAP_PROCESSED_VALID = "processedValid";
+    private static final String MAP_PROCESSED_INVALID = "processedInvalid";
+    private static final String MAP_CACHED = "cached";
+    private static final String MAP_QUEUE_ORDER = "queueOrder";
+    private static final String TRASH_PREFIX = "trash.";
+    // How often progress is logged when copying many references
+    private static final int PROGRESS_INTERVAL = 100000;
+
     private final MVStore store;
+    private final CommitMode commitMode;
+    private final GroupCommitter groupCommitter;
     
+    private final CrawlDataType dataType;
+    private final BackgroundCleaner cleaner;
+    private final ICrawlDataRanker ranker;
+    private final AtomicLong sequence = new AtomicLong();
+
     private final MVMap<String, ICrawlData> mapQueued;
     private final MVMap<String, ICrawlData> mapActive;
     private final MVMap<String, ICrawlData> mapProcessedValid;
     private final MVMap<String, ICrawlData> mapProcessedInvalid;
     private final MVMap<String, ICrawlData> mapCached;
+    // Queue order keys to queued references
+    private final MVMap<String, String> mapQueueOrder;
     
     public MVStoreCrawlDataStore(String path, boolean resume) {
-        
+        this(path, resume, CommitMode.OPERATION, 0, 0);
+    }
+
+    /**
+     * Creates an MVStore crawl data store.
+     * @param path directory where to store the data
+     * @param resume whether to resume a previous crawl
+     * @param commitMode when to commit changes (<code>null</code> 
+     *        is {@link CommitMode#OPERATION})
+     * @param commitOperations maximum number of uncommitted operations
+     *        with {@link CommitMode#GROUP} (zero or less for no maximum)
+     * @param commitInterval maximum milliseconds between commits with
+     *        {@link CommitMode#GROUP} or {@link CommitMode#AUTO}
+     * @since 1.9.2
+     */
+    public MVStoreCrawlDataStore(String path, boolean resume,
+            CommitMode commitMode, int commitOperations, long commitInterval) {
+        this(path, resume, commitMode, commitOperations, commitInterval,
+                null);
+    }
+
+    /**
+     * Creates an MVStore crawl data store.
+     * @param path directory where to store the data
+     * @param resume whether to resume a previous crawl
+     * @param commitMode when to commit changes (<code>null</code> 
+     *        is {@link CommitMode#OPERATION})
+     * @param commitOperations maximum number of uncommitted operations
+     *        with {@link CommitMode#GROUP} (zero or less for no maximum)
+     * @param commitInterval maximum milliseconds between commits with
+     *        {@link CommitMode#GROUP} or {@link CommitMode#AUTO}
+     * @param codecRegistry codecs used to write crawl data
+     *        (<code>null</code> uses a default registry)
+     * @since 1.9.2
+     */
+    public MVStoreCrawlDataStore(String path, boolean resume,
+            CommitMode commitMode, int commitOperations, long commitInterval,
+            CrawlDataCodecRegistry codecRegistry) {
+        this(path, resume, commitMode, commitOperations, commitInterval,
+                codecRegistry, null);
+    }
+
+    /**
+     * Creates an MVStore crawl data store.
+     * @param path directory where to store the data
+     * @param resume whether to resume a previous crawl
+     * @param commitMode when to commit changes (<code>null</code> 
+     *        is {@link CommitMode#OPERATION})
+     * @param commitOperations maximum number of uncommitted operations
+     *        with {@link CommitMode#GROUP} (zero or less for no maximum)
+     * @param commitInterval maximum milliseconds between commits with
+     *        {@link CommitMode#GROUP} or {@link CommitMode#AUTO}
+     * @param codecRegistry codecs used to write crawl data
+     *        (<code>null</code> uses a default registry)
+     * @param ranker ranks queued references (<code>null</code> takes
+     *        them in the order they were queued)
+     * @since 1.9.2
+     */
+    public MVStoreCrawlDataStore(String path, boolean resume,
+            CommitMode commitMode, int commitOperations, long commitInterval,
+            CrawlDataCodecRegistry codecRegistry, ICrawlDataRanker ranker) {
+        this.commitMode = commitMode != null 
+                ? commitMode : CommitMode.OPERATION;
+        this.ranker = ranker;
         try {
             FileUtils.forceMkdir(new File(path));
         } catch (IOException e) {
@@ -56,11 +170,35 @@ public class MVStoreCrawlDataStore extends AbstractCrawlDataStore {
         }
         store = MVStore.open(path + "/mvstore");
         
-        mapQueued = store.openMap("queued");
-        mapActive = store.openMap("active");
-        mapProcessedValid = store.openMap("processedValid");
-        mapProcessedInvalid = store.openMap("processedInvalid");
-        mapCached = store.openMap("cached");
+        dataType = new CrawlDataType(codecRegistry != null
+                ? codecRegistry : new CrawlDataCodecRegistry());
+        cleaner = new BackgroundCleaner("MVStore cleaner: " + path);
+        if (!resume) {
+            // Valid processed references become the cache by renaming
+            // their map. Maps of the previous run are renamed away and
+            // removed in the background.
+            for (String name : new String[] { MAP_CACHED, MAP_ACTIVE,
+                    MAP_QUEUED, MAP_QUEUE_ORDER, MAP_PROCESSED_INVALID }) {
+                if (store.hasMap(name)) {
+                    store.renameMap(openAnyMap(name),
+                            TRASH_PREFIX + name + "." + System.nanoTime());
+                }
+            }
+            if (store.hasMap(MAP_PROCESSED_VALID)) {
+                store.renameMap(openMap(MAP_PROCESSED_VALID), MAP_CACHED);
+            }
+        }
+        for (String name : store.getMapNames()) {
+            if (name.startsWith(TRASH_PREFIX)) {
+                removeMapLater(name);
+            }
+        }
+        mapQueued = openMap(MAP_QUEUED);
+        mapActive = openMap(MAP_ACTIVE);
+        mapProcessedValid = openMap(MAP_PROCESSED_VALID);
+        mapProcessedInvalid = openMap(MAP_PROCESSED_INVALID);
+        mapCached = openMap(MAP_CACHED);
+        mapQueueOrder = store.openMap(MAP_QUEUE_ORDER);
         
         if (resume) {
             if (LOG.isDebugEnabled()) {
@@ -69,34 +207,62 @@ public class MVStoreCrawlDataStore extends AbstractCrawlDataStore {
                 LOG.debug("Processed valid count: " + mapProcessedValid.size());
                 LOG.debug("Processed invalid count: "
                         + mapProcessedInvalid.size());
-                LOG.debug(path + " Putting active URLs back in the queue...");
-            }
-            // Active -> Queued
-            for (String key : mapActive.keySet()) {
-                mapQueued.put(key, mapActive.remove(key));
-            }
-            
-        } else {
-            mapCached.clear();
-            mapActive.clear();
-            mapQueued.clear();
-            mapProcessedInvalid.clear();
-
-            // Valid Processed -> Cached
-            for (String key : mapProcessedValid.keySet()) {
-                ICrawlData processed = mapProcessedValid.remove(key);
-                if (processed.getState().isGoodState()) {
-                    mapCached.put(key, processed);
-                }
             }
+            initQueueOrder();
+            requeueActive();
         }
         store.commit();
+
+        if (this.commitMode == CommitMode.AUTO && commitInterval > 0) {
+            store.setAutoCommitDelay((int) Math.min(
+                    Integer.MAX_VALUE, commitInterval));
+        }
+        if (this.commitMode == CommitMode.GROUP) {
+            groupCommitter = new GroupCommitter(
+                    path, commitOperations, commitInterval);
+            groupCommitter.start();
+        } else {
+            groupCommitter = null;
+        }
+    }
+
+    /**
+     * Gets the commit mode.
+     * @return commit mode
+     * @since 1.9.2
+     */
+    public CommitMode getCommitMode() {
+        return commitMode;
     }
 
     @Override
     public void queue(ICrawlData crawlData) {
+        putQueued(crawlData.clone());
+    }
+
+    @Override
+    public void queueAll(Iterable<? extends ICrawlData> crawlDatas) {
+        for (ICrawlData crawlData : crawlDatas) {
+            putQueued(crawlData.clone());
+        }
+        commit();
+    }
+
+    @Override
+    public synchronized CrawlDataStage queueIfAbsent(ICrawlData crawlData) {
+        String ref = crawlData.getReference();
+        if (mapActive.containsKey(ref)) {
+            return CrawlDataStage.ACTIVE;
+        }
+        if (isProcessed(ref)) {
+            return CrawlDataStage.PROCESSED;
+        }
         ICrawlData crawlDataCopy = crawlData.clone();
-        mapQueued.put(crawlDataCopy.getReference(), crawlDataCopy);
+        if (mapQueued.putIfAbsent(ref, crawlDataCopy) != null) {
+            return CrawlDataStage.QUEUED;
+        }
+        mapQueueOrder.put(queueOrderKey(crawlDataCopy), ref);
+        return null;
     }
 
     @Override
@@ -105,8 +271,8 @@ public class MVStoreCrawlDataStore extends AbstractCrawlDataStore {
     }
 
     @Override
-    public int getQueueSize() {
-        return mapQueued.size();
+    public long getQueueSize() {
+        return mapQueued.sizeAsLong();
     }
 
     @Override
@@ -116,28 +282,41 @@ public class MVStoreCrawlDataStore extends AbstractCrawlDataStore {
 
     @Override
     public synchronized ICrawlData nextQueued() {
-        String key = mapQueued.firstKey();
-        if (key == null) {
+        ICrawlData data = takeQueued();
+        if (data == null) {
             return null;
         }
-        ICrawlData data = mapQueued.remove(key);
-        mapActive.put(key, data);
-        // Commit on every put() is required if we want to guarantee
-        // recovery on a cold JVM/OS/System crash.
-        //TODO if performance is too impacted, make it a configurable
-        //option to offer guarantee or not?
-        store.commit();
+        // Committing every operation is required if we want to guarantee
+        // recovery on a cold JVM/OS/System crash. Other modes trade
+        // this guarantee for throughput.
+        commit();
         return data;
     }
 
+    @Override
+    public synchronized List<ICrawlData> nextQueued(int max) {
+        List<ICrawlData> datas = new ArrayList<>(max);
+        while (datas.size() < max) {
+            ICrawlData data = takeQueued();
+            if (data == null) {
+                break;
+            }
+            datas.add(data);
+        }
+        if (!datas.isEmpty()) {
+            commit();
+        }
+        return datas;
+    }
+
     @Override
     public boolean isActive(String reference) {
         return mapActive.containsKey(reference);
     }
 
     @Override
-    public int getActiveCount() {
-        return mapActive.size();
+    public long getActiveCount() {
+        return mapActive.sizeAsLong();
     }
 
     @Override
@@ -152,6 +331,23 @@ public class MVStoreCrawlDataStore extends AbstractCrawlDataStore {
 
     @Override
     public synchronized void processed(ICrawlData crawlData) {
+        markProcessed(crawlData);
+        // Committing every operation is required if we want to guarantee
+        // recovery on a cold JVM/OS/System crash. Other modes trade
+        // this guarantee for throughput.
+        commit();
+    }
+
+    @Override
+    public synchronized void processedAll(
+            Iterable<? extends ICrawlData> crawlDatas) {
+        for (ICrawlData crawlData : crawlDatas) {
+            markProcessed(crawlData);
+        }
+        commit();
+    }
+
+    private void markProcessed(ICrawlData crawlData) {
         ICrawlData crawlDataCopy = crawlData.clone();
         String ref = crawlDataCopy.getReference();
         if (crawlDataCopy.getState().isGoodState()) {
@@ -161,11 +357,6 @@ public class MVStoreCrawlDataStore extends AbstractCrawlDataStore {
         }
         mapActive.remove(ref);
         mapCached.remove(ref);
-        // Commit on every put() is required if we want to guarantee
-        // recovery on a cold JVM/OS/System crash.
-        //TODO if performance is too impacted, make it a configurable
-        //option to offer guarantee or not?
-        store.commit();
     }
 
     @Override
@@ -175,8 +366,9 @@ public class MVStoreCrawlDataStore extends AbstractCrawlDataStore {
     }
 
     @Override
-    public int getProcessedCount() {
-        return mapProcessedValid.size() + mapProcessedInvalid.size();
+    public long getProcessedCount() {
+        return mapProcessedValid.sizeAsLong()
+                + mapProcessedInvalid.sizeAsLong();
     }
 
     @Override
@@ -186,6 +378,200 @@ public class MVStoreCrawlDataStore extends AbstractCrawlDataStore {
 
     @Override
     public void close() {
+        cleaner.close();
+        if (groupCommitter != null) {
+            groupCommitter.close();
+        }
         store.close();
     }
+
+    // Active references are all copied to the queue before being
+    // cleared at once, and committed together with the caller changes.
+    private void requeueActive() {
+        long activeCount = mapActive.sizeAsLong();
+        if (activeCount == 0) {
+            return;
+        }
+        LOG.info("Putting " + activeCount
+                + " active references back in the queue...");
+        long start = System.currentTimeMillis();
+        long copied = 0;
+        Cursor<String, ICrawlData> cursor = mapActive.cursor(null);
+        while (cursor.hasNext()) {
+            cursor.next();
+            putQueued(cursor.getValue());
+            if (++copied % PROGRESS_INTERVAL == 0) {
+                LOG.info("Queued " + copied + " of " + activeCount
+                        + " references...");
+            }
+        }
+        mapActive.clear();
+        LOG.info("Put " + activeCount + " active references back in the "
+                + "queue in " + (System.currentTimeMillis() - start) + "ms.");
+    }
+
+    // Queue order entries are only added for references not already 
+    // queued, so each queued reference has one.
+    // Active references queued again are no longer active
+    private void putQueued(ICrawlData crawlData) {
+        String ref = crawlData.getReference();
+        mapActive.remove(ref);
+        if (mapQueued.put(ref, crawlData) == null) {
+            mapQueueOrder.put(queueOrderKey(crawlData), ref);
+        }
+    }
+
+    // Takes the queued reference with the lowest queue order key and
+    // makes it active. Keys of references no longer queued are skipped.
+    private ICrawlData takeQueued() {
+        String key;
+        while ((key = mapQueueOrder.firstKey()) != null) {
+            String ref = mapQueueOrder.remove(key);
+            ICrawlData data = mapQueued.remove(ref);
+            if (data != null) {
+                mapActive.put(ref, data);
+                return data;
+            }
+        }
+        return null;
+    }
+
+    // Keys sort by rank first, then by queuing order.
+    private String queueOrderKey(ICrawlData crawlData) {
+        double rank = ranker == null ? 0 : ranker.getRank(crawlData);
+        long bits = Double.doubleToLongBits(rank);
+        // Makes keys of negative ranks sort before positive ones, 
+        // and negative ones in reverse order.
+        bits = bits < 0 ? ~bits : bits ^ Long.MIN_VALUE;
+        return toHex(bits) + toHex(sequence.getAndIncrement());
+    }
+    private static String toHex(long value) {
+        return StringUtils.leftPad(Long.toHexString(value), 16, '0');
+    }
+
+    // Resumes the queuing sequence, rebuilding the queue order
+    // if it does not match queued references (e.g., stores of older 
+    // versions or a crash between writing both).
+    private void initQueueOrder() {
+        String lastKey = mapQueueOrder.lastKey();
+        if (lastKey != null) {
+            sequence.set(Long.parseLong(lastKey.substring(16), 16) + 1);
+        }
+        if (mapQueueOrder.sizeAsLong() == mapQueued.sizeAsLong()) {
+            return;
+        }
+        LOG.info("Rebuilding the order of "
+                + mapQueued.sizeAsLong() + " queued references...");
+        mapQueueOrder.clear();
+        Cursor<String, ICrawlData> cursor = mapQueued.cursor(null);
+        while (cursor.hasNext()) {
+            String ref = cursor.next();
+            mapQueueOrder.put(queueOrderKey(cursor.getValue()), ref);
+        }
+    }
+
+    private MVMap<?, ?> openAnyMap(String name) {
+        if (name.equals(MAP_QUEUE_ORDER) || name.startsWith(
+                TRASH_PREFIX + MAP_QUEUE_ORDER + ".")) {
+            return store.openMap(name);
+        }
+        return openMap(name);
+    }
+
+    private MVMap<String, ICrawlData> openMap(String name) {
+        return store.openMap(name,
+                new MVMap.Builder<String, ICrawlData>().valueType(dataType));
+    }
+
+    private void removeMapLater(final String name) {
+        cleaner.submit("MVStore map " + name, new Runnable() {
+            @Override
+            public void run() {
+                store.removeMap(openAnyMap(name));
+                store.commit();
+            }
+        });
+    }
+
+    private void commit() {
+        if (commitMode == CommitMode.OPERATION) {
+            store.commit();
+        } else if (commitMode == CommitMode.GROUP) {
+            groupCommitter.operationDone();
+        }
+    }
+
+    // Commits pending operations from a background thread when enough
+    // of them accumulated or enough time elapsed.
+    private final class GroupCommitter extends Thread {
+        private final int maxOperations;
+        private final long interval;
+        private int pendingOperations;
+        private boolean closed;
+
+        private GroupCommitter(
+                String path, int maxOperations, long interval) {
+            super("MVStore group committer: " + path);
+            setDaemon(true);
+            this.maxOperations = maxOperations;
+            this.interval = interval;
+        }
+        private synchronized void operationDone() {
+            pendingOperations++;
+            if (isFull()) {
+                notifyAll();
+            }
+        }
+        private boolean isFull() {
+            return maxOperations > 0 && pendingOperations >= maxOperations;
+        }
+        @Override
+        public void run() {
+            while (awaitCommit()) {
+                try {
+                    store.commit();
+                } catch (RuntimeException e) {
+                    LOG.error("Could not commit crawl data store.", e);
+                }
+            }
+        }
+        // Returns false when closed
+        private synchronized boolean awaitCommit() {
+            long deadline = System.currentTimeMillis() + interval;
+            try {
+                while (!closed && !isFull()) {
+                    if (interval <= 0) {
+                        wait();
+                        continue;
+                    }
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        if (pendingOperations > 0) {
+                            break;
+                        }
+                        deadline = System.currentTimeMillis() + interval;
+                        remaining = interval;
+                    }
+                    wait(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            pendingOperations = 0;
+            return !closed;
+        }
+        private void close() {
+            synchronized (this) {
+                closed = true;
+                notifyAll();
+            }
+            try {
+                join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // Remaining changes are committed when the store is closed
+        }
+    }
 }
@@ -1,4 +1,4 @@
-/* Copyright 2014-2017 Norconex Inc.
+/* Copyright 2014-2018 Norconex Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -14,14 +14,30 @@
  */
 package com.norconex.collector.core.data.store.impl.mvstore;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.commons.configuration.XMLConfiguration;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
 
 import com.norconex.collector.core.crawler.ICrawlerConfig;
+import com.norconex.collector.core.data.codec.CrawlDataCodecRegistry;
+import com.norconex.collector.core.data.store.ICrawlDataRanker;
 import com.norconex.collector.core.data.store.ICrawlDataStore;
 import com.norconex.collector.core.data.store.ICrawlDataStoreFactory;
+import com.norconex.collector.core.data.store.impl.mvstore.MVStoreCrawlDataStore.CommitMode;
+import com.norconex.commons.lang.config.IXMLConfigurable;
+import com.norconex.commons.lang.config.XMLConfigurationUtil;
 import com.norconex.commons.lang.file.FileUtil;
+import com.norconex.commons.lang.xml.EnhancedXMLStreamWriter;
 
 /**
  * <p>
@@ -30,15 +46,103 @@ import com.norconex.commons.lang.file.FileUtil;
  * >http://h2database.com/html/mvstore.html</a>).
  * </p>
  * 
+ * <h3>Commit modes</h3>
+ * <p>
+ * As of 1.9.2, you can choose when changes are committed to disk,
+ * trading crash recovery guarantees for throughput. Whatever the mode,
+ * a commit always saves all changes made so far, so a crawl resumed after
+ * a crash always starts from a consistent state of an earlier time
+ * (e.g., a processed document's extracted references are never lost
+ * while the document itself is remembered as processed). References
+ * active at the time of the crash are always queued again on resume.
+ * </p>
+ * <ul>
+ *   <li><b>OPERATION</b> (default): Changes are committed every time
+ *       a reference becomes active or processed. After a JVM or system
+ *       crash, no processed reference gets crawled again. This is also
+ *       the slowest mode since crawler threads wait on each
+ *       other to commit.</li>
+ *   <li><b>GROUP</b>: Changes are committed from a background thread
+ *       once <code>commitOperations</code> references became active
+ *       or processed, or <code>commitInterval</code> elapsed since the
+ *       last commit, whichever comes first. After a crash, references
+ *       processed in that last window are crawled again.</li>
+ *   <li><b>AUTO</b>: Changes are committed by MVStore itself in the
+ *       background, at least every <code>commitInterval</code> (or
+ *       sooner when enough unsaved changes accumulate in memory).
+ *       After a crash, references processed in that last interval are
+ *       crawled again.</li>
+ * </ul>
+ * <p>
+ * Stopping a crawler normally always commits all changes, whatever
+ * the mode.
+ * </p>
+ * 
+ * <h3>Storage format</h3>
+ * <p>
+ * As of 1.9.2, crawl data is stored in a compact binary form using
+ * the codecs returned by {@link #createCodecRegistry()}, instead of
+ * Java serialization. Crawl stores written by earlier versions
+ * can still be resumed.
+ * </p>
+ * 
+ * <h3>Queue order</h3>
+ * <p>
+ * As of 1.9.2, queued references are processed in the order they were 
+ * queued instead of in alphabetical order, unless a 
+ * <code>queueRanker</code> is configured to rank them
+ * (see {@link ICrawlDataRanker}).
+ * </p>
+ * 
  * <h3>XML configuration usage:</h3>
  * <pre>
  *  &lt;crawlDataStoreFactory 
- *          class="com.norconex.collector.core.data.store.impl.mvstore.MVStoreCrawlDataStoreFactory" /&gt;
+ *          class="com.norconex.collector.core.data.store.impl.mvstore.MVStoreCrawlDataStoreFactory"&gt;
+ *      &lt;commitMode&gt;[OPERATION|GROUP|AUTO]&lt;/commitMode&gt;
+ *      &lt;commitOperations&gt;
+ *          (GROUP only: maximum uncommitted operations. Default is 1000)
+ *      &lt;/commitOperations&gt;
+ *      &lt;commitInterval&gt;
+ *          (GROUP and AUTO: maximum delay between commits.
+ *           Default is 1 second)
+ *      &lt;/commitInterval&gt;
+ *      &lt;queueRanker class="(ICrawlDataRanker implementation)"&gt;
+ *          (Ranker configuration options, if any.)
+ *      &lt;/queueRanker&gt;
+ *  &lt;/crawlDataStoreFactory&gt;
+ * </pre>
+ * <p>
+ * The <code>commitInterval</code> is in milliseconds or a human-readable
+ * duration (e.g., "5 seconds").
+ * </p>
+ * 
+ * <h4>Usage example:</h4>
+ * <p>
+ * The following commits changes at least every 500 operations or 5 seconds.
+ * </p>
+ * <pre>
+ *  &lt;crawlDataStoreFactory 
+ *          class="com.norconex.collector.core.data.store.impl.mvstore.MVStoreCrawlDataStoreFactory"&gt;
+ *      &lt;commitMode&gt;GROUP&lt;/commitMode&gt;
+ *      &lt;commitOperations&gt;500&lt;/commitOperations&gt;
+ *      &lt;commitInterval&gt;5 seconds&lt;/commitInterval&gt;
+ *  &lt;/crawlDataStoreFactory&gt;
  * </pre>
  * 
  * @author Pascal Dimassimo
  */
-public class MVStoreCrawlDataStoreFactory implements ICrawlDataStoreFactory {
+public class MVStoreCrawlDataStoreFactory 
+        implements ICrawlDataStoreFactory, IXMLConfigurable {
+
+    /** @since 1.9.2 */
+    public static final int DEFAULT_COMMIT_OPERATIONS = 1000;
+    /** @since 1.9.2 */
+    public static final long DEFAULT_COMMIT_INTERVAL = 1000;
+
+    private CommitMode commitMode = CommitMode.OPERATION;
+    private int commitOperations = DEFAULT_COMMIT_OPERATIONS;
+    private long commitInterval = DEFAULT_COMMIT_INTERVAL;
+    private ICrawlDataRanker queueRanker;
 
     @Override
     public ICrawlDataStore createCrawlDataStore(ICrawlerConfig config,
@@ -46,7 +150,148 @@ public class MVStoreCrawlDataStoreFactory implements ICrawlDataStoreFactory {
         String storeDir = config.getWorkDir().getPath()
                 + "/crawlstore/mvstore/"
                 + FileUtil.toSafeFileName(config.getId()) + "/";
-        return new MVStoreCrawlDataStore(storeDir, resume);
+        return new MVStoreCrawlDataStore(storeDir, resume, 
+                getCommitMode(), getCommitOperations(), getCommitInterval(),
+                createCodecRegistry(), getQueueRanker());
+    }
+
+    /**
+     * Creates the codecs used to store crawl data. Collectors with their
+     * own crawl data class should override this method to register
+     * a codec for it.
+     * @return codec registry
+     * @since 1.9.2
+     */
+    protected CrawlDataCodecRegistry createCodecRegistry() {
+        return new CrawlDataCodecRegistry();
+    }
+
+    /**
+     * Gets the commit mode. Default is {@link CommitMode#OPERATION}.
+     * @return commit mode
+     * @since 1.9.2
+     */
+    public CommitMode getCommitMode() {
+        return commitMode;
+    }
+    /**
+     * Sets the commit mode.
+     * @param commitMode commit mode
+     * @since 1.9.2
+     */
+    public void setCommitMode(CommitMode commitMode) {
+        this.commitMode = commitMode;
+    }
+
+    /**
+     * Gets the maximum number of uncommitted operations
+     * with {@link CommitMode#GROUP}. 
+     * @return maximum uncommitted operations
+     * @since 1.9.2
+     */
+    public int getCommitOperations() {
+        return commitOperations;
+    }
+    /**
+     * Sets the maximum number of uncommitted operations
+     * with {@link CommitMode#GROUP}. Zero or less relies on 
+     * the commit interval only.
+     * @param commitOperations maximum uncommitted operations
+     * @since 1.9.2
+     */
+    public void setCommitOperations(int commitOperations) {
+        this.commitOperations = commitOperations;
+    }
+
+    /**
+     * Gets the maximum delay in milliseconds between commits with
+     * {@link CommitMode#GROUP} or {@link CommitMode#AUTO}.
+     * @return commit interval
+     * @since 1.9.2
+     */
+    public long getCommitInterval() {
+        return commitInterval;
+    }
+    /**
+     * Sets the maximum delay in milliseconds between commits with
+     * {@link CommitMode#GROUP} or {@link CommitMode#AUTO}.
+     * Zero or less relies on the commit operations only with 
+     * {@link CommitMode#GROUP} and on MVStore default with 
+     * {@link CommitMode#AUTO}.
+     * @param commitInterval commit interval
+     * @since 1.9.2
+     */
+    public void setCommitInterval(long commitInterval) {
+        this.commitInterval = commitInterval;
+    }
+
+    /**
+     * Gets the ranker establishing in which order queued references
+     * are processed. Default is <code>null</code> (queue order).
+     * @return queue ranker
+     * @since 1.9.2
+     */
+    public ICrawlDataRanker getQueueRanker() {
+        return queueRanker;
+    }
+    /**
+     * Sets the ranker establishing in which order queued references
+     * are processed.
+     * @param queueRanker queue ranker (<code>null</code> for queue order)
+     * @since 1.9.2
+     */
+    public void setQueueRanker(ICrawlDataRanker queueRanker) {
+        this.queueRanker = queueRanker;
+    }
+
+    @Override
+    public void loadFromXML(Reader in) throws IOException {
+        XMLConfiguration xml = XMLConfigurationUtil.newXMLConfiguration(in);
+        String mode = xml.getString("commitMode", null);
+        if (StringUtils.isNotBlank(mode)) {
+            setCommitMode(CommitMode.valueOf(mode.trim().toUpperCase()));
+        }
+        setCommitOperations(
+                xml.getInt("commitOperations", getCommitOperations()));
+        setCommitInterval(XMLConfigurationUtil.getDuration(
+                xml, "commitInterval", getCommitInterval()));
+        setQueueRanker(XMLConfigurationUtil.newInstance(
+                xml, "queueRanker", getQueueRanker()));
+    }
+
+    @Override
+    public void saveToXML(Writer out) throws IOException {
+        try {
+            EnhancedXMLStreamWriter writer = new EnhancedXMLStreamWriter(out);
+            writer.writeStartElement("crawlDataStoreFactory");
+            writer.writeAttribute("class", getClass().getCanonicalName());
+            if (getCommitMode() != null) {
+                writer.writeElementString(
+                        "commitMode", getCommitMode().name());
+            }
+            writer.writeElementInteger(
+                    "commitOperations", getCommitOperations());
+            writer.writeElementLong("commitInterval", getCommitInterval());
+            if (queueRanker instanceof IXMLConfigurable) {
+                StringWriter w = new StringWriter();
+                ((IXMLConfigurable) queueRanker).saveToXML(w);
+                // Closes the start tag before writing directly
+                writer.writeCharacters("");
+                writer.flush();
+                out.write(w.toString());
+                out.flush();
+            } else if (queueRanker != null) {
+                writer.writeStartElement("queueRanker");
+                writer.writeAttribute("class",
+                        queueRanker.getClass().getCanonicalName());
+                writer.writeEndElement();
+            }
+            writer.writeEndElement();
+            writer.flush();
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Cannot save as XML.", e);
+        }
     }
 
     @Override
@@ -54,18 +299,33 @@ public class MVStoreCrawlDataStoreFactory implements ICrawlDataStoreFactory {
         if (!(other instanceof MVStoreCrawlDataStoreFactory)) {
             return false;
         }
-        return true;
+        MVStoreCrawlDataStoreFactory castOther = 
+                (MVStoreCrawlDataStoreFactory) other;
+        return new EqualsBuilder()
+                .append(commitMode, castOther.commitMode)
+                .append(commitOperations, castOther.commitOperations)
+                .append(commitInterval, castOther.commitInterval)
+                .append(queueRanker, castOther.queueRanker)
+                .isEquals();
     }
 
     @Override
     public int hashCode() {
         return new HashCodeBuilder()
+                .append(commitMode)
+                .append(commitOperations)
+                .append(commitInterval)
+                .append(queueRanker)
                 .toHashCode();
     }
 
     @Override
     public String toString() {
         return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("commitMode", commitMode)
+                .append("commitOperations", commitOperations)
+                .append("commitInterval", commitInterval)
+                .append("queueRanker", queueRanker)
                 .toString();
     }
 }
@@ -0,0 +1,425 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.store.impl.politeness;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import com.norconex.collector.core.data.ICrawlData;
+import com.norconex.collector.core.data.store.CrawlDataStage;
+import com.norconex.collector.core.data.store.DelegatingCrawlDataStore;
+import com.norconex.collector.core.data.store.ICrawlDataStore;
+
+/**
+ * <p>Crawl data store decorator scheduling queued references per host.
+ * References are taken from the underlying store ahead of time and kept
+ * in a bounded in-memory buffer made of one sub-queue per host.
+ * {@link #nextQueued(int)} hands them out round-robin across hosts,
+ * only from hosts that are not already processing their maximum number
+ * of references at once and that waited the minimum delay since the
+ * last reference they were handed (or since it was processed,
+ * whichever is later). A host slot is released when its reference
+ * is marked as processed.</p>
+ * <p>Each host can only have a few references buffered at once (its
+ * maximum concurrency, but no less than {@link #MIN_HOST_BUFFER_SIZE}).
+ * References taken beyond that are put back in the underlying store
+ * queue, and more are taken until the buffer is full or a buffer size 
+ * worth of references were looked at. This way, a host dominating 
+ * the queue does not keep references of other hosts out of the
+ * buffer.</p>
+ * <p>This way, threads no longer all hit the same host back-to-back
+ * because of the queue order, and throughput grows with the number of
+ * distinct hosts. When no host is ready, no reference is returned
+ * even if some are waiting: {@link #isQueueEmpty()} tells them apart
+ * from an empty queue.</p>
+ * <p>Buffered references are reported as queued, but they are active in
+ * the underlying store, so they get queued again on resume if the
+ * crawler stops before processing them.</p>
+ * <p>The host is the lower-cased authority of references having a URL
+ * scheme (user information excluded, port included). Other references
+ * all belong to the same host. Override {@link #getHost(String)} to
+ * group references differently.</p>
+ * @author Pascal Essiembre
+ * @since 1.9.2
+ */
+public class PolitenessCrawlDataStore extends DelegatingCrawlDataStore {
+
+    /** Default maximum number of references buffered. */
+    public static final int DEFAULT_BUFFER_SIZE = 1000;
+    /** Minimum number of references buffered per host. */
+    public static final int MIN_HOST_BUFFER_SIZE = 4;
+
+    private final int maxConcurrency;
+    private final long delay;
+    private final int bufferSize;
+    private final int hostBufferSize;
+
+    private final Object lock = new Object();
+    private final Map<String, Host> hosts = new HashMap<>();
+    // Hosts with buffered references, in round-robin order
+    private final Deque<Host> ring = new ArrayDeque<>();
+    private final Map<String, Host> buffered = new HashMap<>();
+    private final Map<String, Host> dispatched = new HashMap<>();
+
+    /**
+     * Creates a politeness crawl data store with the default buffer size.
+     * @param delegate the crawl data store to decorate
+     * @param maxConcurrency maximum number of references per host
+     *        processed at once (zero or less for no limit)
+     * @param delay minimum delay in milliseconds between two references
+     *        of the same host (zero or less for none)
+     */
+    public PolitenessCrawlDataStore(
+            ICrawlDataStore delegate, int maxConcurrency, long delay) {
+        this(delegate, maxConcurrency, delay, DEFAULT_BUFFER_SIZE);
+    }
+    /**
+     * Creates a politeness crawl data store.
+     * @param delegate the crawl data store to decorate
+     * @param maxConcurrency maximum number of references per host
+     *        processed at once (zero or less for no limit)
+     * @param delay minimum delay in milliseconds between two references
+     *        of the same host (zero or less for none)
+     * @param bufferSize maximum number of references taken ahead of
+     *        time from the underlying store
+     */
+    public PolitenessCrawlDataStore(ICrawlDataStore delegate,
+            int maxConcurrency, long delay, int bufferSize) {
+        super(delegate);
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException(
+                    "Buffer size must be greater than zero.");
+        }
+        this.maxConcurrency = maxConcurrency;
+        this.delay = Math.max(0, delay);
+        this.bufferSize = bufferSize;
+        this.hostBufferSize = Math.min(bufferSize,
+                Math.max(maxConcurrency, MIN_HOST_BUFFER_SIZE));
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+    public long getDelay() {
+        return delay;
+    }
+    public int getBufferSize() {
+        return bufferSize;
+    }
+    /**
+     * Gets the maximum number of references buffered per host.
+     * @return host buffer size
+     */
+    public int getHostBufferSize() {
+        return hostBufferSize;
+    }
+
+    /**
+     * Gets the number of hosts having references buffered or being
+     * processed.
+     * @return number of hosts
+     */
+    public int getHostCount() {
+        synchronized (lock) {
+            return hosts.size();
+        }
+    }
+
+    @Override
+    public void queue(ICrawlData crawlData) {
+        synchronized (lock) {
+            unbuffer(crawlData.getReference());
+        }
+        super.queue(crawlData);
+    }
+    @Override
+    public void queueAll(Iterable<? extends ICrawlData> crawlDatas) {
+        synchronized (lock) {
+            for (ICrawlData crawlData : crawlDatas) {
+                unbuffer(crawlData.getReference());
+            }
+        }
+        super.queueAll(crawlDatas);
+    }
+    @Override
+    public CrawlDataStage queueIfAbsent(ICrawlData crawlData) {
+        CrawlDataStage stage = super.queueIfAbsent(crawlData);
+        if (stage == CrawlDataStage.ACTIVE
+                && isBuffered(crawlData.getReference())) {
+            return CrawlDataStage.QUEUED;
+        }
+        return stage;
+    }
+    @Override
+    public CrawlDataStage getStage(String reference) {
+        CrawlDataStage stage = super.getStage(reference);
+        if (stage == CrawlDataStage.ACTIVE && isBuffered(reference)) {
+            return CrawlDataStage.QUEUED;
+        }
+        return stage;
+    }
+
+    @Override
+    public boolean isQueueEmpty() {
+        synchronized (lock) {
+            if (!buffered.isEmpty()) {
+                return false;
+            }
+        }
+        return super.isQueueEmpty();
+    }
+    @Override
+    public long getQueueSize() {
+        return super.getQueueSize() + getBufferedCount();
+    }
+    @Override
+    public boolean isQueued(String reference) {
+        return isBuffered(reference) || super.isQueued(reference);
+    }
+    @Override
+    public boolean isActive(String reference) {
+        return !isBuffered(reference) && super.isActive(reference);
+    }
+    @Override
+    public long getActiveCount() {
+        return Math.max(0, super.getActiveCount() - getBufferedCount());
+    }
+
+    @Override
+    public ICrawlData nextQueued() {
+        List<ICrawlData> next = nextQueued(1);
+        if (next.isEmpty()) {
+            return null;
+        }
+        return next.get(0);
+    }
+    @Override
+    public List<ICrawlData> nextQueued(int max) {
+        synchronized (lock) {
+            fillBuffer();
+            if (ring.isEmpty()) {
+                return Collections.emptyList();
+            }
+            List<ICrawlData> next = new ArrayList<>(Math.min(max, 16));
+            long now = System.currentTimeMillis();
+            // Stop after a full round without any host ready
+            int idle = 0;
+            while (next.size() < max && !ring.isEmpty()
+                    && idle < ring.size()) {
+                Host host = ring.poll();
+                if (!host.isReady(now)) {
+                    ring.add(host);
+                    idle++;
+                    continue;
+                }
+                ICrawlData crawlData = host.waiting.poll();
+                buffered.remove(crawlData.getReference());
+                dispatched.put(crawlData.getReference(), host);
+                host.active++;
+                host.nextTime = now + delay;
+                if (!host.waiting.isEmpty()) {
+                    ring.add(host);
+                }
+                next.add(crawlData);
+                idle = 0;
+            }
+            return next;
+        }
+    }
+
+    @Override
+    public void processed(ICrawlData crawlData) {
+        super.processed(crawlData);
+        synchronized (lock) {
+            release(crawlData.getReference());
+        }
+    }
+    @Override
+    public void processedAll(Iterable<? extends ICrawlData> crawlDatas) {
+        super.processedAll(crawlDatas);
+        synchronized (lock) {
+            for (ICrawlData crawlData : crawlDatas) {
+                release(crawlData.getReference());
+            }
+        }
+    }
+
+    /**
+     * Gets the host a reference belongs to. References of the same host
+     * share the same concurrency limit and delay.
+     * @param reference a reference
+     * @return host (never <code>null</code>)
+     */
+    protected String getHost(String reference) {
+        int start = reference.indexOf("://");
+        if (start < 0) {
+            return "";
+        }
+        start += 3;
+        int end = start;
+        while (end < reference.length()
+                && "/?#".indexOf(reference.charAt(end)) < 0) {
+            end++;
+        }
+        int userInfo = reference.lastIndexOf('@', end - 1);
+        if (userInfo >= start) {
+            start = userInfo + 1;
+        }
+        return reference.substring(start, end).toLowerCase(Locale.ENGLISH);
+    }
+
+    // Takes from the underlying store as many references as the buffer
+    // can hold, looking at no more than a buffer size worth of them. 
+    // References of hosts with a full share of the buffer are put back 
+    // in the queue. Must be called while holding the lock.
+    private void fillBuffer() {
+        int room = bufferSize - buffered.size();
+        if (room <= 0) {
+            return;
+        }
+        if (hosts.size() > 2 * bufferSize) {
+            Iterator<Host> it = hosts.values().iterator();
+            long now = System.currentTimeMillis();
+            while (it.hasNext()) {
+                Host host = it.next();
+                if (host.active == 0 && host.waiting.isEmpty()
+                        && host.nextTime <= now) {
+                    it.remove();
+                }
+            }
+        }
+        int lookAhead = bufferSize;
+        while (room > 0 && lookAhead > 0) {
+            List<ICrawlData> candidates = 
+                    super.nextQueued(Math.min(room, lookAhead));
+            if (candidates.isEmpty()) {
+                return;
+            }
+            lookAhead -= candidates.size();
+            List<ICrawlData> overflow = new ArrayList<>();
+            for (ICrawlData crawlData : candidates) {
+                String reference = crawlData.getReference();
+                String name = getHost(reference);
+                Host host = hosts.get(name);
+                if (host == null) {
+                    host = new Host(name);
+                    hosts.put(name, host);
+                }
+                if (host.waiting.size() >= hostBufferSize) {
+                    overflow.add(crawlData);
+                    continue;
+                }
+                if (host.waiting.isEmpty()) {
+                    ring.add(host);
+                }
+                host.waiting.add(crawlData);
+                buffered.put(reference, host);
+                room--;
+            }
+            if (!overflow.isEmpty()) {
+                super.queueAll(overflow);
+            }
+        }
+    }
+
+    // Must be called while holding the lock.
+    private void release(String reference) {
+        Host host = dispatched.remove(reference);
+        if (host == null) {
+            unbuffer(reference);
+            return;
+        }
+        host.active--;
+        host.nextTime = Math.max(
+                host.nextTime, System.currentTimeMillis() + delay);
+        forgetIfIdle(host);
+    }
+
+    // Removes a reference from the buffer, when it is queued again or
+    // processed without being handed out. Must be called while holding
+    // the lock.
+    private void unbuffer(String reference) {
+        Host host = buffered.remove(reference);
+        if (host == null) {
+            return;
+        }
+        Iterator<ICrawlData> it = host.waiting.iterator();
+        while (it.hasNext()) {
+            if (it.next().getReference().equals(reference)) {
+                it.remove();
+                break;
+            }
+        }
+        if (host.waiting.isEmpty()) {
+            ring.remove(host);
+        }
+        forgetIfIdle(host);
+    }
+
+    // Hosts are forgotten when idle, unless they must still wait before
+    // their next reference. Must be called while holding the lock.
+    private void forgetIfIdle(Host host) {
+        if (host.active == 0 && host.waiting.isEmpty()
+                && host.nextTime <= System.currentTimeMillis()) {
+            hosts.remove(host.name);
+        }
+    }
+
+    private boolean isBuffered(String reference) {
+        synchronized (lock) {
+            return buffered.containsKey(reference);
+        }
+    }
+    private long getBufferedCount() {
+        synchronized (lock) {
+            return buffered.size();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("delegate", getDelegate())
+                .append("maxConcurrency", maxConcurrency)
+                .append("delay", delay)
+                .append("bufferSize", bufferSize)
+                .append("hostBufferSize", hostBufferSize)
+                .toString();
+    }
+
+    private class Host {
+        private final String name;
+        private final Deque<ICrawlData> waiting = new ArrayDeque<>();
+        private int active;
+        private long nextTime;
+        Host(String name) {
+            this.name = name;
+        }
+        boolean isReady(long now) {
+            return (maxConcurrency <= 0 || active < maxConcurrency)
+                    && now >= nextTime;
+        }
+    }
+}
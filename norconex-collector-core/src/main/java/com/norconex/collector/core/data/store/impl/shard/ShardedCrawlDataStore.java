@@ -0,0 +1,307 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.store.impl.shard;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.norconex.collector.core.data.ICrawlData;
+import com.norconex.collector.core.data.store.CrawlDataStage;
+import com.norconex.collector.core.data.store.ICrawlDataStore;
+
+/**
+ * <p>Crawl data store spreading references over several other crawl data
+ * stores (shards) according to a hash of their reference. Operations on
+ * a single reference go to its shard only, so crawler threads
+ * working on different references mostly compete for different stores.
+ * Counts are the sum of all shards, queued references are taken from
+ * each shard in turn, and the cache of all shards is iterated one shard
+ * after the other.</p>
+ * <p>A reference always goes to the same shard for a given number of
+ * shards. That number must therefore stay the same between crawler runs
+ * sharing the same crawl data, or cached references are looked up in the
+ * wrong shard and are considered new.</p>
+ * <p>Batch operations are split by shard. Each shard part is as atomic
+ * as the shard store makes it, but not the batch as a whole.</p>
+ * <p>Queue order, including ranking by a queue ranker configured on the
+ * shard stores, holds within each shard only. Since shards are taken
+ * from in turn, a reference ranked high in one shard can be returned
+ * after lower-ranked references of other shards.</p>
+ * @author Pascal Essiembre
+ * @since 1.9.2
+ */
+public class ShardedCrawlDataStore implements ICrawlDataStore {
+
+    private static final Logger LOG =
+            LogManager.getLogger(ShardedCrawlDataStore.class);
+
+    private final ICrawlDataStore[] shards;
+    private final AtomicInteger nextShard = new AtomicInteger();
+
+    /**
+     * Creates a crawl data store sharded over the given stores.
+     * @param shards crawl data stores to spread references over
+     */
+    public ShardedCrawlDataStore(List<ICrawlDataStore> shards) {
+        super();
+        if (shards == null || shards.isEmpty()) {
+            throw new IllegalArgumentException(
+                    "At least one shard crawl data store is required.");
+        }
+        this.shards = shards.toArray(new ICrawlDataStore[shards.size()]);
+    }
+
+    /**
+     * Gets the crawl data stores references are spread over.
+     * @return shard crawl data stores
+     */
+    public List<ICrawlDataStore> getShards() {
+        List<ICrawlDataStore> list = new ArrayList<>(shards.length);
+        Collections.addAll(list, shards);
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Gets the crawl data store a reference belongs to.
+     * @param reference the reference
+     * @return shard crawl data store
+     */
+    public ICrawlDataStore getShard(String reference) {
+        return shards[shardIndex(reference)];
+    }
+
+    @Override
+    public void queue(ICrawlData crawlData) {
+        getShard(crawlData.getReference()).queue(crawlData);
+    }
+    @Override
+    public void queueAll(Iterable<? extends ICrawlData> crawlDatas) {
+        List<List<ICrawlData>> parts = partition(crawlDatas);
+        for (int i = 0; i < shards.length; i++) {
+            if (!parts.get(i).isEmpty()) {
+                shards[i].queueAll(parts.get(i));
+            }
+        }
+    }
+    @Override
+    public CrawlDataStage queueIfAbsent(ICrawlData crawlData) {
+        return getShard(crawlData.getReference()).queueIfAbsent(crawlData);
+    }
+    @Override
+    public CrawlDataStage getStage(String reference) {
+        return getShard(reference).getStage(reference);
+    }
+
+    @Override
+    public boolean isQueueEmpty() {
+        for (ICrawlDataStore shard : shards) {
+            if (!shard.isQueueEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+    @Override
+    public long getQueueSize() {
+        long size = 0;
+        for (ICrawlDataStore shard : shards) {
+            size += shard.getQueueSize();
+        }
+        return size;
+    }
+    @Override
+    public boolean isQueued(String reference) {
+        return getShard(reference).isQueued(reference);
+    }
+
+    @Override
+    public ICrawlData nextQueued() {
+        int start = nextShardIndex();
+        for (int i = 0; i < shards.length; i++) {
+            ICrawlData crawlData =
+                    shards[(start + i) % shards.length].nextQueued();
+            if (crawlData != null) {
+                return crawlData;
+            }
+        }
+        return null;
+    }
+    @Override
+    public List<ICrawlData> nextQueued(int max) {
+        List<ICrawlData> crawlDatas = new ArrayList<>(max);
+        int start = nextShardIndex();
+        for (int i = 0; i < shards.length && crawlDatas.size() < max; i++) {
+            crawlDatas.addAll(shards[(start + i) % shards.length].nextQueued(
+                    max - crawlDatas.size()));
+        }
+        return crawlDatas;
+    }
+
+    @Override
+    public boolean isActive(String reference) {
+        return getShard(reference).isActive(reference);
+    }
+    @Override
+    public long getActiveCount() {
+        long count = 0;
+        for (ICrawlDataStore shard : shards) {
+            count += shard.getActiveCount();
+        }
+        return count;
+    }
+
+    @Override
+    public ICrawlData getCached(String cacheReference) {
+        return getShard(cacheReference).getCached(cacheReference);
+    }
+    @Override
+    public boolean isCacheEmpty() {
+        for (ICrawlDataStore shard : shards) {
+            if (!shard.isCacheEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void processed(ICrawlData crawlData) {
+        getShard(crawlData.getReference()).processed(crawlData);
+    }
+    @Override
+    public void processedAll(Iterable<? extends ICrawlData> crawlDatas) {
+        List<List<ICrawlData>> parts = partition(crawlDatas);
+        for (int i = 0; i < shards.length; i++) {
+            if (!parts.get(i).isEmpty()) {
+                shards[i].processedAll(parts.get(i));
+            }
+        }
+    }
+    @Override
+    public boolean isProcessed(String reference) {
+        return getShard(reference).isProcessed(reference);
+    }
+    @Override
+    public long getProcessedCount() {
+        long count = 0;
+        for (ICrawlDataStore shard : shards) {
+            count += shard.getProcessedCount();
+        }
+        return count;
+    }
+
+    /**
+     * Gets an iterator over the cache of each shard, one after the other.
+     * @return cache iterator or <code>null</code> if all shard
+     *         caches are empty
+     */
+    @Override
+    public Iterator<ICrawlData> getCacheIterator() {
+        List<Iterator<ICrawlData>> iterators = new ArrayList<>();
+        for (ICrawlDataStore shard : shards) {
+            Iterator<ICrawlData> it = shard.getCacheIterator();
+            if (it != null && it.hasNext()) {
+                iterators.add(it);
+            }
+        }
+        if (iterators.isEmpty()) {
+            return null;
+        }
+        return new ConcatenatedIterator(iterators);
+    }
+
+    /**
+     * Closes all shards, even if closing one of them fails.
+     */
+    @Override
+    public void close() {
+        RuntimeException failure = null;
+        for (ICrawlDataStore shard : shards) {
+            try {
+                shard.close();
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    LOG.error("Could not close crawl data store shard.", e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private int nextShardIndex() {
+        return (nextShard.getAndIncrement() & Integer.MAX_VALUE)
+                % shards.length;
+    }
+
+    private List<List<ICrawlData>> partition(
+            Iterable<? extends ICrawlData> crawlDatas) {
+        List<List<ICrawlData>> parts = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            parts.add(new ArrayList<ICrawlData>());
+        }
+        for (ICrawlData crawlData : crawlDatas) {
+            parts.get(shardIndex(crawlData.getReference())).add(crawlData);
+        }
+        return parts;
+    }
+
+    private int shardIndex(String reference) {
+        // String hash codes are the same on all JVMs, so references
+        // keep their shard between runs.
+        int hash = reference.hashCode();
+        hash ^= hash >>> 16;
+        return (hash & Integer.MAX_VALUE) % shards.length;
+    }
+
+    private static class ConcatenatedIterator implements Iterator<ICrawlData> {
+        private final Iterator<Iterator<ICrawlData>> iterators;
+        private Iterator<ICrawlData> current;
+
+        ConcatenatedIterator(List<Iterator<ICrawlData>> iterators) {
+            this.iterators = iterators.iterator();
+            this.current = this.iterators.next();
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext() && iterators.hasNext()) {
+                current = iterators.next();
+            }
+            return current.hasNext();
+        }
+        @Override
+        public ICrawlData next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,268 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.store.impl.shard;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.commons.configuration.XMLConfiguration;
+import org.apache.commons.lang3.ClassUtils;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import com.norconex.collector.core.crawler.ICrawlerConfig;
+import com.norconex.collector.core.data.store.ICrawlDataStore;
+import com.norconex.collector.core.data.store.ICrawlDataStoreFactory;
+import com.norconex.collector.core.data.store.impl.mvstore.MVStoreCrawlDataStoreFactory;
+import com.norconex.commons.lang.config.IXMLConfigurable;
+import com.norconex.commons.lang.config.XMLConfigurationUtil;
+import com.norconex.commons.lang.xml.EnhancedXMLStreamWriter;
+
+/**
+ * <p>
+ * Sharded crawl data store factory. References are spread over 
+ * several crawl data stores ("shards") according to a hash of their
+ * reference, so crawler threads compete less for the same store.
+ * This helps when a single store limits how much crawl data can be
+ * handled at once, like a single MVStore file, and the crawler runs 
+ * many threads on many cores.
+ * </p>
+ * <p>
+ * Each shard is created by the configured crawl data store factory
+ * (MVStore by default) as if for a crawler with the same configuration
+ * but with "-shard" and the shard number appended to its id. This gives 
+ * each shard its own storage location (e.g., directory, database).
+ * </p>
+ * <p>
+ * A reference always goes to the same shard for a given number of shards.
+ * Changing the number of shards between two runs of the same crawler
+ * makes references cached by the previous run look like new ones.
+ * </p>
+ * <p>
+ * Queued references are taken from each shard in turn. When the shard
+ * factory has a <code>queueRanker</code>, references are ranked within 
+ * their shard only, not across shards. Each shard gives its highest
+ * ranked references first, but the overall order is only approximately
+ * by rank.
+ * </p>
+ * 
+ * <h3>XML configuration usage:</h3>
+ * <pre>
+ *  &lt;crawlDataStoreFactory 
+ *          class="com.norconex.collector.core.data.store.impl.shard.ShardedCrawlDataStoreFactory"&gt;
+ *      &lt;shards&gt;(Number of shards. Default is 4.)&lt;/shards&gt;
+ *      &lt;crawlDataStoreFactory class="(factory creating each shard)"&gt;
+ *          (Shard factory configuration options, if any. A queueRanker
+ *           ranks references within each shard only.)
+ *      &lt;/crawlDataStoreFactory&gt;
+ *  &lt;/crawlDataStoreFactory&gt;
+ * </pre>
+ * 
+ * <h4>Usage example:</h4>
+ * <p>
+ * The following spreads references over 8 MVStore files.
+ * </p>
+ * <pre>
+ *  &lt;crawlDataStoreFactory 
+ *          class="com.norconex.collector.core.data.store.impl.shard.ShardedCrawlDataStoreFactory"&gt;
+ *      &lt;shards&gt;8&lt;/shards&gt;
+ *      &lt;crawlDataStoreFactory 
+ *          class="com.norconex.collector.core.data.store.impl.mvstore.MVStoreCrawlDataStoreFactory"/&gt;
+ *  &lt;/crawlDataStoreFactory&gt;
+ * </pre>
+ * 
+ * @author Pascal Essiembre
+ * @since 1.9.2
+ */
+public class ShardedCrawlDataStoreFactory 
+        implements ICrawlDataStoreFactory, IXMLConfigurable {
+
+    public static final int DEFAULT_SHARDS = 4;
+
+    private int shards = DEFAULT_SHARDS;
+    private ICrawlDataStoreFactory crawlDataStoreFactory = 
+            new MVStoreCrawlDataStoreFactory();
+
+    @Override
+    public ICrawlDataStore createCrawlDataStore(
+            ICrawlerConfig config, boolean resume) {
+        List<ICrawlDataStore> stores = new ArrayList<>(shards);
+        try {
+            for (int i = 0; i < shards; i++) {
+                stores.add(crawlDataStoreFactory.createCrawlDataStore(
+                        createShardConfig(config, i), resume));
+            }
+        } catch (RuntimeException e) {
+            for (ICrawlDataStore store : stores) {
+                store.close();
+            }
+            throw e;
+        }
+        return new ShardedCrawlDataStore(stores);
+    }
+
+    /**
+     * Creates the crawler configuration passed to the crawl data store 
+     * factory to create a shard. By default, it is the crawler 
+     * configuration with "-shard" and the shard number appended to its id.
+     * The returned configuration implements all interfaces of the crawler 
+     * configuration class.
+     * @param config crawler configuration
+     * @param shard shard number, starting at zero
+     * @return shard crawler configuration
+     */
+    protected ICrawlerConfig createShardConfig(
+            final ICrawlerConfig config, int shard) {
+        final String id = config.getId() + "-shard" + shard;
+        List<Class<?>> interfaces = 
+                ClassUtils.getAllInterfaces(config.getClass());
+        return (ICrawlerConfig) Proxy.newProxyInstance(
+                config.getClass().getClassLoader(),
+                interfaces.toArray(new Class<?>[interfaces.size()]),
+                new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args)
+                    throws Throwable {
+                if ("getId".equals(method.getName())
+                        && method.getParameterTypes().length == 0) {
+                    return id;
+                }
+                try {
+                    return method.invoke(config, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        });
+    }
+
+    /**
+     * Gets the number of shards.
+     * @return number of shards
+     */
+    public int getShards() {
+        return shards;
+    }
+    /**
+     * Sets the number of shards.
+     * @param shards number of shards
+     */
+    public void setShards(int shards) {
+        if (shards < 1) {
+            throw new IllegalArgumentException(
+                    "Number of shards must be at least 1.");
+        }
+        this.shards = shards;
+    }
+
+    /**
+     * Gets the factory creating the crawl data store of each shard.
+     * @return crawl data store factory
+     */
+    public ICrawlDataStoreFactory getCrawlDataStoreFactory() {
+        return crawlDataStoreFactory;
+    }
+    /**
+     * Sets the factory creating the crawl data store of each shard.
+     * @param crawlDataStoreFactory crawl data store factory
+     */
+    public void setCrawlDataStoreFactory(
+            ICrawlDataStoreFactory crawlDataStoreFactory) {
+        if (crawlDataStoreFactory == null) {
+            throw new IllegalArgumentException(
+                    "Shard crawl data store factory cannot be null.");
+        }
+        this.crawlDataStoreFactory = crawlDataStoreFactory;
+    }
+
+    @Override
+    public void loadFromXML(Reader in) throws IOException {
+        XMLConfiguration xml = XMLConfigurationUtil.newXMLConfiguration(in);
+        setShards(xml.getInt("shards", getShards()));
+        setCrawlDataStoreFactory(XMLConfigurationUtil.newInstance(xml,
+                "crawlDataStoreFactory", getCrawlDataStoreFactory()));
+    }
+
+    @Override
+    public void saveToXML(Writer out) throws IOException {
+        try {
+            EnhancedXMLStreamWriter writer = new EnhancedXMLStreamWriter(out);
+            writer.writeStartElement("crawlDataStoreFactory");
+            writer.writeAttribute("class", getClass().getCanonicalName());
+            writer.writeElementInteger("shards", getShards());
+            if (crawlDataStoreFactory instanceof IXMLConfigurable) {
+                StringWriter w = new StringWriter();
+                ((IXMLConfigurable) crawlDataStoreFactory).saveToXML(w);
+                // Closes the start tag before writing directly
+                writer.writeCharacters("");
+                writer.flush();
+                out.write(w.toString());
+                out.flush();
+            } else {
+                writer.writeStartElement("crawlDataStoreFactory");
+                writer.writeAttribute("class", 
+                        crawlDataStoreFactory.getClass().getCanonicalName());
+                writer.writeEndElement();
+            }
+            writer.writeEndElement();
+            writer.flush();
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Cannot save as XML.", e);
+        }
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (!(other instanceof ShardedCrawlDataStoreFactory)) {
+            return false;
+        }
+        ShardedCrawlDataStoreFactory castOther = 
+                (ShardedCrawlDataStoreFactory) other;
+        return new EqualsBuilder()
+                .append(shards, castOther.shards)
+                .append(crawlDataStoreFactory, 
+                        castOther.crawlDataStoreFactory)
+                .isEquals();
+    }
+
+    @Override
+    public int hashCode() {
+        return new HashCodeBuilder()
+                .append(shards)
+                .append(crawlDataStoreFactory)
+                .toHashCode();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("shards", shards)
+                .append("crawlDataStoreFactory", crawlDataStoreFactory)
+                .toString();
+    }
+}
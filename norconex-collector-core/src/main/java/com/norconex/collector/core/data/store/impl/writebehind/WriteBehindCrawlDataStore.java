@@ -0,0 +1,373 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.store.impl.writebehind;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.norconex.collector.core.data.ICrawlData;
+import com.norconex.collector.core.data.store.CrawlDataStage;
+import com.norconex.collector.core.data.store.CrawlDataStoreException;
+import com.norconex.collector.core.data.store.DelegatingCrawlDataStore;
+import com.norconex.collector.core.data.store.ICrawlDataStore;
+
+/**
+ * <p>Crawl data store decorator writing processed references in the
+ * background. {@link #processed(ICrawlData)} only adds the crawl data
+ * to a bounded buffer. A dedicated thread takes it from there and
+ * writes it to the underlying store in bulk with
+ * {@link ICrawlDataStore#processedAll(Iterable)}, saving crawler threads
+ * from waiting on the store (e.g. network round trips). When the buffer
+ * is full, <code>processed</code> waits for room.</p>
+ * <p>References not written yet are kept in memory so they are reported
+ * as processed (stage, counts, <code>isProcessed</code>, no longer
+ * cached, etc.) as soon as <code>processed</code> returns. Cache
+ * iteration and queuing a reference not written yet first wait for
+ * the buffer to be written. Everything is written before closing.</p>
+ * <p>If the crawler stops abruptly, references not written are still
+ * active in the underlying store and are queued again on resume.
+ * If writing fails, the error is logged and thrown on the next
+ * <code>processed</code>, {@link #flush()} or {@link #close()} call.</p>
+ * @author Pascal Essiembre
+ * @since 1.9.2
+ */
+public class WriteBehindCrawlDataStore extends DelegatingCrawlDataStore {
+
+    private static final Logger LOG =
+            LogManager.getLogger(WriteBehindCrawlDataStore.class);
+
+    private static final int MAX_BATCH_SIZE = 1000;
+    private static final long POLL_INTERVAL = 100;
+
+    private final int bufferSize;
+    private final BlockingQueue<Pending> buffer;
+    private final ConcurrentMap<String, Pending> pending = 
+            new ConcurrentHashMap<>();
+    // References handed out by nextQueued and not processed yet
+    private final Set<String> leased = Collections.newSetFromMap(
+            new ConcurrentHashMap<String, Boolean>());
+    // Pending references still active in the underlying store
+    private final AtomicLong pendingActive = new AtomicLong();
+    // Guards counts against being read while a batch is being written
+    private final ReadWriteLock countsLock = new ReentrantReadWriteLock();
+    private final Thread writer;
+    private final Object flushMonitor = new Object();
+    private long addedCount;
+    private long writtenCount;
+    private volatile boolean closing;
+    private volatile Throwable failure;
+
+    /**
+     * Creates a write-behind crawl data store.
+     * @param delegate the crawl data store to decorate
+     * @param bufferSize maximum number of processed references waiting
+     *        to be written
+     */
+    public WriteBehindCrawlDataStore(ICrawlDataStore delegate, int bufferSize) {
+        super(delegate);
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException(
+                    "Buffer size must be greater than zero.");
+        }
+        this.bufferSize = bufferSize;
+        this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        this.writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "crawlDataStoreWriteBehind");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Gets the number of processed references not written yet to the
+     * underlying store.
+     * @return number of references
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    @Override
+    public void processed(ICrawlData crawlData) {
+        checkFailure();
+        if (closing) {
+            throw new CrawlDataStoreException(
+                    "Write-behind crawl data store is closed.");
+        }
+        String reference = crawlData.getReference();
+        Pending p = new Pending(crawlData, leased.remove(reference));
+        if (p.active) {
+            pendingActive.incrementAndGet();
+        }
+        synchronized (flushMonitor) {
+            addedCount++;
+        }
+        pending.put(reference, p);
+        try {
+            while (!buffer.offer(p, POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+                checkFailure();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CrawlDataStoreException(
+                    "Interrupted while waiting to write: " + reference, e);
+        }
+    }
+    @Override
+    public void processedAll(Iterable<? extends ICrawlData> crawlDatas) {
+        for (ICrawlData crawlData : crawlDatas) {
+            processed(crawlData);
+        }
+    }
+
+    @Override
+    public ICrawlData nextQueued() {
+        ICrawlData crawlData = super.nextQueued();
+        if (crawlData != null) {
+            leased.add(crawlData.getReference());
+        }
+        return crawlData;
+    }
+    @Override
+    public List<ICrawlData> nextQueued(int max) {
+        List<ICrawlData> crawlDatas = super.nextQueued(max);
+        for (ICrawlData crawlData : crawlDatas) {
+            leased.add(crawlData.getReference());
+        }
+        return crawlDatas;
+    }
+
+    @Override
+    public void queue(ICrawlData crawlData) {
+        if (pending.containsKey(crawlData.getReference())) {
+            flush();
+        }
+        super.queue(crawlData);
+    }
+    @Override
+    public void queueAll(Iterable<? extends ICrawlData> crawlDatas) {
+        if (!pending.isEmpty()) {
+            for (ICrawlData crawlData : crawlDatas) {
+                if (pending.containsKey(crawlData.getReference())) {
+                    flush();
+                    break;
+                }
+            }
+        }
+        super.queueAll(crawlDatas);
+    }
+    @Override
+    public CrawlDataStage queueIfAbsent(ICrawlData crawlData) {
+        if (pending.containsKey(crawlData.getReference())) {
+            return CrawlDataStage.PROCESSED;
+        }
+        return super.queueIfAbsent(crawlData);
+    }
+
+    // Pending references are removed only once written, so when not
+    // pending the underlying store can be trusted.
+    @Override
+    public CrawlDataStage getStage(String reference) {
+        if (pending.containsKey(reference)) {
+            return CrawlDataStage.PROCESSED;
+        }
+        return super.getStage(reference);
+    }
+    @Override
+    public boolean isActive(String reference) {
+        return !pending.containsKey(reference) && super.isActive(reference);
+    }
+    @Override
+    public boolean isProcessed(String reference) {
+        return pending.containsKey(reference) || super.isProcessed(reference);
+    }
+    @Override
+    public ICrawlData getCached(String cacheReference) {
+        if (pending.containsKey(cacheReference)) {
+            return null;
+        }
+        return super.getCached(cacheReference);
+    }
+
+    @Override
+    public long getActiveCount() {
+        countsLock.readLock().lock();
+        try {
+            return Math.max(0,
+                    super.getActiveCount() - pendingActive.get());
+        } finally {
+            countsLock.readLock().unlock();
+        }
+    }
+    @Override
+    public long getProcessedCount() {
+        countsLock.readLock().lock();
+        try {
+            return super.getProcessedCount() + pending.size();
+        } finally {
+            countsLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isCacheEmpty() {
+        flush();
+        return super.isCacheEmpty();
+    }
+    @Override
+    public Iterator<ICrawlData> getCacheIterator() {
+        flush();
+        return super.getCacheIterator();
+    }
+
+    /**
+     * Waits until all references processed so far are written to the
+     * underlying store.
+     */
+    public void flush() {
+        synchronized (flushMonitor) {
+            long target = addedCount;
+            while (writtenCount < target && failure == null
+                    && writer.isAlive()) {
+                try {
+                    flushMonitor.wait(POLL_INTERVAL);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CrawlDataStoreException(
+                            "Interrupted while flushing.", e);
+                }
+            }
+        }
+        checkFailure();
+    }
+
+    @Override
+    public void close() {
+        closing = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.warn("Interrupted while writing processed references. "
+                    + pending.size() + " will be queued again on resume.");
+        } finally {
+            super.close();
+        }
+        checkFailure();
+    }
+
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>(
+                Math.min(bufferSize, MAX_BATCH_SIZE));
+        try {
+            while (true) {
+                Pending first = buffer.poll(
+                        POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (closing && buffer.isEmpty()) {
+                        return;
+                    }
+                    continue;
+                }
+                batch.add(first);
+                buffer.drainTo(batch, MAX_BATCH_SIZE - 1);
+                write(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException | Error e) {
+            failure = e;
+            LOG.error("Could not write processed references to the crawl "
+                    + "data store. " + pending.size()
+                    + " will be queued again on resume.", e);
+        } finally {
+            synchronized (flushMonitor) {
+                flushMonitor.notifyAll();
+            }
+        }
+    }
+
+    private void write(List<Pending> batch) {
+        List<ICrawlData> crawlDatas = new ArrayList<>(batch.size());
+        for (Pending p : batch) {
+            crawlDatas.add(p.crawlData);
+        }
+        countsLock.writeLock().lock();
+        try {
+            getDelegate().processedAll(crawlDatas);
+            for (Pending p : batch) {
+                // A more recent one may have been added in the meantime
+                pending.remove(p.crawlData.getReference(), p);
+                if (p.active) {
+                    pendingActive.decrementAndGet();
+                }
+            }
+        } finally {
+            countsLock.writeLock().unlock();
+        }
+        synchronized (flushMonitor) {
+            writtenCount += batch.size();
+            flushMonitor.notifyAll();
+        }
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new CrawlDataStoreException(
+                    "Could not write processed references.", failure);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("delegate", getDelegate())
+                .append("bufferSize", bufferSize)
+                .toString();
+    }
+
+    private static class Pending {
+        private final ICrawlData crawlData;
+        private final boolean active;
+        Pending(ICrawlData crawlData, boolean active) {
+            this.crawlData = crawlData;
+            this.active = active;
+        }
+    }
+}
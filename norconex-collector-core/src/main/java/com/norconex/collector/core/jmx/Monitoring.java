@@ -25,12 +25,12 @@ public class Monitoring implements MonitoringMBean {
     }
 
     @Override
-    public int getProcessedURLCount() {
+    public long getProcessedURLCount() {
         return refStore.getProcessedCount();
     }
 
     @Override
-    public int getURLQueueSize() {
+    public long getURLQueueSize() {
         return refStore.getQueueSize();
     }
 
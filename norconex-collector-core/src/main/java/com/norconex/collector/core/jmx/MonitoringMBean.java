@@ -16,8 +16,8 @@ package com.norconex.collector.core.jmx;
 
 public interface MonitoringMBean {
     
-    int getProcessedURLCount();
+    long getProcessedURLCount();
     
-    int getURLQueueSize();
+    long getURLQueueSize();
     
 }
@@ -18,6 +18,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 
+import com.norconex.collector.core.data.store.CrawlDataStage;
 import com.norconex.collector.core.data.store.ICrawlDataStore;
 import com.norconex.collector.core.pipeline.BasePipelineContext;
 import com.norconex.commons.lang.pipeline.IPipelineStage;
@@ -47,14 +48,15 @@ public class QueueReferenceStage
         }
         ICrawlDataStore refStore = ctx.getCrawlDataStore();
         
-        if (refStore.isActive(ref)) {
+        CrawlDataStage stage = refStore.queueIfAbsent(
+                ctx.getCrawlData().clone());
+        if (stage == CrawlDataStage.ACTIVE) {
             debug("Already being processed: %s", ref);
-        } else if (refStore.isQueued(ref)) {
+        } else if (stage == CrawlDataStage.QUEUED) {
             debug("Already queued: %s", ref);
-        } else if (refStore.isProcessed(ref)) {
+        } else if (stage == CrawlDataStage.PROCESSED) {
             debug("Already processed: %s", ref);
         } else {
-            refStore.queue(ctx.getCrawlData().clone());
             debug("Queued for processing: %s", ref);
         }
         return true;
@@ -19,6 +19,7 @@ import java.io.IOException;
 
 import org.junit.Test;
 
+import com.norconex.collector.core.crawler.ICrawlerConfig.ExecutionMode;
 import com.norconex.collector.core.crawler.ICrawlerConfig.OrphansStrategy;
 import com.norconex.commons.lang.config.XMLConfigurationUtil;
 
@@ -34,7 +35,22 @@ public class AbstractCrawlerConfigTest {
         c.setMaxDocuments(33);
         c.setNumThreads(3);
         c.setOrphansStrategy(OrphansStrategy.IGNORE);
+        c.setExecutionMode(ExecutionMode.STAGED);
         c.setWorkDir(new File("c:\temp"));
+        c.setSeenReferencesFilterSize(1000000);
+        c.setSeenReferencesFilterFalsePositiveRate(0.001);
+        c.setHostMaxConcurrency(2);
+        c.setHostDelay(500);
+        c.setCrawlDataStoreMetricsEnabled(true);
+        c.setWriteBehindBufferSize(1000);
+        c.setStageQueueSize(50);
+        c.setStageImportThreads(4);
+        c.setStageCommitThreads(8);
+        c.setStageFinalizeThreads(2);
+        c.setThreadTuningMinThreads(2);
+        c.setThreadTuningMaxThreads(20);
+        c.setThreadTuningInterval(30000);
+        c.setProgressInterval(5000);
         System.out.println("Writing/Reading this: " + c);
         XMLConfigurationUtil.assertWriteRead(c);
     }
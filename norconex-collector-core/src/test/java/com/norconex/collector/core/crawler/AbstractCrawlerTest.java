@@ -0,0 +1,144 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.crawler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.norconex.collector.core.crawler.ICrawlerConfig.ExecutionMode;
+import com.norconex.collector.core.crawler.event.CrawlerEvent;
+import com.norconex.collector.core.crawler.event.ICrawlerEventListener;
+import com.norconex.collector.core.data.CrawlState;
+import com.norconex.jef4.status.JobStatusUpdater;
+import com.norconex.jef4.status.MutableJobStatus;
+
+/**
+ * @author Pascal Essiembre
+ */
+public class AbstractCrawlerTest {
+
+    @Rule
+    public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testThreadsExecution() throws Exception {
+        assertCrawled(ExecutionMode.THREADS);
+    }
+
+    @Test
+    public void testTasksExecution() throws Exception {
+        assertCrawled(ExecutionMode.TASKS);
+    }
+
+    @Test
+    public void testStagedExecution() throws Exception {
+        assertCrawled(ExecutionMode.STAGED);
+    }
+
+    @Test
+    public void testThreadTuning() throws Exception {
+        MockCrawlerConfig config = newConfig(ExecutionMode.THREADS);
+        config.setNumThreads(1);
+        config.setThreadTuningMinThreads(1);
+        config.setThreadTuningMaxThreads(4);
+        config.setThreadTuningInterval(10);
+        final AtomicInteger adjustments = new AtomicInteger();
+        config.setCrawlerListeners(new ICrawlerEventListener() {
+            @Override
+            public void crawlerEvent(ICrawler crawler, CrawlerEvent event) {
+                if (CrawlerEvent.CRAWLER_THREADS_ADJUSTED.equals(
+                        event.getEventType())) {
+                    adjustments.incrementAndGet();
+                }
+            }
+        });
+        assertCrawled(config);
+        assertTrue(adjustments.get() > 0);
+    }
+
+    @Test
+    public void testMaxDocuments() throws Exception {
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            MockCrawlerConfig config = newConfig(mode);
+            config.setMaxDocuments(50);
+            MockCrawler crawler = new MockCrawler(config, 20, 5, 2);
+            start(crawler);
+            assertEquals(mode.toString(), 50, crawler.getProcessed().size());
+            CrawlerCounters counters = crawler.getCrawlerCounters();
+            assertEquals(50, counters.getProcessedCount());
+            assertEquals(50, counters.getNewCount());
+            assertEquals(50, counters.getReservedCount());
+        }
+    }
+
+    @Test
+    public void testStagedEmbeddedError() throws Exception {
+        MockCrawler crawler = new MockCrawler(
+                newConfig(ExecutionMode.STAGED), 5, 0, 2);
+        crawler.setEmbeddedDocuments(2);
+        crawler.setFailingReference("ref3!1");
+        start(crawler);
+        // Documents committed before the embedded one failing are
+        // still processed
+        assertEquals(15, crawler.getFinalized().size());
+        assertEquals(CrawlState.NEW, crawler.getFinalized().get("ref3"));
+        assertEquals(CrawlState.NEW, crawler.getFinalized().get("ref3!0"));
+        assertEquals(CrawlState.ERROR, crawler.getFinalized().get("ref3!1"));
+        CrawlerCounters counters = crawler.getCrawlerCounters();
+        assertEquals(15, counters.getProcessedCount());
+        assertEquals(1, counters.getErrorCount());
+        assertEquals(15, counters.getReservedCount());
+    }
+
+    private void assertCrawled(ExecutionMode mode) throws Exception {
+        assertCrawled(newConfig(mode));
+    }
+    private void assertCrawled(MockCrawlerConfig config) throws Exception {
+        MockCrawler crawler = new MockCrawler(config, 20, 5, 2);
+        MutableJobStatus status = start(crawler);
+        assertEquals(1d, status.getProgress(), 0);
+        assertEquals(20 + 20 * 5, crawler.getProcessed().size());
+        assertEquals(crawler.getProcessed(), crawler.getCommitted());
+        assertTrue(crawler.getMaxRunning() <= 4);
+        assertEquals(20 + 20 * 5, 
+                crawler.getCrawlerCounters().getProcessedCount());
+    }
+
+    private MutableJobStatus start(MockCrawler crawler) {
+        MutableJobStatus status = new MutableJobStatus("mock");
+        crawler.start(new JobStatusUpdater(status) {
+            @Override
+            protected void statusUpdated(MutableJobStatus status) {
+                //NOOP
+            }
+        }, null);
+        return status;
+    }
+
+    private MockCrawlerConfig newConfig(ExecutionMode mode) throws Exception {
+        MockCrawlerConfig config = new MockCrawlerConfig();
+        config.setId("mock");
+        config.setWorkDir(tempFolder.newFolder());
+        config.setNumThreads(4);
+        config.setExecutionMode(mode);
+        return config;
+    }
+}
@@ -0,0 +1,106 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.crawler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.norconex.collector.core.data.CrawlState;
+
+/**
+ * @author Pascal Essiembre
+ */
+public class CrawlerCountersTest {
+
+    @Test
+    public void testProcessed() throws Exception {
+        final CrawlerCounters counters = new CrawlerCounters(-1, 10);
+        final CountDownLatch latch = new CountDownLatch(1);
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            final CrawlState state = 
+                    i % 2 == 0 ? CrawlState.NEW : CrawlState.ERROR;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        latch.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < 1000; j++) {
+                        counters.processed(state);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        latch.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(8010, counters.getProcessedCount());
+        assertEquals(4000, counters.getNewCount());
+        assertEquals(4000, counters.getErrorCount());
+        assertEquals(0, counters.getModifiedCount());
+        assertEquals(2, counters.getStateCounts().size());
+        assertFalse(counters.isMaxDocumentsReached());
+    }
+
+    @Test
+    public void testReserve() throws Exception {
+        final CrawlerCounters counters = new CrawlerCounters(100, 10);
+        final AtomicInteger granted = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    int permits;
+                    while ((permits = counters.reserve(3)) > 0) {
+                        granted.addAndGet(permits);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(90, granted.get());
+        assertTrue(counters.isMaxDocumentsReached());
+        assertEquals(0, counters.reserve(1));
+
+        counters.release(2);
+        assertFalse(counters.isMaxDocumentsReached());
+        assertEquals(2, counters.reserve(5));
+
+        counters.forceReserve(1);
+        assertEquals(101, counters.getReservedCount());
+    }
+
+    @Test
+    public void testUnlimited() {
+        CrawlerCounters counters = new CrawlerCounters(-1, 0);
+        assertEquals(1000, counters.reserve(1000));
+        assertFalse(counters.isMaxDocumentsReached());
+    }
+}
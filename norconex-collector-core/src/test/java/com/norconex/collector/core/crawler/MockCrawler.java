@@ -0,0 +1,172 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.crawler;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.norconex.collector.core.CollectorException;
+import com.norconex.collector.core.data.BaseCrawlData;
+import com.norconex.collector.core.data.CrawlState;
+import com.norconex.collector.core.data.ICrawlData;
+import com.norconex.collector.core.data.store.ICrawlDataStore;
+import com.norconex.collector.core.pipeline.importer.ImporterPipelineContext;
+import com.norconex.commons.lang.Sleeper;
+import com.norconex.importer.doc.ImporterDocument;
+import com.norconex.importer.response.ImporterResponse;
+import com.norconex.jef4.status.JobStatusUpdater;
+import com.norconex.jef4.suite.JobSuite;
+
+/**
+ * Crawler queuing a few start references, each of them queuing a few
+ * child references when processed. Processing a reference only waits
+ * for a little while, as if fetching it. Start references can also
+ * have embedded documents, and committing a given reference can fail.
+ * @author Pascal Essiembre
+ */
+public class MockCrawler extends AbstractCrawler {
+
+    private final int startReferences;
+    private final int childReferences;
+    private final long fetchTime;
+    private final Set<String> processed = Collections.newSetFromMap(
+            new ConcurrentHashMap<String, Boolean>());
+    private final Set<String> committed = Collections.newSetFromMap(
+            new ConcurrentHashMap<String, Boolean>());
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+    private final Map<String, CrawlState> finalized = 
+            new ConcurrentHashMap<>();
+    private int embeddedDocuments;
+    private String failingReference;
+
+    public MockCrawler(ICrawlerConfig config, 
+            int startReferences, int childReferences, long fetchTime) {
+        super(config);
+        this.startReferences = startReferences;
+        this.childReferences = childReferences;
+        this.fetchTime = fetchTime;
+    }
+
+    public Set<String> getProcessed() {
+        return processed;
+    }
+    public Set<String> getCommitted() {
+        return committed;
+    }
+    public int getMaxRunning() {
+        return maxRunning.get();
+    }
+    public Map<String, CrawlState> getFinalized() {
+        return finalized;
+    }
+    public void setEmbeddedDocuments(int embeddedDocuments) {
+        this.embeddedDocuments = embeddedDocuments;
+    }
+    public void setFailingReference(String failingReference) {
+        this.failingReference = failingReference;
+    }
+
+    public void start(JobStatusUpdater statusUpdater, JobSuite suite) {
+        startExecution(statusUpdater, suite);
+    }
+
+    @Override
+    protected void prepareExecution(JobStatusUpdater statusUpdater,
+            JobSuite suite, ICrawlDataStore refStore, boolean resume) {
+        for (int i = 0; i < startReferences; i++) {
+            refStore.queue(new BaseCrawlData("ref" + i));
+        }
+    }
+
+    @Override
+    protected void cleanupExecution(JobStatusUpdater statusUpdater,
+            JobSuite suite, ICrawlDataStore refStore) {
+        //NOOP
+    }
+
+    @Override
+    protected void executeQueuePipeline(
+            ICrawlData crawlData, ICrawlDataStore crawlDataStore) {
+        crawlDataStore.queue(crawlData);
+    }
+
+    @Override
+    protected ImporterDocument wrapDocument(
+            ICrawlData crawlData, ImporterDocument document) {
+        return document;
+    }
+
+    @Override
+    protected void markReferenceVariationsAsProcessed(
+            BaseCrawlData crawlData, ICrawlDataStore refStore) {
+        finalized.put(crawlData.getReference(), crawlData.getState());
+    }
+
+    @Override
+    protected BaseCrawlData createEmbeddedCrawlData(
+            String embeddedReference, ICrawlData parentCrawlData) {
+        return new BaseCrawlData(embeddedReference);
+    }
+
+    @Override
+    protected ImporterResponse executeImporterPipeline(
+            ImporterPipelineContext context) {
+        int nowRunning = running.incrementAndGet();
+        int max;
+        while (nowRunning > (max = maxRunning.get())
+                && !maxRunning.compareAndSet(max, nowRunning)) {
+            continue;
+        }
+        try {
+            Sleeper.sleepMillis(fetchTime);
+            String reference = context.getCrawlData().getReference();
+            if (!reference.contains("/")) {
+                for (int i = 0; i < childReferences; i++) {
+                    context.getCrawlDataStore().queueIfAbsent(
+                            new BaseCrawlData(reference + "/" + i));
+                }
+            }
+            processed.add(reference);
+            context.getCrawlData().setState(CrawlState.NEW);
+        } finally {
+            running.decrementAndGet();
+        }
+        ImporterResponse response = 
+                new ImporterResponse(context.getDocument());
+        if (!context.getCrawlData().getReference().contains("/")) {
+            for (int i = 0; i < embeddedDocuments; i++) {
+                response.addNestedResponse(new ImporterResponse(
+                        new ImporterDocument(
+                                context.getCrawlData().getReference() + "!" + i,
+                                getStreamFactory().newInputStream())));
+            }
+        }
+        return response;
+    }
+
+    @Override
+    protected void executeCommitterPipeline(ICrawler crawler,
+            ImporterDocument doc, ICrawlDataStore crawlDataStore,
+            BaseCrawlData crawlData, BaseCrawlData cachedCrawlData) {
+        if (crawlData.getReference().equals(failingReference)) {
+            throw new CollectorException("Failed on purpose.");
+        }
+        committed.add(crawlData.getReference());
+    }
+}
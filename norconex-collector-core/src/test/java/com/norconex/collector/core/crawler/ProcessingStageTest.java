@@ -0,0 +1,119 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.crawler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @author Pascal Essiembre
+ */
+public class ProcessingStageTest {
+
+    private ProcessingStage stage;
+
+    @After
+    public void tearDown() {
+        if (stage != null) {
+            stage.shutdown();
+        }
+    }
+
+    @Test
+    public void testSubmitWaitsWhenFull() throws Exception {
+        stage = new ProcessingStage("test", "stage", 1, 1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Runnable blocked = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        // One running, one queued
+        stage.submit(blocked);
+        stage.submit(blocked);
+
+        final AtomicBoolean submitted = new AtomicBoolean();
+        Thread submitter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                stage.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        //NOOP
+                    }
+                });
+                submitted.set(true);
+            }
+        });
+        submitter.start();
+        submitter.join(200);
+        assertFalse("Should wait for room.", submitted.get());
+        assertEquals(1, stage.getQueueDepth());
+
+        release.countDown();
+        submitter.join(TimeUnit.SECONDS.toMillis(5));
+        assertTrue(submitted.get());
+        stage.awaitIdle();
+        assertEquals(3, stage.getCompletedCount());
+        assertEquals(0, stage.getQueueDepth());
+    }
+
+    @Test
+    public void testCall() throws Exception {
+        stage = new ProcessingStage("test", "stage", 2, 2);
+        final String caller = Thread.currentThread().getName();
+        String runner = stage.call(new Callable<String>() {
+            @Override
+            public String call() {
+                // Calls from the stage itself run right away
+                return stage.call(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return Thread.currentThread().getName();
+                    }
+                });
+            }
+        });
+        assertFalse(caller.equals(runner));
+        assertTrue(runner.startsWith("test-stage-"));
+        stage.awaitIdle();
+        assertEquals(1, stage.getCompletedCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCallException() throws Exception {
+        stage = new ProcessingStage("test", "stage", 1, 1);
+        stage.call(new Callable<String>() {
+            @Override
+            public String call() {
+                throw new IllegalStateException("expected");
+            }
+        });
+    }
+}
@@ -0,0 +1,80 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.crawler;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * @author Pascal Essiembre
+ */
+public class ThreadCountTunerTest {
+
+    @Test
+    public void testClimbsWhileThroughputImproves() {
+        ThreadCountTuner tuner = new ThreadCountTuner(1, 10, 2);
+        assertEquals(3, tuner.tune(100, 0.2, -1, false));
+        assertEquals(4, tuner.tune(150, 0.3, -1, false));
+        // No gain: step back
+        assertEquals(3, tuner.tune(150, 0.4, -1, false));
+        // Stable with less: stay
+        assertEquals(3, tuner.tune(150, 0.3, -1, false));
+        // Probe again
+        assertEquals(4, tuner.tune(150, 0.3, -1, false));
+    }
+
+    @Test
+    public void testAddsBackWhenThroughputDrops() {
+        ThreadCountTuner tuner = new ThreadCountTuner(1, 10, 4);
+        assertEquals(5, tuner.tune(100, 0.2, -1, false));
+        assertEquals(4, tuner.tune(100, 0.2, -1, false));
+        assertEquals(5, tuner.tune(50, 0.2, -1, false));
+    }
+
+    @Test
+    public void testDecreasesWhenCpuSaturated() {
+        ThreadCountTuner tuner = new ThreadCountTuner(2, 20, 16);
+        assertEquals(12, tuner.tune(100, 0.95, -1, false));
+        assertEquals(9, tuner.tune(80, 0.95, -1, false));
+        // Not added back right away even if throughput dropped
+        assertEquals(9, tuner.tune(50, 0.5, -1, false));
+        assertEquals(10, tuner.tune(50, 0.5, -1, false));
+    }
+
+    @Test
+    public void testDecreasesWhenStoreLatencyDegrades() {
+        ThreadCountTuner tuner = new ThreadCountTuner(1, 20, 10);
+        assertEquals(11, tuner.tune(100, 0.5, 2, false));
+        assertEquals(8, tuner.tune(120, 0.5, 5, false));
+    }
+
+    @Test
+    public void testBounds() {
+        ThreadCountTuner tuner = new ThreadCountTuner(3, 4, 10);
+        assertEquals(4, tuner.getThreadCount());
+        assertEquals(4, tuner.tune(100, 0.2, -1, false));
+        assertEquals(3, tuner.tune(100, 1, -1, false));
+        assertEquals(3, tuner.tune(100, 1, -1, false));
+    }
+
+    @Test
+    public void testHoldsWhenStarved() {
+        ThreadCountTuner tuner = new ThreadCountTuner(1, 10, 2);
+        assertEquals(2, tuner.tune(100, 0.2, -1, true));
+        assertEquals(2, tuner.tune(100, 0.2, -1, true));
+        assertEquals(3, tuner.tune(100, 0.2, -1, false));
+    }
+}
@@ -0,0 +1,97 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.crawler;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class WorkCoordinatorTest {
+
+    private static final long LONG_WAIT = TimeUnit.MINUTES.toMillis(1);
+
+    private final WorkCoordinator coordinator = new WorkCoordinator();
+    private final ExecutorService executor =
+            Executors.newSingleThreadExecutor();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testNothingInFlight() throws Exception {
+        long signals = coordinator.getSignalCount();
+        assertFalse(coordinator.awaitWork(signals, LONG_WAIT));
+    }
+
+    @Test
+    public void testSignalNotMissed() throws Exception {
+        coordinator.leased(1);
+        long signals = coordinator.getSignalCount();
+        coordinator.queued(1);
+        assertTrue(coordinator.awaitWork(signals, LONG_WAIT));
+    }
+
+    @Test
+    public void testWokenUpWhenQueued() throws Exception {
+        coordinator.leased(1);
+        Future<Boolean> waiter = await();
+        waitForWaiter(waiter);
+        coordinator.queued(1);
+        assertTrue(waiter.get(LONG_WAIT, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testWokenUpWhenLastDone() throws Exception {
+        coordinator.leased(2);
+        Future<Boolean> waiter = await();
+        waitForWaiter(waiter);
+        coordinator.done(2);
+        assertFalse(waiter.get(LONG_WAIT, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        coordinator.leased(1);
+        long signals = coordinator.getSignalCount();
+        assertTrue(coordinator.awaitWork(signals, 10));
+    }
+
+    private Future<Boolean> await() {
+        final long signals = coordinator.getSignalCount();
+        return executor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return coordinator.awaitWork(signals, LONG_WAIT);
+            }
+        });
+    }
+    // Gives the waiting thread time to start waiting. Tests still pass
+    // if it did not, since signals are not missed.
+    private void waitForWaiter(Future<Boolean> waiter)
+            throws InterruptedException {
+        Thread.sleep(50);
+        assertFalse(waiter.isDone());
+    }
+}
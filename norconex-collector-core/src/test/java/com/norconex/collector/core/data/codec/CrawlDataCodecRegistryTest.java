@@ -0,0 +1,183 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Date;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.junit.Test;
+
+import com.norconex.collector.core.data.BaseCrawlData;
+import com.norconex.collector.core.data.CrawlState;
+import com.norconex.collector.core.data.ICrawlData;
+import com.norconex.collector.core.data.store.CrawlDataStoreException;
+import com.norconex.commons.lang.file.ContentType;
+
+public class CrawlDataCodecRegistryTest {
+
+    private final CrawlDataCodecRegistry registry =
+            new CrawlDataCodecRegistry();
+
+    @Test
+    public void testWriteReadNulls() {
+        BaseCrawlData crawlData = new BaseCrawlData();
+        crawlData.setState(null);
+        assertEquals(crawlData, registry.decode(registry.encode(crawlData)));
+    }
+
+    @Test
+    public void testWriteReadNoNulls() {
+        BaseCrawlData crawlData = newCrawlData(1);
+        assertEquals(crawlData, registry.decode(registry.encode(crawlData)));
+
+        // Values not interned
+        crawlData.setState(CrawlState.valueOf("CUSTOM_STATE"));
+        crawlData.setContentType(ContentType.valueOf("application/x-custom"));
+        crawlData.setCrawlDate(new Date(-1234L));
+        crawlData.setReference("http://example.com/été/東");
+        assertEquals(crawlData, registry.decode(registry.encode(crawlData)));
+    }
+
+    @Test
+    public void testSerializationFallback() {
+        // Subclasses without a registered codec use Java serialization
+        CustomCrawlData crawlData = new CustomCrawlData();
+        crawlData.setReference("http://example.com");
+        crawlData.custom = "custom value";
+        ICrawlData decoded = registry.decode(registry.encode(crawlData));
+        assertEquals(CustomCrawlData.class, decoded.getClass());
+        assertEquals("custom value", ((CustomCrawlData) decoded).custom);
+    }
+
+    @Test
+    public void testSubclassCodec() {
+        registry.register(100, new CustomCrawlDataCodec());
+        CustomCrawlData crawlData = new CustomCrawlData();
+        crawlData.setReference("http://example.com");
+        crawlData.setCrawlDate(new Date());
+        crawlData.custom = "custom value";
+        byte[] bytes = registry.encode(crawlData);
+        assertEquals(100, new CrawlDataInput(bytes, 1, 1).readVarInt());
+        CustomCrawlData decoded = (CustomCrawlData) registry.decode(bytes);
+        assertEquals(crawlData, decoded);
+        assertEquals("custom value", decoded.custom);
+    }
+
+    @Test
+    public void testNewerVersionRejected() {
+        byte[] bytes = registry.encode(newCrawlData(1));
+        bytes[2] = AbstractCrawlDataCodec.BASE_FIELDS_VERSION + 1;
+        try {
+            registry.decode(bytes);
+            fail("Should have failed on newer version.");
+        } catch (CrawlDataStoreException e) {
+            // expected
+        }
+        bytes[0] = CrawlDataCodecRegistry.FORMAT_VERSION + 1;
+        try {
+            registry.decode(bytes);
+            fail("Should have failed on newer format.");
+        } catch (CrawlDataStoreException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testTruncated() {
+        byte[] bytes = registry.encode(newCrawlData(1));
+        try {
+            registry.decode(new CrawlDataInput(bytes, 0, bytes.length - 3));
+            fail("Should have failed on truncated data.");
+        } catch (CrawlDataStoreException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testVarLong() {
+        long[] values = { 0, 1, -1, 63, -64, 64, Integer.MAX_VALUE,
+                Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE };
+        CrawlDataOutput out = new CrawlDataOutput(1);
+        for (long value : values) {
+            out.writeVarLong(value);
+        }
+        CrawlDataInput in = new CrawlDataInput(out.toByteArray());
+        for (long value : values) {
+            assertEquals(value, in.readVarLong());
+        }
+        assertEquals(0, in.available());
+    }
+
+    // Compares the size of typical crawl data to Java serialization
+    @Test
+    public void testCompareToJavaSerialization() {
+        long codecSize = 0;
+        long javaSize = 0;
+        for (int i = 0; i < 100; i++) {
+            BaseCrawlData crawlData = newCrawlData(i);
+            byte[] bytes = registry.encode(crawlData);
+            assertEquals(crawlData, registry.decode(bytes));
+            codecSize += bytes.length;
+            javaSize += SerializationUtils.serialize(crawlData).length;
+        }
+        assertTrue("Codec should be at least 3 times smaller.",
+                codecSize * 3 < javaSize);
+    }
+
+    private BaseCrawlData newCrawlData(int i) {
+        BaseCrawlData crawlData = new BaseCrawlData(
+                "https://www.example.com/section/page" + i + ".html");
+        crawlData.setParentRootReference("https://www.example.com/");
+        crawlData.setRootParentReference(i % 2 == 0);
+        crawlData.setState(CrawlState.MODIFIED);
+        crawlData.setMetaChecksum("4c1f5b9a0e3d7c26e8f1a9b3d5c7e902");
+        crawlData.setContentChecksum("9e107d9d372bb6826bd81d3542a419d6");
+        crawlData.setContentType(ContentType.HTML);
+        crawlData.setCrawlDate(new Date(1514764800000L + i * 1000L));
+        return crawlData;
+    }
+
+    public static class CustomCrawlData extends BaseCrawlData {
+        private static final long serialVersionUID = 1L;
+        private String custom;
+    }
+
+    public static class CustomCrawlDataCodec
+            extends AbstractCrawlDataCodec<CustomCrawlData> {
+        public CustomCrawlDataCodec() {
+            super(CustomCrawlData.class);
+        }
+        @Override
+        protected CustomCrawlData newCrawlData() {
+            return new CustomCrawlData();
+        }
+        @Override
+        protected void encodeFields(
+                CustomCrawlData crawlData, CrawlDataOutput out) {
+            out.writeVarInt(1);
+            out.writeString(crawlData.custom);
+        }
+        @Override
+        protected void decodeFields(
+                CustomCrawlData crawlData, CrawlDataInput in) {
+            in.readVarInt();
+            crawlData.custom = in.readString();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.norconex.collector.core.data.BaseCrawlData;
+import com.norconex.collector.core.data.CrawlState;
+import com.norconex.collector.core.data.store.impl.mvstore.MVStoreCrawlDataStore;
+
+public class CrawlDataUnitOfWorkTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private ICrawlDataStore store;
+
+    @Before
+    public void setup() throws Exception {
+        store = new MVStoreCrawlDataStore(
+                tempFolder.newFolder().getPath(), false);
+    }
+    @After
+    public void tearDown() {
+        store.close();
+    }
+
+    @Test
+    public void testCommit() {
+        String ref = "https://www.norconex.com/";
+        String redirect = "https://www.norconex.com/redirected";
+        store.queue(new BaseCrawlData(ref));
+        BaseCrawlData crawlData = (BaseCrawlData) store.nextQueued();
+        crawlData.setState(CrawlState.NEW);
+
+        CrawlDataUnitOfWork work = new CrawlDataUnitOfWork(store);
+        work.processed(crawlData);
+        BaseCrawlData variation = new BaseCrawlData(redirect);
+        variation.setState(CrawlState.UNMODIFIED);
+        work.processed(variation);
+
+        // Only the unit of work knows about uncommitted references
+        assertEquals(2, work.getUncommittedCount());
+        assertTrue(work.isProcessed(ref));
+        assertFalse(work.isActive(ref));
+        assertEquals(CrawlDataStage.PROCESSED, work.getStage(redirect));
+        assertFalse(store.isProcessed(ref));
+        assertTrue(store.isActive(ref));
+
+        work.commit();
+        assertEquals(0, work.getUncommittedCount());
+        assertEquals(2, store.getProcessedCount());
+        assertEquals(0, store.getActiveCount());
+        assertTrue(store.isProcessed(redirect));
+    }
+}
@@ -0,0 +1,69 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.store;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.norconex.collector.core.TestUtil;
+import com.norconex.collector.core.data.BaseCrawlData;
+import com.norconex.commons.lang.config.XMLConfigurationUtil;
+
+public class PropertyCrawlDataRankerTest {
+
+    @Test
+    public void testGetRank() {
+        DepthCrawlData crawlData = new DepthCrawlData();
+        crawlData.setDepth(3);
+        assertEquals(3, new PropertyCrawlDataRanker(
+                "depth").getRank(crawlData), 0);
+        assertEquals(-3, new PropertyCrawlDataRanker(
+                "depth", true).getRank(crawlData), 0);
+        crawlData.setDepth(null);
+        assertEquals(0, new PropertyCrawlDataRanker(
+                "depth").getRank(crawlData), 0);
+    }
+
+    @Test(expected = CrawlDataStoreException.class)
+    public void testMissingProperty() {
+        new PropertyCrawlDataRanker("depth").getRank(new BaseCrawlData("a"));
+    }
+
+    @Test
+    public void testValidation() throws IOException {
+        TestUtil.testValidation(PropertyCrawlDataRankerTest.class);
+    }
+
+    @Test
+    public void testWriteRead() throws IOException {
+        PropertyCrawlDataRanker r = new PropertyCrawlDataRanker("depth", true);
+        System.out.println("Writing/Reading this: " + r);
+        XMLConfigurationUtil.assertWriteRead(r);
+    }
+
+    public static class DepthCrawlData extends BaseCrawlData {
+        private static final long serialVersionUID = 1L;
+        private Integer depth;
+        public Integer getDepth() {
+            return depth;
+        }
+        public void setDepth(Integer depth) {
+            this.depth = depth;
+        }
+    }
+}
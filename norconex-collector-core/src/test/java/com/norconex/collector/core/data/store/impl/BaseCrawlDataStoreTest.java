@@ -22,11 +22,17 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 
 import org.apache.commons.configuration.XMLConfiguration;
 import org.junit.After;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -37,6 +43,8 @@ import com.norconex.collector.core.crawler.ICrawlerConfig;
 import com.norconex.collector.core.data.BaseCrawlData;
 import com.norconex.collector.core.data.CrawlState;
 import com.norconex.collector.core.data.ICrawlData;
+import com.norconex.collector.core.data.store.CrawlDataStage;
+import com.norconex.collector.core.data.store.ICrawlDataRanker;
 import com.norconex.collector.core.data.store.ICrawlDataStore;
 import com.norconex.commons.lang.file.ContentType;
 
@@ -136,6 +144,22 @@ public abstract class BaseCrawlDataStoreTest {
     protected abstract ICrawlDataStore createCrawlDataStore(
             ICrawlerConfig config, TemporaryFolder tempFolder, boolean resume);
 
+    /**
+     * Creates a crawl data store ranking queued references with the
+     * given ranker. Returns <code>null</code> by default, for stores not
+     * supporting ranking, which skips ranking tests.
+     * @param config crawler configuration
+     * @param tempFolder temporary folder
+     * @param resume whether to resume
+     * @param ranker queue ranker
+     * @return crawl data store or <code>null</code>
+     */
+    protected ICrawlDataStore createCrawlDataStore(
+            ICrawlerConfig config, TemporaryFolder tempFolder, boolean resume,
+            ICrawlDataRanker ranker) {
+        return null;
+    }
+
 
     //--- Tests ----------------------------------------------------------------
     
@@ -257,6 +281,26 @@ public abstract class BaseCrawlDataStoreTest {
         }
     }
 
+    @Test
+    public void testCacheIteratorMany() throws Exception {
+        // More than read at once by stores reading the cache in batches
+        int count = 2500;
+        for (int i = 0; i < count; i++) {
+            crawlStore.processed(createCrawlData(
+                    "https://www.norconex.com/" + i));
+        }
+        moveProcessedToCache();
+
+        Set<String> refs = new HashSet<>();
+        Iterator<ICrawlData> it = crawlStore.getCacheIterator();
+        while (it.hasNext()) {
+            // Asking more than once does not skip any
+            assertTrue(it.hasNext());
+            refs.add(it.next().getReference());
+        }
+        assertEquals(count, refs.size());
+    }
+
     @Test
     public void testQueuedUnique() throws Exception {
 
@@ -270,6 +314,139 @@ public abstract class BaseCrawlDataStoreTest {
         assertEquals(1, crawlStore.getQueueSize());
     }
 
+    @Test
+    public void testQueueIfAbsent() throws Exception {
+
+        String ref = "https://www.norconex.com/";
+        assertNull(crawlStore.queueIfAbsent(createCrawlData(ref)));
+        assertEquals(1, crawlStore.getQueueSize());
+        assertTrue(crawlStore.isQueued(ref));
+
+        // Queue the same ref. It should not be queued again.
+        assertEquals(CrawlDataStage.QUEUED, 
+                crawlStore.queueIfAbsent(createCrawlData(ref)));
+        assertEquals(1, crawlStore.getQueueSize());
+
+        // Once active or processed, it should not be queued again either
+        ICrawlData next = crawlStore.nextQueued();
+        assertEquals(CrawlDataStage.ACTIVE, 
+                crawlStore.queueIfAbsent(createCrawlData(ref)));
+        assertTrue(crawlStore.isQueueEmpty());
+        crawlStore.processed(next);
+        assertEquals(CrawlDataStage.PROCESSED, 
+                crawlStore.queueIfAbsent(createCrawlData(ref)));
+        assertTrue(crawlStore.isQueueEmpty());
+    }
+
+    @Test
+    public void testQueueAll() throws Exception {
+
+        String ref1 = "https://www.norconex.com/1";
+        String ref2 = "https://www.norconex.com/2";
+        String ref3 = "https://www.norconex.com/3";
+        crawlStore.queue(createCrawlData(ref1));
+        
+        // Already queued references should not cause failures or duplicates
+        crawlStore.queueAll(Arrays.asList(createCrawlData(ref1), 
+                createCrawlData(ref2), createCrawlData(ref3)));
+        assertEquals(3, crawlStore.getQueueSize());
+        assertTrue(crawlStore.isQueued(ref1));
+        assertTrue(crawlStore.isQueued(ref2));
+        assertTrue(crawlStore.isQueued(ref3));
+
+        crawlStore.queueAll(new ArrayList<ICrawlData>());
+        assertEquals(3, crawlStore.getQueueSize());
+    }
+
+    @Test
+    public void testNextQueuedBatch() throws Exception {
+
+        String ref1 = "https://www.norconex.com/1";
+        String ref2 = "https://www.norconex.com/2";
+        String ref3 = "https://www.norconex.com/3";
+        crawlStore.queueAll(Arrays.asList(createCrawlData(ref1), 
+                createCrawlData(ref2), createCrawlData(ref3)));
+
+        List<ICrawlData> leased = crawlStore.nextQueued(2);
+        assertEquals(2, leased.size());
+        assertEquals(1, crawlStore.getQueueSize());
+        assertEquals(2, crawlStore.getActiveCount());
+        for (ICrawlData crawlData : leased) {
+            assertTrue(crawlStore.isActive(crawlData.getReference()));
+            assertFalse(crawlStore.isQueued(crawlData.getReference()));
+        }
+
+        // Only what is left in queue is returned
+        assertEquals(1, crawlStore.nextQueued(2).size());
+        assertTrue(crawlStore.isQueueEmpty());
+        assertTrue(crawlStore.nextQueued(2).isEmpty());
+        assertEquals(3, crawlStore.getActiveCount());
+
+        // Leased references not processed are queued again on resume
+        setCrawlState(leased.get(0), CrawlState.NEW);
+        crawlStore.processed(leased.get(0));
+        resetDatabase(true);
+        assertEquals(2, crawlStore.getQueueSize());
+        assertEquals(0, crawlStore.getActiveCount());
+        assertTrue(crawlStore.isProcessed(leased.get(0).getReference()));
+    }
+
+    @Test
+    public void testCountsOnResume() throws Exception {
+
+        crawlStore.queueAll(Arrays.asList(
+                createCrawlData("https://www.norconex.com/1"), 
+                createCrawlData("https://www.norconex.com/2"), 
+                createCrawlData("https://www.norconex.com/3")));
+        ICrawlData next = crawlStore.nextQueued();
+        setCrawlState(next, CrawlState.NEW);
+        crawlStore.processed(next);
+        crawlStore.nextQueued();
+        assertEquals(1, crawlStore.getQueueSize());
+        assertEquals(1, crawlStore.getActiveCount());
+        assertEquals(1, crawlStore.getProcessedCount());
+
+        // Counts are obtained from the database when reopened
+        resetDatabase(true);
+        assertEquals(2, crawlStore.getQueueSize());
+        assertEquals(0, crawlStore.getActiveCount());
+        assertEquals(1, crawlStore.getProcessedCount());
+    }
+
+    @Test
+    public void testProcessedAll() throws Exception {
+
+        String ref1 = "https://www.norconex.com/1";
+        String ref2 = "https://www.norconex.com/2";
+        cacheReference(ref1);
+        crawlStore.queueAll(Arrays.asList(
+                createCrawlData(ref1), createCrawlData(ref2)));
+        ICrawlData next1 = crawlStore.nextQueued();
+        ICrawlData next2 = crawlStore.nextQueued();
+        setCrawlState(next2, CrawlState.NOT_FOUND);
+
+        crawlStore.processedAll(Arrays.asList(next1, next2));
+        assertEquals(2, crawlStore.getProcessedCount());
+        assertEquals(0, crawlStore.getActiveCount());
+        assertTrue(crawlStore.isProcessed(ref1));
+        assertTrue(crawlStore.isProcessed(ref2));
+        assertNull(crawlStore.getCached(ref1));
+    }
+
+    @Test
+    public void testGetStage() throws Exception {
+
+        String ref = "https://www.norconex.com/";
+        assertNull(crawlStore.getStage(ref));
+        crawlStore.queue(createCrawlData(ref));
+        assertEquals(CrawlDataStage.QUEUED, crawlStore.getStage(ref));
+        ICrawlData next = crawlStore.nextQueued();
+        assertEquals(CrawlDataStage.ACTIVE, crawlStore.getStage(ref));
+        setCrawlState(next, CrawlState.NOT_FOUND);
+        crawlStore.processed(next);
+        assertEquals(CrawlDataStage.PROCESSED, crawlStore.getStage(ref));
+    }
+
     @Test
     public void testProcessedUnique() throws Exception {
 
@@ -347,6 +524,41 @@ public abstract class BaseCrawlDataStoreTest {
         assertTrue(crawlStore.isCacheEmpty());
     }
 
+    /**
+     * Only valid processed references of the previous run are cached,
+     * whatever the stage of the other ones.
+     * @throws Exception something went wrong
+     */
+    @Test
+    public void testNotResumeMixedStages() throws Exception {
+        String queuedRef = "https://www.norconex.com/queued";
+        String activeRef = "https://www.norconex.com/active";
+        String invalidRef = "https://www.norconex.com/invalid";
+        String validRef = "https://www.norconex.com/valid";
+        crawlStore.queue(createCrawlData(activeRef));
+        crawlStore.nextQueued();
+        crawlStore.queue(createCrawlData(queuedRef));
+        ICrawlData invalid = createCrawlData(invalidRef);
+        setCrawlState(invalid, CrawlState.NOT_FOUND);
+        crawlStore.processed(invalid);
+        crawlStore.processed(createCrawlData(validRef));
+
+        resetDatabase(false);
+        assertTrue(crawlStore.isQueueEmpty());
+        assertEquals(0, crawlStore.getActiveCount());
+        assertEquals(0, crawlStore.getProcessedCount());
+        assertNull(crawlStore.getCached(queuedRef));
+        assertNull(crawlStore.getCached(activeRef));
+        assertNull(crawlStore.getCached(invalidRef));
+        assertNotNull(crawlStore.getCached(validRef));
+        List<String> cachedRefs = new ArrayList<>();
+        Iterator<ICrawlData> it = crawlStore.getCacheIterator();
+        while (it.hasNext()) {
+            cachedRefs.add(it.next().getReference());
+        }
+        assertEquals(Arrays.asList(validRef), cachedRefs);
+    }
+
     /**
      * When instantiating a new impl with the resume option set to true, all
      * refs should be kept in the same state, except for active refs that should
@@ -412,6 +624,30 @@ public abstract class BaseCrawlDataStoreTest {
         assertEquals(1, crawlStore.getProcessedCount());
     }
 
+    @Test
+    public void testQueueRanker() throws Exception {
+        crawlStore.close();
+        // Longest references first
+        ICrawlDataRanker ranker = new ICrawlDataRanker() {
+            @Override
+            public double getRank(ICrawlData crawlData) {
+                return -crawlData.getReference().length();
+            }
+        };
+        crawlStore = createCrawlDataStore(
+                crawlerConfig, tempFolder, false, ranker);
+        Assume.assumeNotNull(crawlStore);
+        for (String ref : new String[] { "bb", "a", "ccc", "dd" }) {
+            crawlStore.queue(createCrawlData(ref));
+        }
+        assertEquals("ccc", crawlStore.nextQueued().getReference());
+        List<String> refs = new ArrayList<>();
+        for (ICrawlData crawlData : crawlStore.nextQueued(3)) {
+            refs.add(crawlData.getReference());
+        }
+        assertEquals(Arrays.asList("bb", "dd", "a"), refs);
+    }
+
     @Test
     public void testResumeCached() throws Exception {
 
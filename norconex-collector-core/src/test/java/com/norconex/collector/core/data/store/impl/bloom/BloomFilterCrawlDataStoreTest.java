@@ -0,0 +1,92 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.store.impl.bloom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.norconex.collector.core.crawler.ICrawlerConfig;
+import com.norconex.collector.core.data.store.CrawlDataStage;
+import com.norconex.collector.core.data.store.ICrawlDataStore;
+import com.norconex.collector.core.data.store.impl.BaseCrawlDataStoreTest;
+import com.norconex.collector.core.data.store.impl.mvstore.MVStoreCrawlDataStore;
+
+public class BloomFilterCrawlDataStoreTest extends BaseCrawlDataStoreTest {
+
+    private File store;
+    private File filterFile;
+
+    @Before
+    public void setup() throws Exception {
+        store = getTempfolder().newFolder();
+        filterFile = new File(getTempfolder().getRoot(), "seen.bloom");
+        super.setup();
+    }
+    @Override
+    protected ICrawlDataStore createCrawlDataStore(
+            ICrawlerConfig config, TemporaryFolder tempFolder, boolean resume) {
+        return new BloomFilterCrawlDataStore(
+                new MVStoreCrawlDataStore(store.getPath(), resume),
+                filterFile, 1000, 0.01, resume);
+    }
+
+    private BloomFilterCrawlDataStore getBloomStore() {
+        return (BloomFilterCrawlDataStore) getCrawlDataStore();
+    }
+
+    @Test
+    public void testLookupsSaved() throws Exception {
+        String ref = "https://www.norconex.com/";
+        assertNull(getCrawlDataStore().queueIfAbsent(createCrawlData(ref)));
+        assertFalse(getCrawlDataStore().isProcessed("http://other.com/"));
+        assertEquals(2, getBloomStore().getHitCount());
+        assertEquals(0, getBloomStore().getMissCount());
+
+        assertEquals(CrawlDataStage.QUEUED,
+                getCrawlDataStore().queueIfAbsent(createCrawlData(ref)));
+        assertEquals(1, getBloomStore().getMissCount());
+    }
+
+    @Test
+    public void testResumeWithSavedFilter() throws Exception {
+        String ref = "https://www.norconex.com/";
+        getCrawlDataStore().queue(createCrawlData(ref));
+        resetDatabase(true);
+        assertTrue(getBloomStore().isEnabled());
+        assertEquals(CrawlDataStage.QUEUED, getCrawlDataStore().getStage(ref));
+        // The saved filter is consumed once loaded
+        assertFalse(filterFile.exists());
+    }
+
+    @Test
+    public void testResumeWithoutSavedFilter() throws Exception {
+        String ref = "https://www.norconex.com/";
+        getCrawlDataStore().queue(createCrawlData(ref));
+        // Simulate a crash: the store is closed without saving the filter
+        getBloomStore().getDelegate().close();
+        setCrawlDataStore(null);
+        resetDatabase(true);
+        assertFalse(getBloomStore().isEnabled());
+        assertEquals(CrawlDataStage.QUEUED, getCrawlDataStore().getStage(ref));
+    }
+}
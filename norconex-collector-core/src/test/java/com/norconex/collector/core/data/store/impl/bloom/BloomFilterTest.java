@@ -0,0 +1,75 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.store.impl.bloom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Test;
+
+public class BloomFilterTest {
+
+    private static final int SIZE = 100000;
+
+    @Test
+    public void testNoFalseNegatives() {
+        BloomFilter filter = new BloomFilter(SIZE, 0.01);
+        for (int i = 0; i < SIZE; i++) {
+            filter.put("http://example.com/page" + i);
+        }
+        for (int i = 0; i < SIZE; i++) {
+            assertTrue(filter.mightContain("http://example.com/page" + i));
+        }
+    }
+
+    @Test
+    public void testFalsePositiveRate() {
+        BloomFilter filter = new BloomFilter(SIZE, 0.01);
+        for (int i = 0; i < SIZE; i++) {
+            filter.put("http://example.com/page" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < SIZE; i++) {
+            if (filter.mightContain("http://example.com/other" + i)) {
+                falsePositives++;
+            }
+        }
+        // Allow some margin over the 1% target
+        assertTrue("False positives: " + falsePositives,
+                falsePositives < SIZE * 0.02);
+    }
+
+    @Test
+    public void testWriteRead() throws Exception {
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+        filter.put("http://example.com/a");
+        filter.put("http://example.com/b");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        filter.writeTo(out);
+
+        BloomFilter read = BloomFilter.readFrom(
+                new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(filter.getBitSize(), read.getBitSize());
+        assertEquals(filter.getHashCount(), read.getHashCount());
+        assertEquals(2, read.getApproximateCount());
+        assertTrue(read.mightContain("http://example.com/a"));
+        assertTrue(read.mightContain("http://example.com/b"));
+        assertFalse(read.put("http://example.com/a"));
+    }
+}
@@ -14,14 +14,38 @@
  */
 package com.norconex.collector.core.data.store.impl.jdbc;
 
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
 import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.commons.dbutils.QueryRunner;
+import org.apache.commons.io.FileUtils;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import com.norconex.collector.core.TestUtil;
 import com.norconex.collector.core.crawler.ICrawlerConfig;
+import com.norconex.collector.core.data.ICrawlData;
+import com.norconex.collector.core.data.store.ICrawlDataRanker;
+import com.norconex.collector.core.data.store.CrawlDataStoreException;
 import com.norconex.collector.core.data.store.ICrawlDataStore;
+import com.norconex.collector.core.data.store.PropertyCrawlDataRanker;
 import com.norconex.collector.core.data.store.impl.BaseCrawlDataStoreTest;
 import com.norconex.commons.lang.config.XMLConfigurationUtil;
 
@@ -30,10 +54,182 @@ public class H2CrawlDataStoreTest extends BaseCrawlDataStoreTest {
     @Override
     protected ICrawlDataStore createCrawlDataStore(
             ICrawlerConfig config, TemporaryFolder tempFolder, boolean resume) {
-        return new BasicJDBCCrawlDataStoreFactory().createCrawlDataStore(
-                config, resume);
+        return createCrawlDataStore(config, tempFolder, resume, null);
+    }
+    @Override
+    protected ICrawlDataStore createCrawlDataStore(
+            ICrawlerConfig config, TemporaryFolder tempFolder, boolean resume,
+            ICrawlDataRanker ranker) {
+        BasicJDBCCrawlDataStoreFactory factory =
+                new BasicJDBCCrawlDataStoreFactory();
+        factory.setQueueRanker(ranker);
+        return factory.createCrawlDataStore(config, resume);
     }
     
+    @Test
+    public void testConcurrentNextQueued() throws Exception {
+        int refCount = 500;
+        int numThreads = 8;
+        List<ICrawlData> crawlDatas = new ArrayList<>();
+        for (int i = 0; i < refCount; i++) {
+            crawlDatas.add(createCrawlData("https://www.norconex.com/" + i));
+        }
+        final ICrawlDataStore store = getCrawlDataStore();
+        store.queueAll(crawlDatas);
+
+        final Set<String> refs = Collections.newSetFromMap(
+                new ConcurrentHashMap<String, Boolean>());
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < numThreads; i++) {
+            futures.add(pool.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    int count = 0;
+                    while (!store.isQueueEmpty()) {
+                        for (ICrawlData crawlData : store.nextQueued(5)) {
+                            refs.add(crawlData.getReference());
+                            count++;
+                        }
+                    }
+                    return count;
+                }
+            }));
+        }
+        int total = 0;
+        for (Future<Integer> future : futures) {
+            total += future.get();
+        }
+        pool.shutdown();
+
+        // Each reference was obtained by exactly one thread
+        assertEquals(refCount, total);
+        assertEquals(refCount, refs.size());
+        assertEquals(0, store.getQueueSize());
+        assertEquals(refCount, store.getActiveCount());
+    }
+
+    @Test
+    public void testConcurrentQueueIfAbsent() throws Exception {
+        final int refCount = 200;
+        int numThreads = 8;
+        final ICrawlDataStore store = getCrawlDataStore();
+        final AtomicInteger queued = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < numThreads; i++) {
+            futures.add(pool.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    for (int j = 0; j < refCount; j++) {
+                        String ref = "https://www.norconex.com/" + j;
+                        if (store.queueIfAbsent(
+                                createCrawlData(ref)) == null) {
+                            queued.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        pool.shutdown();
+
+        // Each reference was reported absent exactly once
+        assertEquals(refCount, queued.get());
+        assertEquals(refCount, store.getQueueSize());
+    }
+
+    @Test(expected = CrawlDataStoreException.class, timeout = 60000)
+    public void testQueueIfAbsentUncommitted() throws Exception {
+        // Another transaction inserted the reference without committing,
+        // so it is neither insertable nor visible to this store.
+        ICrawlData crawlData = createCrawlData("https://www.norconex.com/1");
+        BasicJDBCSerializer serializer = new BasicJDBCSerializer();
+        try (Connection conn = DriverManager.getConnection(getDbURL())) {
+            conn.setAutoCommit(false);
+            new QueryRunner().update(conn, serializer
+                    .getInsertQueuedCrawlDataSQL(JDBCCrawlDataStore.TABLE_QUEUE),
+                    serializer.getInsertQueuedCrawlDataValues(
+                            JDBCCrawlDataStore.TABLE_QUEUE, crawlData, 0, 0));
+            getCrawlDataStore().queueIfAbsent(crawlData);
+        }
+    }
+
+    @Test
+    public void testResumeEarlierVersion() throws Exception {
+        // Tables as created before queue order columns were added
+        getCrawlDataStore().close();
+        setCrawlDataStore(null);
+        FileUtils.deleteDirectory(new File(getStoreDir()));
+        QueryRunner runner = new QueryRunner();
+        try (Connection conn = DriverManager.getConnection(getDbURL())) {
+            for (String table : new String[] { 
+                    JDBCCrawlDataStore.TABLE_QUEUE, 
+                    JDBCCrawlDataStore.TABLE_ACTIVE, 
+                    JDBCCrawlDataStore.TABLE_CACHE, 
+                    JDBCCrawlDataStore.TABLE_PROCESSED_VALID, 
+                    JDBCCrawlDataStore.TABLE_PROCESSED_INVALID }) {
+                runner.update(conn, "CREATE TABLE " + table + " ("
+                        + "reference VARCHAR(32672) NOT NULL, "
+                        + "parentRootReference VARCHAR(32672), "
+                        + "isRootParentReference BOOLEAN, "
+                        + "state VARCHAR(256), "
+                        + "metaChecksum VARCHAR(32672), "
+                        + "contentChecksum VARCHAR(32672), "
+                        + "contentType VARCHAR(256), "
+                        + "crawlDate BIGINT, "
+                        + "PRIMARY KEY (reference))");
+            }
+            insert(runner, conn, JDBCCrawlDataStore.TABLE_QUEUE, "a");
+            insert(runner, conn, JDBCCrawlDataStore.TABLE_ACTIVE, "b");
+        }
+
+        resetDatabase(true);
+        ICrawlDataStore store = getCrawlDataStore();
+        store.queue(createCrawlData("c"));
+        assertEquals(3, store.getQueueSize());
+        Set<String> refs = new HashSet<>();
+        for (ICrawlData crawlData : store.nextQueued(2)) {
+            refs.add(crawlData.getReference());
+        }
+        assertEquals(new HashSet<>(Arrays.asList("a", "b")), refs);
+        assertEquals("c", store.nextQueued().getReference());
+    }
+
+    private void insert(QueryRunner runner, Connection conn, 
+            String table, String ref) throws SQLException {
+        BasicJDBCSerializer serializer = new BasicJDBCSerializer();
+        runner.update(conn, serializer.getInsertCrawlDataSQL(table), 
+                serializer.getInsertCrawlDataValues(
+                        table, createCrawlData(ref)));
+    }
+    
+    private String getStoreDir() {
+        return getCrawlerConfig().getWorkDir().getAbsolutePath()
+                + "/crawlstore/jdbc/" + getCrawlerConfig().getId();
+    }
+    private String getDbURL() {
+        return "jdbc:h2:" + getStoreDir() + "/h2/db";
+    }
+
+    @Test
+    public void testQueueOrderOnResume() throws Exception {
+        ICrawlDataStore store = getCrawlDataStore();
+        store.queue(createCrawlData("c"));
+        store.queue(createCrawlData("b"));
+        store.queue(createCrawlData("a"));
+        assertEquals("c", store.nextQueued().getReference());
+        resetDatabase(true);
+        getCrawlDataStore().queue(createCrawlData("d"));
+        // The active reference is put back first in the queue
+        for (String ref : new String[] { "c", "b", "a", "d" }) {
+            assertEquals(ref, getCrawlDataStore().nextQueued().getReference());
+        }
+    }
+
     @Test
     public void testValidation() throws IOException {
         TestUtil.testValidation(getClass());
@@ -42,6 +238,11 @@ public class H2CrawlDataStoreTest extends BaseCrawlDataStoreTest {
     @Test
     public void testWriteRead() throws IOException {
         BasicJDBCCrawlDataStoreFactory f = new BasicJDBCCrawlDataStoreFactory();
+        f.setMaxConnections(10);
+        f.setMaxPreparedStatements(20);
+        f.setWriteDelay(1000);
+        f.setBinary(true);
+        f.setQueueRanker(new PropertyCrawlDataRanker("depth", true));
         System.out.println("Writing/Reading this: " + f);
         XMLConfigurationUtil.assertWriteRead(f);
     }
@@ -0,0 +1,115 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.store.impl.log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.norconex.collector.core.TestUtil;
+import com.norconex.collector.core.crawler.ICrawlerConfig;
+import com.norconex.collector.core.data.ICrawlData;
+import com.norconex.collector.core.data.store.ICrawlDataStore;
+import com.norconex.collector.core.data.store.impl.BaseCrawlDataStoreTest;
+import com.norconex.commons.lang.config.XMLConfigurationUtil;
+
+public class LogCrawlDataStoreTest extends BaseCrawlDataStoreTest {
+
+    // Small enough for tests to span many segments
+    private static final int SEGMENT_SIZE = 4096;
+
+    private File store;
+
+    @Before
+    public void setup() throws Exception {
+        store = getTempfolder().newFolder();
+        super.setup();
+    }
+    @Override
+    protected ICrawlDataStore createCrawlDataStore(
+            ICrawlerConfig config, TemporaryFolder tempFolder, boolean resume) {
+        return new LogCrawlDataStore(
+                store.getPath(), resume, SEGMENT_SIZE, null);
+    }
+
+    @Test
+    public void testManySegments() throws Exception {
+        List<ICrawlData> datas = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            datas.add(createCrawlData("https://www.norconex.com/" + i));
+        }
+        getCrawlDataStore().queueAll(datas);
+        for (int i = 0; i < 600; i++) {
+            getCrawlDataStore().processed(getCrawlDataStore().nextQueued());
+        }
+        getCrawlDataStore().nextQueued(100);
+        assertTrue(new File(store, "current/00000010.seg").isFile());
+
+        // With a checkpoint
+        resetDatabase(true);
+        assertCounts(400, 0, 600);
+
+        // Without a checkpoint, all records are read again
+        getCrawlDataStore().nextQueued(100);
+        getCrawlDataStore().close();
+        assertTrue(new File(store, "current/index.chk").delete());
+        resetDatabase(true);
+        assertCounts(400, 0, 600);
+
+        // Processed references become the cache
+        resetDatabase(false);
+        assertCounts(0, 0, 0);
+        assertFalse(getCrawlDataStore().isCacheEmpty());
+        assertNotNull(getCrawlDataStore().getCached(
+                "https://www.norconex.com/599"));
+        int cached = 0;
+        Iterator<ICrawlData> it = getCrawlDataStore().getCacheIterator();
+        while (it.hasNext()) {
+            it.next();
+            cached++;
+        }
+        assertEquals(600, cached);
+    }
+
+    @Test
+    public void testValidation() throws IOException {
+        TestUtil.testValidation(LogCrawlDataStoreTest.class);
+    }
+
+    @Test
+    public void testWriteRead() throws IOException {
+        LogCrawlDataStoreFactory f = new LogCrawlDataStoreFactory();
+        f.setSegmentSize(268435456);
+        System.out.println("Writing/Reading this: " + f);
+        XMLConfigurationUtil.assertWriteRead(f);
+    }
+
+    private void assertCounts(long queued, long active, long processed) {
+        assertEquals(queued, getCrawlDataStore().getQueueSize());
+        assertEquals(active, getCrawlDataStore().getActiveCount());
+        assertEquals(processed, getCrawlDataStore().getProcessedCount());
+    }
+}
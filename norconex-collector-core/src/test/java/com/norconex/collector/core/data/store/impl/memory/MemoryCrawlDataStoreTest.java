@@ -0,0 +1,96 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.store.impl.memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.norconex.collector.core.TestUtil;
+import com.norconex.collector.core.crawler.ICrawlerConfig;
+import com.norconex.collector.core.data.store.ICrawlDataRanker;
+import com.norconex.collector.core.data.store.ICrawlDataStore;
+import com.norconex.collector.core.data.store.PropertyCrawlDataRanker;
+import com.norconex.collector.core.data.store.impl.BaseCrawlDataStoreTest;
+import com.norconex.commons.lang.config.XMLConfigurationUtil;
+
+public class MemoryCrawlDataStoreTest extends BaseCrawlDataStoreTest {
+
+    private File store;
+
+    @Before
+    public void setup() throws Exception {
+        store = getTempfolder().newFolder();
+        super.setup();
+    }
+    @Override
+    protected ICrawlDataStore createCrawlDataStore(
+            ICrawlerConfig config, TemporaryFolder tempFolder, boolean resume) {
+        return createCrawlDataStore(config, tempFolder, resume, null);
+    }
+    @Override
+    protected ICrawlDataStore createCrawlDataStore(
+            ICrawlerConfig config, TemporaryFolder tempFolder, boolean resume,
+            ICrawlDataRanker ranker) {
+        return new MemoryCrawlDataStore(
+                store.getPath(), resume, 0, null, ranker);
+    }
+
+    @Test
+    public void testPeriodicSnapshot() throws Exception {
+        getCrawlDataStore().close();
+        File otherStore = getTempfolder().newFolder();
+        MemoryCrawlDataStore periodic = new MemoryCrawlDataStore(
+                otherStore.getPath(), false, 50, null);
+        setCrawlDataStore(periodic);
+        periodic.queue(createCrawlData("https://www.norconex.com/1"));
+        periodic.queue(createCrawlData("https://www.norconex.com/2"));
+        periodic.nextQueued();
+
+        // Saved while running, without closing
+        File otherSnapshot = new File(otherStore, "snapshot.bin");
+        long timeout = System.currentTimeMillis() + 5000;
+        while (!otherSnapshot.isFile()
+                && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertTrue(otherSnapshot.isFile());
+        MemoryCrawlDataStore resumed = new MemoryCrawlDataStore(
+                otherStore.getPath(), true);
+        assertEquals(2, resumed.getQueueSize());
+        assertEquals(0, resumed.getActiveCount());
+    }
+
+    @Test
+    public void testValidation() throws IOException {
+        TestUtil.testValidation(MemoryCrawlDataStoreTest.class);
+    }
+
+    @Test
+    public void testWriteRead() throws IOException {
+        MemoryCrawlDataStoreFactory f = new MemoryCrawlDataStoreFactory();
+        f.setSnapshot(true);
+        f.setSnapshotInterval(600000);
+        f.setQueueRanker(new PropertyCrawlDataRanker("depth", true));
+        System.out.println("Writing/Reading this: " + f);
+        XMLConfigurationUtil.assertWriteRead(f);
+    }
+}
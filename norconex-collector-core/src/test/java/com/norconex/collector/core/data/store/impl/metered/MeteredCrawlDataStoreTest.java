@@ -0,0 +1,100 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.store.impl.metered;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.norconex.collector.core.crawler.ICrawlerConfig;
+import com.norconex.collector.core.data.store.CrawlDataStoreException;
+import com.norconex.collector.core.data.store.DelegatingCrawlDataStore;
+import com.norconex.collector.core.data.store.ICrawlDataStore;
+import com.norconex.collector.core.data.store.impl.BaseCrawlDataStoreTest;
+import com.norconex.collector.core.data.store.impl.mvstore.MVStoreCrawlDataStore;
+
+public class MeteredCrawlDataStoreTest extends BaseCrawlDataStoreTest {
+
+    private File store;
+
+    @Before
+    public void setup() throws Exception {
+        store = getTempfolder().newFolder();
+        super.setup();
+    }
+    @Override
+    protected ICrawlDataStore createCrawlDataStore(
+            ICrawlerConfig config, TemporaryFolder tempFolder, boolean resume) {
+        return new MeteredCrawlDataStore(
+                new MVStoreCrawlDataStore(store.getPath(), resume));
+    }
+
+    private MeteredCrawlDataStore getMeteredStore() {
+        return (MeteredCrawlDataStore) getCrawlDataStore();
+    }
+
+    @Test
+    public void testCounts() throws Exception {
+        getCrawlDataStore().queue(createCrawlData("http://a.com/1"));
+        getCrawlDataStore().queue(createCrawlData("http://a.com/2"));
+        getCrawlDataStore().nextQueued(2);
+        getCrawlDataStore().isProcessed("http://a.com/1");
+
+        assertEquals(2, getMeteredStore().getOperationMetrics(
+                "queue").getCount());
+        assertEquals(1, getMeteredStore().getOperationMetrics(
+                "nextQueuedBatch").getCount());
+        assertEquals(0, getMeteredStore().getOperationMetrics(
+                "nextQueued").getCount());
+        OperationMetrics isProcessed =
+                getMeteredStore().getOperationMetrics("isProcessed");
+        assertEquals(1, isProcessed.getCount());
+        assertEquals(0, isProcessed.getErrorCount());
+        assertEquals(isProcessed.getMaxLatency(),
+                isProcessed.get999thPercentileLatency(), 0.0);
+        assertNull(getMeteredStore().getOperationMetrics("unknown"));
+
+        isProcessed.reset();
+        assertEquals(0, isProcessed.getCount());
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+        MeteredCrawlDataStore failing = new MeteredCrawlDataStore(
+                new DelegatingCrawlDataStore(getCrawlDataStore()) {
+            @Override
+            public boolean isProcessed(String reference) {
+                throw new CrawlDataStoreException("Failed on purpose.");
+            }
+        });
+        try {
+            failing.isProcessed("http://a.com/1");
+            fail("Should have thrown an exception.");
+        } catch (CrawlDataStoreException e) {
+            // expected
+        }
+        OperationMetrics metrics = failing.getOperationMetrics("isProcessed");
+        assertNotNull(metrics);
+        assertEquals(1, metrics.getCount());
+        assertEquals(1, metrics.getErrorCount());
+    }
+}
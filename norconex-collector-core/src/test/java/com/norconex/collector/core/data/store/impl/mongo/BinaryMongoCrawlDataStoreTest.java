@@ -0,0 +1,84 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.store.impl.mongo;
+
+import static org.junit.Assert.assertEquals;
+
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.fakemongo.Fongo;
+import com.norconex.collector.core.crawler.ICrawlerConfig;
+import com.norconex.collector.core.data.BaseCrawlData;
+import com.norconex.collector.core.data.CrawlState;
+import com.norconex.collector.core.data.codec.CrawlDataCodecRegistry;
+import com.norconex.collector.core.data.store.ICrawlDataRanker;
+import com.norconex.collector.core.data.store.ICrawlDataStore;
+import com.norconex.collector.core.data.store.impl.BaseCrawlDataStoreTest;
+import com.norconex.collector.core.data.store.impl.mongo.IMongoSerializer.Stage;
+
+public class BinaryMongoCrawlDataStoreTest extends BaseCrawlDataStoreTest {
+
+    private Fongo fongo;
+
+    @Override
+    @Before
+    public void setup() throws Exception {
+        fongo = new Fongo("mongo server 2");
+        super.setup();
+    }
+
+    @Override
+    protected ICrawlDataStore createCrawlDataStore(
+            ICrawlerConfig config, TemporaryFolder tempFolder, boolean resume) {
+        return createCrawlDataStore(config, tempFolder, resume, null);
+    }
+    @Override
+    protected ICrawlDataStore createCrawlDataStore(
+            ICrawlerConfig config, TemporaryFolder tempFolder, boolean resume,
+            ICrawlDataRanker ranker) {
+        return new MongoCrawlDataStore(resume, fongo.getMongo(), "crawl-test",
+                new BinaryMongoSerializer(new BaseMongoSerializer(),
+                        new CrawlDataCodecRegistry()), null, null, ranker);
+    }
+
+    @Test
+    public void testPayload() throws Exception {
+        BinaryMongoSerializer serializer = new BinaryMongoSerializer(
+                new BaseMongoSerializer(), new CrawlDataCodecRegistry());
+        BaseCrawlData crawlData = new BaseCrawlData("http://example.com");
+        crawlData.setState(CrawlState.MODIFIED);
+        crawlData.setContentChecksum("checksum");
+
+        Document doc = serializer.toDocument(Stage.PROCESSED, crawlData);
+        // Only query fields are kept next to the payload
+        assertEquals(4, doc.size());
+        assertEquals(Stage.PROCESSED.name(),
+                doc.getString(IMongoSerializer.FIELD_STAGE));
+        assertEquals(Boolean.TRUE,
+                doc.getBoolean(IMongoSerializer.FIELD_IS_VALID));
+        assertEquals(Binary.class, doc.get(
+                BinaryMongoSerializer.FIELD_PAYLOAD).getClass());
+        assertEquals(crawlData, serializer.fromDocument(doc));
+
+        // Documents without payload are still read
+        Document legacyDoc = new BaseMongoSerializer().toDocument(
+                Stage.PROCESSED, crawlData);
+        assertEquals(crawlData, serializer.fromDocument(legacyDoc));
+    }
+}
@@ -22,6 +22,7 @@ import static org.junit.Assert.assertTrue;
 import java.io.IOException;
 
 import org.apache.commons.lang3.StringUtils;
+import org.bson.Document;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
@@ -29,7 +30,9 @@ import org.junit.rules.TemporaryFolder;
 import com.github.fakemongo.Fongo;
 import com.norconex.collector.core.TestUtil;
 import com.norconex.collector.core.crawler.ICrawlerConfig;
+import com.norconex.collector.core.data.store.ICrawlDataRanker;
 import com.norconex.collector.core.data.store.ICrawlDataStore;
+import com.norconex.collector.core.data.store.PropertyCrawlDataRanker;
 import com.norconex.collector.core.data.store.impl.BaseCrawlDataStoreTest;
 import com.norconex.commons.lang.config.XMLConfigurationUtil;
 
@@ -65,8 +68,14 @@ public class MongoCrawlDataStoreTest extends BaseCrawlDataStoreTest {
     @Override
     protected ICrawlDataStore createCrawlDataStore(
             ICrawlerConfig config, TemporaryFolder tempFolder, boolean resume) {
-        return new MongoCrawlDataStore(resume,
-                fongo.getMongo(), "crawl-test", new BaseMongoSerializer());
+        return createCrawlDataStore(config, tempFolder, resume, null);
+    }
+    @Override
+    protected ICrawlDataStore createCrawlDataStore(
+            ICrawlerConfig config, TemporaryFolder tempFolder, boolean resume,
+            ICrawlDataRanker ranker) {
+        return new MongoCrawlDataStore(resume, fongo.getMongo(), 
+                "crawl-test", new BaseMongoSerializer(), null, null, ranker);
     }
 
     //TODO make this a test for all implementations?
@@ -84,6 +93,39 @@ public class MongoCrawlDataStoreTest extends BaseCrawlDataStoreTest {
         assertEquals(ref, crawlStore.nextQueued().getReference());
     }
 
+    @Test
+    public void testQueueOrderOnResume() throws Exception {
+        ICrawlDataStore store = getCrawlDataStore();
+        store.queue(createCrawlData("b"));
+        store.queue(createCrawlData("a"));
+        resetDatabase(true);
+        getCrawlDataStore().queue(createCrawlData("c"));
+        assertEquals("b", getCrawlDataStore().nextQueued().getReference());
+        assertEquals("a", getCrawlDataStore().nextQueued().getReference());
+        assertEquals("c", getCrawlDataStore().nextQueued().getReference());
+    }
+
+    @Test
+    public void testLeaseRemoved() throws Exception {
+        ICrawlDataStore store = getCrawlDataStore();
+        store.queue(createCrawlData("a"));
+        store.queue(createCrawlData("b"));
+        assertEquals(2, store.nextQueued(2).size());
+        assertEquals(2, countLeased());
+
+        store.processed(createCrawlData("a"));
+        assertEquals(1, countLeased());
+        // Put back in the queue
+        resetDatabase(true);
+        assertEquals(0, countLeased());
+    }
+    private long countLeased() {
+        return fongo.getMongo().getDatabase("crawl-test").getCollection(
+                MongoCrawlDataStore.DEFAULT_REFERENCES_COL_NAME).count(
+                        new Document(IMongoSerializer.FIELD_LEASE,
+                                new Document("$exists", true)));
+    }
+
     @Test
     public void testValidation() throws IOException {
         TestUtil.testValidation(getClass());
@@ -102,6 +144,8 @@ public class MongoCrawlDataStoreTest extends BaseCrawlDataStoreTest {
         f.getConnectionDetails().setSslInvalidHostNameAllowed(true);
         f.setCachedCollectionName("mycache");
         f.setReferencesCollectionName("myrefs");
+        f.setBinary(true);
+        f.setQueueRanker(new PropertyCrawlDataRanker("depth", true));
         System.out.println("Writing/Reading this: " + f);
         XMLConfigurationUtil.assertWriteRead(f);
     }
@@ -1,4 +1,4 @@
-/* Copyright 2014-2016 Norconex Inc.
+/* Copyright 2014-2018 Norconex Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -14,14 +14,28 @@
  */
 package com.norconex.collector.core.data.store.impl.mvstore;
 
+import static org.junit.Assert.assertEquals;
+
 import java.io.File;
+import java.io.IOException;
 
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
 import org.junit.Before;
+import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import com.norconex.collector.core.TestUtil;
 import com.norconex.collector.core.crawler.ICrawlerConfig;
+import com.norconex.collector.core.data.BaseCrawlData;
+import com.norconex.collector.core.data.CrawlState;
+import com.norconex.collector.core.data.ICrawlData;
+import com.norconex.collector.core.data.store.ICrawlDataRanker;
 import com.norconex.collector.core.data.store.ICrawlDataStore;
+import com.norconex.collector.core.data.store.PropertyCrawlDataRanker;
 import com.norconex.collector.core.data.store.impl.BaseCrawlDataStoreTest;
+import com.norconex.collector.core.data.store.impl.mvstore.MVStoreCrawlDataStore.CommitMode;
+import com.norconex.commons.lang.config.XMLConfigurationUtil;
 
 public class MVStoreCrawlDataStoreTest extends BaseCrawlDataStoreTest {
 
@@ -35,6 +49,61 @@ public class MVStoreCrawlDataStoreTest extends BaseCrawlDataStoreTest {
     @Override
     protected ICrawlDataStore createCrawlDataStore(
             ICrawlerConfig config, TemporaryFolder tempFolder, boolean resume) {
-        return new MVStoreCrawlDataStore(store.getPath(), resume);
+        return createCrawlDataStore(config, tempFolder, resume, null);
+    }
+    @Override
+    protected ICrawlDataStore createCrawlDataStore(
+            ICrawlerConfig config, TemporaryFolder tempFolder, boolean resume,
+            ICrawlDataRanker ranker) {
+        return new MVStoreCrawlDataStore(store.getPath(), resume,
+                CommitMode.OPERATION, 0, 0, null, ranker);
+    }
+
+    protected File getStoreDir() {
+        return store;
+    }
+
+    @Test
+    public void testReadSerializedCrawlData() throws IOException {
+        // Crawl data written with Java serialization before 1.9.2
+        getCrawlDataStore().close();
+        BaseCrawlData crawlData = new BaseCrawlData("http://example.com");
+        crawlData.setState(CrawlState.MODIFIED);
+        MVStore mvStore = MVStore.open(store.getPath() + "/mvstore");
+        MVMap<String, ICrawlData> map = mvStore.openMap("processedValid");
+        map.put(crawlData.getReference(), crawlData);
+        mvStore.close();
+
+        resetDatabase(false);
+        assertEquals(crawlData, getCrawlDataStore().getCached(
+                crawlData.getReference()));
+    }
+
+    @Test
+    public void testQueueOrder() throws Exception {
+        for (String ref : new String[] { "c", "a", "b" }) {
+            getCrawlDataStore().queue(createCrawlData(ref));
+        }
+        assertEquals("c", getCrawlDataStore().nextQueued().getReference());
+        // Order is kept when resuming
+        resetDatabase(true);
+        assertEquals("a", getCrawlDataStore().nextQueued().getReference());
+        assertEquals("b", getCrawlDataStore().nextQueued().getReference());
+    }
+
+    @Test
+    public void testValidation() throws IOException {
+        TestUtil.testValidation(MVStoreCrawlDataStoreTest.class);
+    }
+
+    @Test
+    public void testWriteRead() throws IOException {
+        MVStoreCrawlDataStoreFactory f = new MVStoreCrawlDataStoreFactory();
+        f.setCommitMode(CommitMode.GROUP);
+        f.setCommitOperations(500);
+        f.setCommitInterval(5000);
+        f.setQueueRanker(new PropertyCrawlDataRanker("depth", true));
+        System.out.println("Writing/Reading this: " + f);
+        XMLConfigurationUtil.assertWriteRead(f);
     }
 }
@@ -0,0 +1,90 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.store.impl.shard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.norconex.collector.core.TestUtil;
+import com.norconex.collector.core.crawler.ICrawlerConfig;
+import com.norconex.collector.core.data.ICrawlData;
+import com.norconex.collector.core.data.store.ICrawlDataStore;
+import com.norconex.collector.core.data.store.impl.BaseCrawlDataStoreTest;
+import com.norconex.collector.core.data.store.impl.mvstore.MVStoreCrawlDataStoreFactory;
+import com.norconex.commons.lang.config.XMLConfigurationUtil;
+
+public class ShardedCrawlDataStoreTest extends BaseCrawlDataStoreTest {
+
+    @Override
+    protected ICrawlDataStore createCrawlDataStore(
+            ICrawlerConfig config, TemporaryFolder tempFolder, boolean resume) {
+        ShardedCrawlDataStoreFactory factory = 
+                new ShardedCrawlDataStoreFactory();
+        factory.setShards(3);
+        return factory.createCrawlDataStore(config, resume);
+    }
+
+    @Test
+    public void testSpreadOverShards() throws Exception {
+        ShardedCrawlDataStore store = 
+                (ShardedCrawlDataStore) getCrawlDataStore();
+        for (int i = 0; i < 30; i++) {
+            store.queue(createCrawlData("https://www.norconex.com/" + i));
+        }
+        assertEquals(30, store.getQueueSize());
+        for (ICrawlDataStore shard : store.getShards()) {
+            assertTrue(shard.getQueueSize() > 0);
+        }
+
+        // Taken from all shards, without duplicates
+        Set<String> refs = new HashSet<>();
+        List<ICrawlData> next;
+        while (!(next = store.nextQueued(4)).isEmpty()) {
+            for (ICrawlData crawlData : next) {
+                assertTrue(refs.add(crawlData.getReference()));
+                assertTrue(store.getShard(crawlData.getReference())
+                        .isActive(crawlData.getReference()));
+            }
+        }
+        assertEquals(30, refs.size());
+        assertEquals(30, store.getActiveCount());
+        assertTrue(store.isQueueEmpty());
+    }
+
+    @Test
+    public void testValidation() throws IOException {
+        TestUtil.testValidation(ShardedCrawlDataStoreTest.class);
+    }
+
+    @Test
+    public void testWriteRead() throws IOException {
+        ShardedCrawlDataStoreFactory f = new ShardedCrawlDataStoreFactory();
+        f.setShards(8);
+        MVStoreCrawlDataStoreFactory mvstore = 
+                new MVStoreCrawlDataStoreFactory();
+        mvstore.setCommitOperations(500);
+        f.setCrawlDataStoreFactory(mvstore);
+        System.out.println("Writing/Reading this: " + f);
+        XMLConfigurationUtil.assertWriteRead(f);
+    }
+}
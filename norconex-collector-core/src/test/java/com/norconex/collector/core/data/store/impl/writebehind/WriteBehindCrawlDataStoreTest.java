@@ -0,0 +1,168 @@
+/* Copyright 2018 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.collector.core.data.store.impl.writebehind;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.norconex.collector.core.crawler.ICrawlerConfig;
+import com.norconex.collector.core.data.CrawlState;
+import com.norconex.collector.core.data.ICrawlData;
+import com.norconex.collector.core.data.store.CrawlDataStage;
+import com.norconex.collector.core.data.store.CrawlDataStoreException;
+import com.norconex.collector.core.data.store.DelegatingCrawlDataStore;
+import com.norconex.collector.core.data.store.ICrawlDataStore;
+import com.norconex.collector.core.data.store.impl.BaseCrawlDataStoreTest;
+import com.norconex.collector.core.data.store.impl.mvstore.MVStoreCrawlDataStore;
+
+public class WriteBehindCrawlDataStoreTest extends BaseCrawlDataStoreTest {
+
+    private File store;
+
+    @Before
+    public void setup() throws Exception {
+        store = getTempfolder().newFolder();
+        super.setup();
+    }
+    @Override
+    protected ICrawlDataStore createCrawlDataStore(
+            ICrawlerConfig config, TemporaryFolder tempFolder, boolean resume) {
+        return new WriteBehindCrawlDataStore(
+                new MVStoreCrawlDataStore(store.getPath(), resume), 10);
+    }
+
+    @Test
+    public void testReadYourWrites() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        ICrawlDataStore mvstore = ((WriteBehindCrawlDataStore)
+                getCrawlDataStore()).getDelegate();
+        WriteBehindCrawlDataStore slow = new WriteBehindCrawlDataStore(
+                new DelegatingCrawlDataStore(mvstore) {
+            @Override
+            public void processedAll(
+                    Iterable<? extends ICrawlData> crawlDatas) {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.processedAll(crawlDatas);
+            }
+        }, 10);
+        String ref = "http://a.com/1";
+        slow.queue(createCrawlData(ref));
+        ICrawlData next = slow.nextQueued();
+        setCrawlState(next, CrawlState.NEW);
+        slow.processed(next);
+
+        assertEquals(1, slow.getPendingCount());
+        assertTrue(slow.isProcessed(ref));
+        assertFalse(slow.isActive(ref));
+        assertNull(slow.getCached(ref));
+        assertEquals(CrawlDataStage.PROCESSED, slow.getStage(ref));
+        assertEquals(CrawlDataStage.PROCESSED,
+                slow.queueIfAbsent(createCrawlData(ref)));
+        assertEquals(0, slow.getActiveCount());
+        assertEquals(1, slow.getProcessedCount());
+        assertFalse(mvstore.isProcessed(ref));
+
+        latch.countDown();
+        slow.flush();
+        assertEquals(0, slow.getPendingCount());
+        assertTrue(mvstore.isProcessed(ref));
+        assertEquals(0, slow.getActiveCount());
+        assertEquals(1, slow.getProcessedCount());
+    }
+
+    @Test
+    public void testProcessedWhileWriting() throws Exception {
+        final Semaphore writing = new Semaphore(0);
+        final Semaphore canWrite = new Semaphore(0);
+        ICrawlDataStore mvstore = ((WriteBehindCrawlDataStore)
+                getCrawlDataStore()).getDelegate();
+        WriteBehindCrawlDataStore slow = new WriteBehindCrawlDataStore(
+                new DelegatingCrawlDataStore(mvstore) {
+            @Override
+            public void processedAll(
+                    Iterable<? extends ICrawlData> crawlDatas) {
+                writing.release();
+                canWrite.acquireUninterruptibly();
+                super.processedAll(crawlDatas);
+            }
+        }, 10);
+        String ref = "http://a.com/1";
+        slow.queue(createCrawlData(ref));
+        ICrawlData first = slow.nextQueued();
+        setCrawlState(first, CrawlState.NEW);
+        slow.processed(first);
+        writing.acquire();
+
+        // Newer one for the same reference while the first is written
+        ICrawlData newer = createCrawlData(ref);
+        setCrawlState(newer, CrawlState.MODIFIED);
+        slow.processed(newer);
+        canWrite.release();
+        writing.acquire();
+
+        // First batch written, the newer one must still be pending
+        assertEquals(1, slow.getPendingCount());
+        assertTrue(slow.isProcessed(ref));
+        assertEquals(CrawlDataStage.PROCESSED, slow.getStage(ref));
+
+        canWrite.release();
+        slow.flush();
+        assertEquals(0, slow.getPendingCount());
+        assertTrue(mvstore.isProcessed(ref));
+        assertEquals(1, slow.getProcessedCount());
+    }
+
+    @Test
+    public void testWriteFailure() throws Exception {
+        WriteBehindCrawlDataStore failing = new WriteBehindCrawlDataStore(
+                new DelegatingCrawlDataStore(getCrawlDataStore()) {
+            @Override
+            public void processedAll(
+                    Iterable<? extends ICrawlData> crawlDatas) {
+                throw new CrawlDataStoreException("Failed on purpose.");
+            }
+        }, 10);
+        ICrawlData crawlData = createCrawlData("http://a.com/1");
+        setCrawlState(crawlData, CrawlState.NEW);
+        failing.processed(crawlData);
+        try {
+            failing.flush();
+            fail("Should have thrown an exception.");
+        } catch (CrawlDataStoreException e) {
+            // expected
+        }
+        try {
+            failing.processed(crawlData);
+            fail("Should have thrown an exception.");
+        } catch (CrawlDataStoreException e) {
+            // expected
+        }
+    }
+}